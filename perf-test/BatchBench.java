@@ -0,0 +1,83 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Bulk load of rows in a single transaction with PreparedStatement.executeBatch,
+// the reset/bind/step loop of the batch runs inside the Wasm module (sqlite4j_execute_batch),
+// or row by row from Java with a module built without it.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBench {
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"100", "10000"})
+    public int batchSize;
+
+    private Connection conn;
+
+    @Setup(Level.Iteration)
+    public void setup() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table test (id integer, name text, score real)");
+        }
+        conn.setAutoCommit(false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public void load() throws SQLException {
+        try (PreparedStatement insert =
+                conn.prepareStatement("insert into test values (?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                insert.setInt(1, i);
+                insert.setString(2, "name");
+                insert.setDouble(3, i * 0.5);
+                insert.addBatch();
+                if ((i + 1) % batchSize == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        conn.commit();
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(BatchBench.class.getSimpleName()).build()).run();
+    }
+}
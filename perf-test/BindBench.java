@@ -0,0 +1,97 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Parameter binding of a 10 columns insert, all the parameters are bound with a single call:
+// - insert: one executeUpdate per row
+// - batch: 100 rows per executeBatch
+// Run with "-prof gc" to compare the allocations.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BindBench {
+
+    private static final int BATCH = 100;
+
+    private Connection conn;
+    private PreparedStatement insert;
+    private final byte[] blob = new byte[64];
+    private long next;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute(
+                    "create table test (c0 integer, c1 integer, c2 real, c3 real, c4 text,"
+                            + " c5 text, c6 blob, c7 blob, c8 integer, c9 text)");
+        }
+        insert = conn.prepareStatement("insert into test values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        insert.close();
+        conn.close();
+    }
+
+    private void bind() throws SQLException {
+        long i = next++;
+        insert.setLong(1, i);
+        insert.setInt(2, (int) i);
+        insert.setDouble(3, i * 0.5);
+        insert.setDouble(4, -i * 0.25);
+        insert.setString(5, "name");
+        insert.setString(6, "a somewhat longer text value");
+        insert.setBytes(7, blob);
+        insert.setBytes(8, blob);
+        insert.setNull(9, java.sql.Types.INTEGER);
+        insert.setString(10, "x");
+    }
+
+    @Benchmark
+    public int insert() throws SQLException {
+        bind();
+        return insert.executeUpdate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int[] batch() throws SQLException {
+        for (int i = 0; i < BATCH; i++) {
+            bind();
+            insert.addBatch();
+        }
+        return insert.executeBatch();
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(BindBench.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,137 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+
+//DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+//DEPS org.openjdk.jmh:jmh-core:1.36
+//DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Read throughput of full scans, stepping row by row (fetchSize = 0)
+// vs. fetching the rows in batches with a single call into the Wasm module:
+// - narrow: 2 INTEGER columns
+// - wide: 24 columns, a mix of INTEGER, REAL and TEXT
+// The gc profiler reports the bytes allocated per scan (gc.alloc.rate.norm). The memory held by a
+// result set grows with the fetch size until the 64KiB packing buffer is full: the packed rows,
+// plus for each fetched value 1 byte of type and 8 bytes for each of the long[], double[] and
+// TEXT/BLOB offsets columns, allocated once a value of their type is fetched.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FetchBench {
+    private static final int WIDE_COLUMNS = 24;
+
+    @Param({"0", "16", "64", "256", "1024"})
+    public int fetchSize;
+
+    @Param({"10000"})
+    public int rows;
+
+    private Connection conn;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        StringBuilder wide = new StringBuilder("create table wide (c0");
+        StringBuilder values = new StringBuilder("x");
+        for (int i = 1; i < WIDE_COLUMNS; i++) {
+            wide.append(", c").append(i);
+            switch (i % 3) {
+                case 0:
+                    values.append(", x * ").append(i);
+                    break;
+                case 1:
+                    values.append(", x / ").append(i).append(".0");
+                    break;
+                default:
+                    values.append(", 'value ' || x");
+                    break;
+            }
+        }
+        wide.append(")");
+        String series =
+                "with recursive c(x) as (select 1 union all select x + 1 from c limit "
+                        + rows
+                        + ") ";
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table narrow (id integer, v integer)");
+            stat.execute("insert into narrow " + series + "select x, x * 2 from c");
+            stat.execute(wide.toString());
+            stat.execute("insert into wide " + series + "select " + values + " from c");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public long narrow() throws SQLException {
+        long sum = 0;
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select id, v from narrow")) {
+            rs.setFetchSize(fetchSize);
+            while (rs.next()) {
+                sum += rs.getLong(1) + rs.getInt(2);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long wide() throws SQLException {
+        long sum = 0;
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select * from wide")) {
+            rs.setFetchSize(fetchSize);
+            while (rs.next()) {
+                for (int i = 1; i <= WIDE_COLUMNS; i++) {
+                    switch ((i - 1) % 3) {
+                        case 0:
+                            sum += rs.getLong(i);
+                            break;
+                        case 1:
+                            sum += (long) rs.getDouble(i);
+                            break;
+                        default:
+                            sum += rs.getString(i).length();
+                            break;
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(FetchBench.class.getSimpleName())
+                                .addProfiler(GCProfiler.class)
+                                .build())
+                .run();
+    }
+}
@@ -0,0 +1,148 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Database file copied in the in-memory Jimfs file system vs. accessed on the host file system:
+// - commit: write transactions of 100 rows, fsync'ed according to PRAGMA synchronous
+// - open: open a large existing database and run a query, Jimfs copies the whole file first
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class HostStorageBench {
+
+    @Param({"JIMFS", "HOST"})
+    public String storage;
+
+    @Param({"OFF", "NORMAL", "FULL"})
+    public String synchronous;
+
+    @Param({"256"})
+    public int sizeMb;
+
+    private Path dir;
+    private File large;
+    private Connection conn;
+    private PreparedStatement insert;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        large = new File(dir.toFile(), "large.db");
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.HOST);
+        try (Connection c =
+                        DriverManager.getConnection(
+                                "jdbc:sqlite:" + large.getAbsolutePath(), config.toProperties());
+                Statement stat = c.createStatement()) {
+            stat.execute("create table test (id integer primary key, payload blob)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + (sizeMb * 256)
+                            + ") insert into test (payload) select randomblob(4000) from n");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openWriter() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.valueOf(storage));
+        config.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(synchronous));
+        File file = new File(dir.toFile(), "writes-" + storage + "-" + synchronous + ".db");
+        conn =
+                DriverManager.getConnection(
+                        "jdbc:sqlite:" + file.getAbsolutePath(), config.toProperties());
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table if not exists test (id integer primary key, payload text)");
+        }
+        conn.setAutoCommit(false);
+        insert = conn.prepareStatement("insert into test (payload) values (?)");
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeWriter() throws SQLException {
+        insert.close();
+        conn.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public void commit() throws SQLException {
+        for (int i = 0; i < 100; i++) {
+            insert.setString(1, "row " + next++);
+            insert.executeUpdate();
+        }
+        conn.commit();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public long open() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.valueOf(storage));
+        // a fresh name every time, Jimfs keeps the copies of the files it has already opened
+        File link = new File(dir.toFile(), "large-" + System.nanoTime() + ".db");
+        try {
+            Files.createSymbolicLink(link.toPath(), large.toPath());
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        try (Connection c =
+                        DriverManager.getConnection(
+                                "jdbc:sqlite:" + link.getAbsolutePath(), config.toProperties());
+                Statement stat = c.createStatement();
+                ResultSet rs = stat.executeQuery("select max(id) from test")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(HostStorageBench.class.getSimpleName()).build())
+                .run();
+    }
+}
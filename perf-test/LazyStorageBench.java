@@ -0,0 +1,107 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Open an existing database and look up a single row:
+// JIMFS copies the whole file in memory first, LAZY only reads the chunks holding the pages
+// the query touches, the open cost doesn't depend on the size of the file.
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class LazyStorageBench {
+
+    @Param({"JIMFS", "LAZY"})
+    public String storage;
+
+    @Param({"16", "256", "1024"})
+    public int sizeMb;
+
+    private Path dir;
+    private File large;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        large = new File(dir.toFile(), "large.db");
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.HOST);
+        try (Connection c =
+                        DriverManager.getConnection(
+                                "jdbc:sqlite:" + large.getAbsolutePath(), config.toProperties());
+                Statement stat = c.createStatement()) {
+            stat.execute("create table test (id integer primary key, payload blob)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + (sizeMb * 256)
+                            + ") insert into test (payload) select randomblob(4000) from n");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public long openAndLookup() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.valueOf(storage));
+        // a fresh name every time, the in-memory file system keeps the files already opened
+        File link = new File(dir.toFile(), "large-" + System.nanoTime() + ".db");
+        try {
+            Files.createSymbolicLink(link.toPath(), large.toPath());
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        try (Connection c =
+                        DriverManager.getConnection(
+                                "jdbc:sqlite:" + link.getAbsolutePath(), config.toProperties());
+                Statement stat = c.createStatement();
+                ResultSet rs =
+                        stat.executeQuery(
+                                "select length(payload) from test where id = " + (sizeMb * 128))) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(LazyStorageBench.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -0,0 +1,128 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Throughput of several connections to the same database file, one per thread, without any
+// serialization in the application: SQLite's locks and busy handler coordinate them.
+// WASI: the unix VFS over WASI takes an exclusive lock on the whole file, even to read.
+// JAVA: the LockManager implements the SHARED/RESERVED/PENDING/EXCLUSIVE protocol, the
+// readers run in parallel and only the writers are serialized.
+// 9 reads out of 10, the JAVA runs need a libsqlite3.wasm built from the current wasm-lib
+// sources, otherwise both runs use WASI.
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class LockBench {
+
+    @Param({"WASI", "JAVA"})
+    public String vfs;
+
+    private static final int ROWS = 10_000;
+
+    private Path dir;
+    private String url;
+    private SQLiteConfig config;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        url = "jdbc:sqlite:" + new File(dir.toFile(), "locks.db").getAbsolutePath();
+        config = new SQLiteConfig();
+        config.setVfsMode(SQLiteConfig.VfsMode.valueOf(vfs));
+        config.setBusyTimeout(60_000);
+        try (Connection conn = DriverManager.getConnection(url, config.toProperties());
+                Statement stat = conn.createStatement()) {
+            stat.execute("create table test (id integer primary key, v integer)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + ROWS
+                            + ") insert into test select i, i from n");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        Connection conn;
+        PreparedStatement lookup;
+        PreparedStatement update;
+
+        @Setup(Level.Trial)
+        public void open(LockBench bench) throws SQLException {
+            conn = DriverManager.getConnection(bench.url, bench.config.toProperties());
+            lookup = conn.prepareStatement("select sum(v) from test where id between ? and ?");
+            update = conn.prepareStatement("update test set v = v + 1 where id = ?");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            lookup.close();
+            update.close();
+            conn.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 3)
+    @Measurement(iterations = 5, time = 3)
+    public long mixed(Session session) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(10) == 0) {
+            session.update.setInt(1, 1 + random.nextInt(ROWS));
+            return session.update.executeUpdate();
+        }
+        int from = 1 + random.nextInt(ROWS - 100);
+        session.lookup.setInt(1, from);
+        session.lookup.setInt(2, from + 100);
+        try (ResultSet rs = session.lookup.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(LockBench.class.getSimpleName()).build()).run();
+    }
+}
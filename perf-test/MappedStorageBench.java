@@ -0,0 +1,125 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Reads of a large read-only database: copied in memory (JIMFS), read on demand in chunks
+// (LAZY) or mapped from the OS page cache (MMAP).
+// The page cache of SQLite is kept small so that most reads reach the file.
+// - scan: full table scan
+// - lookup: random point lookups by primary key
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class MappedStorageBench {
+
+    @Param({"JIMFS", "LAZY", "MMAP"})
+    public String storage;
+
+    @Param({"256"})
+    public int sizeMb;
+
+    private Path dir;
+    private Connection conn;
+    private PreparedStatement lookup;
+    private int rows;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        File file = new File(dir.toFile(), "reference.db");
+        rows = sizeMb * 256;
+        SQLiteConfig hostConfig = new SQLiteConfig();
+        hostConfig.setStorageMode(SQLiteConfig.StorageMode.HOST);
+        try (Connection c =
+                        DriverManager.getConnection(
+                                "jdbc:sqlite:" + file.getAbsolutePath(),
+                                hostConfig.toProperties());
+                Statement stat = c.createStatement()) {
+            stat.execute("create table test (id integer primary key, payload blob)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + rows
+                            + ") insert into test (payload) select randomblob(4000) from n");
+        }
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.valueOf(storage));
+        config.setReadOnly(true);
+        config.setCacheSize(100);
+        conn =
+                DriverManager.getConnection(
+                        "jdbc:sqlite:" + file.getAbsolutePath(), config.toProperties());
+        lookup = conn.prepareStatement("select length(payload) from test where id = ?");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        lookup.close();
+        conn.close();
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public long scan() throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select sum(length(payload)) from test")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public long lookup() throws SQLException {
+        lookup.setInt(1, 1 + ThreadLocalRandom.current().nextInt(rows));
+        try (ResultSet rs = lookup.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(MappedStorageBench.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -0,0 +1,116 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+
+//DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+//DEPS org.openjdk.jmh:jmh-core:1.36
+//DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Heap vs. off-heap Wasm linear memory with many live connections:
+// - insert: throughput of writes spread over all the connections
+// - fullGc: duration of a full collection while the connections are alive
+// The GC time spent in each iteration is printed at tear down, run with "-prof gc" for more.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class MemoryModeBench {
+
+    @Param({"HEAP", "OFF_HEAP"})
+    public String memory;
+
+    @Param({"200"})
+    public int connections;
+
+    private Connection[] conns;
+    private PreparedStatement[] inserts;
+    private int next;
+    private long gcTimeAtStart;
+
+    @Setup
+    public void setup() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("wasm.memory", memory);
+
+        conns = new Connection[connections];
+        inserts = new PreparedStatement[connections];
+        for (int i = 0; i < connections; i++) {
+            conns[i] = DriverManager.getConnection("jdbc:sqlite::memory:", props);
+            try (Statement stat = conns[i].createStatement()) {
+                stat.execute("create table test (id integer primary key, payload blob)");
+                stat.execute("pragma cache_size = -8000");
+            }
+            inserts[i] = conns[i].prepareStatement("insert into test (payload) values (?)");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        gcTimeAtStart = gcTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        System.out.println("\nGC time: " + (gcTime() - gcTimeAtStart) + " ms");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        for (Connection conn : conns) {
+            conn.close();
+        }
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int insert() throws SQLException {
+        PreparedStatement insert = inserts[next++ % connections];
+        insert.setBytes(1, new byte[1024]);
+        return insert.executeUpdate();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Measurement(iterations = 20)
+    public void fullGc() {
+        System.gc();
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(MemoryModeBench.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -0,0 +1,76 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// The workload of perf-test/test: 50,000 inserts, each one through a new Statement with its value
+// in the SQL text. With jdbc.normalize_literals the value is bound to one cached prepared
+// statement, otherwise each insert is parsed and planned again.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NormalizeLiteralsBench {
+
+    @Param({"50000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public String normalizeLiterals;
+
+    private Connection conn;
+
+    @Setup(Level.Iteration)
+    public void setup() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("jdbc.normalize_literals", normalizeLiterals);
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:", props);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public int insert() throws SQLException {
+        conn.createStatement().execute("drop table if exists test");
+        conn.createStatement().execute("create table test (id int not null)");
+        for (int i = 0; i < size; i++) {
+            conn.createStatement().execute("insert into test values(" + i + ")");
+        }
+        return conn.createStatement().executeUpdate("delete from test");
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(NormalizeLiteralsBench.class.getSimpleName())
+                                .build())
+                .run();
+    }
+}
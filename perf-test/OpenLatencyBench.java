@@ -0,0 +1,75 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+
+//DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+//DEPS org.openjdk.jmh:jmh-core:1.36
+//DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Time to open (and close) a connection,
+// restoring the pre-initialized instance template vs. a cold Wasm instance,
+// or reusing the instance of the previously closed connection (wasm.instance_pool)
+// main runs with the gc profiler, to compare the bytes allocated per open
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OpenLatencyBench {
+
+    @Param({"true", "false"})
+    public String instanceTemplate;
+
+    @Param({"0", "4"})
+    public String instancePool;
+
+    private Properties props;
+
+    @Setup
+    public void setup() {
+        props = new Properties();
+        props.setProperty("wasm.instance_template", instanceTemplate);
+        props.setProperty("wasm.instance_pool", instancePool);
+    }
+
+    @Benchmark
+    public Connection openClose() throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:", props);
+        conn.close();
+        return conn;
+    }
+
+    @Benchmark
+    public int openQueryClose() throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:", props)) {
+            return conn.createStatement().executeQuery("select 1").getInt(1);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(OpenLatencyBench.class.getSimpleName())
+                                .addProfiler("gc")
+                                .build())
+                .run();
+    }
+}
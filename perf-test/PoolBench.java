@@ -0,0 +1,111 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.javax.SQLiteConnectionPoolDataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Latency of getting a connection, running a point query and closing the connection.
+// "pool": the connection is borrowed from a SQLiteConnectionPool and reset when it is returned,
+// the Wasm instance stays warm.
+// "fresh": every iteration opens a new connection, a new Wasm instance, and closes it.
+// main runs 1 thread, then as many threads as the cores, with a pool of as many connections.
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class PoolBench {
+
+    @Param({"pool", "fresh"})
+    public String mode;
+
+    @Param({"1"})
+    public int threads;
+
+    private static final int ROWS = 10_000;
+
+    private Path dir;
+    private SQLiteConnectionPoolDataSource ds;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        ds = new SQLiteConnectionPoolDataSource();
+        ds.setUrl("jdbc:sqlite:" + new File(dir.toFile(), "pool.db").getAbsolutePath());
+        if ("pool".equals(mode)) {
+            ds.setMaxPoolSize(threads);
+            ds.setMinIdle(threads);
+        }
+        try (Connection conn = ds.getConnection();
+                Statement stat = conn.createStatement()) {
+            stat.execute("create table test (id integer primary key, v text)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + ROWS
+                            + ") insert into test select i, hex(randomblob(20)) from n");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        ds.close();
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 3)
+    @Measurement(iterations = 5, time = 3)
+    public String borrowAndQuery() throws SQLException {
+        try (Connection conn = ds.getConnection();
+                PreparedStatement lookup =
+                        conn.prepareStatement("select v from test where id = ?")) {
+            lookup.setInt(1, 1 + ThreadLocalRandom.current().nextInt(ROWS));
+            try (ResultSet rs = lookup.executeQuery()) {
+                return rs.getString(1);
+            }
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[] {1, cores}) {
+            new Runner(
+                            new OptionsBuilder()
+                                    .include(PoolBench.class.getSimpleName())
+                                    .threads(threads)
+                                    .param("threads", Integer.toString(threads))
+                                    .build())
+                    .run();
+        }
+    }
+}
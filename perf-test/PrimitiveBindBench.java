@@ -0,0 +1,95 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// setInt, setLong and setDouble on a numeric insert, batched by 10,000 rows. The values are kept
+// in typed columns, the gc profiler reports the bytes allocated per row (gc.alloc.rate.norm):
+// compare with a build before the typed parameter storage, where each value was boxed.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimitiveBindBench {
+
+    private static final int BATCH = 10000;
+
+    private Connection conn;
+    private PreparedStatement insert;
+    private long next;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table test (a integer, b integer, c real)");
+        }
+        conn.setAutoCommit(false);
+        insert = conn.prepareStatement("insert into test values (?, ?, ?)");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        insert.close();
+        conn.close();
+    }
+
+    private void bind() throws SQLException {
+        long i = next++;
+        insert.setInt(1, (int) i);
+        insert.setLong(2, i * 1000);
+        insert.setDouble(3, i * 0.5);
+    }
+
+    @Benchmark
+    public int insert() throws SQLException {
+        bind();
+        return insert.executeUpdate();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int[] batch() throws SQLException {
+        for (int i = 0; i < BATCH; i++) {
+            bind();
+            insert.addBatch();
+        }
+        int[] counts = insert.executeBatch();
+        conn.commit();
+        return counts;
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(PrimitiveBindBench.class.getSimpleName())
+                                .addProfiler(GCProfiler.class)
+                                .build())
+                .run();
+    }
+}
@@ -0,0 +1,142 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.SQLiteDataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Read throughput of a SQLiteDataSource with read replicas, from 1 to N threads with as many
+// readers: each thread holds a read-only connection bound to its own Wasm instance.
+// "shared" is the baseline without replicas: all the threads query through one connection,
+// serialized by its synchronized DB.
+// The total throughput should grow with the threads up to the number of cores.
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ReplicaBench {
+
+    @Param({"1"})
+    public int threads;
+
+    @Param({"replicas", "shared"})
+    public String mode;
+
+    private static final int ROWS = 100_000;
+
+    private Path dir;
+    private SQLiteDataSource ds;
+    private Connection shared;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        ds = new SQLiteDataSource();
+        ds.setUrl("jdbc:sqlite:" + new File(dir.toFile(), "replicas.db").getAbsolutePath());
+        if ("replicas".equals(mode)) {
+            ds.setReadReplicas(threads);
+        }
+        try (Connection conn = ds.getConnection();
+                Statement stat = conn.createStatement()) {
+            stat.execute("create table test (id integer primary key, v integer)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + ROWS
+                            + ") insert into test select i, i % 1000 from n");
+        }
+        if ("shared".equals(mode)) {
+            shared = ds.getConnection();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        if (shared != null) {
+            shared.close();
+        }
+        ds.close();
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        Connection conn;
+        PreparedStatement range;
+
+        @Setup(Level.Trial)
+        public void open(ReplicaBench bench) throws SQLException {
+            if (bench.shared != null) {
+                conn = bench.shared;
+            } else {
+                conn = bench.ds.getConnection();
+                conn.setReadOnly(true);
+            }
+            range = conn.prepareStatement("select sum(v) from test where id between ? and ?");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            range.close();
+            if (conn != null && !conn.isClosed() && conn.isReadOnly()) {
+                conn.close();
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 3)
+    @Measurement(iterations = 5, time = 3)
+    public long rangeQuery(Session session) throws SQLException {
+        int from = 1 + ThreadLocalRandom.current().nextInt(ROWS - 1000);
+        session.range.setInt(1, from);
+        session.range.setInt(2, from + 1000);
+        try (ResultSet rs = session.range.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            new Runner(
+                            new OptionsBuilder()
+                                    .include(ReplicaBench.class.getSimpleName())
+                                    .threads(threads)
+                                    .param("threads", Integer.toString(threads))
+                                    .build())
+                    .run();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Footprint of 1,000 open tenant databases, each one a connection with a small table.
+// "sharedInstance" is the wasm.shared_instance setting: with 1 every tenant has its own Wasm
+// instance and linear memory, otherwise up to that many tenants share one.
+// The time to open all the tenants is measured, the retained heap and off-heap memory per tenant
+// are printed after each iteration, while the tenants are still open.
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class TenantFootprintBench {
+
+    @Param({"1", "100", "1000"})
+    public String sharedInstance;
+
+    @Param({"1000"})
+    public int tenants;
+
+    @Param({"HEAP", "OFF_HEAP"})
+    public String memory;
+
+    private Properties props;
+    private final List<Connection> conns = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        props = new Properties();
+        props.setProperty("wasm.shared_instance", sharedInstance);
+        props.setProperty("wasm.memory", memory);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeTenants() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        long offHeap = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            offHeap += pool.getMemoryUsed();
+        }
+        System.out.printf(
+                "%n%d tenants: heap %d KiB/tenant, off-heap %d KiB/tenant%n",
+                conns.size(), heap / 1024 / conns.size(), offHeap / 1024 / conns.size());
+        for (Connection conn : conns) {
+            conn.close();
+        }
+        conns.clear();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public int openTenants() throws SQLException {
+        for (int i = 0; i < tenants; i++) {
+            Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:", props);
+            try (Statement stat = conn.createStatement()) {
+                stat.execute("create table tenant (id integer primary key, name text)");
+                stat.execute("insert into tenant values (" + i + ", 'tenant " + i + "')");
+            }
+            conns.add(conn);
+        }
+        return conns.size();
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(TenantFootprintBench.class.getSimpleName()).build())
+                .run();
+    }
+}
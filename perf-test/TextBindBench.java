@@ -0,0 +1,91 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Text heavy inserts, the text and blob parameters are written in the bind arena of the
+// statement and bound with SQLITE_STATIC, no malloc/free and no copy by SQLite per value.
+// Run with "-prof gc" to compare the allocations.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextBindBench {
+
+    @Param({"16", "256", "4096"})
+    public int textSize;
+
+    private Connection conn;
+    private PreparedStatement insert;
+    private String[] texts;
+    private int next;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table test (a text, b text, c text, d blob)");
+        }
+        insert = conn.prepareStatement("insert into test values (?, ?, ?, ?)");
+
+        texts = new String[64];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < texts.length; i++) {
+            sb.setLength(0);
+            while (sb.length() < textSize) {
+                sb.append("lorem ipsum ").append(i).append(' ');
+            }
+            texts[i] = sb.substring(0, textSize);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        insert.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public int insert() throws SQLException {
+        int i = next++;
+        insert.setString(1, texts[i & 63]);
+        insert.setString(2, texts[(i + 1) & 63]);
+        insert.setString(3, texts[(i + 2) & 63]);
+        insert.setBytes(4, texts[(i + 3) & 63].getBytes());
+        int changes = insert.executeUpdate();
+        if ((i & 0xFFFF) == 0) {
+            try (Statement stat = conn.createStatement()) {
+                stat.execute("delete from test");
+            }
+        }
+        return changes;
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(TextBindBench.class.getSimpleName()).build()).run();
+    }
+}
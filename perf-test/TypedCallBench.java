@@ -0,0 +1,96 @@
+///usr/bin/env jbang "$0" "$@" ; exit $?
+
+//DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+//DEPS org.openjdk.jmh:jmh-core:1.36
+//DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Cost of the calls into the Wasm module on the ResultSet getters:
+// "gc.alloc.rate.norm" (reported by the gc profiler) is the number of bytes allocated per
+// operation, with the typed entry points getInt/getLong should not allocate per column.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TypedCallBench {
+
+    @Param({"1000"})
+    public int rows;
+
+    private Connection conn;
+    private ResultSet rs;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table test (i integer, l integer)");
+            stat.execute(
+                    "insert into test with recursive c(x) as (select 1 union all select x + 1"
+                            + " from c limit "
+                            + rows
+                            + ") select x, x * 4294967296 from c");
+        }
+        rs = conn.createStatement().executeQuery("select i, l from test");
+        rs.next();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        rs.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public int getInt() throws SQLException {
+        return rs.getInt(1);
+    }
+
+    @Benchmark
+    public long getLong() throws SQLException {
+        return rs.getLong(2);
+    }
+
+    @Benchmark
+    public long scan() throws SQLException {
+        long sum = 0;
+        try (ResultSet scan = conn.createStatement().executeQuery("select i, l from test")) {
+            while (scan.next()) {
+                sum += scan.getInt(1) + scan.getLong(2);
+            }
+        }
+        return sum;
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(
+                        new OptionsBuilder()
+                                .include(TypedCallBench.class.getSimpleName())
+                                .addProfiler(GCProfiler.class)
+                                .build())
+                .run();
+    }
+}
@@ -0,0 +1,111 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.Function;
+import io.roastedroot.sqlite4j.SQLiteConnection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Registering and calling functions from 4 threads, each one with its own connection.
+// "sharedInstance" is the wasm.shared_instance setting: with 1 every connection has its own Wasm
+// instance, otherwise the connections share one and their callbacks are routed by user data.
+// "register" creates, calls and destroys a function, "call" calls one function on 10,000 rows.
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class UdfRegistrationBench {
+
+    @Param({"1", "4"})
+    public String sharedInstance;
+
+    private SQLiteConnection conn;
+    private Statement stat;
+    private int round;
+
+    private static Function constant(int constant) {
+        return new Function() {
+            @Override
+            public void xFunc() throws SQLException {
+                result(constant);
+            }
+        };
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("wasm.shared_instance", sharedInstance);
+        conn = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite::memory:", props);
+        stat = conn.createStatement();
+        stat.executeUpdate(
+                "create table t as with recursive n(i) as (select 1 union all select i + 1 from n"
+                        + " where i < 10000) select i from n");
+        Function.create(
+                conn,
+                "twice",
+                new Function() {
+                    @Override
+                    public void xFunc() throws SQLException {
+                        result(2 * value_int(0));
+                    }
+                });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        stat.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public int register() throws SQLException {
+        int value = round++;
+        Function.create(conn, "f", constant(value));
+        int result;
+        try (Statement query = conn.createStatement();
+                ResultSet rs = query.executeQuery("select f()")) {
+            result = rs.getInt(1);
+        }
+        Function.destroy(conn, "f");
+        return result;
+    }
+
+    @Benchmark
+    public long call() throws SQLException {
+        try (ResultSet rs = stat.executeQuery("select sum(twice(i)) from t")) {
+            return rs.getLong(1);
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(UdfRegistrationBench.class.getSimpleName()).build())
+                .run();
+    }
+}
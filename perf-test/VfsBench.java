@@ -0,0 +1,117 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Per-page I/O cost of the unix VFS over WASI vs. the VFS implemented in Java.
+// Every row fills a page and the page cache of SQLite is minimal: a lookup reads about one
+// page per level of the b-tree, a write transaction writes the page, the journal and syncs.
+// The JAVA VFS needs a libsqlite3.wasm built from the current wasm-lib sources, otherwise
+// both runs use WASI.
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class VfsBench {
+
+    @Param({"WASI", "JAVA"})
+    public String vfs;
+
+    @Param({"JIMFS", "HOST"})
+    public String storage;
+
+    private static final int ROWS = 10_000;
+
+    private Path dir;
+    private Connection conn;
+    private PreparedStatement lookup;
+    private PreparedStatement update;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        File file = new File(dir.toFile(), "pages.db");
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.valueOf(storage));
+        config.setVfsMode(SQLiteConfig.VfsMode.valueOf(vfs));
+        config.setCacheSize(10);
+        conn =
+                DriverManager.getConnection(
+                        "jdbc:sqlite:" + file.getAbsolutePath(), config.toProperties());
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table test (id integer primary key, payload blob)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + ROWS
+                            + ") insert into test (payload) select randomblob(3900) from n");
+        }
+        lookup = conn.prepareStatement("select length(payload) from test where id = ?");
+        update = conn.prepareStatement("update test set payload = randomblob(3900) where id = ?");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        lookup.close();
+        update.close();
+        conn.close();
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 3)
+    @Measurement(iterations = 5, time = 3)
+    public long pageRead() throws SQLException {
+        lookup.setInt(1, 1 + ThreadLocalRandom.current().nextInt(ROWS));
+        try (ResultSet rs = lookup.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 3)
+    @Measurement(iterations = 5, time = 3)
+    public int pageWrite() throws SQLException {
+        update.setInt(1, 1 + ThreadLocalRandom.current().nextInt(ROWS));
+        return update.executeUpdate();
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(VfsBench.class.getSimpleName()).build()).run();
+    }
+}
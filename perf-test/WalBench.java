@@ -0,0 +1,158 @@
+/// usr/bin/env jbang "$0" "$@" ; exit $?
+
+// DEPS io.roastedroot:sqlite4j:9.9.9.9-SNAPSHOT
+// DEPS org.openjdk.jmh:jmh-core:1.36
+// DEPS org.openjdk.jmh:jmh-generator-annprocess:1.36
+
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Concurrent readers and one writer, every thread with its own connection to the same file.
+// DELETE is the rollback journal: the connections don't lock each other, the application has
+// to serialize the writer with the readers, here with a read-write lock.
+// WAL: the readers run on a snapshot while the writer appends to the WAL, no application lock.
+@Fork(
+        value = 1,
+        jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class WalBench {
+
+    @Param({"DELETE", "WAL"})
+    public String journalMode;
+
+    private static final int ROWS = 10_000;
+
+    private Path dir;
+    private String url;
+    private SQLiteConfig config;
+    private ReadWriteLock serializer;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("sqlite4j-bench");
+        url = "jdbc:sqlite:" + new File(dir.toFile(), "wal.db").getAbsolutePath();
+        config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.HOST);
+        config.setVfsMode(SQLiteConfig.VfsMode.JAVA);
+        config.setJournalMode(SQLiteConfig.JournalMode.valueOf(journalMode));
+        serializer =
+                "WAL".equals(journalMode) ? null : new ReentrantReadWriteLock(/* fair= */ true);
+        try (Connection conn = DriverManager.getConnection(url, config.toProperties());
+                Statement stat = conn.createStatement()) {
+            stat.execute("create table test (id integer primary key, v integer, payload text)");
+            stat.execute(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + ROWS
+                            + ") insert into test select i, i, hex(randomblob(50)) from n");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(dir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        Connection conn;
+        PreparedStatement lookup;
+        PreparedStatement update;
+
+        @Setup(Level.Trial)
+        public void open(WalBench bench) throws SQLException {
+            conn = DriverManager.getConnection(bench.url, bench.config.toProperties());
+            lookup = conn.prepareStatement("select sum(v) from test where id between ? and ?");
+            update = conn.prepareStatement("update test set v = v + 1 where id = ?");
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws SQLException {
+            lookup.close();
+            update.close();
+            conn.close();
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 3)
+    @Measurement(iterations = 5, time = 3)
+    public long read(Session session) throws SQLException {
+        int from = 1 + ThreadLocalRandom.current().nextInt(ROWS - 100);
+        if (serializer != null) {
+            serializer.readLock().lock();
+        }
+        try {
+            session.lookup.setInt(1, from);
+            session.lookup.setInt(2, from + 100);
+            try (ResultSet rs = session.lookup.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        } finally {
+            if (serializer != null) {
+                serializer.readLock().unlock();
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 3)
+    @Measurement(iterations = 5, time = 3)
+    public int write(Session session) throws SQLException {
+        if (serializer != null) {
+            serializer.writeLock().lock();
+        }
+        try {
+            session.update.setInt(1, 1 + ThreadLocalRandom.current().nextInt(ROWS));
+            return session.update.executeUpdate();
+        } finally {
+            if (serializer != null) {
+                serializer.writeLock().unlock();
+            }
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        new Runner(new OptionsBuilder().include(WalBench.class.getSimpleName()).build()).run();
+    }
+}
@@ -48,8 +48,15 @@ public class SQLiteConfig {
     private static final int DEFAULT_MAX_COLUMN = 2000;
     private static final int DEFAULT_MAX_SQL_LENGTH = 1000000;
     private static final int DEFAULT_MAX_FUNCTION_ARG = 100;
+    // statements cached when normalizing the literals, unless set
+    private static final int DEFAULT_NORMALIZED_CACHE_SIZE = 64;
     private static final int DEFAULT_MAX_ATTACHED = 10;
     private static final int DEFAULT_MAX_PAGE_COUNT = 1073741823;
+    /* Default number of Wasm instances kept by the closed connections */
+    private static final int DEFAULT_INSTANCE_POOL_SIZE = 4;
+    /* Default allocation granularity of the Wasm linear memory: 16 pages of 64KiB */
+    private static final int DEFAULT_MEMORY_CHUNK_PAGES = 16;
+    private static final long DEFAULT_STORAGE_CACHE_SIZE = 64L * 1024 * 1024;
 
     private final Properties pragmaTable;
     private int openModeFlag = 0x00;
@@ -189,6 +196,20 @@ public class SQLiteConfig {
         // exclude this "fake" pragma from execution
         pragmaParams.remove(Pragma.JDBC_EXPLICIT_READONLY.pragmaName);
         pragmaParams.remove(Pragma.JDBC_GET_GENERATED_KEYS.pragmaName);
+        pragmaParams.remove(Pragma.JDBC_STATEMENT_CACHE_SIZE.pragmaName);
+        pragmaParams.remove(Pragma.JDBC_NORMALIZE_LITERALS.pragmaName);
+        pragmaParams.remove(Pragma.WASM_INSTANCE_TEMPLATE.pragmaName);
+        pragmaParams.remove(Pragma.WASM_INSTANCE_POOL.pragmaName);
+        pragmaParams.remove(Pragma.WASM_SHARED_INSTANCE.pragmaName);
+        pragmaParams.remove(Pragma.WASM_HIBERNATE_IDLE.pragmaName);
+        pragmaParams.remove(Pragma.WASM_HIBERNATE_COMPRESS.pragmaName);
+        pragmaParams.remove(Pragma.WASM_MEMORY_BUDGET.pragmaName);
+        pragmaParams.remove(Pragma.WASM_MEMORY_BUDGET_WAIT.pragmaName);
+        pragmaParams.remove(Pragma.WASM_MEMORY_CHUNK_PAGES.pragmaName);
+        pragmaParams.remove(Pragma.WASM_MEMORY.pragmaName);
+        pragmaParams.remove(Pragma.WASM_STORAGE.pragmaName);
+        pragmaParams.remove(Pragma.WASM_STORAGE_CACHE_SIZE.pragmaName);
+        pragmaParams.remove(Pragma.WASM_VFS.pragmaName);
 
         Statement stat = conn.createStatement();
         try {
@@ -603,7 +624,65 @@ public class SQLiteConfig {
         JDBC_EXPLICIT_READONLY(
                 "jdbc.explicit_readonly", "Set explicit read only transactions", null),
         JDBC_GET_GENERATED_KEYS(
-                "jdbc.get_generated_keys", "Enable retrieval of generated keys", OnOff.Values);
+                "jdbc.get_generated_keys", "Enable retrieval of generated keys", OnOff.Values),
+        JDBC_STATEMENT_CACHE_SIZE(
+                "jdbc.statement_cache_size",
+                "Closed prepared statements kept for reuse by SQL text, 0 disables",
+                null),
+        JDBC_NORMALIZE_LITERALS(
+                "jdbc.normalize_literals",
+                "Bind the literals of the SQL run by Statement objects, to reuse their plans",
+                OnOff.Values),
+
+        // extensions: "fake" pragmas to tune the Wasm runtime
+        WASM_INSTANCE_TEMPLATE(
+                "wasm.instance_template",
+                "Open connections from a pre-initialized Wasm instance snapshot",
+                OnOff.Values),
+        WASM_INSTANCE_POOL(
+                "wasm.instance_pool",
+                "Wasm instances of closed connections kept for the next opens, 0 disables",
+                null),
+        WASM_SHARED_INSTANCE(
+                "wasm.shared_instance",
+                "Connections sharing one Wasm instance and its linear memory, 1 disables",
+                null),
+        WASM_HIBERNATE_IDLE(
+                "wasm.hibernate_idle",
+                "Milliseconds a connection is idle before releasing its Wasm instance, 0 disables",
+                null),
+        WASM_HIBERNATE_COMPRESS(
+                "wasm.hibernate_compress",
+                "Compress the in-memory databases of the hibernated connections",
+                OnOff.Values),
+        WASM_MEMORY_BUDGET(
+                "wasm.memory_budget",
+                "Bytes of linear memory of all the Wasm instances of the JVM, 0 disables",
+                null),
+        WASM_MEMORY_BUDGET_WAIT(
+                "wasm.memory_budget_wait",
+                "Milliseconds an open waits for memory beyond the budget, 0 fails right away",
+                null),
+        WASM_MEMORY_CHUNK_PAGES(
+                "wasm.memory_chunk_pages",
+                "Number of 64KiB pages allocated at once by the Wasm linear memory, a power of two",
+                null),
+        WASM_MEMORY(
+                "wasm.memory",
+                "Storage of the Wasm linear memory, on the Java heap or off-heap",
+                toStringArray(MemoryMode.values())),
+        WASM_STORAGE(
+                "wasm.storage",
+                "Where the database file is accessed, a copy in memory or the host file",
+                toStringArray(StorageMode.values())),
+        WASM_STORAGE_CACHE_SIZE(
+                "wasm.storage_cache_size",
+                "Bytes of the database file kept in memory by the LAZY storage mode",
+                null),
+        WASM_VFS(
+                "wasm.vfs",
+                "SQLite VFS used for the files, through WASI or implemented in Java",
+                toStringArray(VfsMode.values()));
 
         public final String pragmaName;
         public final String[] choices;
@@ -888,7 +967,8 @@ public class SQLiteConfig {
     }
 
     /**
-     * Sets the journal mode for databases associated with the current database connection.
+     * Sets the journal mode for databases associated with the current database connection. WAL
+     * selects the JAVA VFS, which shares the wal-index between the connections of the JVM.
      *
      * @param mode One of {@link JournalMode}
      * @see <a
@@ -1262,4 +1342,342 @@ public class SQLiteConfig {
     public void setGetGeneratedKeys(boolean generatedKeys) {
         this.defaultConnectionConfig.setGetGeneratedKeys(generatedKeys);
     }
+
+    /**
+     * @return the number of closed statements kept by a connection for reuse, 0 when disabled
+     */
+    public int getStatementCacheSize() {
+        String size = pragmaTable.getProperty(Pragma.JDBC_STATEMENT_CACHE_SIZE.pragmaName);
+        if (size == null) {
+            return isNormalizeLiterals() ? DEFAULT_NORMALIZED_CACHE_SIZE : 0;
+        }
+        return Integer.parseInt(size);
+    }
+
+    /**
+     * Keeps up to this many closed statements of a connection, reset instead of finalized, and
+     * reuses them for the next statements with the same SQL text, the least recently used one is
+     * finalized first. The statements are prepared with SQLITE_PREPARE_PERSISTENT and the cache is
+     * emptied when the connection changes the schema. Its hits and misses are counted by {@link
+     * io.roastedroot.sqlite4j.core.StatementCache}, see {@link
+     * SQLiteConnection#getStatementCache()}.
+     *
+     * @param size the number of statements, defaults to 0: statements are finalized when closed
+     */
+    public void setStatementCacheSize(int size) {
+        setPragma(Pragma.JDBC_STATEMENT_CACHE_SIZE, Integer.toString(size));
+    }
+
+    /**
+     * @return true if the literals of the SQL run by Statement objects are replaced by parameters
+     */
+    public boolean isNormalizeLiterals() {
+        return Boolean.parseBoolean(
+                pragmaTable.getProperty(Pragma.JDBC_NORMALIZE_LITERALS.pragmaName, "false"));
+    }
+
+    /**
+     * Replaces the literals of the SQL run by {@link java.sql.Statement#execute(String)}, {@link
+     * java.sql.Statement#executeQuery(String)} and {@link java.sql.Statement#executeUpdate(String)}
+     * with parameters, bound to their values, so that the statements only differing by their
+     * literals reuse one prepared statement from the statement cache, see {@link
+     * #setStatementCacheSize(int)}, across the Statement objects of the connection. The cache holds
+     * 64 statements when its size isn't set. The literals naming result columns are kept, see
+     * {@link io.roastedroot.sqlite4j.core.NormalizedSql}, a statement SQLite doesn't accept with
+     * parameters is run as is.
+     *
+     * <p>The query planner doesn't see the values bound, a partial index matching a literal of the
+     * query isn't used.
+     *
+     * @param enabled whether to normalize the literals, disabled by default
+     */
+    public void setNormalizeLiterals(boolean enabled) {
+        set(Pragma.JDBC_NORMALIZE_LITERALS, enabled);
+    }
+
+    /**
+     * @return true if new connections are restored from a pre-initialized Wasm instance snapshot
+     */
+    public boolean isInstanceTemplate() {
+        return Boolean.parseBoolean(
+                pragmaTable.getProperty(Pragma.WASM_INSTANCE_TEMPLATE.pragmaName, "true"));
+    }
+
+    /**
+     * Restore new connections from a pre-initialized Wasm instance snapshot instead of initializing
+     * the SQLite library on every open. Enabled by default.
+     *
+     * @param enabled whether to use the instance template
+     */
+    public void setInstanceTemplate(boolean enabled) {
+        set(Pragma.WASM_INSTANCE_TEMPLATE, enabled);
+    }
+
+    /**
+     * @return the maximum number of Wasm instances of closed connections kept for the next opens
+     */
+    public int getInstancePoolSize() {
+        return Integer.parseInt(
+                pragmaTable.getProperty(
+                        Pragma.WASM_INSTANCE_POOL.pragmaName,
+                        Integer.toString(DEFAULT_INSTANCE_POOL_SIZE)));
+    }
+
+    /**
+     * Sets how many Wasm instances are kept when their connections are closed, shared by the
+     * connections of the JVM. An instance is reused, with its linear memory, by the next connection
+     * opened with the same storage and memory settings, after checking that SQLite freed all the
+     * memory it allocated. The pool is bounded by the size set on the closing connection, the least
+     * recently closed instances are dropped first.
+     *
+     * @param size the number of instances kept, 0 disables the pool, defaults to 4
+     */
+    public void setInstancePoolSize(int size) {
+        set(Pragma.WASM_INSTANCE_POOL, size);
+    }
+
+    /**
+     * @return the maximum number of connections sharing one Wasm instance
+     */
+    public int getSharedInstanceSize() {
+        return Integer.parseInt(
+                pragmaTable.getProperty(Pragma.WASM_SHARED_INSTANCE.pragmaName, "1"));
+    }
+
+    /**
+     * Opens several connections in the same Wasm instance, each one a SQLite handle in the shared
+     * linear memory, for many small databases open at once. A connection joins an instance opened
+     * with the same storage and memory settings that has room for it, the instance is released with
+     * its last connection. The calls of the connections sharing an instance are serialized and
+     * don't go through the typed entry points of the compiled module, this trades throughput for
+     * footprint. The instances are not recycled by the instance pool.
+     *
+     * @param size the number of connections per instance, defaults to 1: every connection has its
+     *     own instance
+     */
+    public void setSharedInstanceSize(int size) {
+        set(Pragma.WASM_SHARED_INSTANCE, size);
+    }
+
+    /**
+     * @return the milliseconds a connection is idle before it hibernates, 0 when disabled
+     */
+    public long getHibernateIdle() {
+        return Long.parseLong(pragmaTable.getProperty(Pragma.WASM_HIBERNATE_IDLE.pragmaName, "0"));
+    }
+
+    /**
+     * Releases the Wasm instance of a connection that wasn't used for this long. An in-memory
+     * database is serialized and kept on the Java heap, a file database is simply closed, the
+     * connection reopens it in a new or pooled instance on its next use, restoring the pragmas and
+     * the limits. A connection with open statements, a transaction, attached databases, temporary
+     * tables, user defined functions or collations or a progress handler doesn't hibernate.
+     *
+     * @param millis the idle time, defaults to 0: connections never hibernate
+     */
+    public void setHibernateIdle(long millis) {
+        setPragma(Pragma.WASM_HIBERNATE_IDLE, Long.toString(millis));
+    }
+
+    /**
+     * @return true if the in-memory databases of the hibernated connections are compressed
+     */
+    public boolean isHibernateCompress() {
+        return Boolean.parseBoolean(
+                pragmaTable.getProperty(Pragma.WASM_HIBERNATE_COMPRESS.pragmaName, "false"));
+    }
+
+    /**
+     * Deflates the serialized in-memory database of a hibernated connection, trading hibernate and
+     * revive time for heap.
+     *
+     * @param enabled whether to compress, disabled by default
+     */
+    public void setHibernateCompress(boolean enabled) {
+        set(Pragma.WASM_HIBERNATE_COMPRESS, enabled);
+    }
+
+    /**
+     * @return the bytes of linear memory of all the Wasm instances of the JVM, 0 when unbounded
+     */
+    public long getMemoryBudget() {
+        return Long.parseLong(pragmaTable.getProperty(Pragma.WASM_MEMORY_BUDGET.pragmaName, "0"));
+    }
+
+    /**
+     * Bounds the linear memory of all the Wasm instances of the JVM when opening this connection.
+     * An open that needs a new instance beyond the budget drops the idle instances of the pool and
+     * asks the open connections to release the memory SQLite doesn't need and to cap its heap, then
+     * waits for instances to be closed, see {@link #setMemoryBudgetWait(long)}. The memory of the
+     * instances is tracked by {@link io.roastedroot.sqlite4j.core.MemoryGovernor}.
+     *
+     * @param bytes the budget, defaults to 0: unbounded
+     */
+    public void setMemoryBudget(long bytes) {
+        setPragma(Pragma.WASM_MEMORY_BUDGET, Long.toString(bytes));
+    }
+
+    /**
+     * @return the milliseconds an open waits for memory beyond the budget
+     */
+    public long getMemoryBudgetWait() {
+        return Long.parseLong(
+                pragmaTable.getProperty(Pragma.WASM_MEMORY_BUDGET_WAIT.pragmaName, "0"));
+    }
+
+    /**
+     * Sets how long an open waits for the instances of other connections to be closed, or
+     * hibernated, when the memory budget is exhausted. The open fails with SQLITE_NOMEM after.
+     *
+     * @param millis defaults to 0: the open fails right away
+     */
+    public void setMemoryBudgetWait(long millis) {
+        setPragma(Pragma.WASM_MEMORY_BUDGET_WAIT, Long.toString(millis));
+    }
+
+    /**
+     * @return the number of 64KiB pages allocated at once by the Wasm linear memory
+     */
+    public int getMemoryChunkPages() {
+        return Integer.parseInt(
+                pragmaTable.getProperty(
+                        Pragma.WASM_MEMORY_CHUNK_PAGES.pragmaName,
+                        Integer.toString(DEFAULT_MEMORY_CHUNK_PAGES)));
+    }
+
+    /**
+     * Sets the allocation granularity of the Wasm linear memory. Memory is reserved lazily in
+     * chunks of this many 64KiB pages, growing never copies the existing data.
+     *
+     * @param pages a power of two, defaults to 16 (1MiB)
+     */
+    public void setMemoryChunkPages(int pages) {
+        set(Pragma.WASM_MEMORY_CHUNK_PAGES, pages);
+    }
+
+    public enum MemoryMode implements PragmaValue {
+        HEAP,
+        OFF_HEAP;
+
+        public String getValue() {
+            return name();
+        }
+
+        public static MemoryMode getMemoryMode(String memoryMode) {
+            return MemoryMode.valueOf(memoryMode.toUpperCase());
+        }
+    }
+
+    /**
+     * @return where the Wasm linear memory is allocated
+     */
+    public MemoryMode getMemoryMode() {
+        return MemoryMode.getMemoryMode(
+                pragmaTable.getProperty(Pragma.WASM_MEMORY.pragmaName, MemoryMode.HEAP.name()));
+    }
+
+    /**
+     * Sets where the Wasm linear memory, holding the whole SQLite heap and page cache, is
+     * allocated. OFF_HEAP uses direct ByteBuffers that the garbage collector doesn't need to scan.
+     *
+     * @param memoryMode One of HEAP or OFF_HEAP
+     */
+    public void setMemoryMode(MemoryMode memoryMode) {
+        setPragma(Pragma.WASM_MEMORY, memoryMode.getValue());
+    }
+
+    public enum StorageMode implements PragmaValue {
+        JIMFS,
+        HOST,
+        LAZY,
+        MMAP;
+
+        public String getValue() {
+            return name();
+        }
+
+        public static StorageMode getStorageMode(String storageMode) {
+            return StorageMode.valueOf(storageMode.toUpperCase());
+        }
+    }
+
+    /**
+     * @return where the database file is accessed
+     */
+    public StorageMode getStorageMode() {
+        return StorageMode.getStorageMode(
+                pragmaTable.getProperty(Pragma.WASM_STORAGE.pragmaName, StorageMode.JIMFS.name()));
+    }
+
+    /**
+     * Sets where the database file is accessed. JIMFS, the default, copies the file in an in-memory
+     * file system on open and all the changes stay in memory. HOST reads and writes the file, and
+     * its journal, directly on the host file system: nothing is copied on open, the changes are
+     * durable and fsync is honored according to PRAGMA synchronous. LAZY behaves like JIMFS but
+     * reads the file on demand, in chunks, instead of copying it on open. MMAP maps an existing
+     * file in memory and opens it read-only, like SQLiteOpenMode.READONLY: nothing is copied on
+     * open and the pages are read from the OS page cache, shared by all the connections. It is
+     * meant for large read-only databases, "file:" URIs, e.g. with immutable=1, are supported.
+     *
+     * @param storageMode One of JIMFS, HOST, LAZY or MMAP
+     */
+    public void setStorageMode(StorageMode storageMode) {
+        setPragma(Pragma.WASM_STORAGE, storageMode.getValue());
+    }
+
+    /**
+     * @return the bytes of the database file kept in memory by the LAZY storage mode
+     */
+    public long getStorageCacheSize() {
+        return Long.parseLong(
+                pragmaTable.getProperty(
+                        Pragma.WASM_STORAGE_CACHE_SIZE.pragmaName,
+                        Long.toString(DEFAULT_STORAGE_CACHE_SIZE)));
+    }
+
+    /**
+     * Sets how much of the database file the LAZY storage mode keeps in memory. Chunks read from
+     * the file beyond this bound are evicted, least recently used first, and read again when
+     * needed. Modified chunks are never evicted.
+     *
+     * @param bytes defaults to 64MiB
+     */
+    public void setStorageCacheSize(long bytes) {
+        setPragma(Pragma.WASM_STORAGE_CACHE_SIZE, Long.toString(bytes));
+    }
+
+    public enum VfsMode implements PragmaValue {
+        WASI,
+        JAVA;
+
+        public String getValue() {
+            return name();
+        }
+
+        public static VfsMode getVfsMode(String vfsMode) {
+            return VfsMode.valueOf(vfsMode.toUpperCase());
+        }
+    }
+
+    /**
+     * @return the SQLite VFS used to access the files
+     */
+    public VfsMode getVfsMode() {
+        return VfsMode.getVfsMode(
+                pragmaTable.getProperty(Pragma.WASM_VFS.pragmaName, VfsMode.WASI.name()));
+    }
+
+    /**
+     * Sets the SQLite VFS used to access the files. WASI, the default, goes through the unix VFS of
+     * SQLite and the WASI file system emulation, where a connection locks the whole database file
+     * even to read. JAVA registers a VFS whose file operations are host functions reading and
+     * writing the files directly, in any storage mode: the connections of the JVM share the SHARED,
+     * RESERVED, PENDING and EXCLUSIVE locks of SQLite. The WAL journal mode always uses it. It
+     * requires a Wasm module built with the sqlite4j VFS, otherwise WASI is used.
+     *
+     * @param vfsMode One of WASI or JAVA
+     */
+    public void setVfsMode(VfsMode vfsMode) {
+        setPragma(Pragma.WASM_VFS, vfsMode.getValue());
+    }
 }
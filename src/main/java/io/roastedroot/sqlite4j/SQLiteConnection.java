@@ -5,6 +5,7 @@ import com.google.common.jimfs.Jimfs;
 import io.roastedroot.sqlite4j.SQLiteConfig.TransactionMode;
 import io.roastedroot.sqlite4j.core.CoreDatabaseMetaData;
 import io.roastedroot.sqlite4j.core.DB;
+import io.roastedroot.sqlite4j.core.StatementCache;
 import io.roastedroot.sqlite4j.core.WasmDB;
 import io.roastedroot.sqlite4j.jdbc4.JDBC4DatabaseMetaData;
 import java.io.File;
@@ -290,12 +291,25 @@ public abstract class SQLiteConnection implements Connection {
         DB db = null;
         try {
             db = new WasmDB(fs, url, fileName, config);
+        } catch (SQLException e) {
+            // as the memory budget exhausted
+            throw e;
         } catch (Exception e) {
             SQLException err = new SQLException("Error opening connection");
             err.initCause(e);
             throw err;
         }
-        db.open(fileName, config.getOpenModeFlags());
+        try {
+            db.open(fileName, config.getOpenModeFlags());
+        } catch (SQLException e) {
+            // the instance of the connection is given back
+            try {
+                db.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
         return db;
     }
 
@@ -623,4 +637,32 @@ public abstract class SQLiteConnection implements Connection {
     public void deserialize(String schema, byte[] buff) throws SQLException {
         db.deserialize(schema, buff);
     }
+
+    /**
+     * Releases the Wasm instance of the connection now, as done after the idle time set with {@link
+     * SQLiteConfig#setHibernateIdle(long)}. The connection is revived on its next use.
+     *
+     * @return whether the connection hibernated, false when it has open statements, a transaction
+     *     or state that can't be restored
+     * @see SQLiteConfig#setHibernateIdle(long)
+     */
+    public boolean hibernate() throws SQLException {
+        checkOpen();
+        return db.hibernate();
+    }
+
+    /**
+     * @return whether the connection is hibernated
+     */
+    public boolean isHibernated() {
+        return db.isHibernated();
+    }
+
+    /**
+     * @return the prepared statements kept by the connection for reuse, and their hits and misses
+     * @see SQLiteConfig#setStatementCacheSize(int)
+     */
+    public StatementCache getStatementCache() {
+        return db.getStatementCache();
+    }
 }
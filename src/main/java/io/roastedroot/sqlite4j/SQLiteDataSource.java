@@ -38,13 +38,15 @@ import javax.sql.DataSource;
  *
  * @author leo
  */
-public class SQLiteDataSource implements DataSource {
+public class SQLiteDataSource implements DataSource, AutoCloseable {
     private SQLiteConfig config;
     private transient PrintWriter logger;
     private int loginTimeout = 1;
 
     private String url = JDBC.PREFIX; // use memory database in default
     private String databaseName = ""; // the name of the current database
+    private int readReplicas = 0;
+    private SQLiteReplicaSet replicaSet;
 
     /** Default constructor. */
     public SQLiteDataSource() {
@@ -462,12 +464,65 @@ public class SQLiteDataSource implements DataSource {
         config.setUserVersion(version);
     }
 
+    /**
+     * Restore new connections from a pre-initialized Wasm instance snapshot.
+     *
+     * @param enabled true to use the instance template
+     */
+    public void setInstanceTemplate(boolean enabled) {
+        config.setInstanceTemplate(enabled);
+    }
+
+    /**
+     * Serves the connections from a writer and the given number of read-only connections, each one
+     * a Wasm instance of its own, to run the queries of different threads in parallel. Connections
+     * set read-only and SELECT statements in auto-commit mode go to the readers.
+     *
+     * @param readers the number of read-only connections, 0 (the default) disables the replicas
+     * @see SQLiteReplicaSet
+     */
+    public void setReadReplicas(int readers) {
+        this.readReplicas = readers;
+    }
+
+    /**
+     * @return the number of read-only connections, 0 when the replicas are disabled
+     */
+    public int getReadReplicas() {
+        return readReplicas;
+    }
+
+    private synchronized SQLiteReplicaSet replicaSet() throws SQLException {
+        if (replicaSet == null) {
+            replicaSet = new SQLiteReplicaSet(url, config, readReplicas);
+        }
+        return replicaSet;
+    }
+
+    /**
+     * Closes the connections of the read replicas, if any.
+     *
+     * @throws SQLException if a connection can't be closed
+     */
+    public synchronized void close() throws SQLException {
+        if (replicaSet != null) {
+            try {
+                replicaSet.close();
+            } finally {
+                replicaSet = null;
+            }
+        }
+    }
+
     // codes for the DataSource interface
 
     /**
      * @see javax.sql.DataSource#getConnection()
      */
     public Connection getConnection() throws SQLException {
+        if (readReplicas > 0) {
+            return replicaSet().getConnection();
+        }
         return getConnection(null, null);
     }
 
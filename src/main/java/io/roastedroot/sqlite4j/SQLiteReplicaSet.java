@@ -0,0 +1,332 @@
+package io.roastedroot.sqlite4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A writer and N read-only connections to the same database file, each one a Wasm instance of its
+ * own: the queries of different threads run in parallel on the readers, while the writes go through
+ * the single writer.
+ *
+ * <p>The connections handed out are routing handles. A handle set read-only before its first use
+ * runs everything on a reader; otherwise the SELECT statements prepared in auto-commit mode go to a
+ * reader and everything else, including transactions, to the writer. A physical connection is bound
+ * to a handle from its first use until the handle is closed: the writer is held by one handle at a
+ * time, keep the handles that write short-lived.
+ *
+ * <p>Every read sees the database as committed when its transaction started. With the WAL journal
+ * mode, the default of the replica sets, the readers are never blocked by the writer.
+ */
+public class SQLiteReplicaSet implements AutoCloseable {
+    private final String url;
+    private final SQLiteConnection writer;
+    private final Semaphore writerPermit = new Semaphore(1, true);
+    private final BlockingQueue<SQLiteConnection> readers;
+    private final List<SQLiteConnection> all = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Opens the writer and the readers.
+     *
+     * @param url the location of the database file, an in-memory database can't be replicated
+     * @param config the configuration of the connections
+     * @param readers the number of read-only connections
+     * @throws SQLException if a connection can't be opened
+     */
+    public SQLiteReplicaSet(String url, SQLiteConfig config, int readers) throws SQLException {
+        if (readers < 1) {
+            throw new SQLException("A replica set needs at least one reader");
+        }
+        String fileName = JDBC.extractAddress(url);
+        if (fileName.isEmpty()
+                || fileName.contains(":memory:")
+                || fileName.contains("mode=memory")) {
+            throw new SQLException("Read replicas need a database file: " + url);
+        }
+        this.url = url;
+        this.readers = new ArrayBlockingQueue<>(readers);
+
+        Properties props = config.toProperties();
+        if (!props.containsKey(SQLiteConfig.Pragma.JOURNAL_MODE.pragmaName)) {
+            props.setProperty(
+                    SQLiteConfig.Pragma.JOURNAL_MODE.pragmaName,
+                    SQLiteConfig.JournalMode.WAL.name());
+        }
+        // the writer and the readers share the SQLite locks and the wal-index of the file
+        if (!props.containsKey(SQLiteConfig.Pragma.WASM_VFS.pragmaName)) {
+            props.setProperty(
+                    SQLiteConfig.Pragma.WASM_VFS.pragmaName, SQLiteConfig.VfsMode.JAVA.name());
+        }
+        try {
+            writer = open(props);
+            SQLiteConfig readerConfig = new SQLiteConfig(props);
+            readerConfig.setReadOnly(true);
+            // the journal mode is persisted by the writer
+            Properties readerProps = readerConfig.toProperties();
+            readerProps.remove(SQLiteConfig.Pragma.JOURNAL_MODE.pragmaName);
+            for (int i = 0; i < readers; i++) {
+                this.readers.add(open(readerProps));
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private SQLiteConnection open(Properties props) throws SQLException {
+        SQLiteConnection conn = JDBC.createConnection(url, props);
+        all.add(conn);
+        return conn;
+    }
+
+    /**
+     * @return the number of read-only connections
+     */
+    public int getReaderCount() {
+        return all.size() - 1;
+    }
+
+    /**
+     * @return a routing handle, the physical connections are bound on first use
+     * @throws SQLException if the replica set is closed
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The replica set is closed");
+        }
+        return (Connection)
+                Proxy.newProxyInstance(
+                        getClass().getClassLoader(),
+                        new Class<?>[] {Connection.class},
+                        new Handle());
+    }
+
+    /** Closes the physical connections, the handles in use fail on their next call. */
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+        SQLException error = null;
+        for (SQLiteConnection conn : all) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // SELECT statements, anything else could write
+    static boolean isQuery(String sql) {
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else {
+                break;
+            }
+        }
+        return sql.regionMatches(true, i, "select", 0, 6)
+                && (i + 6 == n || !Character.isLetterOrDigit(sql.charAt(i + 6)));
+    }
+
+    private final class Handle implements InvocationHandler {
+        private SQLiteConnection reader;
+        private SQLiteConnection writer;
+        private boolean readOnly;
+        private boolean autoCommit = true;
+        private boolean isClosed;
+        private final List<Statement> statements = new ArrayList<>();
+
+        private SQLiteConnection reader() throws SQLException {
+            if (reader == null) {
+                try {
+                    reader = readers.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a reader", e);
+                }
+                if (readOnly) {
+                    reader.setAutoCommit(autoCommit);
+                }
+            }
+            return reader;
+        }
+
+        private SQLiteConnection writer() throws SQLException {
+            if (writer == null) {
+                try {
+                    writerPermit.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for the writer", e);
+                }
+                writer = SQLiteReplicaSet.this.writer;
+                writer.setAutoCommit(autoCommit);
+            }
+            return writer;
+        }
+
+        // where the session state (transactions, metadata, ...) lives
+        private SQLiteConnection primary() throws SQLException {
+            return readOnly ? reader() : writer();
+        }
+
+        private SQLiteConnection bound() {
+            return readOnly ? reader : writer;
+        }
+
+        private void release() throws SQLException {
+            SQLException error = null;
+            for (Statement stat : statements) {
+                try {
+                    stat.close();
+                } catch (SQLException e) {
+                    error = e;
+                }
+            }
+            statements.clear();
+            if (reader != null) {
+                try {
+                    reset(reader);
+                } catch (SQLException e) {
+                    error = e;
+                } finally {
+                    readers.add(reader);
+                    reader = null;
+                }
+            }
+            if (writer != null) {
+                try {
+                    reset(writer);
+                } catch (SQLException e) {
+                    error = e;
+                } finally {
+                    writer = null;
+                    writerPermit.release();
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        // the statements left open are closed with the handle
+        private void track(Statement stat) throws SQLException {
+            if (statements.size() >= 64) {
+                List<Statement> open = new ArrayList<>();
+                for (Statement s : statements) {
+                    if (!s.isClosed()) {
+                        open.add(s);
+                    }
+                }
+                statements.clear();
+                statements.addAll(open);
+            }
+            statements.add(stat);
+        }
+
+        private void reset(SQLiteConnection conn) throws SQLException {
+            if (!conn.isClosed() && !conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!isClosed) {
+                        isClosed = true;
+                        release();
+                    }
+                    return null;
+                case "isClosed":
+                    return isClosed || closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SQLiteReplicaSet connection to " + url;
+                default:
+                    break;
+            }
+            if (isClosed || closed) {
+                throw new SQLException("Connection is closed");
+            }
+            switch (name) {
+                case "setReadOnly":
+                    if (reader != null || writer != null) {
+                        if ((Boolean) args[0] != readOnly) {
+                            throw new SQLException(
+                                    "Cannot change the read-only flag of a connection in use");
+                        }
+                    }
+                    readOnly = (Boolean) args[0];
+                    return null;
+                case "isReadOnly":
+                    return readOnly;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    if (bound() != null) {
+                        bound().setAutoCommit(autoCommit);
+                    }
+                    return null;
+                case "commit":
+                case "rollback":
+                    // nothing to end when no statement ran
+                    if (bound() == null && (args == null || args.length == 0)) {
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            SQLiteConnection target;
+            if (name.equals("createStatement")
+                    || name.equals("prepareStatement")
+                    || name.equals("prepareCall")) {
+                boolean query =
+                        !name.equals("createStatement") && autoCommit && isQuery((String) args[0]);
+                target = readOnly || query ? reader() : writer();
+            } else {
+                target = primary();
+            }
+            try {
+                Object result = method.invoke(target, args);
+                if (result instanceof Statement) {
+                    track((Statement) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
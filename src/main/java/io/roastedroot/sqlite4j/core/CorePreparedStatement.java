@@ -31,6 +31,8 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
     protected int columnCount;
     protected int paramCount;
     protected int batchQueryCount;
+    // the values of the parameters, followed by the ones of the batched rows
+    protected Parameters parameters;
 
     /**
      * Constructs a prepared statement on a provided connection.
@@ -79,7 +81,7 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
                     try {
                         return conn.getDatabase()
                                 .executeBatch(
-                                        pointer, batchQueryCount, batch, conn.getAutoCommit());
+                                        pointer, batchQueryCount, parameters, conn.getAutoCommit());
                     } finally {
                         clearBatch();
                     }
@@ -93,23 +95,60 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
     public void clearBatch() throws SQLException {
         super.clearBatch();
         batchQueryCount = 0;
+        if (parameters != null) {
+            parameters.clear(0, parameters.capacity());
+        }
+    }
+
+    @Override
+    protected void checkIndex(int index) throws SQLException {
+        if (parameters == null) {
+            throw new SQLException("No parameter has been set yet");
+        }
+        if (index < 1 || index > parameters.capacity()) {
+            throw new SQLException("Parameter index is invalid");
+        }
     }
 
     // PARAMETER FUNCTIONS //////////////////////////////////////////
 
     /**
-     * Assigns the object value to the element at the specific position of array batch.
+     * Assigns the object value to the parameter at the specific position of the current row.
      *
      * @param pos
-     * @param value
+     * @param value null, Integer, Short, Long, Float, Double, String or byte[]
      * @throws SQLException
      */
     protected void batch(int pos, Object value) throws SQLException {
+        parameters().set(batchPos + pos - 1, value);
+    }
+
+    /** Assigns an int value without boxing it, see {@link #batch(int, Object)}. */
+    protected void batchInt(int pos, int value) throws SQLException {
+        parameters().setInt(batchPos + pos - 1, value);
+    }
+
+    /** Assigns a long value without boxing it, see {@link #batch(int, Object)}. */
+    protected void batchLong(int pos, long value) throws SQLException {
+        parameters().setLong(batchPos + pos - 1, value);
+    }
+
+    /** Assigns a float value without boxing it, see {@link #batch(int, Object)}. */
+    protected void batchFloat(int pos, float value) throws SQLException {
+        parameters().setFloat(batchPos + pos - 1, value);
+    }
+
+    /** Assigns a double value without boxing it, see {@link #batch(int, Object)}. */
+    protected void batchDouble(int pos, double value) throws SQLException {
+        parameters().setDouble(batchPos + pos - 1, value);
+    }
+
+    private Parameters parameters() throws SQLException {
         checkOpen();
-        if (batch == null) {
-            batch = new Object[paramCount];
+        if (parameters == null) {
+            parameters = new Parameters(paramCount);
         }
-        batch[batchPos + pos - 1] = value;
+        return parameters;
     }
 
     /** Store the date in the user's preferred format (text, int, or real) */
@@ -127,11 +166,11 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
 
             case REAL:
                 // long to Julian date
-                batch(pos, new Double((value / 86400000.0) + 2440587.5));
+                batchDouble(pos, (value / 86400000.0) + 2440587.5);
                 break;
 
             default: // INTEGER:
-                batch(pos, new Long(value / config.getDateMultiplier()));
+                batchLong(pos, value / config.getDateMultiplier());
         }
     }
 }
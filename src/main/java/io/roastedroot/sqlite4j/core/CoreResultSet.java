@@ -42,6 +42,9 @@ public abstract class CoreResultSet implements Codes {
 
     protected boolean[][] meta = null;
 
+    /** Fetch size as set by a Statement, the one of every new result */
+    protected int defaultFetchSize;
+
     /** 0 means no limit, must check against maxRows */
     protected int limitRows;
 
@@ -53,6 +56,12 @@ public abstract class CoreResultSet implements Codes {
     /** last column accessed, for wasNull(). -1 if none */
     protected int lastCol;
 
+    /** rows fetched ahead when the fetch size is greater than 1, null on the other rows */
+    protected FetchBuffer fetched = null;
+
+    /** reused by the fetches until the result set is closed */
+    private FetchBuffer fetchBuffer = null;
+
     public boolean closeStmt;
     protected Map<String, Integer> columnNameToIndex = null;
 
@@ -84,6 +93,22 @@ public abstract class CoreResultSet implements Codes {
         return open;
     }
 
+    /**
+     * @return the fetch size of every new result, as set by the statement.
+     */
+    public int getDefaultFetchSize() {
+        return defaultFetchSize;
+    }
+
+    /**
+     * Sets the fetch size of every new result, the current one keeps its own until it is closed.
+     *
+     * @param defaultFetchSize the number of rows fetched ahead, 0 or 1 for one row at the time.
+     */
+    public void setDefaultFetchSize(int defaultFetchSize) {
+        this.defaultFetchSize = defaultFetchSize;
+    }
+
     /**
      * @throws SQLException if ResultSet is not open.
      */
@@ -123,6 +148,52 @@ public abstract class CoreResultSet implements Codes {
         return --col;
     }
 
+    /**
+     * Moves to the next row when the fetch size is set, stepping the statement up to limitRows
+     * times in a single call and serving the following rows from the fetched buffer.
+     *
+     * @return true if positioned on a new row
+     * @throws SQLException
+     */
+    protected boolean nextFetched() throws SQLException {
+        while (true) {
+            if (fetched != null) {
+                if (fetched.next()) {
+                    row++;
+                    return true;
+                }
+                FetchBuffer drained = fetched;
+                fetched = null;
+                if (drained.isPending()) {
+                    // the statement is positioned on a row too large for the buffer
+                    row++;
+                    return true;
+                }
+                switch (drained.getResultCode()) {
+                    case SQLITE_ROW:
+                        break;
+                    case SQLITE_DONE:
+                        pastLastRow = true;
+                        return false;
+                    default:
+                        drained.throwError();
+                        return false;
+                }
+            }
+
+            int fetchRows = Math.max(limitRows, 1);
+            if (maxRows != 0) {
+                fetchRows = (int) Math.min(fetchRows, maxRows - row);
+            }
+            final int n = fetchRows;
+            if (fetchBuffer == null) {
+                fetchBuffer = new FetchBuffer();
+            }
+            final FetchBuffer buffer = fetchBuffer;
+            fetched = stmt.pointer.safeRun((db, ptr) -> db.fetch(ptr, n, buffer));
+        }
+    }
+
     /**
      * @throws SQLException
      */
@@ -137,7 +208,9 @@ public abstract class CoreResultSet implements Codes {
         cols = null;
         colsMeta = null;
         meta = null;
-        limitRows = 0;
+        fetched = null;
+        fetchBuffer = null;
+        limitRows = defaultFetchSize;
         row = 0;
         pastLastRow = false;
         lastCol = -1;
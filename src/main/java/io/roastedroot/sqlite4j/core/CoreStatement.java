@@ -80,6 +80,18 @@ public abstract class CoreStatement implements Codes {
      * @throws SQLException If the given SQL statement is null or no database is open.
      */
     protected boolean exec() throws SQLException {
+        return exec((Parameters) null);
+    }
+
+    /**
+     * Calls sqlite3_step() with the given parameter values and sets up results. Expects a clean
+     * stmt.
+     *
+     * @param vals the parameter values, or null.
+     * @return True if the ResultSet has at least one row; false otherwise.
+     * @throws SQLException If the given SQL statement is null or no database is open.
+     */
+    protected boolean exec(Parameters vals) throws SQLException {
         if (sql == null) throw new SQLException("SQLiteJDBC internal error: sql==null");
         if (rs.isOpen()) throw new SQLException("SQLite JDBC internal error: rs.isOpen() on exec.");
 
@@ -90,7 +102,7 @@ public abstract class CoreStatement implements Codes {
         boolean success = false;
         boolean rc = false;
         try {
-            rc = conn.getDatabase().execute(this, null);
+            rc = conn.getDatabase().execute(this, vals);
             success = true;
         } finally {
             notifyFirstStatementExecuted();
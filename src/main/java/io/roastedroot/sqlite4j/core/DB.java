@@ -27,6 +27,7 @@ import io.roastedroot.sqlite4j.SQLiteUpdateListener;
 import java.sql.BatchUpdateException;
 import java.sql.SQLException;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -44,6 +45,41 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * The subclass, NativeDB, provides the actual access to SQLite functions.
  */
 public abstract class DB implements Codes {
+    /** The pragmas scoped to a connection, they are not stored in the database file. */
+    public static final List<String> SESSION_PRAGMAS =
+            List.of(
+                    "foreign_keys",
+                    "recursive_triggers",
+                    "query_only",
+                    "cache_size",
+                    "synchronous",
+                    "temp_store",
+                    "automatic_index",
+                    "cell_size_check",
+                    "defer_foreign_keys",
+                    "reverse_unordered_selects",
+                    "trusted_schema",
+                    "read_uncommitted",
+                    "legacy_alter_table",
+                    "ignore_check_constraints",
+                    "cache_spill",
+                    "secure_delete",
+                    "journal_size_limit",
+                    "locking_mode");
+
+    /** One row: the values of the {@link #SESSION_PRAGMAS}, then the number of databases. */
+    public static final String SESSION_QUERY;
+
+    static {
+        // scalar subqueries, a join of the pragma tables would go through the query planner
+        StringBuilder sql = new StringBuilder("select ");
+        for (String pragma : SESSION_PRAGMAS) {
+            sql.append("(select * from pragma_").append(pragma).append("()), ");
+        }
+        sql.append("(select count(*) from pragma_database_list())");
+        SESSION_QUERY = sql.toString();
+    }
+
     private final String url;
     private final String fileName;
     private final SQLiteConfig config;
@@ -57,6 +93,12 @@ public abstract class DB implements Codes {
     /** Tracer for statements to avoid unfinalized statements on db close. */
     private final Set<SafeStmtPtr> stmts = ConcurrentHashMap.newKeySet();
 
+    /** The closed statements kept to be prepared again. */
+    private final StatementCache statementCache;
+
+    /** Whether the literals of the SQL run by Statement objects are replaced by parameters. */
+    private final boolean normalizeLiterals;
+
     protected final Set<SQLiteUpdateListener> updateListeners = new HashSet<>();
     protected final Set<SQLiteCommitListener> commitListeners = new HashSet<>();
 
@@ -64,6 +106,8 @@ public abstract class DB implements Codes {
         this.url = url;
         this.fileName = fileName;
         this.config = config;
+        this.statementCache = new StatementCache(this, config.getStatementCacheSize());
+        this.normalizeLiterals = config.isNormalizeLiterals();
     }
 
     public String getUrl() {
@@ -78,6 +122,22 @@ public abstract class DB implements Codes {
         return config;
     }
 
+    /**
+     * @return the cache of the prepared statements of the connection
+     * @see SQLiteConfig#setStatementCacheSize(int)
+     */
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * @return whether the literals of the SQL run by Statement objects are replaced by parameters
+     * @see SQLiteConfig#setNormalizeLiterals(boolean)
+     */
+    public boolean isNormalizeLiterals() {
+        return normalizeLiterals;
+    }
+
     // WRAPPER FUNCTIONS ////////////////////////////////////////////
 
     /**
@@ -238,6 +298,8 @@ public abstract class DB implements Codes {
             element.close();
         }
 
+        statementCache.clear();
+
         // clean up commit object
         if (begin != null) begin.close();
         if (commit != null) commit.close();
@@ -261,13 +323,30 @@ public abstract class DB implements Codes {
         if (stmt.pointer != null) {
             stmt.pointer.close();
         }
-        stmt.pointer = prepare(stmt.sql);
+        stmt.pointer =
+                statementCache.isEnabled() ? statementCache.take(stmt.sql) : prepare(stmt.sql);
         final boolean added = stmts.add(stmt.pointer);
         if (!added) {
             throw new IllegalStateException("Already added pointer to statements set");
         }
     }
 
+    /**
+     * Finalizes the statements kept by the statement cache.
+     *
+     * @throws SQLException
+     */
+    final synchronized void clearStatementCache() throws SQLException {
+        statementCache.clear();
+    }
+
+    /**
+     * @return whether statements of the connection are not finalized yet
+     */
+    final boolean hasOpenStatements() {
+        return !stmts.isEmpty();
+    }
+
     /**
      * Destroys a statement.
      *
@@ -280,6 +359,15 @@ public abstract class DB implements Codes {
      */
     public synchronized int finalize(SafeStmtPtr safePtr, long ptr) throws SQLException {
         try {
+            String sql = safePtr.sql();
+            if (sql != null && !isClosed()) {
+                // kept by the statement cache, unless its last step failed
+                int rc = reset(ptr);
+                if (rc != SQLITE_OK || !statementCache.offer(sql, ptr)) {
+                    finalize(ptr);
+                }
+                return rc;
+            }
             return finalize(ptr);
         } finally {
             stmts.remove(safePtr);
@@ -327,7 +415,22 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="https://www.sqlite.org/c3ref/prepare.html">https://www.sqlite.org/c3ref/prepare.html</a>
      */
-    protected abstract SafeStmtPtr prepare(String sql) throws SQLException;
+    protected final SafeStmtPtr prepare(String sql) throws SQLException {
+        return new SafeStmtPtr(this, prepare(sql, 0));
+    }
+
+    /**
+     * Complies an SQL statement with the given flags.
+     *
+     * @param sql An SQL statement.
+     * @param prepFlags <a href="https://www.sqlite.org/c3ref/c_prepare_normalize.html">Prepare
+     *     Flags</a>
+     * @return Pointer to the statement.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/prepare.html">https://www.sqlite.org/c3ref/prepare.html</a>
+     */
+    protected abstract int prepare(String sql, int prepFlags) throws SQLException;
 
     /**
      * Destroys a prepared statement.
@@ -481,6 +584,39 @@ public abstract class DB implements Codes {
      */
     public abstract int column_int(long stmt, int col) throws SQLException;
 
+    /**
+     * Steps a statement up to maxRows times and packs the rows in a single buffer.
+     *
+     * @param stmt Pointer to the statement.
+     * @param maxRows Maximum number of rows to fetch.
+     * @param buffer The buffer the rows are decoded into, replacing the ones of its last fetch.
+     * @return The fetched rows, in buffer.
+     * @throws SQLException
+     */
+    public abstract FetchBuffer fetch(long stmt, int maxRows, FetchBuffer buffer)
+            throws SQLException;
+
+    /**
+     * @param text UTF-8 TEXT or BLOB value.
+     * @return the value converted as sqlite3_column_int64 does.
+     * @throws SQLException
+     */
+    abstract long text_to_long(byte[] text) throws SQLException;
+
+    /**
+     * @param text UTF-8 TEXT or BLOB value.
+     * @return the value converted as sqlite3_column_double does.
+     * @throws SQLException
+     */
+    abstract double text_to_double(byte[] text) throws SQLException;
+
+    /**
+     * @param value FLOAT value.
+     * @return the value converted as sqlite3_column_text does.
+     * @throws SQLException
+     */
+    abstract String double_to_text(double value) throws SQLException;
+
     /**
      * Binds NULL value to prepared statements with the pointer to the statement object and the
      * index of the SQL parameter to be set to NULL.
@@ -836,6 +972,18 @@ public abstract class DB implements Codes {
 
     public abstract void clear_progress_handler() throws SQLException;
 
+    /**
+     * Drops what was registered on the connection since it was opened: the user defined functions
+     * and collations, the progress and busy handlers, the update and commit listeners. Lets a pool
+     * hand out the connection again as if it were new.
+     *
+     * @param busyTimeout the busy timeout to restore.
+     * @return whether a statement prepared since the last reset may have changed the pragmas or the
+     *     attached databases, the caller restores them.
+     * @throws SQLException
+     */
+    public abstract boolean reset_session(int busyTimeout) throws SQLException;
+
     /**
      * Returns an array describing the attributes (not null, primary key and auto increment) of
      * columns.
@@ -871,35 +1019,42 @@ public abstract class DB implements Codes {
      *
      * @param stmt Pointer to the statement.
      * @param pos Index of the SQL parameter to be set to NULL.
-     * @param v Value to bind to the parameter.
+     * @param vals Parameter values.
+     * @param i Index in vals of the value to bind.
      * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
      * @throws SQLException
      * @see <a
      *     href="https://www.sqlite.org/c3ref/bind_blob.html">https://www.sqlite.org/c3ref/bind_blob.html</a>
      */
-    final synchronized int sqlbind(long stmt, int pos, Object v) throws SQLException {
+    final synchronized int sqlbind(long stmt, int pos, Parameters vals, int i) throws SQLException {
         pos++;
-        if (v == null) {
-            return bind_null(stmt, pos);
-        } else if (v instanceof Integer) {
-            return bind_int(stmt, pos, (Integer) v);
-        } else if (v instanceof Short) {
-            return bind_int(stmt, pos, ((Short) v).intValue());
-        } else if (v instanceof Long) {
-            return bind_long(stmt, pos, (Long) v);
-        } else if (v instanceof Float) {
-            return bind_double(stmt, pos, ((Float) v).doubleValue());
-        } else if (v instanceof Double) {
-            return bind_double(stmt, pos, (Double) v);
-        } else if (v instanceof String) {
-            return bind_text(stmt, pos, (String) v);
-        } else if (v instanceof byte[]) {
-            return bind_blob(stmt, pos, (byte[]) v);
-        } else {
-            throw new SQLException("unexpected param type: " + v.getClass());
+        switch (vals.sqliteType(i)) {
+            case SQLITE_INTEGER:
+                return bind_long(stmt, pos, vals.longValue(i));
+            case SQLITE_FLOAT:
+                return bind_double(stmt, pos, vals.doubleValue(i));
+            case SQLITE_TEXT:
+                return bind_text(stmt, pos, vals.text(i));
+            case SQLITE_BLOB:
+                return bind_blob(stmt, pos, vals.blob(i));
+            default:
+                return bind_null(stmt, pos);
         }
     }
 
+    /**
+     * Binds count values, starting from vals[offset], to the parameters of a prepared statement
+     * with a single call.
+     *
+     * @param stmt Pointer to the statement.
+     * @param vals Array of parameter values.
+     * @param offset Index in vals of the value of the first parameter.
+     * @param count Number of parameters to bind.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     */
+    abstract int bind_all(long stmt, Parameters vals, int offset, int count) throws SQLException;
+
     /**
      * Submits a batch of commands to the database for execution.
      *
@@ -912,47 +1067,22 @@ public abstract class DB implements Codes {
      * @throws SQLException if statement is not open or is being used elsewhere
      */
     final synchronized long[] executeBatch(
-            SafeStmtPtr stmt, int count, Object[] vals, boolean autoCommit) throws SQLException {
+            SafeStmtPtr stmt, int count, Parameters vals, boolean autoCommit) throws SQLException {
         return stmt.safeRun((db, ptr) -> this.executeBatch(ptr, count, vals, autoCommit));
     }
 
     private synchronized long[] executeBatch(
-            long stmt, int count, Object[] vals, boolean autoCommit) throws SQLException {
+            long stmt, int count, Parameters vals, boolean autoCommit) throws SQLException {
         if (count < 1) {
             throw new SQLException("count (" + count + ") < 1");
         }
 
         final int params = bind_parameter_count(stmt);
 
-        int rc;
         long[] changes = new long[count];
 
         try {
-            for (int i = 0; i < count; i++) {
-                reset(stmt);
-                for (int j = 0; j < params; j++) {
-                    rc = sqlbind(stmt, j, vals[(i * params) + j]);
-                    if (rc != SQLITE_OK) {
-                        throwex(rc);
-                    }
-                }
-
-                rc = step(stmt);
-                if (rc != SQLITE_DONE) {
-                    reset(stmt);
-                    if (rc == SQLITE_ROW) {
-                        throw new BatchUpdateException(
-                                "batch entry " + i + ": query returns results",
-                                null,
-                                0,
-                                changes,
-                                null);
-                    }
-                    throwex(rc);
-                }
-
-                changes[i] = changes();
-            }
+            execute_batch(stmt, vals, 0, count, params, changes);
         } finally {
             ensureAutoCommit(autoCommit);
         }
@@ -961,6 +1091,38 @@ public abstract class DB implements Codes {
         return changes;
     }
 
+    /**
+     * Executes rows of a batch: resets the statement, binds the parameters of the row and steps,
+     * stopping at the first failing row.
+     *
+     * @param stmt Pointer to the statement.
+     * @param vals Array of parameter values of all the rows.
+     * @param from Index of the first row to execute.
+     * @param rows Number of rows to execute.
+     * @param params Number of parameters of every row.
+     * @param changes Receives the number of rows changed by every executed row.
+     * @throws SQLException if a row fails, a BatchUpdateException if it returns results
+     */
+    abstract void execute_batch(
+            long stmt, Parameters vals, int from, int rows, int params, long[] changes)
+            throws SQLException;
+
+    /**
+     * Throws the error of a failing batch row.
+     *
+     * @param rc Result of the row.
+     * @param row Index of the row.
+     * @param changes Number of rows changed by the rows executed before it.
+     * @throws SQLException always
+     */
+    final void throwBatchError(int rc, int row, long[] changes) throws SQLException {
+        if (rc == SQLITE_ROW) {
+            throw new BatchUpdateException(
+                    "batch entry " + row + ": query returns results", null, 0, changes, null);
+        }
+        throwex(rc);
+    }
+
     /**
      * @see <a
      *     href="https://www.sqlite.org/c_interface.html#sqlite_exec">https://www.sqlite.org/c_interface.html#sqlite_exec</a>
@@ -969,7 +1131,7 @@ public abstract class DB implements Codes {
      * @return True if a row of ResultSet is ready; false otherwise.
      * @throws SQLException
      */
-    public final synchronized boolean execute(CoreStatement stmt, Object[] vals)
+    public final synchronized boolean execute(CoreStatement stmt, Parameters vals)
             throws SQLException {
         int statusCode = stmt.pointer.safeRunInt((db, ptr) -> execute(ptr, vals));
         switch (statusCode & 0xFF) {
@@ -989,23 +1151,21 @@ public abstract class DB implements Codes {
         }
     }
 
-    private synchronized int execute(long ptr, Object[] vals) throws SQLException {
+    private synchronized int execute(long ptr, Parameters vals) throws SQLException {
         if (vals != null) {
             final int params = bind_parameter_count(ptr);
-            if (params > vals.length) {
+            if (params > vals.capacity()) {
                 throw new SQLException(
                         "assertion failure: param count ("
                                 + params
                                 + ") > value count ("
-                                + vals.length
+                                + vals.capacity()
                                 + ")");
             }
 
-            for (int i = 0; i < params; i++) {
-                int rc = sqlbind(ptr, i, vals[i]);
-                if (rc != SQLITE_OK) {
-                    throwex(rc);
-                }
+            int rc = bind_all(ptr, vals, 0, params);
+            if (rc != SQLITE_OK) {
+                throwex(rc);
             }
         }
 
@@ -1048,7 +1208,7 @@ public abstract class DB implements Codes {
      *     completed SQL.
      * @throws SQLException
      */
-    public final synchronized long executeUpdate(CoreStatement stmt, Object[] vals)
+    public final synchronized long executeUpdate(CoreStatement stmt, Parameters vals)
             throws SQLException {
         try {
             if (execute(stmt, vals)) {
@@ -1264,4 +1424,19 @@ public abstract class DB implements Codes {
     public abstract byte[] serialize(String schema) throws SQLException;
 
     public abstract void deserialize(String schema, byte[] buff) throws SQLException;
+
+    /**
+     * Releases the resources of an idle connection, keeping what is needed to reopen it
+     * transparently on its next use.
+     *
+     * @return whether the connection hibernated, false when it has state that can't be restored, as
+     *     open statements or a transaction.
+     * @throws SQLException
+     */
+    public abstract boolean hibernate() throws SQLException;
+
+    /**
+     * @return whether the connection hibernated and wasn't used since.
+     */
+    public abstract boolean isHibernated();
 }
@@ -0,0 +1,244 @@
+package io.roastedroot.sqlite4j.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Rows of a statement packed by a single call into the Wasm module (sqlite4j_fetch in
+ * sqlite3_helpers.c), the getters are served without calling back into SQLite.
+ *
+ * <p>Layout of every packed row, for each column: one byte with the type, followed by 8 bytes for
+ * SQLITE_INTEGER and SQLITE_FLOAT, a 4 bytes length and the bytes for SQLITE_TEXT and SQLITE_BLOB,
+ * nothing for SQLITE_NULL. All the numbers are little endian.
+ *
+ * <p>The packed rows are decoded once into columns: the types, a long[] for the INTEGER values, a
+ * double[] for the REAL values, and the offset and length of the TEXT and BLOB values in the packed
+ * bytes, which are kept as their shared arena. The value of a column in a row is at index column *
+ * rows + row. A result set reuses its buffer for all its fetches until it's closed: the columns are
+ * allocated with the first value of their type and grow with the number of values fetched at once,
+ * bounded by the size of the packed rows.
+ */
+public final class FetchBuffer implements Codes {
+    private static final VarHandle INT =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle DOUBLE =
+            MethodHandles.byteArrayViewVarHandle(double[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private DB db;
+    private int rows;
+    private boolean pending;
+    private int rc;
+    private SQLException error;
+
+    private byte[] types = new byte[0];
+    private long[] longs;
+    private double[] doubles;
+    // of the TEXT and BLOB values in arena
+    private int[] offsets;
+    private int[] lengths;
+    private byte[] arena;
+
+    private int row = -1;
+
+    /**
+     * Decodes the packed rows of a fetch, replacing the ones of the previous fetch.
+     *
+     * @param db the database the values are converted with
+     * @param columns number of columns of every row
+     * @param data the packed rows
+     * @param rows number of rows in data
+     * @param pending if the statement is positioned on a row that didn't fit in the buffer
+     * @param rc the result of the last step of the statement
+     * @param error the error to report after the packed rows, if any
+     * @return this buffer, positioned before the first row
+     */
+    FetchBuffer load(
+            DB db,
+            int columns,
+            byte[] data,
+            int rows,
+            boolean pending,
+            int rc,
+            SQLException error) {
+        this.db = db;
+        this.rows = rows;
+        this.pending = pending;
+        this.rc = rc;
+        this.error = error;
+        this.arena = data;
+        this.row = -1;
+
+        int cells = rows * columns;
+        if (cells > types.length) {
+            types = new byte[cells];
+            longs = null;
+            doubles = null;
+            offsets = null;
+            lengths = null;
+        }
+        int pos = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int cell = c * rows + r;
+                byte type = data[pos++];
+                types[cell] = type;
+                switch (type) {
+                    case SQLITE_INTEGER:
+                        if (longs == null) {
+                            longs = new long[types.length];
+                        }
+                        longs[cell] = (long) LONG.get(data, pos);
+                        pos += 8;
+                        break;
+                    case SQLITE_FLOAT:
+                        if (doubles == null) {
+                            doubles = new double[types.length];
+                        }
+                        doubles[cell] = (double) DOUBLE.get(data, pos);
+                        pos += 8;
+                        break;
+                    case SQLITE_TEXT:
+                    case SQLITE_BLOB:
+                        if (offsets == null) {
+                            offsets = new int[types.length];
+                            lengths = new int[types.length];
+                        }
+                        int length = (int) INT.get(data, pos);
+                        offsets[cell] = pos + 4;
+                        lengths[cell] = length;
+                        pos += 4 + length;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Moves to the next packed row.
+     *
+     * @return false when all the packed rows have been consumed
+     */
+    public boolean next() {
+        if (row + 1 >= rows) {
+            row = rows;
+            return false;
+        }
+        row++;
+        return true;
+    }
+
+    /**
+     * @return true if the statement is positioned on the row following the packed ones, it has been
+     *     stepped but didn't fit in the buffer
+     */
+    public boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * @return the result of the last step of the statement: SQLITE_ROW if there are more rows,
+     *     SQLITE_DONE at the end of the statement, an error code otherwise
+     */
+    public int getResultCode() {
+        return rc;
+    }
+
+    /** Throws the error that stopped the fetch, if any. */
+    public void throwError() throws SQLException {
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private int cell(int col) {
+        return col * rows + row;
+    }
+
+    /**
+     * @param col the column, in [0,x-1] form
+     * @return the type of the column in the current row
+     */
+    public int getColumnType(int col) {
+        return types[cell(col)];
+    }
+
+    // the conversions are the ones of the sqlite3_column_* functions,
+    // TEXT to number and FLOAT to TEXT are delegated to SQLite to get the exact same results
+
+    public int getInt(int col) throws SQLException {
+        return (int) getLong(col);
+    }
+
+    public long getLong(int col) throws SQLException {
+        int cell = cell(col);
+        switch (types[cell]) {
+            case SQLITE_INTEGER:
+                return longs[cell];
+            case SQLITE_FLOAT:
+                return (long) doubles[cell];
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return db.text_to_long(bytes(cell));
+            default:
+                return 0L;
+        }
+    }
+
+    public double getDouble(int col) throws SQLException {
+        int cell = cell(col);
+        switch (types[cell]) {
+            case SQLITE_INTEGER:
+                return (double) longs[cell];
+            case SQLITE_FLOAT:
+                return doubles[cell];
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return db.text_to_double(bytes(cell));
+            default:
+                return 0.0;
+        }
+    }
+
+    public String getText(int col) throws SQLException {
+        int cell = cell(col);
+        switch (types[cell]) {
+            case SQLITE_INTEGER:
+                return Long.toString(longs[cell]);
+            case SQLITE_FLOAT:
+                return db.double_to_text(doubles[cell]);
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return new String(arena, offsets[cell], lengths[cell], StandardCharsets.UTF_8);
+            default:
+                return null;
+        }
+    }
+
+    public byte[] getBlob(int col) throws SQLException {
+        int cell = cell(col);
+        switch (types[cell]) {
+            case SQLITE_INTEGER:
+            case SQLITE_FLOAT:
+                return getText(col).getBytes(StandardCharsets.UTF_8);
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return bytes(cell);
+            default:
+                return null;
+        }
+    }
+
+    private byte[] bytes(int cell) {
+        int start = offsets[cell];
+        return Arrays.copyOfRange(arena, start, start + lengths[cell]);
+    }
+}
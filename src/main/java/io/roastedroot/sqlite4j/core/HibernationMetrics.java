@@ -0,0 +1,92 @@
+package io.roastedroot.sqlite4j.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the connections of the JVM that released their Wasm instance while idle, see {@link
+ * io.roastedroot.sqlite4j.SQLiteConfig#setHibernateIdle(long)}.
+ */
+public final class HibernationMetrics {
+    private static final LongAdder hibernations = new LongAdder();
+    private static final LongAdder hibernateNanos = new LongAdder();
+    private static final LongAdder revivals = new LongAdder();
+    private static final LongAdder reviveNanos = new LongAdder();
+    private static final AtomicLong hibernated = new AtomicLong();
+    private static final AtomicLong bytesSaved = new AtomicLong();
+    private static final AtomicLong snapshotBytes = new AtomicLong();
+
+    private HibernationMetrics() {}
+
+    static void hibernated(long nanos, long released, long snapshot) {
+        hibernations.increment();
+        hibernateNanos.add(nanos);
+        hibernated.incrementAndGet();
+        bytesSaved.addAndGet(released - snapshot);
+        snapshotBytes.addAndGet(snapshot);
+    }
+
+    static void revived(long nanos, long released, long snapshot) {
+        revivals.increment();
+        reviveNanos.add(nanos);
+        dropped(released, snapshot);
+    }
+
+    // a hibernated connection closed without being revived
+    static void dropped(long released, long snapshot) {
+        hibernated.decrementAndGet();
+        bytesSaved.addAndGet(snapshot - released);
+        snapshotBytes.addAndGet(-snapshot);
+    }
+
+    /**
+     * @return the number of times a connection hibernated
+     */
+    public static long getHibernateCount() {
+        return hibernations.sum();
+    }
+
+    /**
+     * @return the total time spent hibernating connections, in nanoseconds
+     */
+    public static long getHibernateNanos() {
+        return hibernateNanos.sum();
+    }
+
+    /**
+     * @return the number of times a hibernated connection was used again
+     */
+    public static long getReviveCount() {
+        return revivals.sum();
+    }
+
+    /**
+     * @return the total time spent reviving connections, in nanoseconds
+     */
+    public static long getReviveNanos() {
+        return reviveNanos.sum();
+    }
+
+    /**
+     * @return the number of connections currently hibernated
+     */
+    public static long getHibernatedCount() {
+        return hibernated.get();
+    }
+
+    /**
+     * @return the linear memory released by the connections currently hibernated, minus their
+     *     snapshots, in bytes. An instance shared with other connections is not released.
+     */
+    public static long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return the size of the in-memory databases kept by the connections currently hibernated, in
+     *     bytes, after compression
+     */
+    public static long getSnapshotBytes() {
+        return snapshotBytes.get();
+    }
+}
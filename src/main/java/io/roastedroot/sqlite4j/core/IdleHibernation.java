@@ -0,0 +1,62 @@
+package io.roastedroot.sqlite4j.core;
+
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Hibernates a connection once it was idle for long enough, the connections of the JVM are checked
+// by one daemon thread. The connection is only weakly referenced, an unreachable connection is not
+// kept open by its check.
+final class IdleHibernation implements Runnable {
+    private final WeakReference<WasmDB> db;
+    private volatile ScheduledFuture<?> future;
+
+    private IdleHibernation(WasmDB db) {
+        this.db = new WeakReference<>(db);
+    }
+
+    // started on first use
+    private static final class SchedulerHolder {
+        static final ScheduledExecutorService SCHEDULER =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "sqlite4j-hibernation");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    // checked twice within the idle time, a connection hibernates after 1 to 1.5 times of it
+    static IdleHibernation schedule(WasmDB db, long idleMillis) {
+        IdleHibernation task = new IdleHibernation(db);
+        long period = Math.max(idleMillis / 2, 1);
+        task.future =
+                SchedulerHolder.SCHEDULER.scheduleWithFixedDelay(
+                        task, period, period, TimeUnit.MILLISECONDS);
+        return task;
+    }
+
+    void cancel() {
+        ScheduledFuture<?> future = this.future;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    @Override
+    public void run() {
+        WasmDB db = this.db.get();
+        if (db == null || db.isClosed()) {
+            cancel();
+            return;
+        }
+        try {
+            db.hibernateIfIdle();
+        } catch (SQLException | RuntimeException e) {
+            // the connection stays awake, checked again later
+        }
+    }
+}
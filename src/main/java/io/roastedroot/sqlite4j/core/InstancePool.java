@@ -0,0 +1,194 @@
+package io.roastedroot.sqlite4j.core;
+
+import com.dylibso.chicory.runtime.GlobalInstance;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.wasi.WasiPreview1;
+import com.dylibso.chicory.wasm.types.MutabilityType;
+import io.roastedroot.sqlite4j.core.wasm.ForwardingWasmDBImports;
+import io.roastedroot.sqlite4j.core.wasm.JavaVfs;
+import io.roastedroot.sqlite4j.core.wasm.WasmDBExports;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// The Wasm instances of the closed connections, taken by the next connections opened with the same
+// file systems and memory instead of instantiating the module and allocating its linear memory
+// again. The most recently returned instance is taken first, the oldest one is dropped when the
+// pool is full.
+// It also tracks the instances shared by several connections, each one a sqlite3* handle in the
+// same linear memory, until their last connection is closed.
+final class InstancePool {
+    private static final ArrayDeque<Slot> IDLE = new ArrayDeque<>();
+    private static final List<Slot> SHARED = new ArrayList<>();
+
+    private InstancePool() {}
+
+    // An instance with everything bound to it, only used by one connection at the time
+    static final class Slot {
+        final List<Object> key;
+        final Instance instance;
+        final WasiPreview1 wasiPreview1;
+        final JavaVfs vfs;
+        final WasmDBExports lib;
+        final ForwardingWasmDBImports imports;
+        // SQLite counts the memory it allocates, the instance can be checked for leaks
+        final boolean memoryStatus;
+        // the memory pages when the instance was built, a grown instance is not kept
+        final int pages;
+        // the memory allocated by SQLite before the first connection, by its initialization
+        final long baseline;
+        // the connections using a shared instance
+        int handles;
+        // held by the operations of the connections of a shared instance, null otherwise
+        final ReentrantLock lock;
+        // the memory allocated by SQLite, sampled by the connections
+        volatile long memoryUsed;
+        // the soft heap limit was set, the instances were under memory pressure
+        volatile boolean capped;
+        // the mutable globals, as the stack pointer, when the instance was built
+        private final long[] globals;
+
+        Slot(
+                List<Object> key,
+                Instance instance,
+                WasiPreview1 wasiPreview1,
+                JavaVfs vfs,
+                WasmDBExports lib,
+                ForwardingWasmDBImports imports,
+                boolean memoryStatus,
+                boolean shared) {
+            this.key = key;
+            this.instance = instance;
+            this.wasiPreview1 = wasiPreview1;
+            this.vfs = vfs;
+            this.lib = lib;
+            this.imports = imports;
+            this.memoryStatus = memoryStatus;
+            this.lock = shared ? new ReentrantLock() : null;
+            this.pages = instance.memory().pages();
+            // the Java VFS is registered from static structs, it allocates nothing
+            this.baseline = memoryStatus ? lib.memoryUsed() : -1;
+            int imported = instance.imports().globalCount();
+            this.globals = new long[instance.module().globalSection().globalCount()];
+            for (int i = 0; i < globals.length; i++) {
+                globals[i] = instance.global(imported + i).getValue();
+            }
+        }
+
+        void close() {
+            wasiPreview1.close();
+            MemoryGovernor.unregister(this);
+        }
+
+        // a host function throwing an exception unwinds the Java stack, not the shadow stack in
+        // the linear memory, no Wasm code is running when the connection is closed
+        void rewind() {
+            int imported = instance.imports().globalCount();
+            for (int i = 0; i < globals.length; i++) {
+                GlobalInstance global = instance.global(imported + i);
+                if (global.getMutabilityType() == MutabilityType.Var) {
+                    global.setValue(globals[i]);
+                }
+            }
+        }
+
+        // SQLite freed everything it allocated during the connection and the memory didn't grow
+        boolean reusable() {
+            if (!memoryStatus || instance.memory().pages() > pages) {
+                return false;
+            }
+            long used = lib.memoryUsed();
+            memoryUsed = used;
+            return used <= baseline;
+        }
+    }
+
+    static Slot take(List<Object> key) {
+        synchronized (IDLE) {
+            Iterator<Slot> it = IDLE.iterator();
+            while (it.hasNext()) {
+                Slot slot = it.next();
+                if (slot.key.equals(key)) {
+                    it.remove();
+                    return slot;
+                }
+            }
+            return null;
+        }
+    }
+
+    static void offer(Slot slot, int maxSize) {
+        List<Slot> evicted = new ArrayList<>();
+        synchronized (IDLE) {
+            while (IDLE.size() >= maxSize) {
+                evicted.add(IDLE.pollLast());
+            }
+            IDLE.offerFirst(slot);
+        }
+        for (Slot old : evicted) {
+            old.close();
+        }
+    }
+
+    // an instance shared by less than maxHandles connections, or a new one
+    static Slot join(List<Object> key, int maxHandles, Supplier<Slot> factory) {
+        synchronized (SHARED) {
+            for (Slot slot : SHARED) {
+                if (slot.key.equals(key) && slot.handles < maxHandles) {
+                    slot.handles++;
+                    return slot;
+                }
+            }
+            Slot slot = factory.get();
+            slot.handles = 1;
+            SHARED.add(slot);
+            return slot;
+        }
+    }
+
+    // whether a connection can join an existing instance
+    static boolean hasRoom(List<Object> key, int maxHandles) {
+        synchronized (SHARED) {
+            for (Slot slot : SHARED) {
+                if (slot.key.equals(key) && slot.handles < maxHandles) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    static void leave(Slot slot) {
+        synchronized (SHARED) {
+            if (--slot.handles > 0) {
+                return;
+            }
+            SHARED.remove(slot);
+        }
+        slot.close();
+    }
+
+    static int sharedCount() {
+        synchronized (SHARED) {
+            return SHARED.size();
+        }
+    }
+
+    static int size() {
+        synchronized (IDLE) {
+            return IDLE.size();
+        }
+    }
+
+    static void clear() {
+        synchronized (IDLE) {
+            for (Slot slot : IDLE) {
+                slot.close();
+            }
+            IDLE.clear();
+        }
+    }
+}
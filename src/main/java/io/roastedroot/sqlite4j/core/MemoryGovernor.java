@@ -0,0 +1,204 @@
+package io.roastedroot.sqlite4j.core;
+
+import com.dylibso.chicory.runtime.Memory;
+import io.roastedroot.sqlite4j.SQLiteErrorCode;
+import io.roastedroot.sqlite4j.SQLiteException;
+import io.roastedroot.sqlite4j.core.wasm.ChunkedMemory;
+import io.roastedroot.sqlite4j.core.wasm.OffHeapMemory;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the Wasm instances of the JVM: the size of their linear memories and the memory allocated
+ * by SQLite in them. Opening a connection that needs a new instance beyond the memory budget, see
+ * {@link io.roastedroot.sqlite4j.SQLiteConfig#setMemoryBudget(long)}, puts the instances under
+ * pressure: the idle instances of the pool are dropped and the connections release the memory
+ * SQLite doesn't need, on their next use, and cap its heap to what it uses. The open waits for
+ * memory to be released, or fails.
+ */
+public final class MemoryGovernor {
+    private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final Object LOCK = new Object();
+    private static final Set<InstancePool.Slot> INSTANCES = ConcurrentHashMap.newKeySet();
+    // incremented when the pressure starts or ends, each connection applies it on its next use
+    private static volatile long epoch;
+    private static volatile boolean pressure;
+    // of the last open under pressure
+    private static long budget;
+    // the memory of the last instance built, the estimate for the next one
+    private static volatile long instanceBytes;
+
+    private static final LongAdder pressures = new LongAdder();
+    private static final LongAdder waits = new LongAdder();
+    private static final LongAdder refusals = new LongAdder();
+
+    private MemoryGovernor() {}
+
+    static void register(InstancePool.Slot slot) {
+        instanceBytes = allocatedBytes(slot.instance.memory());
+        INSTANCES.add(slot);
+    }
+
+    static void unregister(InstancePool.Slot slot) {
+        if (!INSTANCES.remove(slot)) {
+            return;
+        }
+        synchronized (LOCK) {
+            relieved();
+            LOCK.notifyAll();
+        }
+    }
+
+    // lifts the pressure
+    static void reset() {
+        synchronized (LOCK) {
+            if (pressure) {
+                pressure = false;
+                epoch++;
+            }
+        }
+    }
+
+    static long epoch() {
+        return epoch;
+    }
+
+    static boolean underPressure() {
+        return pressure;
+    }
+
+    /**
+     * Waits until a new instance, as large as the last one built, fits in the budget.
+     *
+     * @param budget the bytes of linear memory of all the instances, 0 for no budget
+     * @param waitMillis how long to wait for memory to be released, 0 to fail right away
+     * @throws SQLException when the instance doesn't fit in time
+     */
+    static void admit(long budget, long waitMillis) throws SQLException {
+        if (budget <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        boolean waited = false;
+        long bytes = instanceBytes;
+        synchronized (LOCK) {
+            while (getLinearMemoryBytes() + bytes > budget) {
+                MemoryGovernor.budget = budget;
+                if (!pressure) {
+                    pressure = true;
+                    epoch++;
+                    pressures.increment();
+                }
+                // the pool gives back its instances first
+                InstancePool.clear();
+                if (getLinearMemoryBytes() + bytes <= budget) {
+                    break;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    refusals.increment();
+                    throw new SQLiteException(
+                            "The Wasm memory budget of "
+                                    + budget
+                                    + " bytes is exhausted, "
+                                    + getLinearMemoryBytes()
+                                    + " bytes are in use",
+                            SQLiteErrorCode.SQLITE_NOMEM);
+                }
+                if (!waited) {
+                    waited = true;
+                    waits.increment();
+                }
+                try {
+                    // woken when an instance is closed, the pool is checked again meanwhile
+                    TimeUnit.NANOSECONDS.timedWait(LOCK, Math.min(remaining, RECHECK_NANOS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted waiting for Wasm memory", e);
+                }
+            }
+            relieved();
+        }
+    }
+
+    // back to normal under half of the budget, the connections lift the cap on their next use
+    private static void relieved() {
+        if (pressure && getLinearMemoryBytes() <= budget / 2) {
+            pressure = false;
+            epoch++;
+        }
+    }
+
+    /**
+     * @return the number of Wasm instances, in use or pooled
+     */
+    public static int getInstanceCount() {
+        return INSTANCES.size();
+    }
+
+    /**
+     * @return the linear memory held by the Wasm instances, in bytes: the chunks written so far,
+     *     the pages declared but never touched cost nothing
+     */
+    public static long getLinearMemoryBytes() {
+        long bytes = 0;
+        for (InstancePool.Slot slot : INSTANCES) {
+            bytes += allocatedBytes(slot.instance.memory());
+        }
+        return bytes;
+    }
+
+    private static long allocatedBytes(Memory memory) {
+        if (memory instanceof ChunkedMemory) {
+            return ((ChunkedMemory) memory).allocatedBytes();
+        }
+        if (memory instanceof OffHeapMemory) {
+            return ((OffHeapMemory) memory).allocatedBytes();
+        }
+        return (long) memory.pages() * Memory.PAGE_SIZE;
+    }
+
+    /**
+     * @return the memory allocated by SQLite in all the Wasm instances, in bytes, as last sampled
+     *     when opening, releasing or closing their connections
+     */
+    public static long getSqliteMemoryUsed() {
+        long used = 0;
+        for (InstancePool.Slot slot : INSTANCES) {
+            used += slot.memoryUsed;
+        }
+        return used;
+    }
+
+    /**
+     * @return whether an open went beyond the memory budget, and the instances didn't get back
+     *     under half of it since
+     */
+    public static boolean isUnderPressure() {
+        return pressure;
+    }
+
+    /**
+     * @return the number of times the instances were put under pressure
+     */
+    public static long getPressureCount() {
+        return pressures.sum();
+    }
+
+    /**
+     * @return the number of opens that waited for memory to be released
+     */
+    public static long getWaitCount() {
+        return waits.sum();
+    }
+
+    /**
+     * @return the number of opens that failed, beyond the memory budget
+     */
+    public static long getRefusedCount() {
+        return refusals.sum();
+    }
+}
@@ -0,0 +1,317 @@
+package io.roastedroot.sqlite4j.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A statement executed with literal values in its SQL text, the literals replaced by parameters,
+ * see {@link io.roastedroot.sqlite4j.SQLiteConfig#setNormalizeLiterals(boolean)}. The statements
+ * that only differ by their literals share one prepared statement.
+ *
+ * <p>Only one SELECT, INSERT, UPDATE, DELETE, REPLACE, WITH or VALUES statement is normalized. The
+ * string literals and the decimal numbers are replaced, except where they name the result columns
+ * (the select lists and RETURNING) and the integers of ORDER BY and GROUP BY, which are column
+ * numbers. A statement with parameters of its own is left as is.
+ */
+public final class NormalizedSql {
+    private static final Object[] NONE = new Object[0];
+    // beyond, the statement is left as is
+    private static final int MAX_DEPTH = 64;
+
+    /** The SQL text with a parameter in place of each literal. */
+    public final String sql;
+
+    /** The literals, in order, as Long, Double or String values. */
+    public final Object[] values;
+
+    /** Whether the statement is an INSERT, UPDATE, DELETE or REPLACE, without RETURNING. */
+    public final boolean update;
+
+    private NormalizedSql(String sql, Object[] values, boolean update) {
+        this.sql = sql;
+        this.values = values;
+        this.update = update;
+    }
+
+    /**
+     * @param sql the SQL text of a statement
+     * @return the normalized statement, null when it can't be normalized
+     */
+    public static NormalizedSql parse(String sql) {
+        int n = sql.length();
+        StringBuilder out = null;
+        List<Object> values = null;
+        // copied up to
+        int copied = 0;
+        int depth = 0;
+        // whether a select list, or RETURNING, is open at each depth
+        boolean[] resultColumns = new boolean[MAX_DEPTH];
+        int orderByDepth = -1;
+        boolean first = true;
+        boolean update = false;
+        // of the last keyword, for ORDER BY and GROUP BY
+        int wordStart = -1;
+        int wordLength = 0;
+
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+            } else if (c == '/' && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '\'') {
+                int end = endOfString(sql, i);
+                if (end < 0) {
+                    return null;
+                }
+                if (!inResultColumns(resultColumns, depth)) {
+                    if (out == null) {
+                        out = new StringBuilder(n);
+                        values = new ArrayList<>();
+                    }
+                    out.append(sql, copied, i).append('?');
+                    values.add(sql.substring(i + 1, end - 1).replace("''", "'"));
+                    copied = end;
+                }
+                i = end;
+            } else if (c == '"' || c == '`' || c == '[') {
+                int end = sql.indexOf(c == '[' ? ']' : c, i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                i = end + 1;
+            } else if (c == '?' || c == ':' || c == '@' || c == '$') {
+                // a parameter
+                return null;
+            } else if (c == ';') {
+                if (!isBlank(sql, i + 1)) {
+                    // several statements
+                    return null;
+                }
+                break;
+            } else if (c == '(') {
+                if (++depth == MAX_DEPTH) {
+                    return null;
+                }
+                resultColumns[depth] = false;
+                i++;
+            } else if (c == ')') {
+                if (depth > 0) {
+                    depth--;
+                }
+                if (orderByDepth > depth) {
+                    orderByDepth = -1;
+                }
+                i++;
+            } else if (isDigit(c) || (c == '.' && i + 1 < n && isDigit(sql.charAt(i + 1)))) {
+                int end = endOfNumber(sql, i);
+                if (end < 0) {
+                    // hexadecimal, or followed by letters
+                    i = skipWord(sql, i);
+                    continue;
+                }
+                Object value = number(sql, i, end);
+                boolean columnNumber = orderByDepth == depth && value instanceof Long;
+                if (value != null && !columnNumber && !inResultColumns(resultColumns, depth)) {
+                    if (out == null) {
+                        out = new StringBuilder(n);
+                        values = new ArrayList<>();
+                    }
+                    out.append(sql, copied, i).append('?');
+                    values.add(value);
+                    copied = end;
+                }
+                i = end;
+            } else if (isWordStart(c)) {
+                int end = skipWord(sql, i);
+                if ((c == 'x' || c == 'X') && end == i + 1 && end < n && sql.charAt(end) == '\'') {
+                    // a blob literal, left as is
+                    int stringEnd = endOfString(sql, end);
+                    if (stringEnd < 0) {
+                        return null;
+                    }
+                    i = stringEnd;
+                    continue;
+                }
+                int length = end - i;
+                if (first) {
+                    first = false;
+                    update =
+                            is(sql, i, length, "insert")
+                                    || is(sql, i, length, "update")
+                                    || is(sql, i, length, "delete")
+                                    || is(sql, i, length, "replace");
+                    if (!update
+                            && !is(sql, i, length, "select")
+                            && !is(sql, i, length, "with")
+                            && !is(sql, i, length, "values")) {
+                        return null;
+                    }
+                }
+                if (is(sql, i, length, "select")) {
+                    resultColumns[depth] = true;
+                } else if (is(sql, i, length, "returning")) {
+                    resultColumns[depth] = true;
+                    update = false;
+                } else if (endsResultColumns(sql, i, length)
+                        // IS [NOT] DISTINCT FROM, an operator within the select list
+                        && !is(sql, wordStart, wordLength, "distinct")) {
+                    resultColumns[depth] = false;
+                    orderByDepth = -1;
+                } else if (is(sql, i, length, "by")
+                        && (is(sql, wordStart, wordLength, "order")
+                                || is(sql, wordStart, wordLength, "group"))) {
+                    orderByDepth = depth;
+                }
+                wordStart = i;
+                wordLength = length;
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        if (first) {
+            return null;
+        }
+        if (out == null) {
+            return new NormalizedSql(sql, NONE, update);
+        }
+        out.append(sql, copied, n);
+        return new NormalizedSql(out.toString(), values.toArray(), update);
+    }
+
+    private static boolean inResultColumns(boolean[] resultColumns, int depth) {
+        for (int d = 0; d <= depth; d++) {
+            if (resultColumns[d]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the keywords after a select list, and after ORDER BY and GROUP BY
+    private static boolean endsResultColumns(String sql, int start, int length) {
+        switch (length) {
+            case 4:
+                return is(sql, start, length, "from");
+            case 5:
+                return is(sql, start, length, "where")
+                        || is(sql, start, length, "group")
+                        || is(sql, start, length, "order")
+                        || is(sql, start, length, "limit")
+                        || is(sql, start, length, "union");
+            case 6:
+                return is(sql, start, length, "having")
+                        || is(sql, start, length, "window")
+                        || is(sql, start, length, "except")
+                        || is(sql, start, length, "offset")
+                        || is(sql, start, length, "values");
+            case 9:
+                return is(sql, start, length, "intersect");
+            default:
+                return false;
+        }
+    }
+
+    private static boolean is(String sql, int start, int length, String keyword) {
+        return length == keyword.length() && sql.regionMatches(true, start, keyword, 0, length);
+    }
+
+    // after the closing quote, -1 when unterminated
+    private static int endOfString(String sql, int start) {
+        int i = start + 1;
+        while (true) {
+            int quote = sql.indexOf('\'', i);
+            if (quote < 0) {
+                return -1;
+            }
+            if (quote + 1 < sql.length() && sql.charAt(quote + 1) == '\'') {
+                i = quote + 2;
+            } else {
+                return quote + 1;
+            }
+        }
+    }
+
+    // after a decimal number, -1 when it isn't one
+    private static int endOfNumber(String sql, int start) {
+        int n = sql.length();
+        int i = start;
+        while (i < n && isDigit(sql.charAt(i))) {
+            i++;
+        }
+        if (i < n && sql.charAt(i) == '.') {
+            i++;
+            while (i < n && isDigit(sql.charAt(i))) {
+                i++;
+            }
+        }
+        if (i < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < n && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (exponent < n && isDigit(sql.charAt(exponent))) {
+                i = exponent;
+                while (i < n && isDigit(sql.charAt(i))) {
+                    i++;
+                }
+            }
+        }
+        if (i < n && isWordPart(sql.charAt(i))) {
+            return -1;
+        }
+        return i;
+    }
+
+    // a Long or a Double as SQLite reads the literal, null when out of the range of a long
+    private static Object number(String sql, int start, int end) {
+        String text = sql.substring(start, end);
+        for (int i = 0; i < text.length(); i++) {
+            if (!isDigit(text.charAt(i))) {
+                return Double.parseDouble(text);
+            }
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            // SQLite reads it as a REAL
+            return null;
+        }
+    }
+
+    private static int skipWord(String sql, int start) {
+        int i = start;
+        while (i < sql.length() && isWordPart(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isBlank(String sql, int start) {
+        for (int i = start; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (!Character.isWhitespace(c) && c != ';') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c > 0x7f;
+    }
+
+    private static boolean isWordPart(char c) {
+        return isWordStart(c) || isDigit(c) || c == '$';
+    }
+}
@@ -0,0 +1,248 @@
+package io.roastedroot.sqlite4j.core;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * The parameter values of a prepared statement and of its batched rows, stored by type instead of
+ * as boxed objects: integers in a long[], reals in a double[], text and blobs in an Object[], with
+ * a type tag for each value. The value columns are allocated with the first value of their type.
+ */
+public final class Parameters {
+    // the tags keep the Java type set, see JDBC3PreparedStatement#getParameterType
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte TEXT = 5;
+    private static final byte BLOB = 6;
+
+    private byte[] types;
+    private long[] longs;
+    private double[] doubles;
+    private Object[] objects;
+
+    public Parameters(int capacity) {
+        types = new byte[capacity];
+    }
+
+    /**
+     * @param vals the values, null, Integer, Short, Long, Float, Double, String or byte[]
+     * @return the values by type
+     */
+    public static Parameters of(Object[] vals) throws SQLException {
+        Parameters params = new Parameters(vals.length);
+        for (int i = 0; i < vals.length; i++) {
+            params.set(i, vals[i]);
+        }
+        return params;
+    }
+
+    /**
+     * @return the number of values that can be stored
+     */
+    public int capacity() {
+        return types.length;
+    }
+
+    /** Grows the columns to store at least capacity values, the new values are null. */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= types.length) {
+            return;
+        }
+        int size = Math.max(capacity, types.length * 2);
+        types = Arrays.copyOf(types, size);
+        if (longs != null) {
+            longs = Arrays.copyOf(longs, size);
+        }
+        if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, size);
+        }
+        if (objects != null) {
+            objects = Arrays.copyOf(objects, size);
+        }
+    }
+
+    public void setNull(int i) {
+        types[i] = NULL;
+        if (objects != null) {
+            objects[i] = null;
+        }
+    }
+
+    public void setInt(int i, int value) {
+        setInteger(i, INT, value);
+    }
+
+    public void setLong(int i, long value) {
+        setInteger(i, LONG, value);
+    }
+
+    public void setFloat(int i, float value) {
+        setReal(i, FLOAT, value);
+    }
+
+    public void setDouble(int i, double value) {
+        setReal(i, DOUBLE, value);
+    }
+
+    /** Null when value is null. */
+    public void setText(int i, String value) {
+        setObject(i, value == null ? NULL : TEXT, value);
+    }
+
+    /** Null when value is null. */
+    public void setBlob(int i, byte[] value) {
+        setObject(i, value == null ? NULL : BLOB, value);
+    }
+
+    /**
+     * @param value null, Integer, Short, Long, Float, Double, String or byte[]
+     */
+    public void set(int i, Object value) throws SQLException {
+        if (value == null) {
+            setNull(i);
+        } else if (value instanceof Integer || value instanceof Short) {
+            setInt(i, ((Number) value).intValue());
+        } else if (value instanceof Long) {
+            setLong(i, (Long) value);
+        } else if (value instanceof Float) {
+            setFloat(i, (Float) value);
+        } else if (value instanceof Double) {
+            setDouble(i, (Double) value);
+        } else if (value instanceof String) {
+            setText(i, (String) value);
+        } else if (value instanceof byte[]) {
+            setBlob(i, (byte[]) value);
+        } else {
+            throw new SQLException("unexpected param type: " + value.getClass());
+        }
+    }
+
+    private void setInteger(int i, byte type, long value) {
+        if (longs == null) {
+            longs = new long[types.length];
+        }
+        types[i] = type;
+        longs[i] = value;
+        if (objects != null) {
+            objects[i] = null;
+        }
+    }
+
+    private void setReal(int i, byte type, double value) {
+        if (doubles == null) {
+            doubles = new double[types.length];
+        }
+        types[i] = type;
+        doubles[i] = value;
+        if (objects != null) {
+            objects[i] = null;
+        }
+    }
+
+    private void setObject(int i, byte type, Object value) {
+        if (objects == null) {
+            if (value == null) {
+                types[i] = NULL;
+                return;
+            }
+            objects = new Object[types.length];
+        }
+        types[i] = type;
+        objects[i] = value;
+    }
+
+    /**
+     * @return the value as an Integer, Long, Float, Double, String or byte[], null when unset
+     */
+    public Object get(int i) {
+        switch (types[i]) {
+            case INT:
+                return (int) longs[i];
+            case LONG:
+                return longs[i];
+            case FLOAT:
+                return (float) doubles[i];
+            case DOUBLE:
+                return doubles[i];
+            case TEXT:
+            case BLOB:
+                return objects[i];
+            default:
+                return null;
+        }
+    }
+
+    /** Sets count values to null, from index from. */
+    public void clear(int from, int count) {
+        Arrays.fill(types, from, from + count, NULL);
+        if (objects != null) {
+            Arrays.fill(objects, from, from + count, null);
+        }
+    }
+
+    /** Copies count values from index from to index to, the columns must hold both ranges. */
+    public void copy(int from, int to, int count) {
+        System.arraycopy(types, from, types, to, count);
+        if (longs != null) {
+            System.arraycopy(longs, from, longs, to, count);
+        }
+        if (doubles != null) {
+            System.arraycopy(doubles, from, doubles, to, count);
+        }
+        if (objects != null) {
+            System.arraycopy(objects, from, objects, to, count);
+        }
+    }
+
+    /**
+     * @return the SQLite fundamental type of the value, SQLITE_INTEGER, SQLITE_FLOAT, SQLITE_TEXT,
+     *     SQLITE_BLOB or SQLITE_NULL
+     */
+    int sqliteType(int i) {
+        switch (types[i]) {
+            case INT:
+            case LONG:
+                return Codes.SQLITE_INTEGER;
+            case FLOAT:
+            case DOUBLE:
+                return Codes.SQLITE_FLOAT;
+            case TEXT:
+                return Codes.SQLITE_TEXT;
+            case BLOB:
+                return Codes.SQLITE_BLOB;
+            default:
+                return Codes.SQLITE_NULL;
+        }
+    }
+
+    long longValue(int i) {
+        return longs[i];
+    }
+
+    double doubleValue(int i) {
+        return doubles[i];
+    }
+
+    String text(int i) {
+        return (String) objects[i];
+    }
+
+    byte[] blob(int i) {
+        return (byte[]) objects[i];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(get(i));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -12,6 +12,8 @@ public class SafeStmtPtr {
     // anyways, so making a separate lock would be pointless
     private final DB db;
     private final int ptr;
+    // the SQL text of a statement kept by the statement cache when closed, null otherwise
+    private final String sql;
 
     private volatile boolean closed = false;
     // to return on subsequent calls to close() after this ptr has been closed
@@ -28,8 +30,17 @@ public class SafeStmtPtr {
      * @param ptr the raw pointer
      */
     public SafeStmtPtr(DB db, int ptr) {
+        this(db, ptr, null);
+    }
+
+    SafeStmtPtr(DB db, int ptr, String sql) {
         this.db = db;
         this.ptr = ptr;
+        this.sql = sql;
+    }
+
+    String sql() {
+        return sql;
     }
 
     /**
@@ -0,0 +1,191 @@
+package io.roastedroot.sqlite4j.core;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The prepared statements of a connection kept after they were closed, to be reused by the next
+ * statements with the same SQL text, see {@link
+ * io.roastedroot.sqlite4j.SQLiteConfig#setStatementCacheSize(int)}. A closed statement is reset and
+ * its parameters cleared instead of being finalized, the least recently used one is finalized
+ * beyond the size of the cache.
+ *
+ * <p>The statements are prepared with SQLITE_PREPARE_PERSISTENT. Creating, dropping or altering a
+ * table, an index, a view or a trigger on the connection empties the cache; a statement of a schema
+ * changed by another connection is prepared again by SQLite on its next step. Statements changing
+ * the pragmas or the attached databases are never cached.
+ *
+ * <p>Only used under the lock of the connection.
+ */
+public final class StatementCache {
+    // see https://www.sqlite.org/c3ref/c_prepare_normalize.html
+    static final int SQLITE_PREPARE_PERSISTENT = 0x01;
+
+    private final DB db;
+    private final int capacity;
+    // by SQL text, in access order, one idle statement for each text
+    private final LinkedHashMap<String, Integer> idle = new LinkedHashMap<>(16, 0.75f, true);
+
+    // updated under the lock of the connection, read by any thread
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    StatementCache(DB db, int capacity) {
+        this.db = db;
+        this.capacity = capacity;
+    }
+
+    boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /** The idle statement with this SQL text, or a new one. */
+    SafeStmtPtr take(String sql) throws SQLException {
+        if (changesSchema(sql)) {
+            invalidate();
+            return new SafeStmtPtr(db, db.prepare(sql, 0));
+        }
+        if (changesSession(sql)) {
+            return new SafeStmtPtr(db, db.prepare(sql, 0));
+        }
+        Integer ptr = idle.remove(sql);
+        if (ptr != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            ptr = db.prepare(sql, SQLITE_PREPARE_PERSISTENT);
+        }
+        return new SafeStmtPtr(db, ptr, sql);
+    }
+
+    /**
+     * Keeps a closed statement for its next use.
+     *
+     * @return whether the statement was kept, false when it must be finalized
+     */
+    boolean offer(String sql, long ptr) throws SQLException {
+        if (idle.containsKey(sql)) {
+            return false;
+        }
+        db.clear_bindings(ptr);
+        idle.put(sql, (int) ptr);
+        if (idle.size() > capacity) {
+            Iterator<Integer> eldest = idle.values().iterator();
+            long evicted = eldest.next();
+            eldest.remove();
+            evictions.increment();
+            db.finalize(evicted);
+        }
+        return true;
+    }
+
+    /** Empties the cache, before the schema changes. */
+    void invalidate() throws SQLException {
+        if (!idle.isEmpty()) {
+            invalidations.increment();
+            clear();
+        }
+    }
+
+    /** Finalizes the idle statements. */
+    void clear() throws SQLException {
+        SQLException error = null;
+        for (Map.Entry<String, Integer> entry : idle.entrySet()) {
+            try {
+                db.finalize(entry.getValue());
+            } catch (SQLException e) {
+                error = e;
+            }
+        }
+        idle.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // CREATE, DROP and ALTER, as the first keyword, and what changes the query plans
+    static boolean changesSchema(String sql) {
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c) || c == ';') {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? n : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else {
+                break;
+            }
+        }
+        return sql.regionMatches(true, i, "create", 0, 6)
+                || sql.regionMatches(true, i, "drop", 0, 4)
+                || sql.regionMatches(true, i, "alter", 0, 5)
+                || sql.regionMatches(true, i, "analyze", 0, 7)
+                || sql.regionMatches(true, i, "reindex", 0, 7)
+                || sql.regionMatches(true, i, "vacuum", 0, 6);
+    }
+
+    // PRAGMA, ATTACH and DETACH anywhere in the text, a false positive costs a check of the pragmas
+    static boolean changesSession(String sql) {
+        for (int i = 0, n = sql.length() - 5; i < n; i++) {
+            char c = (char) (sql.charAt(i) | 0x20);
+            if ((c == 'p' && sql.regionMatches(true, i, "pragma", 0, 6))
+                    || (c == 'a' && sql.regionMatches(true, i, "attach", 0, 6))
+                    || (c == 'd' && sql.regionMatches(true, i, "detach", 0, 6))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the maximum number of idle statements, 0 when the cache is disabled
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of idle statements
+     */
+    public int size() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of statements reused from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of cacheable statements that had to be prepared
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of idle statements finalized to make room for others
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of times the cache was emptied by a change of the schema
+     */
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+}
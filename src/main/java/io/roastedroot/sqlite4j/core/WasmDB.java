@@ -10,6 +10,8 @@ import com.dylibso.chicory.wasi.WasiOptions;
 import com.dylibso.chicory.wasi.WasiPreview1;
 import com.dylibso.chicory.wasm.WasmModule;
 import com.dylibso.chicory.wasm.types.MemoryLimits;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
 import io.roastedroot.sqlite4j.BusyHandler;
 import io.roastedroot.sqlite4j.Collation;
 import io.roastedroot.sqlite4j.Function;
@@ -20,16 +22,23 @@ import io.roastedroot.sqlite4j.SQLiteException;
 import io.roastedroot.sqlite4j.SQLiteModule;
 import io.roastedroot.sqlite4j.SQLiteUpdateListener;
 import io.roastedroot.sqlite4j.Version;
-import io.roastedroot.sqlite4j.core.wasm.BusyHandlerStore;
-import io.roastedroot.sqlite4j.core.wasm.CollationStore;
+import io.roastedroot.sqlite4j.core.wasm.CallbackRegistry;
+import io.roastedroot.sqlite4j.core.wasm.ChunkedMemory;
 import io.roastedroot.sqlite4j.core.wasm.DummyWasmDBImports;
-import io.roastedroot.sqlite4j.core.wasm.ProgressHandlerStore;
-import io.roastedroot.sqlite4j.core.wasm.UDFStore;
+import io.roastedroot.sqlite4j.core.wasm.ForwardingWasmDBImports;
+import io.roastedroot.sqlite4j.core.wasm.JavaVfs;
+import io.roastedroot.sqlite4j.core.wasm.LazyFileSystem;
+import io.roastedroot.sqlite4j.core.wasm.MappedFile;
+import io.roastedroot.sqlite4j.core.wasm.OffHeapMemory;
 import io.roastedroot.sqlite4j.core.wasm.WasmDBExports;
 import io.roastedroot.sqlite4j.core.wasm.WasmDBImports;
+import io.roastedroot.sqlite4j.core.wasm.WasmDBTemplate;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
@@ -37,53 +46,333 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 public class WasmDB extends DB implements WasmDBImports {
     public static final int PTR_SIZE = 4;
+    // see sqlite4j_fetch in sqlite3_helpers.c
+    private static final int FETCH_BUFFER_SIZE = 64 * 1024;
+    private static final int FETCH_HEADER_SIZE = 12;
+    // see sqlite4j_bind_all in sqlite3_helpers.c
+    private static final int BIND_SLOT_SIZE = 16;
+    // a statement is referenced by a holder: the sqlite3_stmt pointer followed by its bind arena
+    // (pointer, capacity, used bytes), the text and blob parameters are written in the arena and
+    // bound with SQLITE_STATIC, the arena is reused when all the parameters are bound again
+    private static final int STMT_HOLDER_SIZE = 16;
+    private static final int ARENA_PTR = 4;
+    private static final int ARENA_CAPACITY = 8;
+    private static final int ARENA_USED = 12;
+    private static final int ARENA_MIN_SIZE = 256;
+    private static final int ARENA_MAX_SIZE = 64 * 1024;
+    // copies of values passed to SQLite with SQLITE_TRANSIENT
+    private static final int SCRATCH_SIZE = 64 * 1024;
+    // see sqlite4j_execute_batch in sqlite3_helpers.c
+    private static final int BATCH_MAX_ROWS = 4096;
     private static final WasmModule MODULE = SQLiteModule.load();
-
-    private final Instance instance;
-    private final WasiPreview1 wasiPreview1;
-    private final WasmDBExports lib;
+    // the initial memory is the one declared by the module (-Wl,--initial-memory),
+    // the ChunkedMemory grows cheaply on demand from there
+    private static final MemoryLimits MEMORY_LIMITS =
+            new MemoryLimits(
+                    MODULE.memorySection().get().getMemory(0).limits().initialPages(),
+                    Memory.RUNTIME_MAX_PAGES);
+
+    // the instance and what is bound to it, null while the connection is hibernated
+    private Instance instance;
+    private WasiPreview1 wasiPreview1;
+    private WasmDBExports lib;
     private final FileSystem fs;
+    // the database file is accessed on the host file system, not copied in fs
+    private final boolean hostStorage;
+    private final SQLiteConfig.StorageMode storageMode;
+    private final long storageCacheSize;
+    private final Path hostDir;
+    // file operations of SQLite, when the Java VFS is used
+    private JavaVfs vfs;
+    private final boolean javaVfs;
+    // the instance and what is bound to it, given back to the InstancePool on close
+    private InstancePool.Slot slot;
+    private final List<Object> instanceKey;
+    private final int instancePoolSize;
+    // the instance holds the sqlite3* of other connections
+    private final boolean shared;
+    // reopened by a hibernated connection
+    private String openFileName;
+    private int openFlags;
 
     /** SQLite connection handle. */
     private int dbPtrPtr = 0;
 
     private int dbPtr = 0;
 
-    // Collations are dedicated per connection
-    private CollationStore collationStore = new CollationStore();
+    // allocated on the first fetch, reused by all the statements of the connection
+    private int fetchBufPtr = 0;
+    private int convertStmtPtr = 0;
+    // allocated on first use, values that don't fit get a dedicated allocation
+    private int scratchPtr = 0;
+
+    // the functions, collations and progress handler of the connection, by user data
+    private final CallbackRegistry callbacks = new CallbackRegistry(this);
+    // as the busy handler, the db pointers of different instances overlap
+    private BusyHandler busyHandler;
+    // what reset_session drops
+    private final Map<String, Set<Integer>> functions = new HashMap<>();
+    private final Set<String> collations = new HashSet<>();
+    private boolean progressHandler;
+    // a statement prepared since the last reset_session may have changed the pragmas
+    private boolean sessionChanged;
+
+    // the Wasm instance is released, the connection is reopened on its next use
+    private volatile boolean hibernated;
+    // set while checking if the connection is still idle, the last use is checked again after
+    private volatile boolean hibernating;
+    private volatile long lastUse;
+    private final long idleNanos;
+    private final boolean compressSnapshot;
+    private IdleHibernation idleHibernation;
+    // what a hibernated connection restores: the in-memory database, possibly deflated,
+    // the session pragmas and the limits
+    private byte[] snapshot;
+    private int snapshotSize;
+    private String[] sessionPragmas;
+    private int[] limits;
+    private long releasedBytes;
+    // the memory pressure last applied, checked on the first use of an instance
+    private volatile long memoryEpoch = -1;
 
     public WasmDB(FileSystem fs, String url, String fileName, SQLiteConfig config)
             throws SQLException {
         super(url, fileName, config);
         this.fs = fs;
 
-        Path target = fs.getPath("/");
-        WasiOptions wasiOpts =
-                WasiOptions.builder()
-                        .inheritSystem()
-                        .withDirectory(target.toString(), target)
-                        .build();
+        // the path of the database file is resolved against the longest matching directory,
+        // its host directory takes precedence over the in-memory file system
+        this.hostDir = hostDirectory(fileName, config);
+        this.hostStorage = hostDir != null;
+        this.storageMode = config.getStorageMode();
+        this.storageCacheSize = config.getStorageCacheSize();
+        this.instancePoolSize = config.getInstancePoolSize();
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(config.getHibernateIdle());
+        this.compressSnapshot = config.isHibernateCompress();
+
+        this.instanceKey =
+                List.of(
+                        fs,
+                        hostDir == null ? "" : hostDir.toString(),
+                        config.getMemoryMode(),
+                        config.getMemoryChunkPages());
+        this.shared = config.getSharedInstanceSize() > 1;
+        useSlot(acquireSlot());
+        // the wal-index shared by the connections is only implemented by the Java VFS
+        boolean wal =
+                SQLiteConfig.JournalMode.WAL
+                        .name()
+                        .equalsIgnoreCase(
+                                config.toProperties()
+                                        .getProperty(SQLiteConfig.Pragma.JOURNAL_MODE.pragmaName));
+        this.javaVfs = config.getVfsMode() == SQLiteConfig.VfsMode.JAVA || wal;
+    }
+
+    // a new, pooled or shared instance, a new one within the memory budget
+    private InstancePool.Slot acquireSlot() throws SQLException {
+        SQLiteConfig config = getConfig();
+        long budget = config.getMemoryBudget();
+        if (shared) {
+            if (budget > 0 && !InstancePool.hasRoom(instanceKey, config.getSharedInstanceSize())) {
+                MemoryGovernor.admit(budget, config.getMemoryBudgetWait());
+            }
+            return InstancePool.join(
+                    instanceKey,
+                    config.getSharedInstanceSize(),
+                    () -> newSlot(instanceKey, fs, hostDir, config, true));
+        }
+        InstancePool.Slot slot = instancePoolSize > 0 ? InstancePool.take(instanceKey) : null;
+        if (slot == null) {
+            MemoryGovernor.admit(budget, config.getMemoryBudgetWait());
+            slot = newSlot(instanceKey, fs, hostDir, config, false);
+        }
+        slot.imports.bind(this);
+        return slot;
+    }
+
+    private void useSlot(InstancePool.Slot slot) {
+        this.slot = slot;
+        this.memoryEpoch = -1;
+        this.instance = slot == null ? null : slot.instance;
+        this.wasiPreview1 = slot == null ? null : slot.wasiPreview1;
+        this.vfs = slot == null ? null : slot.vfs;
+        this.lib = slot == null ? null : slot.lib;
+    }
+
+    // gives the instance back to the pool, or closes it, once the handle is closed
+    private void releaseSlot() {
+        if (shared) {
+            InstancePool.leave(slot);
+        } else if (instancePoolSize > 0 && slot.reusable()) {
+            slot.rewind();
+            slot.imports.bind(null);
+            InstancePool.offer(slot, instancePoolSize);
+        } else {
+            slot.close();
+        }
+    }
 
-        wasiPreview1 = WasiPreview1.builder().withOptions(wasiOpts).build();
-        instance =
-                Instance.builder(MODULE)
-                        .withMachineFactory(SQLiteModule::create)
-                        .withImportValues(
-                                ImportValues.builder()
-                                        .addFunction(wasiPreview1.toHostFunctions())
-                                        .addFunction(toHostFunctions())
-                                        .build())
-                        // compile time option: -Wl,--initial-memory=327680
-                        // means 5 pages initial memory
-                        // increased with 3 more zeroes and now the test is passing
-                        // in a decent time
-                        // TODO: find as tradeoff between QueryTest.github720 and JDBCTest.hammer
-                        .withMemoryLimits(new MemoryLimits(500, Memory.RUNTIME_MAX_PAGES))
+    private static InstancePool.Slot newSlot(
+            List<Object> key, FileSystem fs, Path hostDir, SQLiteConfig config, boolean shared) {
+        JavaVfs vfs = new JavaVfs(vfsBackend(fs, hostDir != null));
+        WasiPreview1 wasiPreview1 =
+                WasiPreview1.builder().withOptions(wasiOptions(fs, hostDir)).build();
+        ForwardingWasmDBImports imports = new ForwardingWasmDBImports();
+        java.util.function.Function<MemoryLimits, Memory> memoryFactory = memoryFactory(config);
+        if (config.isInstanceTemplate()) {
+            memoryFactory = TemplateHolder.TEMPLATE.seeded(memoryFactory);
+        }
+        Instance instance =
+                newInstanceBuilder(wasiPreview1, imports, vfs)
+                        .withMemoryFactory(memoryFactory)
                         .build();
-        lib = new WasmDBExports(instance);
+        if (config.isInstanceTemplate()) {
+            TemplateHolder.TEMPLATE.restoreGlobals(instance);
+        }
+        WasmDBExports lib = new WasmDBExports(instance);
+        // the leaks of SQLite are checked before recycling the instance
+        boolean memoryStatus;
+        if (config.isInstanceTemplate()) {
+            memoryStatus = TemplateHolder.TEMPLATE.memoryStatus();
+        } else {
+            memoryStatus = lib.enableMemoryStatus() == SQLITE_OK;
+            // done by the first sqlite3_open otherwise, its allocations are not leaks
+            int rc = lib.initialize();
+            if (rc != SQLITE_OK) {
+                throw new IllegalStateException("sqlite3_initialize failed with code: " + rc);
+            }
+        }
+        InstancePool.Slot slot =
+                new InstancePool.Slot(
+                        key, instance, wasiPreview1, vfs, lib, imports, memoryStatus, shared);
+        MemoryGovernor.register(slot);
+        return slot;
+    }
+
+    // the template is captured with the same options: the WASI state in its memory (environment,
+    // preopened directories) has to match the instances it seeds
+    private static WasiOptions wasiOptions(FileSystem fs, Path hostDir) {
+        // files loaded on demand are only visible through the lazy view of fs
+        Path target = LazyFileSystem.of(fs).getPath("/");
+        WasiOptions.Builder wasiOpts =
+                WasiOptions.builder().inheritSystem().withDirectory(target.toString(), target);
+        if (hostDir != null) {
+            wasiOpts.withDirectory(hostDir.toString(), hostDir);
+        }
+        return wasiOpts.build();
+    }
+
+    private static Path hostDirectory(String fileName, SQLiteConfig config) {
+        if (config.getStorageMode() != SQLiteConfig.StorageMode.HOST
+                || fileName == null
+                || fileName.isEmpty()
+                || fileName.startsWith(":memory:")
+                || fileName.startsWith("file:")) {
+            return null;
+        }
+        return Path.of(fileName).toAbsolutePath().getParent();
+    }
+
+    // files are resolved as with WASI, temporary files are always kept in memory
+    private static JavaVfs.Backend vfsBackend(FileSystem fs, boolean hostStorage) {
+        LazyFileSystem lazyFs = LazyFileSystem.of(fs);
+        return new JavaVfs.Backend() {
+            @Override
+            public Path resolve(String name) {
+                return hostStorage ? Path.of(name) : lazyFs.getPath(name);
+            }
+
+            @Override
+            public Path temporary(String name) {
+                return lazyFs.getPath("/", name);
+            }
+        };
+    }
+
+    // the file path of a "file:" URI filename, as resolved by SQLite
+    private static String uriPath(String filename) {
+        if (!filename.startsWith("file:")) {
+            return filename;
+        }
+        String path = filename.substring("file:".length());
+        int end = path.length();
+        for (char c : new char[] {'?', '#'}) {
+            int idx = path.indexOf(c);
+            if (idx >= 0 && idx < end) {
+                end = idx;
+            }
+        }
+        path = path.substring(0, end);
+        if (path.startsWith("//")) {
+            // an empty or "localhost" authority
+            int slash = path.indexOf('/', 2);
+            path = slash < 0 ? "" : path.substring(slash);
+        }
+        return path;
+    }
+
+    private static java.util.function.Function<MemoryLimits, Memory> memoryFactory(
+            SQLiteConfig config) {
+        int chunkPages = config.getMemoryChunkPages();
+        switch (config.getMemoryMode()) {
+            case OFF_HEAP:
+                return limits -> new OffHeapMemory(limits, chunkPages);
+            case HEAP:
+            default:
+                return limits -> new ChunkedMemory(limits, chunkPages);
+        }
+    }
+
+    private static Instance.Builder newInstanceBuilder(
+            WasiPreview1 wasiPreview1, WasmDBImports imports, JavaVfs vfs) {
+        return Instance.builder(MODULE)
+                .withMachineFactory(SQLiteModule::create)
+                .withMemoryLimits(MEMORY_LIMITS)
+                .withImportValues(
+                        ImportValues.builder()
+                                .addFunction(wasiPreview1.toHostFunctions())
+                                .addFunction(imports.toHostFunctions())
+                                .addFunction(vfs.toHostFunctions())
+                                .build());
+    }
+
+    // Lazily initialized on first use, an initialized instance is snapshotted once
+    // and restored into every new connection
+    private static final class TemplateHolder {
+        static final WasmDBTemplate TEMPLATE = createTemplate();
+
+        private static WasmDBTemplate createTemplate() {
+            WasiOptions wasiOpts =
+                    wasiOptions(
+                            Jimfs.newFileSystem(
+                                    Configuration.unix().toBuilder()
+                                            .setAttributeViews("unix")
+                                            .build()),
+                            null);
+
+            try (WasiPreview1 wasiPreview1 = WasiPreview1.builder().withOptions(wasiOpts).build()) {
+                Instance tmp =
+                        newInstanceBuilder(
+                                        wasiPreview1, new DummyWasmDBImports(), new JavaVfs(null))
+                                .withMemoryFactory(ChunkedMemory::new)
+                                .build();
+                return WasmDBTemplate.capture(tmp);
+            }
+        }
     }
 
     // TODO: find a better way for doing this
@@ -97,7 +386,7 @@ public class WasmDB extends DB implements WasmDBImports {
     // only 1 progress handler at the time
     @Override
     public int xProgress(int userData) {
-        ProgressHandler f = ProgressHandlerStore.get(userData);
+        ProgressHandler f = callbacks(userData).progressHandler();
 
         try {
             int result = f.progress();
@@ -110,7 +399,7 @@ public class WasmDB extends DB implements WasmDBImports {
 
     @Override
     public int xBusy(int userData, int nbPrevInvok) {
-        BusyHandler f = BusyHandlerStore.get(userData);
+        BusyHandler f = busyHandler;
 
         try {
             int result = f.callback(nbPrevInvok);
@@ -123,13 +412,23 @@ public class WasmDB extends DB implements WasmDBImports {
 
     @Override
     public void xDestroy(int funIdx) {
-        UDFStore.free(funIdx);
+        callbacks(funIdx).freeFunction(funIdx);
+    }
+
+    // the registry of the connection owning the callback, in a shared instance, from the
+    // connection id in the high bits of its user data
+    private CallbackRegistry callbacks(int userData) {
+        if (!shared) {
+            return callbacks;
+        }
+        CallbackRegistry owner = slot.imports.registry(userData);
+        return owner == null ? callbacks : owner;
     }
 
     @Override
     public void xFinal(int ctx) {
         int funIdx = lib.userData(ctx);
-        Function f = UDFStore.get(funIdx);
+        Function f = callbacks(funIdx).function(funIdx);
 
         f.setContext(ctx);
 
@@ -143,7 +442,7 @@ public class WasmDB extends DB implements WasmDBImports {
     @Override
     public void xValue(int ctx) {
         int funIdx = lib.userData(ctx);
-        Function f = UDFStore.get(funIdx);
+        Function f = callbacks(funIdx).function(funIdx);
 
         f.setContext(ctx);
 
@@ -157,7 +456,7 @@ public class WasmDB extends DB implements WasmDBImports {
     @Override
     public void xFunc(int ctx, int argN, int value) {
         int funIdx = lib.userData(ctx);
-        Function f = UDFStore.get(funIdx);
+        Function f = callbacks(funIdx).function(funIdx);
 
         f.setContext(ctx);
         f.setValue(value);
@@ -173,7 +472,7 @@ public class WasmDB extends DB implements WasmDBImports {
     @Override
     public void xStep(int ctx, int argN, int value) {
         int funIdx = lib.userData(ctx);
-        Function f = UDFStore.get(funIdx);
+        Function f = callbacks(funIdx).function(funIdx);
 
         f.setContext(ctx);
         f.setValue(value);
@@ -189,7 +488,7 @@ public class WasmDB extends DB implements WasmDBImports {
     @Override
     public void xInverse(int ctx, int argN, int value) {
         int funIdx = lib.userData(ctx);
-        Function f = UDFStore.get(funIdx);
+        Function f = callbacks(funIdx).function(funIdx);
 
         f.setContext(ctx);
         f.setValue(value);
@@ -204,7 +503,7 @@ public class WasmDB extends DB implements WasmDBImports {
 
     @Override
     public int xCompare(int ctx, int len1, int str1Ptr, int len2, int str2Ptr) {
-        Collation f = collationStore.get(ctx);
+        Collation f = callbacks(ctx).collation(ctx);
 
         String str1 =
                 new String(instance.memory().readBytes(str1Ptr, len1), StandardCharsets.UTF_8);
@@ -245,14 +544,8 @@ public class WasmDB extends DB implements WasmDBImports {
         String dbName = instance.memory().readCString(dbNamePtr);
         String tableName = instance.memory().readCString(tablePtr);
 
+        // the names are owned by SQLite
         this.updateListeners.forEach(ul -> ul.onUpdate(type, dbName, tableName, rowId));
-
-        // TODO: doublecheck if we do a double free
-        lib.free(dbNamePtr);
-        lib.free(tablePtr);
-
-        // no tmp data to be cleaned up
-        // the collation will be freed with an explicit destroy call
     }
 
     @Override
@@ -268,20 +561,123 @@ public class WasmDB extends DB implements WasmDBImports {
 
     // safe access to the dbPointer
     private int dbPtr() throws SQLException {
+        awake();
         if (this.dbPtrPtr == 0 || this.dbPtr == 0) {
             throw new SQLException("Attempting to perform operations on a database not opened");
         }
         return this.dbPtr;
     }
 
+    // records the use of the connection, a hibernated connection is revived
+    private void awake() throws SQLException {
+        if (idleNanos > 0) {
+            lastUse = System.nanoTime();
+        }
+        if (hibernating || hibernated) {
+            revive();
+        }
+        if (memoryEpoch != MemoryGovernor.epoch()) {
+            applyMemoryPressure();
+        }
+    }
+
+    // The host writes, the calls and the host reads of an operation hold the lock of a shared
+    // instance, its memory and its state are used by one connection at the time. The lock is
+    // reentrant: the callbacks run within the calls of the operation.
+    private ReentrantLock enter() throws SQLException {
+        if (!shared) {
+            return null;
+        }
+        // a hibernated connection joins an instance first
+        awake();
+        return lockInstance();
+    }
+
+    private ReentrantLock lockInstance() {
+        ReentrantLock lock = slot.lock;
+        if (lock != null) {
+            lock.lock();
+        }
+        return lock;
+    }
+
+    private static void exit(ReentrantLock lock) {
+        if (lock != null) {
+            lock.unlock();
+        }
+    }
+
+    // releases the memory SQLite doesn't need and caps its heap to what is left, while the
+    // instances of the JVM are beyond their memory budget
+    private synchronized void applyMemoryPressure() {
+        memoryEpoch = MemoryGovernor.epoch();
+        if (dbPtr == 0 || !slot.memoryStatus) {
+            return;
+        }
+        ReentrantLock lock = lockInstance();
+        try {
+            if (MemoryGovernor.underPressure()) {
+                try {
+                    clearStatementCache();
+                } catch (SQLException e) {
+                    // the statements are finalized with the connection
+                }
+                lib.dbReleaseMemory(dbPtr);
+                long used = lib.memoryUsed();
+                lib.softHeapLimit(used);
+                slot.memoryUsed = used;
+                slot.capped = true;
+            } else if (slot.capped) {
+                // kept by a pooled or shared instance
+                lib.softHeapLimit(0);
+                slot.capped = false;
+            }
+        } finally {
+            exit(lock);
+        }
+    }
+
     @Override
     protected synchronized void _open(String filename, int openFlags) throws SQLException {
-        Path origin = Path.of(filename);
-        Path dest = fs.getPath(filename);
-        if (!filename.isEmpty() && Files.notExists(dest)) {
+        try {
+            openHandle(filename, openFlags);
+        } catch (SQLException | RuntimeException e) {
+            if (shared) {
+                InstancePool.leave(slot);
+            }
+            throw e;
+        }
+        this.openFileName = filename;
+        this.openFlags = openFlags;
+        if (idleNanos > 0) {
+            lastUse = System.nanoTime();
+            idleHibernation = IdleHibernation.schedule(this, getConfig().getHibernateIdle());
+        }
+    }
+
+    private void openHandle(String filename, int openFlags) throws SQLException {
+        boolean lazy = storageMode == SQLiteConfig.StorageMode.LAZY;
+        boolean mapped = storageMode == SQLiteConfig.StorageMode.MMAP;
+        String path = lazy || mapped ? uriPath(filename) : filename;
+        Path origin = Path.of(path);
+        Path dest = fs.getPath(path);
+        if (!hostStorage && !path.isEmpty() && Files.notExists(dest)) {
             // TODO: verify if everything works on windows
-            if (Files.exists(origin)) {
-                try (InputStream is = new FileInputStream(filename)) {
+            if ((lazy || mapped) && Files.isRegularFile(origin)) {
+                try {
+                    if (mapped) {
+                        LazyFileSystem.of(fs).registerMapped(dest, origin);
+                    } else {
+                        LazyFileSystem.of(fs).register(dest, origin, storageCacheSize);
+                    }
+                } catch (IOException e) {
+                    SQLException msg =
+                            DB.newSQLException(
+                                    SQLITE_CANTOPEN, "Failed to map the file: " + filename);
+                    throw new SQLException(msg.getMessage(), e);
+                }
+            } else if (Files.exists(origin)) {
+                try (InputStream is = new FileInputStream(path)) {
                     Files.createDirectories(dest);
                     java.nio.file.Files.copy(is, dest, StandardCopyOption.REPLACE_EXISTING);
                     var owner = Files.getOwner(origin);
@@ -311,91 +707,206 @@ public class WasmDB extends DB implements WasmDBImports {
             }
         }
 
-        this.dbPtrPtr = lib.malloc(PTR_SIZE);
-        int dbNamePtr = lib.allocCString(filename);
+        if (mapped && LazyFileSystem.of(fs).file(dest) instanceof MappedFile) {
+            // the mapping is read-only
+            openFlags =
+                    (openFlags & ~(SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE))
+                            | SQLITE_OPEN_READONLY;
+        }
+
+        ReentrantLock lock = lockInstance();
+        try {
+            int vfsNamePtr = 0;
+            if (javaVfs) {
+                int res = lib.registerVfs();
+                if (res != SQLITE_OK) {
+                    throw DB.newSQLException(res, "Failed to register the Java VFS");
+                }
+                vfsNamePtr = lib.allocCString(JavaVfs.NAME);
+            }
 
-        int res = lib.openV2(dbNamePtr, dbPtrPtr, openFlags, 0);
-        this.dbPtr = instance.memory().readInt(this.dbPtrPtr);
-        if (res != SQLITE_OK) {
-            int errCode = lib.extendedErrorcode(dbPtr());
-            lib.close(dbPtr());
-            throw DB.newSQLException(errCode, errmsg());
+            this.dbPtrPtr = lib.malloc(PTR_SIZE);
+            int dbNamePtr = lib.allocCString(filename);
+
+            int res = lib.openV2(dbNamePtr, dbPtrPtr, openFlags, vfsNamePtr);
+            lib.free(dbNamePtr);
+            if (vfsNamePtr != 0) {
+                lib.free(vfsNamePtr);
+            }
+            this.dbPtr = instance.memory().readInt(this.dbPtrPtr);
+            if (res != SQLITE_OK) {
+                int errCode = lib.extendedErrorcode(dbPtr());
+                SQLException e = DB.newSQLException(errCode, errmsg());
+                lib.close(dbPtr);
+                lib.free(dbPtrPtr);
+                this.dbPtr = 0;
+                this.dbPtrPtr = 0;
+                throw e;
+            }
+            if (shared) {
+                slot.imports.register(callbacks);
+            }
+            if (slot.memoryStatus) {
+                slot.memoryUsed = lib.memoryUsed();
+            }
+        } finally {
+            exit(lock);
         }
-        // exports.free(dbNamePtr);
     }
 
     @Override
-    protected SafeStmtPtr prepare(String sql) throws SQLException {
-        int stmtPtrPtr = lib.malloc(PTR_SIZE);
-        WasmDBExports.StringPtrSize str = lib.allocString(sql);
+    protected int prepare(String sql, int prepFlags) throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            awake();
+            if (!sessionChanged) {
+                sessionChanged = StatementCache.changesSession(sql);
+            }
+            int stmtPtrPtr = lib.malloc(STMT_HOLDER_SIZE);
+            instance.memory().write(stmtPtrPtr, new byte[STMT_HOLDER_SIZE]);
+            WasmDBExports.StringPtrSize str = lib.allocString(sql);
 
-        int res = lib.prepareV2(dbPtr(), str.ptr(), str.size(), stmtPtrPtr, 0);
-        lib.free(str.ptr());
-        if (res != SQLITE_OK) {
-            int errCode = lib.extendedErrorcode(dbPtr());
-            // exports.close(dbPtr());
-            throw DB.newSQLException(errCode, errmsg());
-        }
+            int res = lib.prepareV3(dbPtr(), str.ptr(), str.size(), prepFlags, stmtPtrPtr, 0);
+            lib.free(str.ptr());
+            if (res != SQLITE_OK) {
+                int errCode = lib.extendedErrorcode(dbPtr());
+                // exports.close(dbPtr());
+                throw DB.newSQLException(errCode, errmsg());
+            }
 
-        return new SafeStmtPtr(this, stmtPtrPtr);
+            return stmtPtrPtr;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     protected int finalize(long stmtPtrPtr) throws SQLException {
-        int result = lib.finalize(lib.ptr((int) stmtPtrPtr));
-        return result;
+        ReentrantLock lock = enter();
+        try {
+            int result = lib.finalize(lib.ptr((int) stmtPtrPtr));
+            int arenaPtr = lib.ptr((int) stmtPtrPtr + ARENA_PTR);
+            if (arenaPtr != 0) {
+                lib.free(arenaPtr);
+                instance.memory().write((int) stmtPtrPtr + ARENA_PTR, new byte[12]);
+            }
+            return result;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int step(long stmtPtrPtr) throws SQLException {
-        int result = lib.step(lib.ptr((int) stmtPtrPtr));
-        if (result != SQLITE_OK) {
-            return lib.extendedErrorcode(dbPtr());
+        ReentrantLock lock = enter();
+        try {
+            int result = lib.step(lib.ptr((int) stmtPtrPtr));
+            if (result != SQLITE_OK) {
+                return lib.extendedErrorcode(dbPtr());
+            }
+            return result;
+        } finally {
+            exit(lock);
         }
-        return result;
     }
 
     @Override
     public int _exec(String sql) throws SQLException {
-        int sqlBytesPtr = lib.allocCString(sql);
-
-        int status = lib.exec(dbPtr(), sqlBytesPtr, 0, 0, 0);
-        lib.free(sqlBytesPtr);
-        if (status != SQLITE_OK) {
-            int errCode = lib.extendedErrorcode(dbPtr());
-            throw DB.newSQLException(errCode, errmsg());
+        int dbPtr = dbPtr();
+        if (!sessionChanged) {
+            sessionChanged = StatementCache.changesSession(sql);
         }
+        if (StatementCache.changesSchema(sql)) {
+            synchronized (this) {
+                getStatementCache().invalidate();
+            }
+        }
+        return exec(dbPtr, sql);
+    }
+
+    private int exec(int dbPtr, String sql) throws SQLException {
+        ReentrantLock lock = lockInstance();
+        try {
+            int sqlBytesPtr = lib.allocCString(sql);
+
+            int status = lib.exec(dbPtr, sqlBytesPtr, 0, 0, 0);
+            lib.free(sqlBytesPtr);
+            if (status != SQLITE_OK) {
+                int errCode = lib.extendedErrorcode(dbPtr);
+                throw DB.newSQLException(errCode, errmsg());
+            }
 
-        return status;
+            return status;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public long changes() throws SQLException {
-        return lib.changes(dbPtr());
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            return lib.changes(dbPtr);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public void interrupt() throws SQLException {
-        lib.interrupt(dbPtr());
+        if (hibernated) {
+            return;
+        }
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            lib.interrupt(dbPtr);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public void busy_timeout(int ms) throws SQLException {
-        lib.busyTimeout(dbPtr(), ms);
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            // replaces the busy handler
+            this.busyHandler = null;
+            lib.busyTimeout(dbPtr, ms);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public void busy_handler(BusyHandler busyHandler) throws SQLException {
-        int dbPtr = dbPtr();
-        int busyHandlerPtr = BusyHandlerStore.registerBusyHandler(dbPtr, busyHandler);
-        lib.busyHandler(dbPtr, busyHandlerPtr);
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            this.busyHandler = busyHandler;
+            if (busyHandler == null) {
+                lib.clearBusyHandler(dbPtr);
+            } else {
+                lib.busyHandler(dbPtr, callbacks.userData());
+            }
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     String errmsg() throws SQLException {
-        int errPtr = lib.errmsg(dbPtr());
-        String err = instance.memory().readCString(errPtr);
-        return err;
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            int errPtr = lib.errmsg(dbPtr);
+            String err = instance.memory().readCString(errPtr);
+            return err;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
@@ -405,7 +916,13 @@ public class WasmDB extends DB implements WasmDBImports {
 
     @Override
     public long total_changes() throws SQLException {
-        return lib.totalChanges(dbPtr());
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            return lib.totalChanges(dbPtr);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
@@ -426,12 +943,52 @@ public class WasmDB extends DB implements WasmDBImports {
 
     @Override
     protected void _close() throws SQLException {
-        int dbPtr = dbPtr();
-        if (dbPtr != 0) {
-            ProgressHandlerStore.free(dbPtr);
-            BusyHandlerStore.free(dbPtr);
+        if (idleHibernation != null) {
+            idleHibernation.cancel();
+            idleHibernation = null;
+        }
+        if (hibernated) {
+            // nothing left in the Wasm instance
+            HibernationMetrics.dropped(releasedBytes, snapshot == null ? 0 : snapshot.length);
+            hibernated = false;
+            snapshot = null;
+            busyHandler = null;
             updateListeners.clear();
             commitListeners.clear();
+            return;
+        }
+        if (dbPtr == 0) {
+            // the open failed, there is no handle to close
+            if (slot != null) {
+                releaseSlot();
+                useSlot(null);
+            }
+            return;
+        }
+        int dbPtr = dbPtr();
+        callbacks.setProgressHandler(null);
+        busyHandler = null;
+        updateListeners.clear();
+        commitListeners.clear();
+        closeHandle(dbPtr);
+        releaseSlot();
+    }
+
+    private void closeHandle(int dbPtr) throws SQLException {
+        ReentrantLock lock = lockInstance();
+        try {
+            if (convertStmtPtr != 0) {
+                lib.finalize(convertStmtPtr);
+                convertStmtPtr = 0;
+            }
+            if (fetchBufPtr != 0) {
+                lib.free(fetchBufPtr);
+                fetchBufPtr = 0;
+            }
+            if (scratchPtr != 0) {
+                lib.free(scratchPtr);
+                scratchPtr = 0;
+            }
 
             int res = lib.close(dbPtr);
             if (res != SQLITE_OK) {
@@ -439,151 +996,817 @@ public class WasmDB extends DB implements WasmDBImports {
             }
 
             lib.free(dbPtrPtr);
+            if (shared) {
+                slot.imports.unregister(callbacks);
+            }
+            if (slot.memoryStatus) {
+                slot.memoryUsed = lib.memoryUsed();
+            }
 
             // The handlers tests are failing when resetting those pointers
             // TODO: investigate the reason!
             this.dbPtr = 0;
             this.dbPtrPtr = 0;
+        } finally {
+            exit(lock);
+        }
+    }
+
+    // the idle time elapsed since the last use, checked again once the connection is flagged:
+    // a concurrent use either sees the flag, and waits to revive the connection, or is seen here
+    synchronized void hibernateIfIdle() throws SQLException {
+        if (hibernated || System.nanoTime() - lastUse < idleNanos) {
+            return;
+        }
+        hibernating = true;
+        try {
+            if (System.nanoTime() - lastUse >= idleNanos) {
+                hibernate();
+            }
+        } finally {
+            hibernating = false;
+        }
+    }
+
+    @Override
+    public synchronized boolean hibernate() throws SQLException {
+        if (hibernated || isClosed() || dbPtr == 0) {
+            return false;
         }
-        if (wasiPreview1 != null) {
-            wasiPreview1.close();
+        ReentrantLock lock = lockInstance();
+        try {
+            long start = System.nanoTime();
+            // what can't be restored, or isn't worth it
+            if (hasOpenStatements()
+                    || !lib.getAutocommit(dbPtr)
+                    || !functions.isEmpty()
+                    || !collations.isEmpty()
+                    || progressHandler) {
+                return false;
+            }
+            String[] attached =
+                    queryRow(
+                            "select (select count(*) from pragma_database_list() where seq > 1)"
+                                    + " + (select count(*) from temp.sqlite_master)");
+            if (!"0".equals(attached[0])) {
+                return false;
+            }
+            String[] session = queryRow(SESSION_QUERY);
+            int[] limits = new int[SQLITE_LIMIT_COUNT];
+            for (int id = 0; id < limits.length; id++) {
+                limits[id] = lib.limit(dbPtr, id, -1);
+            }
+            // a file is reopened, an in-memory database is kept on the heap
+            String file = lib.dbFilename(dbPtr, "main");
+            byte[] snapshot = null;
+            int snapshotSize = 0;
+            if (file == null || file.isEmpty()) {
+                snapshot = serialize("main");
+                snapshotSize = snapshot.length;
+                if (compressSnapshot) {
+                    snapshot = deflate(snapshot);
+                }
+            }
+
+            // the cached statements, "begin;" and "commit;"
+            clearStatementCache();
+            if (begin != null) {
+                begin.close();
+                begin = null;
+            }
+            if (commit != null) {
+                commit.close();
+                commit = null;
+            }
+            long released = shared ? 0 : (long) instance.memory().pages() * Memory.PAGE_SIZE;
+            closeHandle(dbPtr);
+            releaseSlot();
+            useSlot(null);
+
+            this.snapshot = snapshot;
+            this.snapshotSize = snapshotSize;
+            this.sessionPragmas = session;
+            this.limits = limits;
+            this.releasedBytes = released;
+            hibernated = true;
+            HibernationMetrics.hibernated(
+                    System.nanoTime() - start, released, snapshot == null ? 0 : snapshot.length);
+            return true;
+        } finally {
+            exit(lock);
+        }
+    }
+
+    @Override
+    public boolean isHibernated() {
+        return hibernated;
+    }
+
+    // reopens the database in a new or pooled instance, as it was when hibernated
+    private synchronized void revive() throws SQLException {
+        if (!hibernated) {
+            return;
+        }
+        long start = System.nanoTime();
+        useSlot(acquireSlot());
+        hibernated = false;
+        try {
+            openHandle(openFileName, openFlags);
+            try {
+                restore();
+            } catch (SQLException | RuntimeException e) {
+                closeHandle(dbPtr);
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            // hibernated again, with the snapshot
+            this.dbPtr = 0;
+            this.dbPtrPtr = 0;
+            releaseSlot();
+            useSlot(null);
+            hibernated = true;
+            throw e;
+        }
+        HibernationMetrics.revived(
+                System.nanoTime() - start, releasedBytes, snapshot == null ? 0 : snapshot.length);
+        snapshot = null;
+        sessionPragmas = null;
+        limits = null;
+    }
+
+    private void restore() throws SQLException {
+        ReentrantLock lock = lockInstance();
+        try {
+            if (snapshot != null) {
+                deserialize(
+                        dbPtr,
+                        "main",
+                        compressSnapshot ? inflate(snapshot, snapshotSize) : snapshot);
+            }
+            StringBuilder pragmas = new StringBuilder();
+            for (int i = 0; i < SESSION_PRAGMAS.size(); i++) {
+                pragmas.append("pragma ")
+                        .append(SESSION_PRAGMAS.get(i))
+                        .append(" = ")
+                        .append(sessionPragmas[i])
+                        .append(';');
+            }
+            exec(dbPtr, pragmas.toString());
+            for (int id = 0; id < limits.length; id++) {
+                lib.limit(dbPtr, id, limits[id]);
+            }
+            if (busyHandler != null) {
+                lib.busyHandler(dbPtr, callbacks.userData());
+            } else {
+                lib.busyTimeout(dbPtr, getConfig().getBusyTimeout());
+            }
+            if (!updateListeners.isEmpty()) {
+                lib.updateHook(dbPtr, callbacks.userData());
+            }
+            if (!commitListeners.isEmpty()) {
+                lib.commitHook(dbPtr, callbacks.userData());
+                lib.rollbackHook(dbPtr, callbacks.userData());
+            }
+        } finally {
+            exit(lock);
+        }
+    }
+
+    // one row of text values, with a statement not tracked by the connection
+    private String[] queryRow(String sql) throws SQLException {
+        ReentrantLock lock = lockInstance();
+        try {
+            int stmtPtrPtr = lib.malloc(PTR_SIZE);
+            WasmDBExports.StringPtrSize str = lib.allocString(sql);
+            int res = lib.prepareV2(dbPtr, str.ptr(), str.size(), stmtPtrPtr, 0);
+            lib.free(str.ptr());
+            int stmtPtr = lib.ptr(stmtPtrPtr);
+            lib.free(stmtPtrPtr);
+            if (res != SQLITE_OK) {
+                throw DB.newSQLException(lib.extendedErrorcode(dbPtr), errmsg());
+            }
+            try {
+                int rc = lib.step(stmtPtr);
+                if (rc != SQLITE_ROW) {
+                    throw DB.newSQLException(lib.extendedErrorcode(dbPtr), errmsg());
+                }
+                String[] row = new String[lib.columnCount(stmtPtr)];
+                for (int col = 0; col < row.length; col++) {
+                    int txtPtr = lib.columnText(stmtPtr, col);
+                    row[col] =
+                            txtPtr == 0
+                                    ? null
+                                    : new String(
+                                            instance.memory()
+                                                    .readBytes(
+                                                            txtPtr, lib.columnBytes(stmtPtr, col)),
+                                            StandardCharsets.UTF_8);
+                }
+                return row;
+            } finally {
+                lib.finalize(stmtPtr);
+            }
+        } finally {
+            exit(lock);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int size) throws SQLException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[size];
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                n += inflater.inflate(result, n, size - n);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new SQLException("Failed to inflate the hibernated database", e);
+        } finally {
+            inflater.end();
         }
     }
 
     @Override
     public int reset(long stmtPtrPtr) throws SQLException {
-        return lib.reset(lib.ptr((int) stmtPtrPtr));
+        ReentrantLock lock = enter();
+        try {
+            return lib.reset(lib.ptr((int) stmtPtrPtr));
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int clear_bindings(long stmtPtrPtr) throws SQLException {
-        return lib.clearBindings(lib.ptr((int) stmtPtrPtr));
+        ReentrantLock lock = enter();
+        try {
+            int result = lib.clearBindings(lib.ptr((int) stmtPtrPtr));
+            if (result == SQLITE_OK) {
+                instance.memory().writeI32((int) stmtPtrPtr + ARENA_USED, 0);
+            }
+            return result;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     int bind_parameter_count(long stmtPtrPtr) throws SQLException {
-        return lib.bindParameterCount(lib.ptr((int) stmtPtrPtr));
+        ReentrantLock lock = enter();
+        try {
+            return lib.bindParameterCount(lib.ptr((int) stmtPtrPtr));
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int column_count(long stmtPtrPtr) throws SQLException {
-        return lib.columnCount(lib.ptr((int) stmtPtrPtr));
+        ReentrantLock lock = enter();
+        try {
+            return lib.columnCount(lib.ptr((int) stmtPtrPtr));
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int column_type(long stmtPtrPtr, int col) throws SQLException {
-        return lib.columnType(lib.ptr((int) stmtPtrPtr), col);
+        ReentrantLock lock = enter();
+        try {
+            return lib.columnType(lib.ptr((int) stmtPtrPtr), col);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public String column_decltype(long stmtPtrPtr, int col) throws SQLException {
-        int ptr = lib.columnDeclType(lib.ptr((int) stmtPtrPtr), col);
-        if (ptr == 0) {
-            return null;
-        } else {
-            return instance.memory().readCString(ptr);
+        ReentrantLock lock = enter();
+        try {
+            int ptr = lib.columnDeclType(lib.ptr((int) stmtPtrPtr), col);
+            if (ptr == 0) {
+                return null;
+            } else {
+                return instance.memory().readCString(ptr);
+            }
+        } finally {
+            exit(lock);
         }
     }
 
     @Override
     public String column_table_name(long stmtPtrPtr, int col) throws SQLException {
-        int ptr = lib.columnTableName(lib.ptr((int) stmtPtrPtr), col);
-        if (ptr == 0) {
-            return null;
+        ReentrantLock lock = enter();
+        try {
+            int ptr = lib.columnTableName(lib.ptr((int) stmtPtrPtr), col);
+            if (ptr == 0) {
+                return null;
+            }
+            return instance.memory().readCString(ptr);
+        } finally {
+            exit(lock);
         }
-        return instance.memory().readCString(ptr);
     }
 
     @Override
     public String column_name(long stmtPtrPtr, int col) throws SQLException {
-        int columnNamePtr = lib.columnName(lib.ptr((int) stmtPtrPtr), col);
-        if (columnNamePtr == 0) {
-            return null;
+        ReentrantLock lock = enter();
+        try {
+            int columnNamePtr = lib.columnName(lib.ptr((int) stmtPtrPtr), col);
+            if (columnNamePtr == 0) {
+                return null;
+            }
+            return instance.memory().readCString(columnNamePtr);
+        } finally {
+            exit(lock);
         }
-        return instance.memory().readCString(columnNamePtr);
     }
 
     @Override
     public String column_text(long stmtPtrPtr, int col) throws SQLException {
-        int stmtPtr = lib.ptr((int) stmtPtrPtr);
-        int txtPtr = lib.columnText(stmtPtr, col);
-        int txtLength = lib.columnBytes(stmtPtr, col);
-        if (txtPtr == 0) {
-            return null;
-        }
+        ReentrantLock lock = enter();
+        try {
+            int stmtPtr = lib.ptr((int) stmtPtrPtr);
+            int txtPtr = lib.columnText(stmtPtr, col);
+            int txtLength = lib.columnBytes(stmtPtr, col);
+            if (txtPtr == 0) {
+                return null;
+            }
 
-        byte[] bytes = instance.memory().readBytes(txtPtr, txtLength);
-        String result;
-        //        // TODO: verify that the fallback should be here or not ...
-        //        if (bytes.length > 0 && bytes[bytes.length - 1] == '\0') {
-        //            byte[] resBytes = new byte[bytes.length - 1];
-        //            System.arraycopy(bytes, 0, resBytes, 0, bytes.length - 1);
-        //            result = new String(resBytes, StandardCharsets.UTF_8);
-        //        } else {
-        result = new String(bytes, StandardCharsets.UTF_8);
-        //        }
-        // TODO: verify if this result doesn't need a free, looks like no
-        // exports.free(txtPtr);
-        return result;
+            byte[] bytes = instance.memory().readBytes(txtPtr, txtLength);
+            String result;
+            //        // TODO: verify that the fallback should be here or not ...
+            //        if (bytes.length > 0 && bytes[bytes.length - 1] == '\0') {
+            //            byte[] resBytes = new byte[bytes.length - 1];
+            //            System.arraycopy(bytes, 0, resBytes, 0, bytes.length - 1);
+            //            result = new String(resBytes, StandardCharsets.UTF_8);
+            //        } else {
+            result = new String(bytes, StandardCharsets.UTF_8);
+            //        }
+            // TODO: verify if this result doesn't need a free, looks like no
+            // exports.free(txtPtr);
+            return result;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public byte[] column_blob(long stmtPtrPtr, int col) throws SQLException {
-        return lib.columnBlob(lib.ptr((int) stmtPtrPtr), col);
+        ReentrantLock lock = enter();
+        try {
+            return lib.columnBlob(lib.ptr((int) stmtPtrPtr), col);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public double column_double(long stmtPtrPtr, int col) throws SQLException {
-        return lib.columnDouble(lib.ptr((int) stmtPtrPtr), col);
+        ReentrantLock lock = enter();
+        try {
+            return lib.columnDouble(lib.ptr((int) stmtPtrPtr), col);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public long column_long(long stmtPtrPtr, int col) throws SQLException {
-        return lib.columnLong(lib.ptr((int) stmtPtrPtr), col);
+        ReentrantLock lock = enter();
+        try {
+            return lib.columnLong(lib.ptr((int) stmtPtrPtr), col);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int column_int(long stmtPtrPtr, int col) throws SQLException {
-        return lib.columnInt(lib.ptr((int) stmtPtrPtr), col);
+        ReentrantLock lock = enter();
+        try {
+            return lib.columnInt(lib.ptr((int) stmtPtrPtr), col);
+        } finally {
+            exit(lock);
+        }
+    }
+
+    @Override
+    public FetchBuffer fetch(long stmtPtrPtr, int maxRows, FetchBuffer buffer) throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            int stmtPtr = lib.ptr((int) stmtPtrPtr);
+            int columns = lib.columnCount(stmtPtr);
+
+            if (fetchBufPtr == 0) {
+                fetchBufPtr = lib.malloc(FETCH_BUFFER_SIZE);
+            }
+            int rc = lib.fetch(stmtPtr, maxRows, fetchBufPtr, FETCH_BUFFER_SIZE);
+            Memory memory = instance.memory();
+            int rows = memory.readInt(fetchBufPtr);
+            int used = memory.readInt(fetchBufPtr + 4);
+            boolean pending = memory.readInt(fetchBufPtr + 8) != 0;
+            byte[] data = memory.readBytes(fetchBufPtr + FETCH_HEADER_SIZE, used);
+
+            SQLException error = null;
+            if (rc != SQLITE_ROW && rc != SQLITE_DONE) {
+                rc = lib.extendedErrorcode(dbPtr());
+                error = DB.newSQLException(rc, errmsg());
+            }
+            return buffer.load(this, columns, data, rows, pending, rc, error);
+        } finally {
+            exit(lock);
+        }
+    }
+
+    // "select ?1", used to convert the fetched values with the rules of SQLite
+    private int convertStmt() throws SQLException {
+        awake();
+        if (convertStmtPtr == 0) {
+            int stmtPtrPtr = lib.malloc(PTR_SIZE);
+            WasmDBExports.StringPtrSize str = lib.allocString("select ?1");
+            int res = lib.prepareV2(dbPtr(), str.ptr(), str.size(), stmtPtrPtr, 0);
+            lib.free(str.ptr());
+            int stmtPtr = lib.ptr(stmtPtrPtr);
+            lib.free(stmtPtrPtr);
+            if (res != SQLITE_OK) {
+                throw DB.newSQLException(lib.extendedErrorcode(dbPtr()), errmsg());
+            }
+            convertStmtPtr = stmtPtr;
+        }
+        return convertStmtPtr;
+    }
+
+    private int stepConvert(int stmtPtr) throws SQLException {
+        int rc = lib.step(stmtPtr);
+        if (rc != SQLITE_ROW) {
+            lib.reset(stmtPtr);
+            throw DB.newSQLException(lib.extendedErrorcode(dbPtr()), errmsg());
+        }
+        return stmtPtr;
+    }
+
+    private int convertText(byte[] text) throws SQLException {
+        int stmtPtr = convertStmt();
+        int textPtr = writeScratch(text);
+        int rc = lib.bindText(stmtPtr, 1, textPtr, text.length, true);
+        releaseScratch(textPtr);
+        if (rc != SQLITE_OK) {
+            throwex(rc);
+        }
+        return stepConvert(stmtPtr);
+    }
+
+    @Override
+    synchronized long text_to_long(byte[] text) throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            int stmtPtr = convertText(text);
+            try {
+                return lib.columnLong(stmtPtr, 0);
+            } finally {
+                lib.reset(stmtPtr);
+            }
+        } finally {
+            exit(lock);
+        }
+    }
+
+    @Override
+    synchronized double text_to_double(byte[] text) throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            int stmtPtr = convertText(text);
+            try {
+                return lib.columnDouble(stmtPtr, 0);
+            } finally {
+                lib.reset(stmtPtr);
+            }
+        } finally {
+            exit(lock);
+        }
+    }
+
+    @Override
+    synchronized String double_to_text(double value) throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            int stmtPtr = convertStmt();
+            int rc = lib.bindDouble(stmtPtr, 1, value);
+            if (rc != SQLITE_OK) {
+                throwex(rc);
+            }
+            stepConvert(stmtPtr);
+            try {
+                int txtPtr = lib.columnText(stmtPtr, 0);
+                int txtLength = lib.columnBytes(stmtPtr, 0);
+                return new String(
+                        instance.memory().readBytes(txtPtr, txtLength), StandardCharsets.UTF_8);
+            } finally {
+                lib.reset(stmtPtr);
+            }
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     int bind_null(long stmtPtrPtr, int pos) throws SQLException {
-        return lib.bindNull(lib.ptr((int) stmtPtrPtr), pos);
+        ReentrantLock lock = enter();
+        try {
+            return lib.bindNull(lib.ptr((int) stmtPtrPtr), pos);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     int bind_int(long stmtPtrPtr, int pos, int v) throws SQLException {
-        return lib.bindInt(lib.ptr((int) stmtPtrPtr), pos, v);
+        ReentrantLock lock = enter();
+        try {
+            return lib.bindInt(lib.ptr((int) stmtPtrPtr), pos, v);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     int bind_long(long stmtPtrPtr, int pos, long v) throws SQLException {
-        return lib.bindLong(lib.ptr((int) stmtPtrPtr), pos, v);
+        ReentrantLock lock = enter();
+        try {
+            return lib.bindLong(lib.ptr((int) stmtPtrPtr), pos, v);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     int bind_double(long stmtPtrPtr, int pos, double v) throws SQLException {
-        return lib.bindDouble(lib.ptr((int) stmtPtrPtr), pos, v);
+        ReentrantLock lock = enter();
+        try {
+            return lib.bindDouble(lib.ptr((int) stmtPtrPtr), pos, v);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     int bind_text(long stmtPtrPtr, int pos, String v) throws SQLException {
-        WasmDBExports.StringPtrSize str = lib.allocString(v);
-        int result = lib.bindText(lib.ptr((int) stmtPtrPtr), pos, str.ptr(), str.size());
-        lib.free(str.ptr());
-        return result;
+        ReentrantLock lock = enter();
+        try {
+            byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+            int arenaPtr = arenaAlloc((int) stmtPtrPtr, bytes.length);
+            if (arenaPtr != 0) {
+                instance.memory().write(arenaPtr, bytes);
+                return lib.bindText(lib.ptr((int) stmtPtrPtr), pos, arenaPtr, bytes.length, false);
+            }
+            int textPtr = writeScratch(bytes);
+            int result = lib.bindText(lib.ptr((int) stmtPtrPtr), pos, textPtr, bytes.length, true);
+            releaseScratch(textPtr);
+            return result;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     int bind_blob(long stmtPtrPtr, int pos, byte[] v) throws SQLException {
-        int blobPtr = lib.malloc(v.length);
-        instance.memory().write(blobPtr, v);
-        int result = lib.bindBlob(lib.ptr((int) stmtPtrPtr), pos, blobPtr, v.length);
-        lib.free(blobPtr);
-        return result;
+        ReentrantLock lock = enter();
+        try {
+            int arenaPtr = arenaAlloc((int) stmtPtrPtr, v.length);
+            if (arenaPtr != 0) {
+                instance.memory().write(arenaPtr, v);
+                return lib.bindBlob(lib.ptr((int) stmtPtrPtr), pos, arenaPtr, v.length, false);
+            }
+            int blobPtr = writeScratch(v);
+            int result = lib.bindBlob(lib.ptr((int) stmtPtrPtr), pos, blobPtr, v.length, true);
+            releaseScratch(blobPtr);
+            return result;
+        } finally {
+            exit(lock);
+        }
+    }
+
+    @Override
+    int bind_all(long stmtPtrPtr, Parameters vals, int offset, int count) throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            if (count == 0) {
+                return SQLITE_OK;
+            }
+            ByteBuffer buf = packParams(vals, offset, count, 0);
+            int bufPtr = writeParams((int) stmtPtrPtr, buf);
+            boolean copy = bufPtr != lib.ptr((int) stmtPtrPtr + ARENA_PTR);
+            int stmtPtr = lib.ptr((int) stmtPtrPtr);
+            try {
+                int rc = lib.bindAll(stmtPtr, bufPtr, count, copy);
+                if (rc != SQLITE_OK) {
+                    // don't leave parameters bound to bytes that are going to be reused
+                    clear_bindings(stmtPtrPtr);
+                }
+                return rc;
+            } finally {
+                if (copy) {
+                    lib.free(bufPtr);
+                }
+            }
+        } finally {
+            exit(lock);
+        }
+    }
+
+    @Override
+    void execute_batch(
+            long stmtPtrPtr, Parameters vals, int from, int rows, int params, long[] changes)
+            throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            int stmtPtr = lib.ptr((int) stmtPtrPtr);
+            // the slots of a call take at most half of the arena
+            int rowsPerCall =
+                    Math.min(
+                            BATCH_MAX_ROWS,
+                            Math.max(
+                                    1,
+                                    ARENA_MAX_SIZE / 2 / (BIND_SLOT_SIZE * Math.max(params, 1))));
+            int end = from + rows;
+            for (int row = from; row < end; row += rowsPerCall) {
+                int n = Math.min(rowsPerCall, end - row);
+                int outSize = 4 + 8 * n;
+                ByteBuffer buf = packParams(vals, row * params, n * params, outSize);
+                int outOffset = buf.capacity() - outSize;
+                int bufPtr = writeParams((int) stmtPtrPtr, buf);
+                boolean copy = bufPtr != lib.ptr((int) stmtPtrPtr + ARENA_PTR);
+                try {
+                    int rc = lib.executeBatch(stmtPtr, bufPtr, n, params, bufPtr + outOffset, copy);
+                    ByteBuffer out =
+                            ByteBuffer.wrap(
+                                            instance.memory()
+                                                    .readBytes(bufPtr + outOffset, outSize))
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+                    int done = out.getInt();
+                    for (int i = 0; i < done; i++) {
+                        changes[row + i] = out.getLong();
+                    }
+                    if (rc != SQLITE_OK) {
+                        // the extended code, as step reports it
+                        if (rc != SQLITE_ROW) {
+                            rc = lib.extendedErrorcode(dbPtr());
+                        }
+                        clear_bindings(stmtPtrPtr);
+                        throwBatchError(rc, row + done, changes);
+                    }
+                } finally {
+                    if (copy) {
+                        lib.free(bufPtr);
+                    }
+                }
+            }
+        } finally {
+            exit(lock);
+        }
+    }
+
+    // packs count parameters, from vals[offset], in the sqlite4j_bind_all format:
+    // the slots followed by the text and blob bytes, extra free bytes are left at the end
+    private static ByteBuffer packParams(Parameters vals, int offset, int count, int extra) {
+        byte[][] bytes = null;
+        int size = count * BIND_SLOT_SIZE;
+        for (int i = 0; i < count; i++) {
+            int type = vals.sqliteType(offset + i);
+            if (type == SQLITE_TEXT || type == SQLITE_BLOB) {
+                if (bytes == null) {
+                    bytes = new byte[count][];
+                }
+                bytes[i] =
+                        type == SQLITE_TEXT
+                                ? vals.text(offset + i).getBytes(StandardCharsets.UTF_8)
+                                : vals.blob(offset + i);
+                size += bytes[i].length;
+            }
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size + extra).order(ByteOrder.LITTLE_ENDIAN);
+        int data = count * BIND_SLOT_SIZE;
+        for (int i = 0; i < count; i++) {
+            int type = vals.sqliteType(offset + i);
+            switch (type) {
+                case SQLITE_INTEGER:
+                    buf.putInt(SQLITE_INTEGER).putInt(0).putLong(vals.longValue(offset + i));
+                    break;
+                case SQLITE_FLOAT:
+                    buf.putInt(SQLITE_FLOAT).putInt(0).putDouble(vals.doubleValue(offset + i));
+                    break;
+                case SQLITE_TEXT:
+                case SQLITE_BLOB:
+                    int length = bytes[i].length;
+                    buf.putInt(type).putInt(length).putLong(data);
+                    System.arraycopy(bytes[i], 0, buf.array(), data, length);
+                    data += length;
+                    break;
+                default:
+                    buf.putInt(SQLITE_NULL).putInt(0).putLong(0L);
+                    break;
+            }
+        }
+        return buf;
+    }
+
+    // copies the packed parameters in the arena of the statement, all its parameters are
+    // going to be bound again, when they don't fit in ARENA_MAX_SIZE a dedicated allocation
+    // is returned instead, the caller binds it with SQLITE_TRANSIENT and frees it
+    private int writeParams(int stmtPtrPtr, ByteBuffer buf) {
+        int size = buf.capacity();
+        Memory memory = instance.memory();
+        int bufPtr;
+        if (size > ARENA_MAX_SIZE) {
+            bufPtr = lib.malloc(size);
+            memory.writeI32(stmtPtrPtr + ARENA_USED, 0);
+        } else {
+            bufPtr = memory.readInt(stmtPtrPtr + ARENA_PTR);
+            if (size > memory.readInt(stmtPtrPtr + ARENA_CAPACITY)) {
+                if (bufPtr != 0) {
+                    lib.free(bufPtr);
+                }
+                int capacity = arenaCapacity(size);
+                bufPtr = lib.malloc(capacity);
+                memory.writeI32(stmtPtrPtr + ARENA_PTR, bufPtr);
+                memory.writeI32(stmtPtrPtr + ARENA_CAPACITY, capacity);
+            }
+            memory.writeI32(stmtPtrPtr + ARENA_USED, size);
+        }
+        memory.write(bufPtr, buf.array());
+        return bufPtr;
+    }
+
+    // bumps size bytes from the arena of the statement, 0 if they don't fit
+    private int arenaAlloc(int stmtPtrPtr, int size) {
+        Memory memory = instance.memory();
+        int arenaPtr = memory.readInt(stmtPtrPtr + ARENA_PTR);
+        if (arenaPtr == 0) {
+            if (size > ARENA_MAX_SIZE) {
+                return 0;
+            }
+            int capacity = arenaCapacity(size);
+            arenaPtr = lib.malloc(capacity);
+            memory.writeI32(stmtPtrPtr + ARENA_PTR, arenaPtr);
+            memory.writeI32(stmtPtrPtr + ARENA_CAPACITY, capacity);
+        }
+        int used = memory.readInt(stmtPtrPtr + ARENA_USED);
+        if (size > memory.readInt(stmtPtrPtr + ARENA_CAPACITY) - used) {
+            return 0;
+        }
+        memory.writeI32(stmtPtrPtr + ARENA_USED, used + size);
+        return arenaPtr + used;
+    }
+
+    private static int arenaCapacity(int size) {
+        return Math.max(ARENA_MIN_SIZE, Integer.highestOneBit(Math.max(size - 1, 1)) << 1);
     }
 
+    // copies the bytes in the scratch buffer of the connection, or in a dedicated allocation
+    // when they don't fit, for values passed with SQLITE_TRANSIENT, release with releaseScratch
+    private int writeScratch(byte[] bytes) {
+        int ptr;
+        if (bytes.length <= SCRATCH_SIZE) {
+            if (scratchPtr == 0) {
+                scratchPtr = lib.malloc(SCRATCH_SIZE);
+            }
+            ptr = scratchPtr;
+        } else {
+            ptr = lib.malloc(bytes.length);
+        }
+        instance.memory().write(ptr, bytes);
+        return ptr;
+    }
+
+    private void releaseScratch(int ptr) {
+        if (ptr != scratchPtr) {
+            lib.free(ptr);
+        }
+    }
+
+    // the functions set their results and read their values within a call of the operation
+    // running them, under its lock
     @Override
     public void result_null(long context) throws SQLException {
         lib.resultNull((int) context);
@@ -596,17 +1819,17 @@ public class WasmDB extends DB implements WasmDBImports {
             return;
         }
 
-        WasmDBExports.StringPtrSize txt = lib.allocString(val);
-        lib.resultText((int) context, txt.ptr(), txt.size());
-        lib.free(txt.ptr());
+        byte[] bytes = val.getBytes(StandardCharsets.UTF_8);
+        int txtPtr = writeScratch(bytes);
+        lib.resultText((int) context, txtPtr, bytes.length);
+        releaseScratch(txtPtr);
     }
 
     @Override
     public void result_blob(long context, byte[] v) throws SQLException {
-        int blobPtr = lib.malloc(v.length);
-        instance.memory().write(blobPtr, v);
+        int blobPtr = writeScratch(v);
         lib.resultBlob((int) context, blobPtr, v.length);
-        lib.free(blobPtr);
+        releaseScratch(blobPtr);
     }
 
     @Override
@@ -632,19 +1855,17 @@ public class WasmDB extends DB implements WasmDBImports {
         }
 
         byte[] v = err.getBytes(StandardCharsets.UTF_8);
-        int blobPtr = lib.malloc(v.length);
-        instance.memory().write(blobPtr, v);
+        int blobPtr = writeScratch(v);
         lib.resultError((int) context, blobPtr, v.length);
-        lib.free(blobPtr);
+        releaseScratch(blobPtr);
     }
 
     @Override
     public String value_text(Function f, int arg) throws SQLException {
         int valuePtrPtr = lib.ptr((int) f.getValueArg(arg));
         int txtPtr = lib.valueText(valuePtrPtr);
-        String result = instance.memory().readCString(txtPtr);
-        lib.free(txtPtr);
-        return result;
+        // owned by SQLite
+        return instance.memory().readCString(txtPtr);
     }
 
     @Override
@@ -652,9 +1873,8 @@ public class WasmDB extends DB implements WasmDBImports {
         int valuePtrPtr = lib.ptr((int) f.getValueArg(arg));
         int blobPtr = lib.valueBlob(valuePtrPtr);
         int length = lib.valueBytes(valuePtrPtr);
-        byte[] blob = instance.memory().readBytes(blobPtr, length);
-        lib.free(blobPtr);
-        return blob;
+        // owned by SQLite
+        return instance.memory().readBytes(blobPtr, length);
     }
 
     @Override
@@ -683,55 +1903,95 @@ public class WasmDB extends DB implements WasmDBImports {
 
     @Override
     public int create_function(String name, Function f, int nArgs, int flags) throws SQLException {
-        int namePtr = lib.allocCString(name);
-        int userData = UDFStore.registerFunction(name, f);
-
-        int result;
-        if (f instanceof Function.Aggregate) {
-            boolean isWindow = f instanceof Function.Window;
-            result =
-                    lib.createFunctionAggregate(dbPtr(), namePtr, nArgs, flags, userData, isWindow);
-        } else {
-            result = lib.createFunction(dbPtr(), namePtr, nArgs, flags, userData);
+        ReentrantLock lock = enter();
+        try {
+            awake();
+            int namePtr = lib.allocCString(name);
+            int userData = callbacks.registerFunction(name, f);
+
+            int result;
+            if (f instanceof Function.Aggregate) {
+                boolean isWindow = f instanceof Function.Window;
+                result =
+                        lib.createFunctionAggregate(
+                                dbPtr(), namePtr, nArgs, flags, userData, isWindow);
+            } else {
+                result = lib.createFunction(dbPtr(), namePtr, nArgs, flags, userData);
+            }
+            lib.free(namePtr);
+            if (result == SQLITE_OK) {
+                functions.computeIfAbsent(name, k -> new HashSet<>()).add(nArgs);
+            }
+            return result;
+        } finally {
+            exit(lock);
         }
-        lib.free(namePtr);
-        return result;
     }
 
     @Override
     public int destroy_function(String name) throws SQLException {
-        int namePtr = lib.allocCString(name);
-        int result = lib.createNullFunction(dbPtr(), namePtr);
-        UDFStore.free(name);
-        lib.free(namePtr);
-        return result;
+        ReentrantLock lock = enter();
+        try {
+            awake();
+            int namePtr = lib.allocCString(name);
+            // every overload, as registered
+            Set<Integer> arities = functions.remove(name);
+            int result = SQLITE_OK;
+            for (int nArgs : arities == null ? Set.of(0) : arities) {
+                result = lib.createNullFunction(dbPtr(), namePtr, nArgs);
+            }
+            callbacks.freeFunction(name);
+            lib.free(namePtr);
+            return result;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int create_collation(String name, Collation c) throws SQLException {
-        int namePtr = lib.allocCString(name);
-        int userData = collationStore.registerCollation(name, c);
-
-        int result = lib.createCollation(dbPtr(), namePtr, SQLITE_UTF8, userData);
-        lib.free(namePtr);
-        return result;
+        ReentrantLock lock = enter();
+        try {
+            awake();
+            int namePtr = lib.allocCString(name);
+            int userData = callbacks.registerCollation(name, c);
+
+            int result = lib.createCollation(dbPtr(), namePtr, SQLITE_UTF8, userData);
+            lib.free(namePtr);
+            if (result == SQLITE_OK) {
+                collations.add(name);
+            }
+            return result;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int destroy_collation(String name) throws SQLException {
-        collationStore.free(name);
+        ReentrantLock lock = enter();
+        try {
+            awake();
+            callbacks.freeCollation(name);
+            collations.remove(name);
 
-        int namePtr = lib.allocCString(name);
+            int namePtr = lib.allocCString(name);
 
-        int result = lib.destroyCollation(dbPtr(), namePtr);
-        lib.free(namePtr);
-        return result;
+            int result = lib.destroyCollation(dbPtr(), namePtr);
+            lib.free(namePtr);
+            return result;
+        } finally {
+            exit(lock);
+        }
     }
 
     private static final int DEFAULT_BACKUP_BUSY_SLEEP_TIME_MILLIS = 100;
     private static final int DEFAULT_BACKUP_NUM_BUSY_BEFORE_FAIL = 3;
     private static final int DEFAULT_PAGES_PER_BACKUP_STEP = 100;
 
+    // https://www.sqlite.org/c3ref/c_limit_attached.html
+    private static final int SQLITE_LIMIT_COUNT = 12;
+
     private static final int SQLITE_OPEN_READONLY = 0x00000001; /* Ok for sqlite3_open_v2() */
     private static final int SQLITE_OPEN_READWRITE = 0x00000002; /* Ok for sqlite3_open_v2() */
     private static final int SQLITE_OPEN_CREATE = 0x00000004; /* Ok for sqlite3_open_v2() */
@@ -762,78 +2022,85 @@ public class WasmDB extends DB implements WasmDBImports {
             int nTimeoutLimit,
             int pagesPerStep)
             throws SQLException {
-        int originNamePtr = lib.allocCString(dbName);
-        int destNamePtr = lib.allocCString(destFileName);
-        int mainStrPtr = lib.allocCString("main");
-        int destDbPtr = lib.malloc(PTR_SIZE);
-
-        int flags = SQLITE_OPEN_READWRITE + SQLITE_OPEN_CREATE;
-        if (destFileName.startsWith("file:")) {
-            flags += SQLITE_OPEN_URI;
-        }
-
-        // TODO: verify why we need this dance around VFS
-        Path dest = fs.getPath(destFileName);
-        try {
-            Files.createDirectories(dest.getParent());
-        } catch (FileAlreadyExistsException e) {
-            // TODO: review carefully the rest of the usage of createDirectories
-            // createDirectories is failing
-        } catch (IOException e) {
-            throw new SQLiteException(
-                    "failed to map to in-memory VFS " + e.getMessage(),
-                    SQLiteErrorCode.SQLITE_ERROR);
-        }
-        try {
-            Files.deleteIfExists(dest);
-        } catch (IOException e) {
-            throw new SQLiteException(
-                    "failed to map to in-memory VFS " + e.getMessage(),
-                    SQLiteErrorCode.SQLITE_ERROR);
-        }
-
-        int rc = lib.openV2(destNamePtr, destDbPtr, flags, 0);
-        int nTimeout = 0;
-        if (rc == SQLITE_OK) {
-            int pBackup = lib.backupInit(lib.ptr(destDbPtr), mainStrPtr, dbPtr(), originNamePtr);
-            do {
-                rc = lib.backupStep(pBackup, pagesPerStep);
-
-                // if the step completed successfully, update progress
-                if (observer != null && (rc == SQLITE_OK || rc == SQLITE_DONE)) {
-                    int remaining = lib.backupRemaining(pBackup);
-                    int pageCount = lib.backupPageCount(pBackup);
-                    observer.progress(remaining, pageCount);
-                }
+        awake();
+        ReentrantLock lock = enter();
+        try {
+            int originNamePtr = lib.allocCString(dbName);
+            int destNamePtr = lib.allocCString(destFileName);
+            int mainStrPtr = lib.allocCString("main");
+            int destDbPtr = lib.malloc(PTR_SIZE);
+
+            int flags = SQLITE_OPEN_READWRITE + SQLITE_OPEN_CREATE;
+            if (destFileName.startsWith("file:")) {
+                flags += SQLITE_OPEN_URI;
+            }
+
+            // TODO: verify why we need this dance around VFS
+            Path dest = fs.getPath(destFileName);
+            try {
+                Files.createDirectories(dest.getParent());
+            } catch (FileAlreadyExistsException e) {
+                // TODO: review carefully the rest of the usage of createDirectories
+                // createDirectories is failing
+            } catch (IOException e) {
+                throw new SQLiteException(
+                        "failed to map to in-memory VFS " + e.getMessage(),
+                        SQLiteErrorCode.SQLITE_ERROR);
+            }
+            try {
+                Files.deleteIfExists(dest);
+            } catch (IOException e) {
+                throw new SQLiteException(
+                        "failed to map to in-memory VFS " + e.getMessage(),
+                        SQLiteErrorCode.SQLITE_ERROR);
+            }
 
-                if (rc == SQLITE_BUSY || rc == SQLITE_LOCKED) {
-                    if (nTimeout++ >= nTimeoutLimit) {
-                        break;
+            int rc = lib.openV2(destNamePtr, destDbPtr, flags, 0);
+            int nTimeout = 0;
+            if (rc == SQLITE_OK) {
+                int pBackup =
+                        lib.backupInit(lib.ptr(destDbPtr), mainStrPtr, dbPtr(), originNamePtr);
+                do {
+                    rc = lib.backupStep(pBackup, pagesPerStep);
+
+                    // if the step completed successfully, update progress
+                    if (observer != null && (rc == SQLITE_OK || rc == SQLITE_DONE)) {
+                        int remaining = lib.backupRemaining(pBackup);
+                        int pageCount = lib.backupPageCount(pBackup);
+                        observer.progress(remaining, pageCount);
                     }
-                    lib.sleep(sleepTimeMillis);
-                }
-            } while (rc == SQLITE_OK || rc == SQLITE_BUSY || rc == SQLITE_LOCKED);
 
-            lib.backupFinish(pBackup);
-            rc = lib.extendedErrorcode(lib.ptr(destDbPtr));
-        }
+                    if (rc == SQLITE_BUSY || rc == SQLITE_LOCKED) {
+                        if (nTimeout++ >= nTimeoutLimit) {
+                            break;
+                        }
+                        lib.sleep(sleepTimeMillis);
+                    }
+                } while (rc == SQLITE_OK || rc == SQLITE_BUSY || rc == SQLITE_LOCKED);
 
-        lib.free(originNamePtr);
-        lib.free(destNamePtr);
-        lib.free(destDbPtr);
-        lib.free(mainStrPtr);
+                lib.backupFinish(pBackup);
+                rc = lib.extendedErrorcode(lib.ptr(destDbPtr));
+            }
 
-        // and now copy the backup file from the VFS to the real disk
-        Path realDiskDest = Path.of(destFileName);
-        try {
-            java.nio.file.Files.copy(dest, realDiskDest, StandardCopyOption.REPLACE_EXISTING);
-            Files.deleteIfExists(dest);
-        } catch (IOException e) {
-            throw new SQLiteException(
-                    "failed to map to in-memory VFS " + e.getMessage(),
-                    SQLiteErrorCode.SQLITE_ERROR);
+            lib.free(originNamePtr);
+            lib.free(destNamePtr);
+            lib.free(destDbPtr);
+            lib.free(mainStrPtr);
+
+            // and now copy the backup file from the VFS to the real disk
+            Path realDiskDest = Path.of(destFileName);
+            try {
+                java.nio.file.Files.copy(dest, realDiskDest, StandardCopyOption.REPLACE_EXISTING);
+                Files.deleteIfExists(dest);
+            } catch (IOException e) {
+                throw new SQLiteException(
+                        "failed to map to in-memory VFS " + e.getMessage(),
+                        SQLiteErrorCode.SQLITE_ERROR);
+            }
+            return rc;
+        } finally {
+            exit(lock);
         }
-        return rc;
     }
 
     @Override
@@ -857,185 +2124,279 @@ public class WasmDB extends DB implements WasmDBImports {
             int nTimeoutLimit,
             int pagesPerStep)
             throws SQLException {
-        int destNamePtr = lib.allocCString(dbName);
-        int sourceNamePtr = lib.allocCString(sourceFileName);
-        int mainStrPtr = lib.allocCString("main");
-        int sourceDbPtr = lib.malloc(PTR_SIZE);
-
-        int flags = SQLITE_OPEN_READONLY;
-        if (sourceFileName.startsWith("file:")) {
-            flags += SQLITE_OPEN_URI;
-        }
-
-        // and now copy the backup file from the VFS to the real disk
-        Path realDiskSource = Path.of(sourceFileName);
-        Path source = fs.getPath(sourceFileName);
-        try {
-            Files.createDirectories(source);
-            java.nio.file.Files.copy(realDiskSource, source, StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            throw new SQLiteException(
-                    "failed to map to in-memory VFS " + e.getMessage(),
-                    SQLiteErrorCode.SQLITE_ERROR);
-        }
-
-        int rc = lib.openV2(sourceNamePtr, sourceDbPtr, flags, 0);
-        int nTimeout = 0;
-        if (rc == SQLITE_OK) {
-            int pBackup = lib.backupInit(dbPtr(), destNamePtr, lib.ptr(sourceDbPtr), mainStrPtr);
-            do {
-                rc = lib.backupStep(pBackup, pagesPerStep);
-
-                // if the step completed successfully, update progress
-                if (observer != null && (rc == SQLITE_OK || rc == SQLITE_DONE)) {
-                    int remaining = lib.backupRemaining(pBackup);
-                    int pageCount = lib.backupPageCount(pBackup);
-                    observer.progress(remaining, pageCount);
-                }
+        awake();
+        ReentrantLock lock = enter();
+        try {
+            int destNamePtr = lib.allocCString(dbName);
+            int sourceNamePtr = lib.allocCString(sourceFileName);
+            int mainStrPtr = lib.allocCString("main");
+            int sourceDbPtr = lib.malloc(PTR_SIZE);
+
+            int flags = SQLITE_OPEN_READONLY;
+            if (sourceFileName.startsWith("file:")) {
+                flags += SQLITE_OPEN_URI;
+            }
 
-                if (rc == SQLITE_BUSY || rc == SQLITE_LOCKED) {
-                    if (nTimeout++ >= nTimeoutLimit) {
-                        break;
+            // and now copy the backup file from the VFS to the real disk
+            Path realDiskSource = Path.of(sourceFileName);
+            Path source = fs.getPath(sourceFileName);
+            try {
+                Files.createDirectories(source);
+                java.nio.file.Files.copy(
+                        realDiskSource, source, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new SQLiteException(
+                        "failed to map to in-memory VFS " + e.getMessage(),
+                        SQLiteErrorCode.SQLITE_ERROR);
+            }
+
+            int rc = lib.openV2(sourceNamePtr, sourceDbPtr, flags, 0);
+            int nTimeout = 0;
+            if (rc == SQLITE_OK) {
+                int pBackup =
+                        lib.backupInit(dbPtr(), destNamePtr, lib.ptr(sourceDbPtr), mainStrPtr);
+                do {
+                    rc = lib.backupStep(pBackup, pagesPerStep);
+
+                    // if the step completed successfully, update progress
+                    if (observer != null && (rc == SQLITE_OK || rc == SQLITE_DONE)) {
+                        int remaining = lib.backupRemaining(pBackup);
+                        int pageCount = lib.backupPageCount(pBackup);
+                        observer.progress(remaining, pageCount);
                     }
-                    lib.sleep(sleepTimeMillis);
-                }
-            } while (rc == SQLITE_OK || rc == SQLITE_BUSY || rc == SQLITE_LOCKED);
 
-            lib.backupFinish(pBackup);
-            rc = lib.extendedErrorcode(lib.ptr(sourceDbPtr));
-        }
+                    if (rc == SQLITE_BUSY || rc == SQLITE_LOCKED) {
+                        if (nTimeout++ >= nTimeoutLimit) {
+                            break;
+                        }
+                        lib.sleep(sleepTimeMillis);
+                    }
+                } while (rc == SQLITE_OK || rc == SQLITE_BUSY || rc == SQLITE_LOCKED);
+
+                lib.backupFinish(pBackup);
+                rc = lib.extendedErrorcode(lib.ptr(sourceDbPtr));
+            }
 
-        lib.free(destNamePtr);
-        lib.free(destNamePtr);
-        lib.free(sourceDbPtr);
-        lib.free(mainStrPtr);
+            lib.free(destNamePtr);
+            lib.free(destNamePtr);
+            lib.free(sourceDbPtr);
+            lib.free(mainStrPtr);
 
-        return rc;
+            return rc;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public int limit(int id, int value) throws SQLException {
-        return lib.limit(dbPtr(), id, value);
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            return lib.limit(dbPtr, id, value);
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public void register_progress_handler(int vmCalls, ProgressHandler progressHandler)
             throws SQLException {
-        int progressHandlerIdx = dbPtr();
-        ProgressHandlerStore.registerProgressHandler(progressHandlerIdx, progressHandler);
-        lib.progressHandler(dbPtr(), vmCalls, progressHandlerIdx);
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            callbacks.setProgressHandler(progressHandler);
+            lib.progressHandler(dbPtr, vmCalls, callbacks.userData());
+            this.progressHandler = true;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
     public void clear_progress_handler() throws SQLException {
-        ProgressHandlerStore.free(dbPtr());
-        lib.progressHandler(dbPtr(), 0, 0);
+        ReentrantLock lock = enter();
+        try {
+            int dbPtr = dbPtr();
+            callbacks.setProgressHandler(null);
+            lib.progressHandler(dbPtr, 0, 0);
+            this.progressHandler = false;
+        } finally {
+            exit(lock);
+        }
     }
 
     @Override
-    boolean[][] column_metadata(long stmtPtrPtr) throws SQLException {
-        int stmtPtr = lib.ptr((int) stmtPtrPtr);
-        int colCount = lib.columnCount(stmtPtr);
-
-        boolean[][] result = new boolean[colCount][3];
-
-        for (int i = 0; i < colCount; i++) {
-            // load passed column name and table name
-            int zColumnNamePtr = lib.columnName(stmtPtr, i);
-            int zTableNamePtr = lib.columnTableName(stmtPtr, i);
-
-            int pNotNullPtr = lib.malloc(1);
-            int pPrimaryKeyPtr = lib.malloc(1);
-            int pAutoincPtr = lib.malloc(1);
-
-            instance.memory().writeByte(pNotNullPtr, (byte) 0);
-            instance.memory().writeByte(pPrimaryKeyPtr, (byte) 0);
-            instance.memory().writeByte(pAutoincPtr, (byte) 0);
-
-            int res =
-                    lib.columnMetadata(
-                            dbPtr(),
-                            zTableNamePtr,
-                            zColumnNamePtr,
-                            pNotNullPtr,
-                            pPrimaryKeyPtr,
-                            pAutoincPtr);
-            assert (res == SQLITE_OK);
+    public synchronized boolean reset_session(int busyTimeout) throws SQLException {
+        for (String name : new ArrayList<>(functions.keySet())) {
+            destroy_function(name);
+        }
+        for (String name : new ArrayList<>(collations)) {
+            destroy_collation(name);
+        }
+        if (progressHandler) {
+            clear_progress_handler();
+        }
+        if (busyHandler != null || getConfig().getBusyTimeout() != busyTimeout) {
+            getConfig().setBusyTimeout(busyTimeout);
+            busy_timeout(busyTimeout);
+        }
+        if (!updateListeners.isEmpty()) {
+            updateListeners.clear();
+            set_update_listener(false);
+        }
+        if (!commitListeners.isEmpty()) {
+            commitListeners.clear();
+            set_commit_listener(false);
+        }
+        boolean changed = sessionChanged;
+        sessionChanged = false;
+        return changed;
+    }
 
-            result[i][0] = instance.memory().read(pNotNullPtr) > 0;
-            result[i][1] = instance.memory().read(pPrimaryKeyPtr) > 0;
-            result[i][2] = instance.memory().read(pAutoincPtr) > 0;
-            lib.free(pNotNullPtr);
-            lib.free(pPrimaryKeyPtr);
-            lib.free(pAutoincPtr);
+    @Override
+    boolean[][] column_metadata(long stmtPtrPtr) throws SQLException {
+        ReentrantLock lock = enter();
+        try {
+            int stmtPtr = lib.ptr((int) stmtPtrPtr);
+            int colCount = lib.columnCount(stmtPtr);
+
+            boolean[][] result = new boolean[colCount][3];
+
+            for (int i = 0; i < colCount; i++) {
+                // load passed column name and table name
+                int zColumnNamePtr = lib.columnName(stmtPtr, i);
+                int zTableNamePtr = lib.columnTableName(stmtPtr, i);
+
+                int pNotNullPtr = lib.malloc(1);
+                int pPrimaryKeyPtr = lib.malloc(1);
+                int pAutoincPtr = lib.malloc(1);
+
+                instance.memory().writeByte(pNotNullPtr, (byte) 0);
+                instance.memory().writeByte(pPrimaryKeyPtr, (byte) 0);
+                instance.memory().writeByte(pAutoincPtr, (byte) 0);
+
+                int res =
+                        lib.columnMetadata(
+                                dbPtr(),
+                                zTableNamePtr,
+                                zColumnNamePtr,
+                                pNotNullPtr,
+                                pPrimaryKeyPtr,
+                                pAutoincPtr);
+                assert (res == SQLITE_OK);
+
+                result[i][0] = instance.memory().read(pNotNullPtr) > 0;
+                result[i][1] = instance.memory().read(pPrimaryKeyPtr) > 0;
+                result[i][2] = instance.memory().read(pAutoincPtr) > 0;
+                lib.free(pNotNullPtr);
+                lib.free(pPrimaryKeyPtr);
+                lib.free(pAutoincPtr);
+            }
+            return result;
+        } finally {
+            exit(lock);
         }
-        return result;
     }
 
     @Override
     void set_commit_listener(boolean enabled) {
-        if (enabled) {
-            lib.commitHook(this.dbPtr, 0);
-            lib.rollbackHook(this.dbPtr, 0);
-        } else {
-            lib.deleteCommitHook(this.dbPtr);
-            lib.deleteRollbackHook(this.dbPtr);
+        if (hibernated) {
+            // set when revived
+            return;
+        }
+        ReentrantLock lock = lockInstance();
+        try {
+            if (enabled) {
+                lib.commitHook(this.dbPtr, callbacks.userData());
+                lib.rollbackHook(this.dbPtr, callbacks.userData());
+            } else {
+                lib.deleteCommitHook(this.dbPtr);
+                lib.deleteRollbackHook(this.dbPtr);
+            }
+        } finally {
+            exit(lock);
         }
     }
 
     @Override
     void set_update_listener(boolean enabled) {
-        if (enabled) {
-            lib.updateHook(this.dbPtr, 0);
-        } else {
-            lib.deleteUpdateHook(this.dbPtr);
+        if (hibernated) {
+            return;
+        }
+        ReentrantLock lock = lockInstance();
+        try {
+            if (enabled) {
+                lib.updateHook(this.dbPtr, callbacks.userData());
+            } else {
+                lib.deleteUpdateHook(this.dbPtr);
+            }
+        } finally {
+            exit(lock);
         }
     }
 
     @Override
     public byte[] serialize(String schema) throws SQLException {
-        int schemaPtr = lib.allocCString(schema);
-        int sizePtr = lib.malloc(8);
+        ReentrantLock lock = enter();
+        try {
+            awake();
+            int schemaPtr = lib.allocCString(schema);
+            int sizePtr = lib.malloc(8);
+
+            int buffPtr = lib.serialize(dbPtr(), schemaPtr, sizePtr, SQLITE_SERIALIZE_NOCOPY);
+            boolean needFree = false;
+            if (buffPtr == 0) {
+                // This happens if we start without a deserialized database
+                buffPtr = lib.serialize(dbPtr(), schemaPtr, sizePtr, 0);
+                needFree = true;
+            }
 
-        int buffPtr = lib.serialize(dbPtr(), schemaPtr, sizePtr, SQLITE_SERIALIZE_NOCOPY);
-        boolean needFree = false;
-        if (buffPtr == 0) {
-            // This happens if we start without a deserialized database
-            buffPtr = lib.serialize(dbPtr(), schemaPtr, sizePtr, 0);
-            needFree = true;
-        }
+            long buffSize = instance.memory().readLong(sizePtr);
 
-        long buffSize = instance.memory().readLong(sizePtr);
+            if (buffSize > Integer.MAX_VALUE || buffSize < 0L) {
+                throw new SQLException("Serialized buffer is larger than an integer");
+            }
 
-        if (buffSize > Integer.MAX_VALUE || buffSize < 0L) {
-            throw new SQLException("Serialized buffer is larger than an integer");
-        }
+            lib.free(sizePtr);
+            lib.free(schemaPtr);
 
-        lib.free(sizePtr);
-        lib.free(schemaPtr);
+            byte[] result = instance.memory().readBytes(buffPtr, (int) buffSize);
+            if (needFree) {
+                lib.sqliteFree(buffPtr);
+            }
 
-        byte[] result = instance.memory().readBytes(buffPtr, (int) buffSize);
-        if (needFree) {
-            lib.free(buffPtr);
+            return result;
+        } finally {
+            exit(lock);
         }
-
-        return result;
     }
 
     @Override
     public void deserialize(String schema, byte[] buff) throws SQLException {
-        int schemaPtr = lib.allocCString(schema);
-        int buffPtr = lib.malloc(buff.length);
-        instance.memory().write(buffPtr, buff);
+        awake();
+        deserialize(dbPtr(), schema, buff);
+    }
 
-        int res = lib.deserialize(dbPtr(), schemaPtr, buffPtr, buff.length);
-        if (res != SQLITE_OK) {
-            throw DB.newSQLException(res, errmsg());
-        }
+    private void deserialize(int dbPtr, String schema, byte[] buff) throws SQLException {
+        ReentrantLock lock = lockInstance();
+        try {
+            int schemaPtr = lib.allocCString(schema);
+            // freed and resized by SQLite
+            int buffPtr = lib.sqliteMalloc(buff.length);
+            instance.memory().write(buffPtr, buff);
+
+            int res = lib.deserialize(dbPtr, schemaPtr, buffPtr, buff.length);
+            if (res != SQLITE_OK) {
+                throw DB.newSQLException(res, errmsg());
+            }
 
-        // DO NOT FREE those!
-        // exports.free(schemaPtr);
-        // exports.free(buffPtr);
+            // DO NOT FREE those!
+            // exports.free(schemaPtr);
+            // exports.free(buffPtr);
+        } finally {
+            exit(lock);
+        }
     }
 
     /**
@@ -1048,7 +2409,7 @@ public class WasmDB extends DB implements WasmDBImports {
             return 0L;
         }
 
-        if (ProgressHandlerStore.isEmpty(dbPtr())) {
+        if (callbacks.progressHandler() == null) {
             return 0L;
         } else {
             return 1L;
@@ -1065,13 +2426,21 @@ public class WasmDB extends DB implements WasmDBImports {
             return 0L;
         }
 
-        if (BusyHandlerStore.isEmpty(dbPtr())) {
+        if (busyHandler == null) {
             return 0L;
         } else {
             return 1L;
         }
     }
 
+    boolean usesJavaVfs() {
+        return javaVfs;
+    }
+
+    InstancePool.Slot instanceSlot() {
+        return slot;
+    }
+
     long getUpdateListener() {
         if (dbPtr == 0 || dbPtrPtr == 0) {
             return 0L;
@@ -1084,27 +2453,9 @@ public class WasmDB extends DB implements WasmDBImports {
         }
     }
 
-    // This call is expensive as it will start an extra module
-    // Should we cache something?
-    // another alternative is to compute it at compile time ...
+    // The version is captured while building the instance template,
+    // the first call is expensive as it will start an extra module
     public static String version() {
-        WasiOptions wasiOpts = WasiOptions.builder().build();
-
-        try (WasiPreview1 wasiPreview1 = WasiPreview1.builder().withOptions(wasiOpts).build()) {
-            Instance tmp =
-                    Instance.builder(MODULE)
-                            .withMachineFactory(SQLiteModule::create)
-                            .withImportValues(
-                                    ImportValues.builder()
-                                            .addFunction(wasiPreview1.toHostFunctions())
-                                            .addFunction(new DummyWasmDBImports().toHostFunctions())
-                                            .build())
-                            .withStart(false)
-                            .build();
-            int ptr = new WasmDBExports(tmp).version();
-
-            String version = tmp.memory().readCString(ptr);
-            return version;
-        }
+        return TemplateHolder.TEMPLATE.version();
     }
 }
@@ -0,0 +1,424 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import static java.lang.Math.min;
+
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.runtime.WasmRuntimeException;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.UninstantiableException;
+import com.dylibso.chicory.wasm.types.ActiveDataSegment;
+import com.dylibso.chicory.wasm.types.DataSegment;
+import com.dylibso.chicory.wasm.types.Instruction;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import com.dylibso.chicory.wasm.types.OpCode;
+import com.dylibso.chicory.wasm.types.PassiveDataSegment;
+import java.util.Arrays;
+import java.util.List;
+
+// Linear memory backed by fixed size chunks of type C, allocated on first write.
+// Growing only extends the chunk table, the existing data is never copied,
+// and untouched pages (including the whole initial reservation) cost nothing.
+// The backends only implement the accesses within a chunk, which must not depend on any
+// state of the chunk: only the operations on a shared instance are serialized, a connection
+// can be used by several threads.
+abstract class AbstractChunkedMemory<C> implements Memory {
+    private final MemoryLimits limits;
+    protected final int chunkShift;
+    protected final int chunkSize;
+    protected final int chunkMask;
+
+    private DataSegment[] dataSegments;
+    // see seed(int, byte[][])
+    private int seedPages;
+    private byte[][] seedPageData;
+
+    // null entries are chunks that have never been written and read as zeroes
+    protected C[] chunks;
+    private int nPages;
+    private int limit;
+
+    protected AbstractChunkedMemory(MemoryLimits limits, int chunkPages) {
+        if (chunkPages <= 0 || Integer.bitCount(chunkPages) != 1) {
+            throw new IllegalArgumentException(
+                    "chunk pages must be a positive power of two: " + chunkPages);
+        }
+        this.limits = limits;
+        this.chunkSize = chunkPages * PAGE_SIZE;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkMask = chunkSize - 1;
+        this.nPages = limits.initialPages();
+        this.limit = nPages * PAGE_SIZE;
+        this.chunks = newChunkTable(chunksFor(limit));
+    }
+
+    protected abstract C[] newChunkTable(int length);
+
+    // a zeroed chunk of chunkSize bytes
+    protected abstract C newChunk();
+
+    protected abstract byte get(C chunk, int off);
+
+    protected abstract void put(C chunk, int off, byte value);
+
+    protected abstract short getShort(C chunk, int off);
+
+    protected abstract void putShort(C chunk, int off, short value);
+
+    protected abstract int getInt(C chunk, int off);
+
+    protected abstract void putInt(C chunk, int off, int value);
+
+    protected abstract long getLong(C chunk, int off);
+
+    protected abstract void putLong(C chunk, int off, long value);
+
+    protected abstract void get(C chunk, int off, byte[] dst, int dstOff, int len);
+
+    protected abstract void put(C chunk, int off, byte[] src, int srcOff, int len);
+
+    protected abstract void fill(C chunk, int off, int len, byte value);
+
+    private int chunksFor(int size) {
+        return (int) ((((long) size) + chunkMask) >>> chunkShift);
+    }
+
+    @Override
+    public int pages() {
+        return nPages;
+    }
+
+    @Override
+    public synchronized int grow(int size) {
+        var prevPages = nPages;
+        var numPages = prevPages + size;
+
+        if (numPages > maximumPages() || numPages < prevPages) {
+            return -1;
+        }
+
+        int required = chunksFor(numPages * PAGE_SIZE);
+        if (required > chunks.length) {
+            // the table of chunks grows geometrically, the chunks themselves are never copied
+            int maxChunks = chunksFor(maximumPages() * PAGE_SIZE);
+            int newLength = (int) min(maxChunks, Math.max(required, chunks.length * 2L));
+            chunks = Arrays.copyOf(chunks, newLength);
+        }
+
+        nPages = numPages;
+        limit = numPages * PAGE_SIZE;
+
+        return prevPages;
+    }
+
+    // the chunks written so far, the memory held by the instance whatever its size in pages
+    public long allocatedBytes() {
+        C[] table = chunks;
+        long allocated = 0;
+        for (C chunk : table) {
+            if (chunk != null) {
+                allocated += chunkSize;
+            }
+        }
+        return allocated;
+    }
+
+    @Override
+    public int initialPages() {
+        return limits.initialPages();
+    }
+
+    @Override
+    public int maximumPages() {
+        return min(limits.maximumPages(), RUNTIME_MAX_PAGES);
+    }
+
+    // The memory is initialized with these pages instead of the data segments, one entry per
+    // page, null when the page is all zeroes
+    void seed(int pages, byte[][] pageData) {
+        this.seedPages = pages;
+        this.seedPageData = pageData;
+    }
+
+    @Override
+    public void initialize(Instance instance, DataSegment[] dataSegments) {
+        this.dataSegments = dataSegments;
+        if (seedPageData != null) {
+            if (nPages < seedPages) {
+                grow(seedPages - nPages);
+            }
+            for (int i = 0; i < seedPageData.length; i++) {
+                if (seedPageData[i] != null) {
+                    write(i * PAGE_SIZE, seedPageData[i], 0, PAGE_SIZE);
+                }
+            }
+            seedPageData = null;
+            return;
+        }
+        if (dataSegments == null) {
+            return;
+        }
+
+        for (var s : dataSegments) {
+            if (s instanceof ActiveDataSegment) {
+                var segment = (ActiveDataSegment) s;
+                var data = segment.data();
+                var offset = (int) offset(instance, segment.offsetInstructions());
+                checkBounds(offset, data.length, limit, true);
+                write(offset, data, 0, data.length);
+            } else if (s instanceof PassiveDataSegment) {
+                // Passive segment should be skipped
+            } else {
+                throw new ChicoryException("Data segment should be active or passive: " + s);
+            }
+        }
+    }
+
+    private static long offset(Instance instance, List<Instruction> expr) {
+        Instruction ins = expr.get(0);
+        if (ins.opcode() == OpCode.I32_CONST) {
+            return ins.operand(0);
+        } else if (ins.opcode() == OpCode.GLOBAL_GET) {
+            return instance.global((int) ins.operand(0)).getValue();
+        }
+        throw new ChicoryException("Unsupported data segment offset: " + expr);
+    }
+
+    private static void checkBounds(int addr, int size, int limit, boolean instantiating) {
+        if (addr < 0 || size < 0 || addr > limit || (size > 0 && ((addr + size) > limit))) {
+            var errorMsg =
+                    "out of bounds memory access: attempted to access address: "
+                            + addr
+                            + " but limit is: "
+                            + limit;
+            if (instantiating) {
+                throw new UninstantiableException(errorMsg);
+            }
+            throw new WasmRuntimeException(errorMsg);
+        }
+    }
+
+    protected final void checkBounds(int addr, int size) {
+        checkBounds(addr, size, limit, false);
+    }
+
+    protected final C chunkForWrite(int idx) {
+        C chunk = chunks[idx];
+        if (chunk == null) {
+            chunk = allocateChunk(idx);
+        }
+        return chunk;
+    }
+
+    // a chunk is never allocated twice, or lost by a concurrent grow
+    private synchronized C allocateChunk(int idx) {
+        C chunk = chunks[idx];
+        if (chunk == null) {
+            chunk = newChunk();
+            chunks[idx] = chunk;
+        }
+        return chunk;
+    }
+
+    @Override
+    public void initPassiveSegment(int segmentId, int dest, int offset, int size) {
+        var segment = dataSegments[segmentId];
+        write(dest, segment.data(), offset, size);
+    }
+
+    @Override
+    public void write(int addr, byte[] data, int offset, int size) {
+        checkBounds(addr, size);
+        if (!(data.length >= (offset + size))) {
+            throw new WasmRuntimeException(
+                    "out of bounds memory access: attempted to access data with length: "
+                            + data.length
+                            + " at address: "
+                            + (offset + size));
+        }
+        while (size > 0) {
+            int off = addr & chunkMask;
+            int len = min(size, chunkSize - off);
+            put(chunkForWrite(addr >>> chunkShift), off, data, offset, len);
+            addr += len;
+            offset += len;
+            size -= len;
+        }
+    }
+
+    @Override
+    public byte read(int addr) {
+        checkBounds(addr, 1);
+        C chunk = chunks[addr >>> chunkShift];
+        return (chunk == null) ? 0 : get(chunk, addr & chunkMask);
+    }
+
+    @Override
+    public byte[] readBytes(int addr, int len) {
+        checkBounds(addr, len);
+        var bytes = new byte[len];
+        int pos = 0;
+        while (pos < len) {
+            int off = addr & chunkMask;
+            int n = min(len - pos, chunkSize - off);
+            C chunk = chunks[addr >>> chunkShift];
+            if (chunk != null) {
+                get(chunk, off, bytes, pos, n);
+            }
+            addr += n;
+            pos += n;
+        }
+        return bytes;
+    }
+
+    // multi-byte accesses straddling two chunks go through the byte-wise slow path
+
+    private long readSlow(int addr, int size) {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            result |= (read(addr + i) & 0xFFL) << (i * 8);
+        }
+        return result;
+    }
+
+    private void writeSlow(int addr, long value, int size) {
+        for (int i = 0; i < size; i++) {
+            writeByte(addr + i, (byte) (value >>> (i * 8)));
+        }
+    }
+
+    @Override
+    public void writeI32(int addr, int data) {
+        checkBounds(addr, 4);
+        int off = addr & chunkMask;
+        if (off <= chunkSize - 4) {
+            putInt(chunkForWrite(addr >>> chunkShift), off, data);
+        } else {
+            writeSlow(addr, data, 4);
+        }
+    }
+
+    @Override
+    public int readInt(int addr) {
+        checkBounds(addr, 4);
+        int off = addr & chunkMask;
+        if (off <= chunkSize - 4) {
+            C chunk = chunks[addr >>> chunkShift];
+            return (chunk == null) ? 0 : getInt(chunk, off);
+        }
+        return (int) readSlow(addr, 4);
+    }
+
+    @Override
+    public void writeLong(int addr, long data) {
+        checkBounds(addr, 8);
+        int off = addr & chunkMask;
+        if (off <= chunkSize - 8) {
+            putLong(chunkForWrite(addr >>> chunkShift), off, data);
+        } else {
+            writeSlow(addr, data, 8);
+        }
+    }
+
+    @Override
+    public long readLong(int addr) {
+        checkBounds(addr, 8);
+        int off = addr & chunkMask;
+        if (off <= chunkSize - 8) {
+            C chunk = chunks[addr >>> chunkShift];
+            return (chunk == null) ? 0L : getLong(chunk, off);
+        }
+        return readSlow(addr, 8);
+    }
+
+    @Override
+    public void writeShort(int addr, short data) {
+        checkBounds(addr, 2);
+        int off = addr & chunkMask;
+        if (off <= chunkSize - 2) {
+            putShort(chunkForWrite(addr >>> chunkShift), off, data);
+        } else {
+            writeSlow(addr, data, 2);
+        }
+    }
+
+    @Override
+    public short readShort(int addr) {
+        checkBounds(addr, 2);
+        int off = addr & chunkMask;
+        if (off <= chunkSize - 2) {
+            C chunk = chunks[addr >>> chunkShift];
+            return (chunk == null) ? 0 : getShort(chunk, off);
+        }
+        return (short) readSlow(addr, 2);
+    }
+
+    @Override
+    public long readU16(int addr) {
+        return readShort(addr) & 0xffff;
+    }
+
+    @Override
+    public void writeByte(int addr, byte data) {
+        checkBounds(addr, 1);
+        put(chunkForWrite(addr >>> chunkShift), addr & chunkMask, data);
+    }
+
+    @Override
+    public void writeF32(int addr, float data) {
+        writeI32(addr, Float.floatToRawIntBits(data));
+    }
+
+    @Override
+    public long readF32(int addr) {
+        return readInt(addr);
+    }
+
+    @Override
+    public float readFloat(int addr) {
+        return Float.intBitsToFloat(readInt(addr));
+    }
+
+    @Override
+    public void writeF64(int addr, double data) {
+        writeLong(addr, Double.doubleToRawLongBits(data));
+    }
+
+    @Override
+    public double readDouble(int addr) {
+        return Double.longBitsToDouble(readLong(addr));
+    }
+
+    @Override
+    public long readF64(int addr) {
+        return readLong(addr);
+    }
+
+    @Override
+    public void zero() {
+        Arrays.fill(chunks, null);
+    }
+
+    @Override
+    public void fill(byte value, int fromIndex, int toIndex) {
+        checkBounds(fromIndex, toIndex - fromIndex);
+        int addr = fromIndex;
+        while (addr < toIndex) {
+            int idx = addr >>> chunkShift;
+            int off = addr & chunkMask;
+            int len = min(toIndex - addr, chunkSize - off);
+            if (value == 0 && len == chunkSize) {
+                // release fully zeroed chunks
+                chunks[idx] = null;
+            } else if (value != 0 || chunks[idx] != null) {
+                fill(chunkForWrite(idx), off, len, value);
+            }
+            addr += len;
+        }
+    }
+
+    @Override
+    public void drop(int segment) {
+        dataSegments[segment] = PassiveDataSegment.EMPTY;
+    }
+}
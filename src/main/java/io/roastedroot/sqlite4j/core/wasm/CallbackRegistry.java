@@ -0,0 +1,158 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import io.roastedroot.sqlite4j.Collation;
+import io.roastedroot.sqlite4j.Function;
+import io.roastedroot.sqlite4j.ProgressHandler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The callbacks registered by a connection, looked up by the user data SQLite passes back to the
+// host functions. The user data is the index in a dense table, offset by one to disambiguate with
+// NULL, the connection is in the high bits when several connections share the Wasm instance.
+// The tables are only modified by the connection, under its lock, and republished when they grow.
+public final class CallbackRegistry {
+    public static final int INDEX_BITS = 20;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int MIN_CAPACITY = 8;
+
+    private final WasmDBImports owner;
+    // the connection in its shared instance, 0 otherwise
+    private int id;
+
+    private final Table<Function> functions = new Table<>(new Function[MIN_CAPACITY]);
+    private final Table<Collation> collations = new Table<>(new Collation[MIN_CAPACITY]);
+    // the last registration of a name, a function replaced by SQLite is freed by xDestroy
+    private final Map<String, Integer> functionNames = new HashMap<>();
+    private final Map<String, List<Integer>> collationNames = new HashMap<>();
+    private volatile ProgressHandler progressHandler;
+
+    public CallbackRegistry(WasmDBImports owner) {
+        this.owner = owner;
+    }
+
+    public WasmDBImports owner() {
+        return owner;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    // the user data of the busy and progress handlers and of the hooks
+    public int userData() {
+        return id << INDEX_BITS;
+    }
+
+    public static int connectionId(int userData) {
+        return userData >>> INDEX_BITS;
+    }
+
+    public int registerFunction(String name, Function f) {
+        int userData = userData() | functions.add(f);
+        functionNames.put(name, userData);
+        return userData;
+    }
+
+    public Function function(int userData) {
+        return functions.get(userData & INDEX_MASK);
+    }
+
+    public void freeFunction(String name) {
+        Integer userData = functionNames.remove(name);
+        if (userData != null) {
+            freeFunction(userData);
+        }
+    }
+
+    public void freeFunction(int userData) {
+        functions.remove(userData & INDEX_MASK);
+    }
+
+    public int registerCollation(String name, Collation c) {
+        int userData = userData() | collations.add(c);
+        collationNames.computeIfAbsent(name, k -> new ArrayList<>()).add(userData);
+        return userData;
+    }
+
+    public Collation collation(int userData) {
+        return collations.get(userData & INDEX_MASK);
+    }
+
+    public void freeCollation(String name) {
+        List<Integer> registered = collationNames.remove(name);
+        if (registered != null) {
+            for (int userData : registered) {
+                collations.remove(userData & INDEX_MASK);
+            }
+        }
+    }
+
+    public ProgressHandler progressHandler() {
+        return progressHandler;
+    }
+
+    public void setProgressHandler(ProgressHandler progressHandler) {
+        this.progressHandler = progressHandler;
+    }
+
+    // the first free entry is reused, the entries are 1-based
+    private static final class Table<T> {
+        private volatile T[] entries;
+        private int[] free = new int[MIN_CAPACITY];
+        private int freeCount;
+        private int count;
+
+        Table(T[] entries) {
+            this.entries = entries;
+        }
+
+        int add(T value) {
+            T[] array = entries;
+            int idx;
+            if (freeCount > 0) {
+                idx = free[--freeCount];
+            } else {
+                if (count == INDEX_MASK) {
+                    throw new IllegalStateException("Too many callbacks registered");
+                }
+                if (count == array.length) {
+                    T[] grown = Arrays.copyOf(array, array.length << 1);
+                    grown[count] = value;
+                    entries = grown;
+                    return ++count;
+                }
+                idx = count++;
+            }
+            array[idx] = value;
+            entries = array;
+            return idx + 1;
+        }
+
+        T get(int index) {
+            T[] array = entries;
+            int idx = index - 1;
+            return idx >= 0 && idx < array.length ? array[idx] : null;
+        }
+
+        void remove(int index) {
+            T[] array = entries;
+            int idx = index - 1;
+            // already released by the xDestroy callback
+            if (idx < 0 || idx >= count || array[idx] == null) {
+                return;
+            }
+            array[idx] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, free.length << 1);
+            }
+            free[freeCount++] = idx;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Linear memory backed by fixed size byte[] chunks, allocated on first write.
+public final class ChunkedMemory extends AbstractChunkedMemory<byte[]> {
+    public static final int DEFAULT_CHUNK_PAGES = 16;
+
+    private static final VarHandle SHORT =
+            MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public ChunkedMemory(MemoryLimits limits) {
+        this(limits, DEFAULT_CHUNK_PAGES);
+    }
+
+    public ChunkedMemory(MemoryLimits limits, int chunkPages) {
+        super(limits, chunkPages);
+    }
+
+    @Override
+    protected byte[][] newChunkTable(int length) {
+        return new byte[length][];
+    }
+
+    @Override
+    protected byte[] newChunk() {
+        return new byte[chunkSize];
+    }
+
+    @Override
+    protected byte get(byte[] chunk, int off) {
+        return chunk[off];
+    }
+
+    @Override
+    protected void put(byte[] chunk, int off, byte value) {
+        chunk[off] = value;
+    }
+
+    @Override
+    protected short getShort(byte[] chunk, int off) {
+        return (short) SHORT.get(chunk, off);
+    }
+
+    @Override
+    protected void putShort(byte[] chunk, int off, short value) {
+        SHORT.set(chunk, off, value);
+    }
+
+    @Override
+    protected int getInt(byte[] chunk, int off) {
+        return (int) INT.get(chunk, off);
+    }
+
+    @Override
+    protected void putInt(byte[] chunk, int off, int value) {
+        INT.set(chunk, off, value);
+    }
+
+    @Override
+    protected long getLong(byte[] chunk, int off) {
+        return (long) LONG.get(chunk, off);
+    }
+
+    @Override
+    protected void putLong(byte[] chunk, int off, long value) {
+        LONG.set(chunk, off, value);
+    }
+
+    @Override
+    protected void get(byte[] chunk, int off, byte[] dst, int dstOff, int len) {
+        System.arraycopy(chunk, off, dst, dstOff, len);
+    }
+
+    @Override
+    protected void put(byte[] chunk, int off, byte[] src, int srcOff, int len) {
+        System.arraycopy(src, srcOff, chunk, off, len);
+    }
+
+    @Override
+    protected void fill(byte[] chunk, int off, int len, byte value) {
+        Arrays.fill(chunk, off, off + len, value);
+    }
+
+    @Override
+    public void copy(int dest, int src, int size) {
+        checkBounds(src, size);
+        checkBounds(dest, size);
+        int srcOff = src & chunkMask;
+        int destOff = dest & chunkMask;
+        if (srcOff + size <= chunkSize && destOff + size <= chunkSize) {
+            // fast path, System.arraycopy handles overlapping ranges
+            byte[] from = chunks[src >>> chunkShift];
+            if (from == null) {
+                fill((byte) 0, dest, dest + size);
+            } else {
+                System.arraycopy(from, srcOff, chunkForWrite(dest >>> chunkShift), destOff, size);
+            }
+        } else {
+            write(dest, readBytes(src, size));
+        }
+    }
+}
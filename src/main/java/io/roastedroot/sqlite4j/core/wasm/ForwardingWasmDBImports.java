@@ -0,0 +1,136 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.util.Arrays;
+
+// The host functions of an instance are bound once, when it is built,
+// the callbacks go to the connection currently using the instance.
+// When the instance is shared, the connections are registered in a table, the user data of the
+// handlers and hooks carries the index of their connection, see CallbackRegistry. The functions
+// and collations are looked up by the connection receiving the call in the registry of their
+// owner.
+public final class ForwardingWasmDBImports implements WasmDBImports {
+    private static final WasmDBImports NONE = new DummyWasmDBImports();
+
+    private volatile WasmDBImports target = NONE;
+    // copied on write, read without locking by the callbacks
+    private volatile CallbackRegistry[] registries = new CallbackRegistry[0];
+
+    public void bind(WasmDBImports target) {
+        this.target = target == null ? NONE : target;
+    }
+
+    // takes the first free index
+    public synchronized void register(CallbackRegistry registry) {
+        CallbackRegistry[] current = registries;
+        int id = 0;
+        while (id < current.length && current[id] != null) {
+            id++;
+        }
+        if (id > CallbackRegistry.connectionId(-1)) {
+            throw new IllegalStateException("Too many connections sharing the instance");
+        }
+        CallbackRegistry[] updated = Arrays.copyOf(current, Math.max(current.length, id + 1));
+        updated[id] = registry;
+        registry.setId(id);
+        registries = updated;
+        if (target == NONE) {
+            target = registry.owner();
+        }
+    }
+
+    public synchronized void unregister(CallbackRegistry registry) {
+        CallbackRegistry[] updated = registries.clone();
+        int id = registry.id();
+        if (id >= updated.length || updated[id] != registry) {
+            return;
+        }
+        updated[id] = null;
+        registries = updated;
+        if (target == registry.owner()) {
+            target = NONE;
+            for (CallbackRegistry other : updated) {
+                if (other != null) {
+                    target = other.owner();
+                    break;
+                }
+            }
+        }
+    }
+
+    // the registry of the connection of a shared instance, from the user data of its callbacks
+    public CallbackRegistry registry(int userData) {
+        CallbackRegistry[] current = registries;
+        int id = CallbackRegistry.connectionId(userData);
+        return id < current.length ? current[id] : null;
+    }
+
+    private WasmDBImports connection(int userData) {
+        CallbackRegistry registry = registry(userData);
+        return registry == null ? target : registry.owner();
+    }
+
+    @Override
+    public int xProgress(int userData) {
+        return connection(userData).xProgress(userData);
+    }
+
+    @Override
+    public int xBusy(int userData, int nbPrevInvok) {
+        return connection(userData).xBusy(userData, nbPrevInvok);
+    }
+
+    @Override
+    public void xDestroy(int funIdx) {
+        connection(funIdx).xDestroy(funIdx);
+    }
+
+    @Override
+    public void xFinal(int ctx) {
+        target.xFinal(ctx);
+    }
+
+    @Override
+    public void xValue(int ctx) {
+        target.xValue(ctx);
+    }
+
+    @Override
+    public void xFunc(int ctx, int argN, int value) {
+        target.xFunc(ctx, argN, value);
+    }
+
+    @Override
+    public void xStep(int ctx, int argN, int value) {
+        target.xStep(ctx, argN, value);
+    }
+
+    @Override
+    public void xInverse(int ctx, int argN, int value) {
+        target.xInverse(ctx, argN, value);
+    }
+
+    @Override
+    public int xCompare(int ctx, int len1, int str1Ptr, int len2, int str2Ptr) {
+        return connection(ctx).xCompare(ctx, len1, str1Ptr, len2, str2Ptr);
+    }
+
+    @Override
+    public void xDestroyCollation(int funIdx) {
+        connection(funIdx).xDestroyCollation(funIdx);
+    }
+
+    @Override
+    public void xUpdate(int userData, int updateType, int dbNamePtr, int tablePtr, long rowId) {
+        connection(userData).xUpdate(userData, updateType, dbNamePtr, tablePtr, rowId);
+    }
+
+    @Override
+    public int xCommit(int userData) {
+        return connection(userData).xCommit(userData);
+    }
+
+    @Override
+    public void xRollback(int userData) {
+        connection(userData).xRollback(userData);
+    }
+}
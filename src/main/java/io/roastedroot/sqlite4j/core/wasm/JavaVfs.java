@@ -0,0 +1,439 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import com.dylibso.chicory.runtime.HostFunction;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.types.ValueType;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The host side of the "sqlite4j" SQLite VFS registered by sqlite4j_register_vfs.
+// SQLite calls the xVfs* imports directly, skipping the unix VFS, wasi-libc and WASI layers:
+// a page read is a single positional read on a FileChannel, copied in the linear memory.
+// The files are resolved by a Backend, e.g. the in-memory file system, the host file system,
+// or files mapped in memory registered in a LazyFileSystem.
+// Every connection has its own JavaVfs: the open files are confined to it, the locks and the
+// wal-index of a database in WAL mode are shared with the other connections of the JVM through
+// the LockManager and a WalIndex, keyed by the canonical path of the file.
+public final class JavaVfs {
+    public static final String NAME = "sqlite4j";
+
+    // Resolves the names of the files opened by SQLite
+    public interface Backend {
+        Path resolve(String name);
+
+        // where temporary files, opened without a name, are created
+        Path temporary(String name);
+    }
+
+    private static final AtomicLong TEMP_FILES = new AtomicLong();
+
+    private static final int SQLITE_OK = 0;
+    private static final int SQLITE_IOERR = 10;
+    private static final int SQLITE_CANTOPEN = 14;
+    private static final int SQLITE_IOERR_READ = SQLITE_IOERR | (1 << 8);
+    private static final int SQLITE_IOERR_SHORT_READ = SQLITE_IOERR | (2 << 8);
+    private static final int SQLITE_IOERR_WRITE = SQLITE_IOERR | (3 << 8);
+    private static final int SQLITE_IOERR_FSYNC = SQLITE_IOERR | (4 << 8);
+    private static final int SQLITE_IOERR_TRUNCATE = SQLITE_IOERR | (6 << 8);
+    private static final int SQLITE_IOERR_DELETE = SQLITE_IOERR | (10 << 8);
+    private static final int SQLITE_IOERR_CLOSE = SQLITE_IOERR | (16 << 8);
+    private static final int SQLITE_IOERR_DELETE_NOENT = SQLITE_IOERR | (23 << 8);
+    private static final int SQLITE_IOERR_LOCK = SQLITE_IOERR | (15 << 8);
+
+    private static final int SQLITE_OPEN_READWRITE = 0x00000002;
+    private static final int SQLITE_OPEN_CREATE = 0x00000004;
+    private static final int SQLITE_OPEN_DELETEONCLOSE = 0x00000008;
+    private static final int SQLITE_OPEN_EXCLUSIVE = 0x00000010;
+
+    private static final int SQLITE_ACCESS_READWRITE = 1;
+    private static final int SQLITE_SYNC_DATAONLY = 0x00010;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Backend backend;
+    // indexed by the handles returned to SQLite
+    private FileChannel[] channels = new FileChannel[8];
+    private Path[] paths = new Path[8];
+    private WalIndex.Mapping[] walIndexes = new WalIndex.Mapping[8];
+    private Path[] deleteOnClose = new Path[8];
+    private LockManager.Lock[] locks = new LockManager.Lock[8];
+    private boolean[] readOnly = new boolean[8];
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+
+    // without a backend no file can be opened, e.g. in the instance snapshotted as a template
+    public JavaVfs(Backend backend) {
+        this.backend = backend;
+    }
+
+    int open(Memory memory, int namePtr, int flags) {
+        if (backend == null) {
+            return -SQLITE_CANTOPEN;
+        }
+        Path path;
+        boolean temporary = namePtr == 0;
+        if (temporary) {
+            path = backend.temporary("sqlite4j-" + TEMP_FILES.incrementAndGet());
+        } else {
+            path = backend.resolve(memory.readCString(namePtr));
+        }
+
+        Set<OpenOption> options = new HashSet<>();
+        options.add(StandardOpenOption.READ);
+        if ((flags & SQLITE_OPEN_READWRITE) != 0) {
+            options.add(StandardOpenOption.WRITE);
+        }
+        if ((flags & SQLITE_OPEN_CREATE) != 0) {
+            options.add(
+                    (flags & SQLITE_OPEN_EXCLUSIVE) != 0
+                            ? StandardOpenOption.CREATE_NEW
+                            : StandardOpenOption.CREATE);
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, options);
+        } catch (IOException | UnsupportedOperationException e) {
+            return -SQLITE_CANTOPEN;
+        }
+        try {
+            path = path.toRealPath();
+        } catch (IOException e) {
+            path = path.toAbsolutePath().normalize();
+        }
+
+        int handle = 0;
+        while (handle < channels.length && channels[handle] != null) {
+            handle++;
+        }
+        if (handle == channels.length) {
+            channels = Arrays.copyOf(channels, handle * 2);
+            paths = Arrays.copyOf(paths, handle * 2);
+            walIndexes = Arrays.copyOf(walIndexes, handle * 2);
+            deleteOnClose = Arrays.copyOf(deleteOnClose, handle * 2);
+            locks = Arrays.copyOf(locks, handle * 2);
+            readOnly = Arrays.copyOf(readOnly, handle * 2);
+        }
+        channels[handle] = channel;
+        paths[handle] = path;
+        locks[handle] = null;
+        readOnly[handle] = (flags & SQLITE_OPEN_READWRITE) == 0;
+        deleteOnClose[handle] = temporary || (flags & SQLITE_OPEN_DELETEONCLOSE) != 0 ? path : null;
+        return handle;
+    }
+
+    int close(int handle) {
+        FileChannel channel = channels[handle];
+        Path delete = deleteOnClose[handle];
+        channels[handle] = null;
+        paths[handle] = null;
+        deleteOnClose[handle] = null;
+        if (walIndexes[handle] != null) {
+            shmUnmap(handle);
+        }
+        if (locks[handle] != null) {
+            locks[handle].close();
+            locks[handle] = null;
+        }
+        try {
+            channel.close();
+            if (delete != null) {
+                Files.deleteIfExists(delete);
+            }
+            return SQLITE_OK;
+        } catch (IOException e) {
+            return SQLITE_IOERR_CLOSE;
+        }
+    }
+
+    int read(Memory memory, int handle, int bufPtr, int amount, long offset) {
+        FileChannel channel = channels[handle];
+        int done = 0;
+        try {
+            while (done < amount) {
+                int n = Math.min(amount - done, BUFFER_SIZE);
+                byteBuffer.clear().limit(n);
+                int read = channel.read(byteBuffer, offset + done);
+                if (read <= 0) {
+                    break;
+                }
+                memory.write(bufPtr + done, buffer, 0, read);
+                done += read;
+            }
+        } catch (IOException e) {
+            return SQLITE_IOERR_READ;
+        }
+        if (done < amount) {
+            // SQLite expects the missing bytes to be zeroed
+            memory.fill((byte) 0, bufPtr + done, bufPtr + amount);
+            return SQLITE_IOERR_SHORT_READ;
+        }
+        return SQLITE_OK;
+    }
+
+    int write(Memory memory, int handle, int bufPtr, int amount, long offset) {
+        FileChannel channel = channels[handle];
+        int done = 0;
+        try {
+            while (done < amount) {
+                int n = Math.min(amount - done, BUFFER_SIZE);
+                byte[] bytes = memory.readBytes(bufPtr + done, n);
+                ByteBuffer src = ByteBuffer.wrap(bytes);
+                while (src.hasRemaining()) {
+                    channel.write(src, offset + done + src.position());
+                }
+                done += n;
+            }
+        } catch (IOException e) {
+            return SQLITE_IOERR_WRITE;
+        }
+        return SQLITE_OK;
+    }
+
+    int truncate(int handle, long size) {
+        try {
+            channels[handle].truncate(size);
+            return SQLITE_OK;
+        } catch (IOException e) {
+            return SQLITE_IOERR_TRUNCATE;
+        }
+    }
+
+    int sync(int handle, int flags) {
+        try {
+            channels[handle].force((flags & SQLITE_SYNC_DATAONLY) == 0);
+            return SQLITE_OK;
+        } catch (IOException e) {
+            return SQLITE_IOERR_FSYNC;
+        }
+    }
+
+    long fileSize(int handle) {
+        try {
+            return channels[handle].size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // only the main database file is locked, the lock is registered on first use
+    private LockManager.Lock lockOf(int handle) {
+        if (locks[handle] == null) {
+            locks[handle] = LockManager.open(paths[handle]);
+        }
+        return locks[handle];
+    }
+
+    int lock(int handle, int level) {
+        // as the unix VFS, where a write lock on a read-only descriptor fails: a read-only
+        // connection closing last must not checkpoint the WAL into the database
+        if (readOnly[handle] && level > LockManager.SHARED) {
+            return SQLITE_IOERR_LOCK;
+        }
+        return lockOf(handle).lock(level);
+    }
+
+    int unlock(int handle, int level) {
+        return lockOf(handle).unlock(level);
+    }
+
+    int checkReservedLock(int handle) {
+        return lockOf(handle).reserved() ? 1 : 0;
+    }
+
+    int delete(Memory memory, int namePtr) {
+        try {
+            Files.delete(backend.resolve(memory.readCString(namePtr)));
+            return SQLITE_OK;
+        } catch (NoSuchFileException e) {
+            return SQLITE_IOERR_DELETE_NOENT;
+        } catch (IOException e) {
+            return SQLITE_IOERR_DELETE;
+        }
+    }
+
+    int access(Memory memory, int namePtr, int flags) {
+        Path path = backend.resolve(memory.readCString(namePtr));
+        if (flags == SQLITE_ACCESS_READWRITE) {
+            return Files.isWritable(path) ? 1 : 0;
+        }
+        return Files.exists(path) ? 1 : 0;
+    }
+
+    int shmMap(Memory memory, int handle, int region, int size, boolean extend, int ptr) {
+        if (walIndexes[handle] == null) {
+            walIndexes[handle] = WalIndex.open(paths[handle]);
+        }
+        return walIndexes[handle].map(memory, region, size, extend, ptr);
+    }
+
+    int shmLock(Memory memory, int handle, int offset, int n, int flags) {
+        return walIndexes[handle].lock(memory, offset, n, flags);
+    }
+
+    void shmBarrier(Memory memory, int handle) {
+        WalIndex.Mapping mapping = walIndexes[handle];
+        if (mapping != null) {
+            mapping.barrier(memory);
+        }
+    }
+
+    int shmUnmap(int handle) {
+        WalIndex.Mapping mapping = walIndexes[handle];
+        walIndexes[handle] = null;
+        return mapping == null ? SQLITE_OK : mapping.unmap();
+    }
+
+    public HostFunction[] toHostFunctions() {
+        return new HostFunction[] {
+            new HostFunction(
+                    "env",
+                    "xVfsOpen",
+                    List.of(ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {open(inst.memory(), (int) args[0], (int) args[1])}),
+            new HostFunction(
+                    "env",
+                    "xVfsClose",
+                    List.of(ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {close((int) args[0])}),
+            new HostFunction(
+                    "env",
+                    "xVfsRead",
+                    List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I64),
+                    List.of(ValueType.I32),
+                    (inst, args) ->
+                            new long[] {
+                                read(
+                                        inst.memory(),
+                                        (int) args[0],
+                                        (int) args[1],
+                                        (int) args[2],
+                                        args[3])
+                            }),
+            new HostFunction(
+                    "env",
+                    "xVfsWrite",
+                    List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I64),
+                    List.of(ValueType.I32),
+                    (inst, args) ->
+                            new long[] {
+                                write(
+                                        inst.memory(),
+                                        (int) args[0],
+                                        (int) args[1],
+                                        (int) args[2],
+                                        args[3])
+                            }),
+            new HostFunction(
+                    "env",
+                    "xVfsTruncate",
+                    List.of(ValueType.I32, ValueType.I64),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {truncate((int) args[0], args[1])}),
+            new HostFunction(
+                    "env",
+                    "xVfsSync",
+                    List.of(ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {sync((int) args[0], (int) args[1])}),
+            new HostFunction(
+                    "env",
+                    "xVfsFileSize",
+                    List.of(ValueType.I32),
+                    List.of(ValueType.I64),
+                    (inst, args) -> new long[] {fileSize((int) args[0])}),
+            new HostFunction(
+                    "env",
+                    "xVfsLock",
+                    List.of(ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {lock((int) args[0], (int) args[1])}),
+            new HostFunction(
+                    "env",
+                    "xVfsUnlock",
+                    List.of(ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {unlock((int) args[0], (int) args[1])}),
+            new HostFunction(
+                    "env",
+                    "xVfsCheckReservedLock",
+                    List.of(ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {checkReservedLock((int) args[0])}),
+            new HostFunction(
+                    "env",
+                    "xVfsDelete",
+                    List.of(ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {delete(inst.memory(), (int) args[0])}),
+            new HostFunction(
+                    "env",
+                    "xVfsAccess",
+                    List.of(ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) ->
+                            new long[] {access(inst.memory(), (int) args[0], (int) args[1])}),
+            new HostFunction(
+                    "env",
+                    "xVfsShmMap",
+                    List.of(
+                            ValueType.I32,
+                            ValueType.I32,
+                            ValueType.I32,
+                            ValueType.I32,
+                            ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) ->
+                            new long[] {
+                                shmMap(
+                                        inst.memory(),
+                                        (int) args[0],
+                                        (int) args[1],
+                                        (int) args[2],
+                                        args[3] != 0,
+                                        (int) args[4])
+                            }),
+            new HostFunction(
+                    "env",
+                    "xVfsShmLock",
+                    List.of(ValueType.I32, ValueType.I32, ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) ->
+                            new long[] {
+                                shmLock(
+                                        inst.memory(),
+                                        (int) args[0],
+                                        (int) args[1],
+                                        (int) args[2],
+                                        (int) args[3])
+                            }),
+            new HostFunction(
+                    "env",
+                    "xVfsShmBarrier",
+                    List.of(ValueType.I32),
+                    List.of(),
+                    (inst, args) -> {
+                        shmBarrier(inst.memory(), (int) args[0]);
+                        return null;
+                    }),
+            new HostFunction(
+                    "env",
+                    "xVfsShmUnmap",
+                    List.of(ValueType.I32, ValueType.I32),
+                    List.of(ValueType.I32),
+                    (inst, args) -> new long[] {shmUnmap((int) args[0])})
+        };
+    }
+}
@@ -0,0 +1,164 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Copy-on-write view of a host file, the content is read on demand in fixed size chunks.
+// Chunks read from the host are cached up to a bound and evicted least recently used first,
+// they can always be read again. Written chunks are kept in memory and never evicted,
+// the host file is never modified.
+public final class LazyFile implements VirtualFile {
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private final FileChannel host;
+    private final long cacheBound;
+    // host content past this offset is gone (the file has been truncated)
+    private long hostSize;
+    private long size;
+
+    private final Map<Long, byte[]> dirty = new HashMap<>();
+    private final LinkedHashMap<Long, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long loadedBytes;
+
+    public LazyFile(Path hostPath, long cacheBound) throws IOException {
+        this.host = FileChannel.open(hostPath, StandardOpenOption.READ);
+        this.cacheBound = Math.max(cacheBound, CHUNK_SIZE);
+        this.hostSize = host.size();
+        this.size = hostSize;
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    // total bytes read from the host file so far
+    public synchronized long loadedBytes() {
+        return loadedBytes;
+    }
+
+    // bytes of the host file currently cached
+    public synchronized long cachedBytes() {
+        return (long) cache.size() * CHUNK_SIZE;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst, long position) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        int length = (int) Math.min(dst.remaining(), size - position);
+        int done = 0;
+        while (done < length) {
+            long pos = position + done;
+            int offset = (int) (pos % CHUNK_SIZE);
+            int n = Math.min(length - done, CHUNK_SIZE - offset);
+            dst.put(chunk(pos / CHUNK_SIZE), offset, n);
+            done += n;
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src, long position) throws IOException {
+        int length = src.remaining();
+        int done = 0;
+        while (done < length) {
+            long pos = position + done;
+            int offset = (int) (pos % CHUNK_SIZE);
+            int n = Math.min(length - done, CHUNK_SIZE - offset);
+            src.get(dirtyChunk(pos / CHUNK_SIZE), offset, n);
+            done += n;
+        }
+        size = Math.max(size, position + length);
+        return length;
+    }
+
+    @Override
+    public synchronized void truncate(long newSize) throws IOException {
+        if (newSize >= size) {
+            return;
+        }
+        long lastChunk = newSize / CHUNK_SIZE;
+        int tail = (int) (newSize % CHUNK_SIZE);
+        if (tail > 0) {
+            // what follows the end of the file must read as zeros if it grows again
+            byte[] chunk = dirtyChunk(lastChunk);
+            Arrays.fill(chunk, tail, CHUNK_SIZE, (byte) 0);
+            lastChunk++;
+        }
+        removeFrom(dirty, lastChunk);
+        removeFrom(cache, lastChunk);
+        hostSize = Math.min(hostSize, newSize);
+        size = newSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        host.close();
+        dirty.clear();
+        cache.clear();
+    }
+
+    private static void removeFrom(Map<Long, byte[]> chunks, long firstChunk) {
+        Iterator<Long> it = chunks.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() >= firstChunk) {
+                it.remove();
+            }
+        }
+    }
+
+    private byte[] chunk(long idx) throws IOException {
+        byte[] chunk = dirty.get(idx);
+        if (chunk == null) {
+            chunk = cache.get(idx);
+        }
+        if (chunk == null) {
+            chunk = load(idx);
+            cache.put(idx, chunk);
+            while ((long) cache.size() * CHUNK_SIZE > cacheBound) {
+                Iterator<byte[]> eldest = cache.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return chunk;
+    }
+
+    private byte[] dirtyChunk(long idx) throws IOException {
+        byte[] chunk = dirty.get(idx);
+        if (chunk == null) {
+            chunk = cache.remove(idx);
+            if (chunk == null) {
+                chunk = load(idx);
+            }
+            dirty.put(idx, chunk);
+        }
+        return chunk;
+    }
+
+    private byte[] load(long idx) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        long start = idx * CHUNK_SIZE;
+        if (start < hostSize) {
+            ByteBuffer buf =
+                    ByteBuffer.wrap(chunk, 0, (int) Math.min(CHUNK_SIZE, hostSize - start));
+            while (buf.hasRemaining()) {
+                if (host.read(buf, start + buf.position()) < 0) {
+                    break;
+                }
+            }
+            loadedBytes += buf.position();
+        }
+        return chunk;
+    }
+}
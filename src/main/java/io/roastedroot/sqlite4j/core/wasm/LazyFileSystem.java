@@ -0,0 +1,213 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+// View of a file system where some files are backed by a VirtualFile instead of their content.
+// A registered file exists in the delegate file system as an empty placeholder, so that
+// directory listings, locks on the directory and attributes keep working, only the content
+// and the size are served by the VirtualFile.
+// A registration is tied to the placeholder: when the file is replaced or deleted
+// through the delegate file system it is dropped.
+public final class LazyFileSystem extends FileSystem {
+    private static final Map<FileSystem, LazyFileSystem> INSTANCES = new WeakHashMap<>();
+
+    private final FileSystem delegate;
+    private final LazyFileSystemProvider provider;
+    private final Map<String, Entry> files = new HashMap<>();
+
+    private static final class Entry {
+        final VirtualFile file;
+        final Object fileKey;
+
+        Entry(VirtualFile file, Object fileKey) {
+            this.file = file;
+            this.fileKey = fileKey;
+        }
+    }
+
+    private LazyFileSystem(FileSystem delegate) {
+        this.delegate = delegate;
+        this.provider = new LazyFileSystemProvider(this, delegate.provider());
+    }
+
+    // One view per delegate, so that all the connections share the registered files
+    public static synchronized LazyFileSystem of(FileSystem delegate) {
+        return INSTANCES.computeIfAbsent(delegate, LazyFileSystem::new);
+    }
+
+    // Backs path with the content of hostPath, read on demand.
+    // Nothing happens when path is already backed by a VirtualFile.
+    public VirtualFile register(Path path, Path hostPath, long cacheSize) throws IOException {
+        return register(path, () -> new LazyFile(hostPath, cacheSize));
+    }
+
+    // Backs path with the content of hostPath, mapped in memory and read-only
+    public VirtualFile registerMapped(Path path, Path hostPath) throws IOException {
+        return register(path, () -> new MappedFile(hostPath));
+    }
+
+    private interface Opener {
+        VirtualFile open() throws IOException;
+    }
+
+    private synchronized VirtualFile register(Path path, Opener opener) throws IOException {
+        Path target = unwrap(path);
+        VirtualFile existing = file(target);
+        if (existing != null) {
+            return existing;
+        }
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        if (Files.notExists(target)) {
+            Files.createFile(target);
+        }
+        Object fileKey = Files.readAttributes(target, BasicFileAttributes.class).fileKey();
+        VirtualFile file = opener.open();
+        files.put(key(target), new Entry(file, fileKey));
+        return file;
+    }
+
+    // The VirtualFile backing path, if any
+    public synchronized VirtualFile file(Path path) {
+        if (files.isEmpty()) {
+            return null;
+        }
+        Path target = unwrap(path);
+        String key = key(target);
+        Entry entry = files.get(key);
+        if (entry == null) {
+            return null;
+        }
+        Object fileKey;
+        try {
+            fileKey =
+                    Files.readAttributes(
+                                    target, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+                            .fileKey();
+        } catch (IOException e) {
+            fileKey = null;
+        }
+        if (fileKey == null || !fileKey.equals(entry.fileKey)) {
+            drop(key);
+            return null;
+        }
+        return entry.file;
+    }
+
+    synchronized void unregister(Path path) {
+        drop(key(unwrap(path)));
+    }
+
+    synchronized void rename(Path source, Path target) {
+        drop(key(unwrap(target)));
+        Entry entry = files.remove(key(unwrap(source)));
+        if (entry != null) {
+            files.put(key(unwrap(target)), entry);
+        }
+    }
+
+    private void drop(String key) {
+        Entry entry = files.remove(key);
+        if (entry != null) {
+            try {
+                entry.file.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    LazyPath wrap(Path path) {
+        return path == null ? null : new LazyPath(this, path);
+    }
+
+    static Path unwrap(Path path) {
+        return path instanceof LazyPath ? ((LazyPath) path).delegate : path;
+    }
+
+    @Override
+    public FileSystemProvider provider() {
+        return provider;
+    }
+
+    @Override
+    public void close() {
+        throw new UnsupportedOperationException("the file system is shared");
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return delegate.isReadOnly();
+    }
+
+    @Override
+    public String getSeparator() {
+        return delegate.getSeparator();
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        List<Path> roots = new ArrayList<>();
+        for (Path root : delegate.getRootDirectories()) {
+            roots.add(wrap(root));
+        }
+        return roots;
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return delegate.getFileStores();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return delegate.supportedFileAttributeViews();
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        return wrap(delegate.getPath(first, more));
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        PathMatcher matcher = delegate.getPathMatcher(syntaxAndPattern);
+        return path -> matcher.matches(unwrap(path));
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        return delegate.getUserPrincipalLookupService();
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException("newWatchService");
+    }
+}
@@ -0,0 +1,245 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+// Forwards everything to the provider of the delegate file system,
+// except the content and the size of the files backed by a VirtualFile
+final class LazyFileSystemProvider extends FileSystemProvider {
+    private final LazyFileSystem fs;
+    private final FileSystemProvider delegate;
+
+    LazyFileSystemProvider(LazyFileSystem fs, FileSystemProvider delegate) {
+        this.fs = fs;
+        this.delegate = delegate;
+    }
+
+    private static Path unwrap(Path path) {
+        return LazyFileSystem.unwrap(path);
+    }
+
+    @Override
+    public String getScheme() {
+        return delegate.getScheme();
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+        throw new UnsupportedOperationException("newFileSystem");
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        return fs;
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        return fs.wrap(delegate.getPath(uri));
+    }
+
+    @Override
+    public FileChannel newFileChannel(
+            Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+            throws IOException {
+        VirtualFile file = fs.file(path);
+        if (file == null) {
+            return delegate.newFileChannel(unwrap(path), options, attrs);
+        }
+        if (options.contains(StandardOpenOption.CREATE_NEW)) {
+            throw new FileAlreadyExistsException(path.toString());
+        }
+        return new LazyFileChannel(file, options);
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(
+            Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+            throws IOException {
+        if (fs.file(path) == null) {
+            return delegate.newByteChannel(unwrap(path), options, attrs);
+        }
+        return newFileChannel(path, options, attrs);
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(
+            Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        DirectoryStream<Path> stream =
+                delegate.newDirectoryStream(unwrap(dir), entry -> filter.accept(fs.wrap(entry)));
+        return new DirectoryStream<>() {
+            @Override
+            public Iterator<Path> iterator() {
+                Iterator<Path> it = stream.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Path next() {
+                        return fs.wrap(it.next());
+                    }
+                };
+            }
+
+            @Override
+            public void close() throws IOException {
+                stream.close();
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        delegate.createDirectory(unwrap(dir), attrs);
+    }
+
+    @Override
+    public void createSymbolicLink(Path link, Path target, FileAttribute<?>... attrs)
+            throws IOException {
+        delegate.createSymbolicLink(unwrap(link), unwrap(target), attrs);
+    }
+
+    @Override
+    public void createLink(Path link, Path existing) throws IOException {
+        delegate.createLink(unwrap(link), unwrap(existing));
+    }
+
+    @Override
+    public Path readSymbolicLink(Path link) throws IOException {
+        return fs.wrap(delegate.readSymbolicLink(unwrap(link)));
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        delegate.delete(unwrap(path));
+        fs.unregister(path);
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        VirtualFile file = fs.file(source);
+        if (file == null) {
+            delegate.copy(unwrap(source), unwrap(target), options);
+            return;
+        }
+        Set<OpenOption> openOptions = new HashSet<>();
+        openOptions.add(StandardOpenOption.WRITE);
+        openOptions.add(StandardOpenOption.TRUNCATE_EXISTING);
+        boolean replace = false;
+        for (CopyOption option : options) {
+            replace |= option == StandardCopyOption.REPLACE_EXISTING;
+        }
+        openOptions.add(replace ? StandardOpenOption.CREATE : StandardOpenOption.CREATE_NEW);
+        try (InputStream in = newInputStream(source);
+                OutputStream out = Channels.newOutputStream(newByteChannel(target, openOptions))) {
+            in.transferTo(out);
+        }
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        delegate.move(unwrap(source), unwrap(target), options);
+        fs.rename(source, target);
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+        return delegate.isSameFile(unwrap(path), unwrap(path2));
+    }
+
+    @Override
+    public boolean isHidden(Path path) throws IOException {
+        return delegate.isHidden(unwrap(path));
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) throws IOException {
+        return delegate.getFileStore(unwrap(path));
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        delegate.checkAccess(unwrap(path), modes);
+    }
+
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(
+            Path path, Class<V> type, LinkOption... options) {
+        return delegate.getFileAttributeView(unwrap(path), type, options);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(
+            Path path, Class<A> type, LinkOption... options) throws IOException {
+        A attrs = delegate.readAttributes(unwrap(path), type, options);
+        VirtualFile file = fs.file(path);
+        if (file == null || !type.isInterface()) {
+            return attrs;
+        }
+        return (A)
+                Proxy.newProxyInstance(
+                        type.getClassLoader(),
+                        new Class<?>[] {type},
+                        (proxy, method, args) -> {
+                            if (method.getName().equals("size")
+                                    && method.getParameterCount() == 0) {
+                                return file.size();
+                            }
+                            try {
+                                return method.invoke(attrs, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        });
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options)
+            throws IOException {
+        Map<String, Object> attrs = delegate.readAttributes(unwrap(path), attributes, options);
+        VirtualFile file = fs.file(path);
+        if (file == null || !attrs.containsKey("size")) {
+            return attrs;
+        }
+        Map<String, Object> result = new HashMap<>(attrs);
+        result.put("size", file.size());
+        return result;
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options)
+            throws IOException {
+        delegate.setAttribute(unwrap(path), attribute, value, options);
+    }
+}
@@ -0,0 +1,139 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+// Path of a LazyFileSystem, wraps a path of the delegate file system
+final class LazyPath implements Path {
+    private final LazyFileSystem fs;
+    final Path delegate;
+
+    LazyPath(LazyFileSystem fs, Path delegate) {
+        this.fs = fs;
+        this.delegate = delegate;
+    }
+
+    private LazyPath wrap(Path path) {
+        return path == null ? null : new LazyPath(fs, path);
+    }
+
+    private static Path unwrap(Path path) {
+        return path instanceof LazyPath ? ((LazyPath) path).delegate : path;
+    }
+
+    @Override
+    public LazyFileSystem getFileSystem() {
+        return fs;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return delegate.isAbsolute();
+    }
+
+    @Override
+    public Path getRoot() {
+        return wrap(delegate.getRoot());
+    }
+
+    @Override
+    public Path getFileName() {
+        return wrap(delegate.getFileName());
+    }
+
+    @Override
+    public Path getParent() {
+        return wrap(delegate.getParent());
+    }
+
+    @Override
+    public int getNameCount() {
+        return delegate.getNameCount();
+    }
+
+    @Override
+    public Path getName(int index) {
+        return wrap(delegate.getName(index));
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        return wrap(delegate.subpath(beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+        return delegate.startsWith(unwrap(other));
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+        return delegate.endsWith(unwrap(other));
+    }
+
+    @Override
+    public Path normalize() {
+        return wrap(delegate.normalize());
+    }
+
+    @Override
+    public Path resolve(Path other) {
+        return wrap(delegate.resolve(unwrap(other)));
+    }
+
+    @Override
+    public Path resolve(String other) {
+        return wrap(delegate.resolve(other));
+    }
+
+    @Override
+    public Path relativize(Path other) {
+        return wrap(delegate.relativize(unwrap(other)));
+    }
+
+    @Override
+    public URI toUri() {
+        return delegate.toUri();
+    }
+
+    @Override
+    public Path toAbsolutePath() {
+        return wrap(delegate.toAbsolutePath());
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... options) throws IOException {
+        return wrap(delegate.toRealPath(options));
+    }
+
+    @Override
+    public WatchKey register(
+            WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException("register");
+    }
+
+    @Override
+    public int compareTo(Path other) {
+        return delegate.compareTo(unwrap(other));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof LazyPath && delegate.equals(((LazyPath) obj).delegate);
+    }
+
+    @Override
+    public int hashCode() {
+        return delegate.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
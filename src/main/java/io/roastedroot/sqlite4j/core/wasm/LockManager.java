@@ -0,0 +1,136 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+// The locking protocol of SQLite database files (SHARED, RESERVED, PENDING, EXCLUSIVE) for all
+// the connections of the JVM, as the POSIX advisory locks of the unix VFS between processes.
+// Every Wasm instance is single threaded (SQLITE_THREADSAFE=0), the connections of a file are
+// coordinated here, by the files opened through the sqlite4j VFS, keyed by canonical path.
+// A conflicting request fails with SQLITE_BUSY, SQLite calls the busy handler and retries.
+final class LockManager {
+    static final int NONE = 0;
+    static final int SHARED = 1;
+    static final int RESERVED = 2;
+    static final int PENDING = 3;
+    static final int EXCLUSIVE = 4;
+
+    private static final int SQLITE_OK = 0;
+    private static final int SQLITE_BUSY = 5;
+
+    private static final Map<Path, LockManager> FILES = new HashMap<>();
+
+    private final Path path;
+    // everything is guarded by FILES
+    private int handles;
+    // connections holding SHARED or higher
+    private int readers;
+    // the connection holding RESERVED, PENDING or EXCLUSIVE
+    private Lock writer;
+
+    private LockManager(Path path) {
+        this.path = path;
+    }
+
+    static Lock open(Path path) {
+        synchronized (FILES) {
+            LockManager file = FILES.computeIfAbsent(path, LockManager::new);
+            file.handles++;
+            return new Lock(file);
+        }
+    }
+
+    // The lock of a connection on a file
+    static final class Lock {
+        private final LockManager file;
+        private int level = NONE;
+        private boolean closed;
+
+        private Lock(LockManager file) {
+            this.file = file;
+        }
+
+        int level() {
+            synchronized (FILES) {
+                return level;
+            }
+        }
+
+        int lock(int requested) {
+            synchronized (FILES) {
+                if (level >= requested) {
+                    return SQLITE_OK;
+                }
+                Lock writer = file.writer;
+                if (requested == SHARED) {
+                    // a pending writer waits for the readers to leave, no new reader gets in
+                    if (writer != null && writer.level >= PENDING) {
+                        return SQLITE_BUSY;
+                    }
+                    file.readers++;
+                    level = SHARED;
+                    return SQLITE_OK;
+                }
+                if (writer != null && writer != this) {
+                    return SQLITE_BUSY;
+                }
+                // SQLite always holds SHARED first, the higher levels include it
+                if (level == NONE) {
+                    file.readers++;
+                }
+                file.writer = this;
+                if (requested == RESERVED) {
+                    level = RESERVED;
+                    return SQLITE_OK;
+                }
+                // EXCLUSIVE goes through PENDING, kept while the other readers finish
+                level = PENDING;
+                if (requested == EXCLUSIVE) {
+                    if (file.readers > 1) {
+                        return SQLITE_BUSY;
+                    }
+                    level = EXCLUSIVE;
+                }
+                return SQLITE_OK;
+            }
+        }
+
+        // level is SHARED or NONE
+        int unlock(int requested) {
+            synchronized (FILES) {
+                if (level <= requested) {
+                    return SQLITE_OK;
+                }
+                if (file.writer == this) {
+                    file.writer = null;
+                }
+                if (requested == NONE) {
+                    file.readers--;
+                }
+                level = requested;
+                return SQLITE_OK;
+            }
+        }
+
+        // whether any connection holds RESERVED or higher
+        boolean reserved() {
+            synchronized (FILES) {
+                return file.writer != null;
+            }
+        }
+
+        void close() {
+            synchronized (FILES) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                unlock(NONE);
+                if (--file.handles == 0) {
+                    FILES.remove(file.path);
+                }
+            }
+        }
+    }
+}
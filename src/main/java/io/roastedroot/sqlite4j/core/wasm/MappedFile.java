@@ -0,0 +1,77 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Read-only view of a host file mapped in memory.
+// Reads are copies out of the mapping, the pages live in the OS page cache and are shared
+// by all the connections and processes reading the same file.
+// A mapping is limited to 2GiB, larger files are mapped in several segments.
+public final class MappedFile implements VirtualFile {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    private final long size;
+    private final MappedByteBuffer[] segments;
+
+    public MappedFile(Path hostPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(hostPath, StandardOpenOption.READ)) {
+            this.size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] =
+                        channel.map(
+                                FileChannel.MapMode.READ_ONLY,
+                                start,
+                                Math.min(SEGMENT_SIZE, size - start));
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) {
+        if (position >= size) {
+            return -1;
+        }
+        int length = (int) Math.min(dst.remaining(), size - position);
+        int done = 0;
+        while (done < length) {
+            long pos = position + done;
+            int offset = (int) (pos & (SEGMENT_SIZE - 1));
+            int n = Math.min(length - done, SEGMENT_SIZE - offset);
+            // a duplicate per read, the position of the shared mapping is never moved
+            ByteBuffer src = segments[(int) (pos >>> SEGMENT_SHIFT)].duplicate();
+            src.position(offset);
+            src.limit(offset + n);
+            dst.put(src);
+            done += n;
+        }
+        return length;
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        throw new IOException("read-only file");
+    }
+
+    @Override
+    public void truncate(long size) throws IOException {
+        throw new IOException("read-only file");
+    }
+
+    @Override
+    public void close() {
+        // the mapping is released when the buffers are garbage collected
+    }
+}
@@ -0,0 +1,106 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import static java.lang.Math.min;
+
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Linear memory backed by direct ByteBuffers, the SQLite heap and page cache stay outside
+// of the Java heap and the GC only sees the small chunk table. The native memory of a released
+// chunk is freed when its buffer is collected.
+// The bulk accesses go through a duplicate of the chunk: the position of a shared buffer would
+// race between the host threads and the calls of a shared instance.
+public final class OffHeapMemory extends AbstractChunkedMemory<ByteBuffer> {
+    private static final byte[] ZEROES = new byte[4096];
+
+    public OffHeapMemory(MemoryLimits limits) {
+        this(limits, ChunkedMemory.DEFAULT_CHUNK_PAGES);
+    }
+
+    public OffHeapMemory(MemoryLimits limits, int chunkPages) {
+        super(limits, chunkPages);
+    }
+
+    @Override
+    protected ByteBuffer[] newChunkTable(int length) {
+        return new ByteBuffer[length];
+    }
+
+    @Override
+    protected ByteBuffer newChunk() {
+        // direct buffers are zeroed on allocation
+        return ByteBuffer.allocateDirect(chunkSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    protected byte get(ByteBuffer chunk, int off) {
+        return chunk.get(off);
+    }
+
+    @Override
+    protected void put(ByteBuffer chunk, int off, byte value) {
+        chunk.put(off, value);
+    }
+
+    @Override
+    protected short getShort(ByteBuffer chunk, int off) {
+        return chunk.getShort(off);
+    }
+
+    @Override
+    protected void putShort(ByteBuffer chunk, int off, short value) {
+        chunk.putShort(off, value);
+    }
+
+    @Override
+    protected int getInt(ByteBuffer chunk, int off) {
+        return chunk.getInt(off);
+    }
+
+    @Override
+    protected void putInt(ByteBuffer chunk, int off, int value) {
+        chunk.putInt(off, value);
+    }
+
+    @Override
+    protected long getLong(ByteBuffer chunk, int off) {
+        return chunk.getLong(off);
+    }
+
+    @Override
+    protected void putLong(ByteBuffer chunk, int off, long value) {
+        chunk.putLong(off, value);
+    }
+
+    @Override
+    protected void get(ByteBuffer chunk, int off, byte[] dst, int dstOff, int len) {
+        ByteBuffer view = chunk.duplicate();
+        view.position(off);
+        view.get(dst, dstOff, len);
+    }
+
+    @Override
+    protected void put(ByteBuffer chunk, int off, byte[] src, int srcOff, int len) {
+        ByteBuffer view = chunk.duplicate();
+        view.position(off);
+        view.put(src, srcOff, len);
+    }
+
+    @Override
+    protected void fill(ByteBuffer chunk, int off, int len, byte value) {
+        byte[] pattern = ZEROES;
+        if (value != 0) {
+            pattern = new byte[min(len, ZEROES.length)];
+            Arrays.fill(pattern, value);
+        }
+        ByteBuffer view = chunk.duplicate();
+        view.position(off);
+        while (len > 0) {
+            int n = min(len, pattern.length);
+            view.put(pattern, 0, n);
+            len -= n;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Content of a file of a LazyFileSystem, shared by all the channels opened on it
+public interface VirtualFile {
+    long size();
+
+    // returns -1 when position is at or past the end of the file
+    int read(ByteBuffer dst, long position) throws IOException;
+
+    int write(ByteBuffer src, long position) throws IOException;
+
+    void truncate(long size) throws IOException;
+
+    void close() throws IOException;
+}
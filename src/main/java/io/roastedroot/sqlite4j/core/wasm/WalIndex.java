@@ -0,0 +1,210 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import com.dylibso.chicory.runtime.Memory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// The wal-index (-shm) of a database in WAL mode, shared by all the connections of the JVM
+// opening the database through the sqlite4j VFS.
+// Every Wasm instance maps the regions in its own linear memory, the content is synchronized
+// with the shared copy by the locks: the changes are published when an exclusive lock is
+// released, or at a barrier, and picked up when a lock is acquired.
+// Only the bytes that differ from the last synchronized content (the shadow) are copied,
+// the connections writing different parts of the index never overwrite each other.
+final class WalIndex {
+    private static final int SQLITE_OK = 0;
+    private static final int SQLITE_BUSY = 5;
+
+    private static final int SQLITE_SHM_UNLOCK = 1;
+    private static final int SQLITE_SHM_SHARED = 4;
+    private static final int SQLITE_SHM_NLOCK = 8;
+
+    // returned by map when the region doesn't exist and should not be created
+    static final int NO_REGION = -1;
+
+    private static final Map<Path, WalIndex> INDEXES = new HashMap<>();
+
+    private final Path path;
+    // guarded by INDEXES
+    private int mappings;
+    private byte[][] regions = new byte[0][];
+    private final int[] readers = new int[SQLITE_SHM_NLOCK];
+    private final Mapping[] writers = new Mapping[SQLITE_SHM_NLOCK];
+
+    private WalIndex(Path path) {
+        this.path = path;
+    }
+
+    static Mapping open(Path path) {
+        synchronized (INDEXES) {
+            WalIndex index = INDEXES.computeIfAbsent(path, WalIndex::new);
+            index.mappings++;
+            return new Mapping(index);
+        }
+    }
+
+    // The view of a connection: the regions mapped in its memory and the locks it holds
+    static final class Mapping {
+        private final WalIndex index;
+        private int[] pointers = new int[0];
+        private byte[][] shadows = new byte[0][];
+        // bit masks of the lock slots
+        private int shared;
+        private int exclusive;
+
+        private Mapping(WalIndex index) {
+            this.index = index;
+        }
+
+        // ptr is a zeroed region of the linear memory, the shared content is copied in it
+        int map(Memory memory, int region, int size, boolean extend, int ptr) {
+            synchronized (index) {
+                if (region >= index.regions.length) {
+                    if (!extend) {
+                        return NO_REGION;
+                    }
+                    int from = index.regions.length;
+                    index.regions = Arrays.copyOf(index.regions, region + 1);
+                    for (int i = from; i <= region; i++) {
+                        index.regions[i] = new byte[size];
+                    }
+                }
+                if (region >= pointers.length) {
+                    pointers = Arrays.copyOf(pointers, region + 1);
+                    shadows = Arrays.copyOf(shadows, region + 1);
+                }
+                byte[] content = index.regions[region];
+                pointers[region] = ptr;
+                shadows[region] = content.clone();
+                memory.write(ptr, content);
+                return SQLITE_OK;
+            }
+        }
+
+        int lock(Memory memory, int offset, int n, int flags) {
+            int mask = ((1 << n) - 1) << offset;
+            synchronized (index) {
+                if (exclusive != 0) {
+                    release(memory);
+                }
+                if ((flags & SQLITE_SHM_UNLOCK) != 0) {
+                    for (int i = offset; i < offset + n; i++) {
+                        if ((shared & (1 << i)) != 0) {
+                            index.readers[i]--;
+                        }
+                        if ((exclusive & (1 << i)) != 0) {
+                            index.writers[i] = null;
+                        }
+                    }
+                    shared &= ~mask;
+                    exclusive &= ~mask;
+                    return SQLITE_OK;
+                }
+                if ((flags & SQLITE_SHM_SHARED) != 0) {
+                    for (int i = offset; i < offset + n; i++) {
+                        if (index.writers[i] != null && index.writers[i] != this) {
+                            return SQLITE_BUSY;
+                        }
+                    }
+                    for (int i = offset; i < offset + n; i++) {
+                        if ((shared & (1 << i)) == 0) {
+                            index.readers[i]++;
+                        }
+                    }
+                    shared |= mask;
+                } else {
+                    for (int i = offset; i < offset + n; i++) {
+                        int own = (shared >>> i) & 1;
+                        if ((index.writers[i] != null && index.writers[i] != this)
+                                || index.readers[i] > own) {
+                            return SQLITE_BUSY;
+                        }
+                    }
+                    for (int i = offset; i < offset + n; i++) {
+                        index.writers[i] = this;
+                    }
+                    exclusive |= mask;
+                }
+                acquire(memory);
+                return SQLITE_OK;
+            }
+        }
+
+        void barrier(Memory memory) {
+            synchronized (index) {
+                release(memory);
+                acquire(memory);
+            }
+        }
+
+        // the shared content is dropped with the last mapping, SQLite rebuilds it from the WAL
+        int unmap() {
+            synchronized (INDEXES) {
+                synchronized (index) {
+                    for (int i = 0; i < SQLITE_SHM_NLOCK; i++) {
+                        if ((shared & (1 << i)) != 0) {
+                            index.readers[i]--;
+                        }
+                        if (index.writers[i] == this) {
+                            index.writers[i] = null;
+                        }
+                    }
+                    shared = 0;
+                    exclusive = 0;
+                    pointers = new int[0];
+                    shadows = new byte[0][];
+                }
+                if (--index.mappings == 0) {
+                    INDEXES.remove(index.path);
+                }
+                return SQLITE_OK;
+            }
+        }
+
+        // local changes to the shared copy
+        private void release(Memory memory) {
+            for (int r = 0; r < shadows.length; r++) {
+                byte[] shadow = shadows[r];
+                if (shadow == null) {
+                    continue;
+                }
+                byte[] local = memory.readBytes(pointers[r], shadow.length);
+                byte[] content = index.regions[r];
+                for (int i = 0; i < shadow.length; i++) {
+                    if (local[i] != shadow[i]) {
+                        shadow[i] = local[i];
+                        content[i] = local[i];
+                    }
+                }
+            }
+        }
+
+        // shared changes to the local memory, only called when the local memory matches
+        // the shadow: the bytes between two changes can be written back as a single span
+        private void acquire(Memory memory) {
+            for (int r = 0; r < shadows.length; r++) {
+                byte[] shadow = shadows[r];
+                if (shadow == null) {
+                    continue;
+                }
+                byte[] content = index.regions[r];
+                int first = -1;
+                int last = -1;
+                for (int i = 0; i < shadow.length; i++) {
+                    if (content[i] != shadow[i]) {
+                        shadow[i] = content[i];
+                        if (first < 0) {
+                            first = i;
+                        }
+                        last = i;
+                    }
+                }
+                if (first >= 0) {
+                    memory.write(pointers[r] + first, shadow, first, last - first + 1);
+                }
+            }
+        }
+    }
+}
@@ -4,13 +4,15 @@ import static io.roastedroot.sqlite4j.core.Codes.SQLITE_NULL;
 
 import com.dylibso.chicory.runtime.ExportFunction;
 import com.dylibso.chicory.runtime.Instance;
-import com.dylibso.chicory.wasm.types.Value;
 import java.nio.charset.StandardCharsets;
 
-// Manually writing it to avoid passing through the Map lookup on every invocation
+// Manually writing it to avoid passing through the Map lookup on every invocation,
+// the functions on the hot paths (step, column_*, bind_*, value_*, result_*) go through
+// WasmFunction to avoid boxing arguments and results in long[]
 public class WasmDBExports {
 
-    private static final int SQLITE_TRANSIENT = -1; // https://www.sqlite.org/c3ref/c_static.html
+    private static final int SQLITE_STATIC = 0; // https://www.sqlite.org/c3ref/c_static.html
+    private static final int SQLITE_TRANSIENT = -1;
     public static final int SQLITE_SERIALIZE_NOCOPY = 0x001;
 
     public static final int SQLITE_UTF8 = 1; /* IMP: R-37514-35566 */
@@ -21,38 +23,48 @@ public class WasmDBExports {
     private static final int SQLITE_UTF16_ALIGNED = 8; /* sqlite3_create_collation only */
 
     private final Instance instance;
+    private final ExportFunction initialize;
+    private final ExportFunction config;
+    private final ExportFunction memoryUsed;
+    private final ExportFunction softHeapLimit;
+    private final ExportFunction dbReleaseMemory;
+    private final ExportFunction getAutocommit;
+    private final ExportFunction dbFilename;
     private final ExportFunction realloc;
-    private final ExportFunction malloc;
-    private final ExportFunction free;
+    private final WasmFunction malloc;
+    private final WasmFunction free;
+    private final ExportFunction sqliteMalloc;
+    private final ExportFunction sqliteFree;
     private final ExportFunction openV2;
     private final ExportFunction prepareV2;
-    private final ExportFunction finalize;
-    private final ExportFunction step;
+    private final ExportFunction prepareV3;
+    private final WasmFunction finalize;
+    private final WasmFunction step;
     private final ExportFunction exec;
-    private final ExportFunction changes;
+    private final WasmFunction changes;
     private final ExportFunction totalChanges;
     private final ExportFunction close;
-    private final ExportFunction reset;
-    private final ExportFunction clearBindings;
-    private final ExportFunction bindParameterCount;
-    private final ExportFunction columnCount;
-    private final ExportFunction columnType;
+    private final WasmFunction reset;
+    private final WasmFunction clearBindings;
+    private final WasmFunction bindParameterCount;
+    private final WasmFunction columnCount;
+    private final WasmFunction columnType;
     private final ExportFunction columnDeclType;
-    private final ExportFunction columnName;
-    private final ExportFunction columnText;
-    private final ExportFunction columnInt;
-    private final ExportFunction columnDouble;
-    private final ExportFunction columnLong;
-    private final ExportFunction columnBlob;
-    private final ExportFunction columnBytes;
+    private final WasmFunction columnName;
+    private final WasmFunction columnText;
+    private final WasmFunction columnInt;
+    private final WasmFunction columnDouble;
+    private final WasmFunction columnLong;
+    private final WasmFunction columnBlob;
+    private final WasmFunction columnBytes;
     private final ExportFunction columnTableName;
     private final ExportFunction columnMetadata;
-    private final ExportFunction bindInt;
-    private final ExportFunction bindLong;
-    private final ExportFunction bindDouble;
-    private final ExportFunction bindNull;
-    private final ExportFunction bindText;
-    private final ExportFunction bindBlob;
+    private final WasmFunction bindInt;
+    private final WasmFunction bindLong;
+    private final WasmFunction bindDouble;
+    private final WasmFunction bindNull;
+    private final WasmFunction bindText;
+    private final WasmFunction bindBlob;
     private final ExportFunction limit;
     private final ExportFunction errmsg;
     private final ExportFunction extendedErrcode;
@@ -60,22 +72,22 @@ public class WasmDBExports {
     private final ExportFunction version;
     private final ExportFunction createFunction;
     private final ExportFunction createFunctionAggregate;
-    private final ExportFunction userData;
-    private final ExportFunction resultText;
-    private final ExportFunction resultNull;
-    private final ExportFunction resultLong;
-    private final ExportFunction resultInt;
-    private final ExportFunction resultDouble;
-    private final ExportFunction resultBlob;
+    private final WasmFunction userData;
+    private final WasmFunction resultText;
+    private final WasmFunction resultNull;
+    private final WasmFunction resultLong;
+    private final WasmFunction resultInt;
+    private final WasmFunction resultDouble;
+    private final WasmFunction resultBlob;
     private final ExportFunction resultError;
     private final ExportFunction resultErrorNomem;
-    private final ExportFunction valueDouble;
-    private final ExportFunction valueText;
-    private final ExportFunction valueInt;
-    private final ExportFunction valueType;
-    private final ExportFunction valueBlob;
-    private final ExportFunction valueBytes;
-    private final ExportFunction valueLong;
+    private final WasmFunction valueDouble;
+    private final WasmFunction valueText;
+    private final WasmFunction valueInt;
+    private final WasmFunction valueType;
+    private final WasmFunction valueBlob;
+    private final WasmFunction valueBytes;
+    private final WasmFunction valueLong;
     private final ExportFunction progressHandler;
     private final ExportFunction busyHandler;
     private final ExportFunction serialize;
@@ -91,6 +103,11 @@ public class WasmDBExports {
     private final ExportFunction backupPageCount;
     private final ExportFunction sleep;
     private final ExportFunction interrupt;
+    // sqlite3_helpers.c, missing in modules built before it was introduced
+    private final WasmFunction fetch;
+    private final WasmFunction bindAll;
+    private final WasmFunction executeBatch;
+    private final WasmFunction registerVfs;
 
     private final int xFuncPtr;
     private final int xStepPtr;
@@ -109,101 +126,220 @@ public class WasmDBExports {
     public WasmDBExports(Instance instance) {
         this.instance = instance;
 
-        this.xFuncPtr = (int) instance.exports().function("xFuncPtr").apply()[0];
-        this.xStepPtr = (int) instance.exports().function("xStepPtr").apply()[0];
-        this.xFinalPtr = (int) instance.exports().function("xFinalPtr").apply()[0];
-        this.xValuePtr = (int) instance.exports().function("xValuePtr").apply()[0];
-        this.xInversePtr = (int) instance.exports().function("xInversePtr").apply()[0];
-        this.xDestroyPtr = (int) instance.exports().function("xDestroyPtr").apply()[0];
-        this.xProgressPtr = (int) instance.exports().function("xProgressPtr").apply()[0];
-        this.xBusyPtr = (int) instance.exports().function("xBusyPtr").apply()[0];
-        this.xComparePtr = (int) instance.exports().function("xComparePtr").apply()[0];
-        this.xDestroyCollationPtr =
-                (int) instance.exports().function("xDestroyCollationPtr").apply()[0];
-        this.xUpdatePtr = (int) instance.exports().function("xUpdatePtr").apply()[0];
-        this.xCommitPtr = (int) instance.exports().function("xCommitPtr").apply()[0];
-        this.xRollbackPtr = (int) instance.exports().function("xRollbackPtr").apply()[0];
-
-        this.realloc = instance.exports().function("realloc");
-        this.malloc = instance.exports().function("malloc");
-        this.free = instance.exports().function("free");
-        this.openV2 = instance.exports().function("sqlite3_open_v2");
-        this.prepareV2 = instance.exports().function("sqlite3_prepare_v2");
-        this.finalize = instance.exports().function("sqlite3_finalize");
-        this.step = instance.exports().function("sqlite3_step");
-        this.exec = instance.exports().function("sqlite3_exec");
-        this.changes = instance.exports().function("sqlite3_changes64");
-        this.totalChanges = instance.exports().function("sqlite3_total_changes");
-        this.close = instance.exports().function("sqlite3_close");
-        this.reset = instance.exports().function("sqlite3_reset");
-        this.clearBindings = instance.exports().function("sqlite3_clear_bindings");
-        this.bindParameterCount = instance.exports().function("sqlite3_bind_parameter_count");
-        this.columnCount = instance.exports().function("sqlite3_column_count");
-        this.columnType = instance.exports().function("sqlite3_column_type");
-        this.columnDeclType = instance.exports().function("sqlite3_column_decltype");
-        this.columnName = instance.exports().function("sqlite3_column_name");
-        this.columnText = instance.exports().function("sqlite3_column_text");
-        this.columnInt = instance.exports().function("sqlite3_column_int");
-        this.columnDouble = instance.exports().function("sqlite3_column_double");
-        this.columnLong = instance.exports().function("sqlite3_column_int64");
-        this.columnBlob = instance.exports().function("sqlite3_column_blob");
-        this.columnBytes = instance.exports().function("sqlite3_column_bytes");
-        this.columnTableName = instance.exports().function("sqlite3_column_table_name");
-        this.columnMetadata = instance.exports().function("sqlite3_table_column_metadata");
-        this.bindInt = instance.exports().function("sqlite3_bind_int");
-        this.bindLong = instance.exports().function("sqlite3_bind_int64");
-        this.bindDouble = instance.exports().function("sqlite3_bind_double");
-        this.bindNull = instance.exports().function("sqlite3_bind_null");
-        this.bindText = instance.exports().function("sqlite3_bind_text");
-        this.bindBlob = instance.exports().function("sqlite3_bind_blob");
-        this.limit = instance.exports().function("sqlite3_limit");
-        this.errmsg = instance.exports().function("sqlite3_errmsg");
-        this.extendedErrcode = instance.exports().function("sqlite3_extended_errcode");
-        this.busyTimeout = instance.exports().function("sqlite3_busy_timeout");
-        this.version = instance.exports().function("sqlite3_libversion");
-        this.createFunction = instance.exports().function("sqlite3_create_function_v2");
-        this.createFunctionAggregate =
-                instance.exports().function("sqlite3_create_window_function");
-        this.userData = instance.exports().function("sqlite3_user_data");
-        this.resultText = instance.exports().function("sqlite3_result_text");
-        this.resultNull = instance.exports().function("sqlite3_result_null");
-        this.resultLong = instance.exports().function("sqlite3_result_int64");
-        this.resultInt = instance.exports().function("sqlite3_result_int");
-        this.resultDouble = instance.exports().function("sqlite3_result_double");
-        this.resultBlob = instance.exports().function("sqlite3_result_blob");
-        this.resultError = instance.exports().function("sqlite3_result_error");
-        this.resultErrorNomem = instance.exports().function("sqlite3_result_error_nomem");
-        this.valueDouble = instance.exports().function("sqlite3_value_double");
-        this.valueText = instance.exports().function("sqlite3_value_text");
-        this.valueInt = instance.exports().function("sqlite3_value_int");
-        this.valueType = instance.exports().function("sqlite3_value_type");
-        this.valueLong = instance.exports().function("sqlite3_value_int64");
-        this.valueBlob = instance.exports().function("sqlite3_value_blob");
-        this.valueBytes = instance.exports().function("sqlite3_value_bytes");
-        this.serialize = instance.exports().function("sqlite3_serialize");
-        this.deserialize = instance.exports().function("sqlite3_deserialize");
-        this.createCollation = instance.exports().function("sqlite3_create_collation_v2");
-        this.backupInit = instance.exports().function("sqlite3_backup_init");
-        this.backupStep = instance.exports().function("sqlite3_backup_step");
-        this.backupFinish = instance.exports().function("sqlite3_backup_finish");
-        this.backupRemaining = instance.exports().function("sqlite3_backup_remaining");
-        this.backupPageCount = instance.exports().function("sqlite3_backup_pagecount");
-        this.sleep = instance.exports().function("sqlite3_sleep");
-        this.interrupt = instance.exports().function("sqlite3_interrupt");
-
-        this.progressHandler = instance.exports().function("sqlite3_progress_handler");
-        this.busyHandler = instance.exports().function("sqlite3_busy_handler");
-        this.updateHook = instance.exports().function("sqlite3_update_hook");
-        this.commitHook = instance.exports().function("sqlite3_commit_hook");
-        this.rollbackHook = instance.exports().function("sqlite3_rollback_hook");
+        this.xFuncPtr = (int) export("xFuncPtr").apply()[0];
+        this.xStepPtr = (int) export("xStepPtr").apply()[0];
+        this.xFinalPtr = (int) export("xFinalPtr").apply()[0];
+        this.xValuePtr = (int) export("xValuePtr").apply()[0];
+        this.xInversePtr = (int) export("xInversePtr").apply()[0];
+        this.xDestroyPtr = (int) export("xDestroyPtr").apply()[0];
+        this.xProgressPtr = (int) export("xProgressPtr").apply()[0];
+        this.xBusyPtr = (int) export("xBusyPtr").apply()[0];
+        this.xComparePtr = (int) export("xComparePtr").apply()[0];
+        this.xDestroyCollationPtr = (int) export("xDestroyCollationPtr").apply()[0];
+        this.xUpdatePtr = (int) export("xUpdatePtr").apply()[0];
+        this.xCommitPtr = (int) export("xCommitPtr").apply()[0];
+        this.xRollbackPtr = (int) export("xRollbackPtr").apply()[0];
+
+        this.initialize = export("sqlite3_initialize");
+        this.config = export("sqlite3_config");
+        this.memoryUsed = export("sqlite3_memory_used");
+        this.softHeapLimit = export("sqlite3_soft_heap_limit64");
+        this.dbReleaseMemory = export("sqlite3_db_release_memory");
+        this.realloc = export("realloc");
+        this.malloc = WasmFunction.of(instance, "malloc", int.class, int.class);
+        this.free = WasmFunction.of(instance, "free", void.class, int.class);
+        this.sqliteMalloc = export("sqlite3_malloc64");
+        this.sqliteFree = export("sqlite3_free");
+        this.openV2 = export("sqlite3_open_v2");
+        this.prepareV2 = export("sqlite3_prepare_v2");
+        this.prepareV3 = export("sqlite3_prepare_v3");
+        this.finalize = WasmFunction.of(instance, "sqlite3_finalize", int.class, int.class);
+        this.step = WasmFunction.of(instance, "sqlite3_step", int.class, int.class);
+        this.exec = export("sqlite3_exec");
+        this.changes = WasmFunction.of(instance, "sqlite3_changes64", long.class, int.class);
+        this.totalChanges = export("sqlite3_total_changes");
+        this.close = export("sqlite3_close");
+        this.reset = WasmFunction.of(instance, "sqlite3_reset", int.class, int.class);
+        this.clearBindings =
+                WasmFunction.of(instance, "sqlite3_clear_bindings", int.class, int.class);
+        this.bindParameterCount =
+                WasmFunction.of(instance, "sqlite3_bind_parameter_count", int.class, int.class);
+        this.columnCount = WasmFunction.of(instance, "sqlite3_column_count", int.class, int.class);
+        this.columnType =
+                WasmFunction.of(instance, "sqlite3_column_type", int.class, int.class, int.class);
+        this.columnDeclType = export("sqlite3_column_decltype");
+        this.columnName =
+                WasmFunction.of(instance, "sqlite3_column_name", int.class, int.class, int.class);
+        this.columnText =
+                WasmFunction.of(instance, "sqlite3_column_text", int.class, int.class, int.class);
+        this.columnInt =
+                WasmFunction.of(instance, "sqlite3_column_int", int.class, int.class, int.class);
+        this.columnDouble =
+                WasmFunction.of(
+                        instance, "sqlite3_column_double", double.class, int.class, int.class);
+        this.columnLong =
+                WasmFunction.of(instance, "sqlite3_column_int64", long.class, int.class, int.class);
+        this.columnBlob =
+                WasmFunction.of(instance, "sqlite3_column_blob", int.class, int.class, int.class);
+        this.columnBytes =
+                WasmFunction.of(instance, "sqlite3_column_bytes", int.class, int.class, int.class);
+        this.columnTableName = export("sqlite3_column_table_name");
+        this.columnMetadata = export("sqlite3_table_column_metadata");
+        this.bindInt =
+                WasmFunction.of(
+                        instance, "sqlite3_bind_int", int.class, int.class, int.class, int.class);
+        this.bindLong =
+                WasmFunction.of(
+                        instance,
+                        "sqlite3_bind_int64",
+                        int.class,
+                        int.class,
+                        int.class,
+                        long.class);
+        this.bindDouble =
+                WasmFunction.of(
+                        instance,
+                        "sqlite3_bind_double",
+                        int.class,
+                        int.class,
+                        int.class,
+                        double.class);
+        this.bindNull =
+                WasmFunction.of(instance, "sqlite3_bind_null", int.class, int.class, int.class);
+        this.bindText =
+                WasmFunction.of(
+                        instance,
+                        "sqlite3_bind_text",
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class);
+        this.bindAll =
+                WasmFunction.of(
+                        instance,
+                        "sqlite4j_bind_all",
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class);
+        this.registerVfs = WasmFunction.of(instance, "sqlite4j_register_vfs", int.class);
+        this.executeBatch =
+                WasmFunction.of(
+                        instance,
+                        "sqlite4j_execute_batch",
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class);
+        this.bindBlob =
+                WasmFunction.of(
+                        instance,
+                        "sqlite3_bind_blob",
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class);
+        this.limit = export("sqlite3_limit");
+        this.getAutocommit = export("sqlite3_get_autocommit");
+        this.dbFilename = export("sqlite3_db_filename");
+        this.errmsg = export("sqlite3_errmsg");
+        this.extendedErrcode = export("sqlite3_extended_errcode");
+        this.busyTimeout = export("sqlite3_busy_timeout");
+        this.version = export("sqlite3_libversion");
+        this.createFunction = export("sqlite3_create_function_v2");
+        this.createFunctionAggregate = export("sqlite3_create_window_function");
+        this.userData = WasmFunction.of(instance, "sqlite3_user_data", int.class, int.class);
+        this.resultText =
+                WasmFunction.of(
+                        instance,
+                        "sqlite3_result_text",
+                        void.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class);
+        this.resultNull = WasmFunction.of(instance, "sqlite3_result_null", void.class, int.class);
+        this.resultLong =
+                WasmFunction.of(
+                        instance, "sqlite3_result_int64", void.class, int.class, long.class);
+        this.resultInt =
+                WasmFunction.of(instance, "sqlite3_result_int", void.class, int.class, int.class);
+        this.resultDouble =
+                WasmFunction.of(
+                        instance, "sqlite3_result_double", void.class, int.class, double.class);
+        this.resultBlob =
+                WasmFunction.of(
+                        instance,
+                        "sqlite3_result_blob",
+                        void.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class);
+        this.resultError = export("sqlite3_result_error");
+        this.resultErrorNomem = export("sqlite3_result_error_nomem");
+        this.valueDouble =
+                WasmFunction.of(instance, "sqlite3_value_double", double.class, int.class);
+        this.valueText = WasmFunction.of(instance, "sqlite3_value_text", int.class, int.class);
+        this.valueInt = WasmFunction.of(instance, "sqlite3_value_int", int.class, int.class);
+        this.valueType = WasmFunction.of(instance, "sqlite3_value_type", int.class, int.class);
+        this.valueLong = WasmFunction.of(instance, "sqlite3_value_int64", long.class, int.class);
+        this.valueBlob = WasmFunction.of(instance, "sqlite3_value_blob", int.class, int.class);
+        this.valueBytes = WasmFunction.of(instance, "sqlite3_value_bytes", int.class, int.class);
+        this.serialize = export("sqlite3_serialize");
+        this.deserialize = export("sqlite3_deserialize");
+        this.createCollation = export("sqlite3_create_collation_v2");
+        this.backupInit = export("sqlite3_backup_init");
+        this.backupStep = export("sqlite3_backup_step");
+        this.backupFinish = export("sqlite3_backup_finish");
+        this.backupRemaining = export("sqlite3_backup_remaining");
+        this.backupPageCount = export("sqlite3_backup_pagecount");
+        this.sleep = export("sqlite3_sleep");
+        this.interrupt = export("sqlite3_interrupt");
+        this.fetch =
+                WasmFunction.of(
+                        instance,
+                        "sqlite4j_fetch",
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class,
+                        int.class);
+
+        this.progressHandler = export("sqlite3_progress_handler");
+        this.busyHandler = export("sqlite3_busy_handler");
+        this.updateHook = export("sqlite3_update_hook");
+        this.commitHook = export("sqlite3_commit_hook");
+        this.rollbackHook = export("sqlite3_rollback_hook");
+    }
+
+    private ExportFunction export(String name) {
+        return instance.exports().function(name);
     }
 
     public int malloc(int size) {
-        return (int) malloc.apply(size)[0];
+        return malloc.applyInt(size);
     }
 
     public void free(int ptr) {
-        free.apply(ptr);
+        free.applyVoid(ptr);
+    }
+
+    // memory owned by SQLite, accounted in sqlite3_memory_used
+    public int sqliteMalloc(long size) {
+        return (int) sqliteMalloc.apply(size)[0];
+    }
+
+    public void sqliteFree(int ptr) {
+        sqliteFree.apply(ptr);
     }
 
     public int ptr(int ptrptr) {
@@ -265,6 +401,22 @@ public class WasmDBExports {
         return (int) prepareV2.apply(dbPtr, zSql, nByte, stmtPtrPtr, pzTail)[0];
     }
 
+    //    sqlite3 *db,            /* Database handle */
+    //    const char *zSql,       /* SQL statement, UTF-8 encoded */
+    //    int nByte,              /* Maximum length of zSql in bytes. */
+    //    unsigned int prepFlags, /* Zero or more SQLITE_PREPARE_ flags */
+    //    sqlite3_stmt **ppStmt,  /* OUT: Statement handle */
+    //    const char **pzTail     /* OUT: Pointer to unused portion of zSql */
+    public int prepareV3(
+            int dbPtr,
+            int zSql,
+            int nByte,
+            int prepFlags,
+            /* OUT */ int stmtPtrPtr,
+            /* OUT */ int pzTail) {
+        return (int) prepareV3.apply(dbPtr, zSql, nByte, prepFlags, stmtPtrPtr, pzTail)[0];
+    }
+
     //    sqlite3*,                                  /* An open database */
     //    const char *sql,                           /* SQL to be evaluated */
     //    int (*callback)(void*,int,char**,char**),  /* Callback function */
@@ -279,11 +431,11 @@ public class WasmDBExports {
     }
 
     public int finalize(int stmtPtr) {
-        return (int) finalize.apply(stmtPtr)[0];
+        return finalize.applyInt(stmtPtr);
     }
 
     public int step(int stmtPtr) {
-        return (int) step.apply(stmtPtr)[0];
+        return step.applyInt(stmtPtr);
     }
 
     public int close(int dbPtr) {
@@ -294,32 +446,47 @@ public class WasmDBExports {
         return (int) limit.apply(dbPtr, id, value)[0];
     }
 
+    public boolean getAutocommit(int dbPtr) {
+        return getAutocommit.apply(dbPtr)[0] != 0;
+    }
+
+    // empty for the in-memory and temporary databases
+    public String dbFilename(int dbPtr, String schema) {
+        int schemaPtr = allocCString(schema);
+        try {
+            int ptr = (int) dbFilename.apply(dbPtr, schemaPtr)[0];
+            return ptr == 0 ? null : instance.memory().readCString(ptr);
+        } finally {
+            free(schemaPtr);
+        }
+    }
+
     public int totalChanges(int dbPtr) {
         return (int) totalChanges.apply(dbPtr)[0];
     }
 
     public long changes(int dbPtr) {
-        return changes.apply(dbPtr)[0];
+        return changes.applyLong(dbPtr);
     }
 
     public int reset(int stmtPtr) {
-        return (int) reset.apply(stmtPtr)[0];
+        return reset.applyInt(stmtPtr);
     }
 
     public int clearBindings(int stmtPtr) {
-        return (int) clearBindings.apply(stmtPtr)[0];
+        return clearBindings.applyInt(stmtPtr);
     }
 
     public int bindParameterCount(int stmtPtr) {
-        return (int) bindParameterCount.apply(stmtPtr)[0];
+        return bindParameterCount.applyInt(stmtPtr);
     }
 
     public int columnCount(int stmtPtr) {
-        return (int) columnCount.apply(stmtPtr)[0];
+        return columnCount.applyInt(stmtPtr);
     }
 
     public int columnType(int stmtPtr, int col) {
-        return (int) columnType.apply(stmtPtr, col)[0];
+        return columnType.applyInt(stmtPtr, col);
     }
 
     public int columnDeclType(int stmtPtr, int col) {
@@ -357,36 +524,40 @@ public class WasmDBExports {
     }
 
     public int columnName(int stmtPtr, int col) {
-        return (int) columnName.apply(stmtPtr, col)[0];
+        return columnName.applyInt(stmtPtr, col);
     }
 
     public int columnText(int stmtPtr, int col) {
-        return (int) columnText.apply(stmtPtr, col)[0];
+        return columnText.applyInt(stmtPtr, col);
     }
 
     public int columnBytes(int stmtPtr, int col) {
-        return (int) columnBytes.apply(stmtPtr, col)[0];
+        return columnBytes.applyInt(stmtPtr, col);
     }
 
     public int columnInt(int stmtPtr, int col) {
-        return (int) columnInt.apply(stmtPtr, col)[0];
+        return columnInt.applyInt(stmtPtr, col);
     }
 
     public double columnDouble(int stmtPtr, int col) {
-        return Value.longToDouble(columnDouble.apply(stmtPtr, col)[0]);
+        return columnDouble.applyDouble(stmtPtr, col);
     }
 
     public long columnLong(int stmtPtr, int col) {
-        return columnLong.apply(stmtPtr, col)[0];
+        return columnLong.applyLong(stmtPtr, col);
     }
 
     public int columnTableName(int stmtPtr, int col) {
         return (int) columnTableName.apply(stmtPtr, col)[0];
     }
 
+    public int columnBlobPtr(int stmtPtr, int col) {
+        return columnBlob.applyInt(stmtPtr, col);
+    }
+
     public byte[] columnBlob(int stmtPtr, int col) {
         int type = columnType(stmtPtr, col);
-        int blobPtr = (int) columnBlob.apply(stmtPtr, col)[0];
+        int blobPtr = columnBlob.applyInt(stmtPtr, col);
         if (blobPtr == 0) {
             if (type == SQLITE_NULL) {
                 return null;
@@ -395,32 +566,36 @@ public class WasmDBExports {
             }
         }
 
-        int length = (int) columnBytes.apply(stmtPtr, col)[0];
+        int length = columnBytes.applyInt(stmtPtr, col);
         return instance.memory().readBytes(blobPtr, length);
     }
 
     public int bindInt(int stmtPtr, int pos, int v) {
-        return (int) bindInt.apply(stmtPtr, pos, v)[0];
+        return bindInt.applyInt(stmtPtr, pos, v);
     }
 
     public int bindLong(int stmtPtr, int pos, long v) {
-        return (int) bindLong.apply(stmtPtr, pos, v)[0];
+        return bindLong.applyInt(stmtPtr, pos, v);
     }
 
     public int bindDouble(int stmtPtr, int pos, double v) {
-        return (int) bindDouble.apply(stmtPtr, pos, Value.doubleToLong(v))[0];
+        return bindDouble.applyInt(stmtPtr, pos, v);
     }
 
     public int bindNull(int stmtPtr, int pos) {
-        return (int) bindNull.apply(stmtPtr, pos)[0];
+        return bindNull.applyInt(stmtPtr, pos);
     }
 
-    public int bindText(int stmtPtr, int pos, int vPtr, int vLength) {
-        return (int) bindText.apply(stmtPtr, pos, vPtr, vLength, SQLITE_TRANSIENT)[0];
+    // when copy is false the bytes must stay untouched until the parameter is bound again
+    // or the statement is finalized
+    public int bindText(int stmtPtr, int pos, int vPtr, int vLength, boolean copy) {
+        return bindText.applyInt(
+                stmtPtr, pos, vPtr, vLength, copy ? SQLITE_TRANSIENT : SQLITE_STATIC);
     }
 
-    public int bindBlob(int stmtPtr, int pos, int vPtr, int vLength) {
-        return (int) bindBlob.apply(stmtPtr, pos, vPtr, vLength, SQLITE_TRANSIENT)[0];
+    public int bindBlob(int stmtPtr, int pos, int vPtr, int vLength, boolean copy) {
+        return bindBlob.applyInt(
+                stmtPtr, pos, vPtr, vLength, copy ? SQLITE_TRANSIENT : SQLITE_STATIC);
     }
 
     public int errmsg(int dbPtr) {
@@ -435,6 +610,35 @@ public class WasmDBExports {
         return (int) version.apply()[0];
     }
 
+    public int initialize() {
+        return (int) initialize.apply()[0];
+    }
+
+    private static final int SQLITE_CONFIG_MEMSTATUS = 9;
+
+    // counts the memory allocated by SQLite, only before sqlite3_initialize,
+    // the variadic arguments of sqlite3_config are passed in memory
+    public int enableMemoryStatus() {
+        int argPtr = malloc(4);
+        instance.memory().writeI32(argPtr, 1);
+        int rc = (int) config.apply(SQLITE_CONFIG_MEMSTATUS, argPtr)[0];
+        free(argPtr);
+        return rc;
+    }
+
+    public long memoryUsed() {
+        return memoryUsed.apply()[0];
+    }
+
+    // for the whole instance, 0 for no limit
+    public long softHeapLimit(long limit) {
+        return softHeapLimit.apply(limit)[0];
+    }
+
+    public int dbReleaseMemory(int dbPtr) {
+        return (int) dbReleaseMemory.apply(dbPtr)[0];
+    }
+
     //    gethandle(env, nativeDB),
     //    name_bytes,            // function name
     //    nArgs,                 // number of args
@@ -476,37 +680,38 @@ public class WasmDBExports {
                                 xDestroyPtr)[0]; // freeUdf)
     }
 
-    public int createNullFunction(int dbPtr, int namePtr) {
+    public int createNullFunction(int dbPtr, int namePtr, int nArgs) {
         return (int)
-                createFunction.apply(dbPtr, namePtr, 0, SQLITE_UTF16, 0, 0, 0, 0, 0)[0]; // freeUdf)
+                createFunction
+                        .apply(dbPtr, namePtr, nArgs, SQLITE_UTF16, 0, 0, 0, 0, 0)[0]; // freeUdf)
     }
 
     public int userData(int ctx) {
-        return (int) userData.apply(ctx)[0];
+        return userData.applyInt(ctx);
     }
 
     public void resultText(int context, int bytesPtr, int bytesLength) {
-        resultText.apply(context, bytesPtr, bytesLength, SQLITE_TRANSIENT);
+        resultText.applyVoid(context, bytesPtr, bytesLength, SQLITE_TRANSIENT);
     }
 
     public void resultNull(int context) {
-        resultNull.apply(context);
+        resultNull.applyVoid(context);
     }
 
     public void resultInt(int context, int value) {
-        resultInt.apply(context, value);
+        resultInt.applyVoid(context, value);
     }
 
     public void resultLong(int context, long value) {
-        resultLong.apply(context, value);
+        resultLong.applyVoid(context, value);
     }
 
     public void resultDouble(int context, double value) {
-        resultDouble.apply(context, Value.doubleToLong(value));
+        resultDouble.applyVoid(context, value);
     }
 
     public void resultBlob(int context, int bytesPtr, int bytesLength) {
-        resultBlob.apply(context, bytesPtr, bytesLength, SQLITE_TRANSIENT);
+        resultBlob.applyVoid(context, bytesPtr, bytesLength, SQLITE_TRANSIENT);
     }
 
     public void resultError(int context, int bytesPtr, int bytesLength) {
@@ -518,31 +723,31 @@ public class WasmDBExports {
     }
 
     public double valueDouble(int valuePtr) {
-        return Value.longToDouble(valueDouble.apply(valuePtr)[0]);
+        return valueDouble.applyDouble(valuePtr);
     }
 
     public int valueText(int valuePtr) {
-        return (int) valueText.apply(valuePtr)[0];
+        return valueText.applyInt(valuePtr);
     }
 
     public int valueInt(int valuePtr) {
-        return (int) valueInt.apply(valuePtr)[0];
+        return valueInt.applyInt(valuePtr);
     }
 
     public int valueType(int valuePtr) {
-        return (int) valueType.apply(valuePtr)[0];
+        return valueType.applyInt(valuePtr);
     }
 
     public long valueLong(int valuePtr) {
-        return valueLong.apply(valuePtr)[0];
+        return valueLong.applyLong(valuePtr);
     }
 
     public int valueBlob(int valuePtr) {
-        return (int) valueBlob.apply(valuePtr)[0];
+        return valueBlob.applyInt(valuePtr);
     }
 
     public int valueBytes(int valuePtr) {
-        return (int) valueBytes.apply(valuePtr)[0];
+        return valueBytes.applyInt(valuePtr);
     }
 
     public void progressHandler(int dbPtr, int vmCalls, int userData) {
@@ -553,6 +758,10 @@ public class WasmDBExports {
         busyHandler.apply(dbPtr, xBusyPtr, userData);
     }
 
+    public void clearBusyHandler(int dbPtr) {
+        busyHandler.apply(dbPtr, 0, 0);
+    }
+
     // size is an output!
     public int serialize(int dbPtr, int schemaPtr, long size, int flags) {
         return (int) serialize.apply(dbPtr, schemaPtr, size, flags)[0];
@@ -595,7 +804,8 @@ public class WasmDBExports {
     }
 
     public int destroyCollation(int dbPtr, int zNamePtr) {
-        return (int) createCollation.apply(dbPtr, zNamePtr, 0, 0, 0, 0)[0];
+        // the encoding must match the one of the collation
+        return (int) createCollation.apply(dbPtr, zNamePtr, SQLITE_UTF8, 0, 0, 0)[0];
     }
 
     public void updateHook(int dbPtr, int userData) {
@@ -649,4 +859,25 @@ public class WasmDBExports {
     public void interrupt(int dbPtr) {
         interrupt.apply(dbPtr);
     }
+
+    // steps up to maxRows rows and packs them in buf, see sqlite3_helpers.c
+    public int fetch(int stmtPtr, int maxRows, int bufPtr, int size) {
+        return fetch.applyInt(stmtPtr, maxRows, bufPtr, size);
+    }
+
+    // binds count parameters packed in buf, see sqlite3_helpers.c
+    public int bindAll(int stmtPtr, int bufPtr, int count, boolean copy) {
+        return bindAll.applyInt(stmtPtr, bufPtr, count, copy ? 1 : 0);
+    }
+
+    // runs rows of a batch packed in buf, see sqlite3_helpers.c
+    public int executeBatch(
+            int stmtPtr, int bufPtr, int rows, int params, int outPtr, boolean copy) {
+        return executeBatch.applyInt(stmtPtr, bufPtr, rows, params, outPtr, copy ? 1 : 0);
+    }
+
+    // registers the VFS implemented by JavaVfs, see sqlite3_helpers.c
+    public int registerVfs() {
+        return registerVfs.applyInt();
+    }
 }
@@ -99,10 +99,7 @@ public interface WasmDBImports {
                     "xBusy",
                     List.of(ValueType.I32, ValueType.I32),
                     List.of(ValueType.I32),
-                    (inst, args) -> {
-                        xBusy((int) args[0], (int) args[1]);
-                        return null;
-                    }),
+                    (inst, args) -> new long[] {xBusy((int) args[0], (int) args[1])}),
             new HostFunction(
                     "env",
                     "xCompare",
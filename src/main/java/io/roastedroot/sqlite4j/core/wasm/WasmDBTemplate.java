@@ -0,0 +1,108 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import com.dylibso.chicory.runtime.GlobalInstance;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import com.dylibso.chicory.wasm.types.MutabilityType;
+import java.util.function.Function;
+
+// Snapshot of an already initialized SQLite instance (linear memory + mutable globals).
+// New instances are built on top of it, their memory starts from the snapshot instead of the
+// data segments, skipping the one-time library initialization that would otherwise run on every
+// connection open.
+public final class WasmDBTemplate {
+    private final int pages;
+    // one entry per Wasm page, null when the page is untouched and all zeroes
+    private final byte[][] pageData;
+    private final long[] globals;
+    private final String version;
+    // SQLite counts the memory it allocates in the restored instances
+    private final boolean memoryStatus;
+
+    private WasmDBTemplate(
+            int pages, byte[][] pageData, long[] globals, String version, boolean memoryStatus) {
+        this.pages = pages;
+        this.pageData = pageData;
+        this.globals = globals;
+        this.version = version;
+        this.memoryStatus = memoryStatus;
+    }
+
+    // The instance must be freshly built, the initialization happens here
+    public static WasmDBTemplate capture(Instance instance) {
+        Memory memory = instance.memory();
+        // pages populated by the data segments are always restored, even if they end up zeroed
+        boolean[] dirty = new boolean[memory.pages()];
+        for (int i = 0; i < dirty.length; i++) {
+            dirty[i] = !isZero(memory.readBytes(i * Memory.PAGE_SIZE, Memory.PAGE_SIZE));
+        }
+
+        WasmDBExports lib = new WasmDBExports(instance);
+        boolean memoryStatus = lib.enableMemoryStatus() == 0;
+        int rc = lib.initialize();
+        if (rc != 0) {
+            throw new IllegalStateException("sqlite3_initialize failed with code: " + rc);
+        }
+        String version = instance.memory().readCString(lib.version());
+
+        int pages = memory.pages();
+        byte[][] pageData = new byte[pages][];
+        for (int i = 0; i < pages; i++) {
+            byte[] page = memory.readBytes(i * Memory.PAGE_SIZE, Memory.PAGE_SIZE);
+            if ((i < dirty.length && dirty[i]) || !isZero(page)) {
+                pageData[i] = page;
+            }
+        }
+
+        int imported = instance.imports().globalCount();
+        long[] globals = new long[instance.module().globalSection().globalCount()];
+        for (int i = 0; i < globals.length; i++) {
+            globals[i] = instance.global(imported + i).getValue();
+        }
+
+        return new WasmDBTemplate(pages, pageData, globals, version, memoryStatus);
+    }
+
+    // Memories created by factory start from the snapshot instead of the data segments
+    public Function<MemoryLimits, Memory> seeded(Function<MemoryLimits, Memory> factory) {
+        return limits -> {
+            Memory memory = factory.apply(limits);
+            ((AbstractChunkedMemory<?>) memory).seed(pages, pageData);
+            return memory;
+        };
+    }
+
+    // The instance must come from the same module, with a seeded memory, and must not have
+    // executed any code yet
+    public void restoreGlobals(Instance instance) {
+        int imported = instance.imports().globalCount();
+        for (int i = 0; i < globals.length; i++) {
+            GlobalInstance global = instance.global(imported + i);
+            if (global.getMutabilityType() == MutabilityType.Var) {
+                global.setValue(globals[i]);
+            }
+        }
+    }
+
+    public int pages() {
+        return pages;
+    }
+
+    public String version() {
+        return version;
+    }
+
+    public boolean memoryStatus() {
+        return memoryStatus;
+    }
+
+    private static boolean isZero(byte[] page) {
+        for (int i = 0; i < page.length; i++) {
+            if (page[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
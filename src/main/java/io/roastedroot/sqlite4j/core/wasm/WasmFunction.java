@@ -0,0 +1,343 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import com.dylibso.chicory.runtime.ExportFunction;
+import com.dylibso.chicory.runtime.Instance;
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.ChicoryException;
+import com.dylibso.chicory.wasm.WasmModule;
+import com.dylibso.chicory.wasm.types.Export;
+import com.dylibso.chicory.wasm.types.ExternalType;
+import com.dylibso.chicory.wasm.types.Value;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Typed entry point into an exported function.
+// The AOT compiled machine exposes every function as a static method:
+//   public static <ret> func_<idx>(<params>, Memory, Instance)
+// invoking it directly skips the long[] boxing of arguments and results done by
+// ExportFunction.apply. Other machines (e.g. the interpreter) fall back to apply.
+// Only the accessor matching the Wasm signature of the function must be used.
+final class WasmFunction {
+    private final Instance instance;
+    private final ExportFunction export;
+    private final MethodHandle handle;
+
+    private WasmFunction(Instance instance, ExportFunction export, MethodHandle handle) {
+        this.instance = instance;
+        this.export = export;
+        this.handle = handle;
+    }
+
+    static WasmFunction of(Instance instance, String name, Class<?> ret, Class<?>... params) {
+        ModuleExports exports = ModuleExports.of(instance);
+        Integer idx = exports.indexes.get(name);
+        if (idx == null) {
+            throw new ChicoryException("Unknown export: " + name);
+        }
+        return new WasmFunction(
+                instance, instance.exports().function(name), exports.handle(idx, ret, params));
+    }
+
+    // The function indexes of the exports and the typed entry points, resolved once for all the
+    // instances of a module and machine, in practice the only ones of the JVM.
+    private static final class ModuleExports {
+        private static volatile ModuleExports last;
+
+        private final WasmModule module;
+        private final Class<?> machine;
+        private final Map<String, Integer> indexes = new HashMap<>();
+        // by function index, null when the machine has no typed entry point
+        private final ConcurrentHashMap<Integer, Optional<MethodHandle>> handles =
+                new ConcurrentHashMap<>();
+
+        private ModuleExports(WasmModule module, Class<?> machine) {
+            this.module = module;
+            this.machine = machine;
+            var exports = module.exportSection();
+            for (int i = 0; i < exports.exportCount(); i++) {
+                Export export = exports.getExport(i);
+                if (export.exportType() == ExternalType.FUNCTION) {
+                    indexes.put(export.name(), export.index());
+                }
+            }
+        }
+
+        static ModuleExports of(Instance instance) {
+            ModuleExports exports = last;
+            Class<?> machine = instance.getMachine().getClass();
+            if (exports == null
+                    || exports.module != instance.module()
+                    || exports.machine != machine) {
+                exports = new ModuleExports(instance.module(), machine);
+                last = exports;
+            }
+            return exports;
+        }
+
+        MethodHandle handle(int idx, Class<?> ret, Class<?>... params) {
+            return handles.computeIfAbsent(idx, i -> findHandle(i, ret, params)).orElse(null);
+        }
+
+        private Optional<MethodHandle> findHandle(int idx, Class<?> ret, Class<?>... params) {
+            Class<?>[] args = new Class<?>[params.length + 2];
+            System.arraycopy(params, 0, args, 0, params.length);
+            args[params.length] = Memory.class;
+            args[params.length + 1] = Instance.class;
+            try {
+                return Optional.of(
+                        MethodHandles.publicLookup()
+                                .findStatic(
+                                        machine, "func_" + idx, MethodType.methodType(ret, args)));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    boolean isTyped() {
+        return handle != null;
+    }
+
+    private Memory memory() {
+        return instance.memory();
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof StackOverflowError) {
+            return new ChicoryException("call stack exhausted", e);
+        }
+        // callbacks can throw checked SQLExceptions through the guest
+        return WasmFunction.<RuntimeException>sneakyThrow(e);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E sneakyThrow(Throwable e) throws E {
+        throw (E) e;
+    }
+
+    // () -> i32
+    int applyInt() {
+        if (handle == null) {
+            return (int) export.apply()[0];
+        }
+        try {
+            return (int) handle.invokeExact(memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32) -> i32
+    int applyInt(int a) {
+        if (handle == null) {
+            return (int) export.apply(a)[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32) -> i32
+    int applyInt(int a, int b) {
+        if (handle == null) {
+            return (int) export.apply(a, b)[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, b, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32, i32) -> i32
+    int applyInt(int a, int b, int c) {
+        if (handle == null) {
+            return (int) export.apply(a, b, c)[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, b, c, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32, i64) -> i32
+    int applyInt(int a, int b, long c) {
+        if (handle == null) {
+            return (int) export.apply(a, b, c)[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, b, c, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32, f64) -> i32
+    int applyInt(int a, int b, double c) {
+        if (handle == null) {
+            return (int) export.apply(a, b, Value.doubleToLong(c))[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, b, c, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32, i32, i32) -> i32
+    int applyInt(int a, int b, int c, int d) {
+        if (handle == null) {
+            return (int) export.apply(a, b, c, d)[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, b, c, d, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32, i32, i32, i32) -> i32
+    int applyInt(int a, int b, int c, int d, int e) {
+        if (handle == null) {
+            return (int) export.apply(a, b, c, d, e)[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, b, c, d, e, memory(), instance);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // (i32, i32, i32, i32, i32, i32) -> i32
+    int applyInt(int a, int b, int c, int d, int e, int f) {
+        if (handle == null) {
+            return (int) export.apply(a, b, c, d, e, f)[0];
+        }
+        try {
+            return (int) handle.invokeExact(a, b, c, d, e, f, memory(), instance);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    // (i32) -> i64
+    long applyLong(int a) {
+        if (handle == null) {
+            return export.apply(a)[0];
+        }
+        try {
+            return (long) handle.invokeExact(a, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32) -> i64
+    long applyLong(int a, int b) {
+        if (handle == null) {
+            return export.apply(a, b)[0];
+        }
+        try {
+            return (long) handle.invokeExact(a, b, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32) -> f64
+    double applyDouble(int a) {
+        if (handle == null) {
+            return Value.longToDouble(export.apply(a)[0]);
+        }
+        try {
+            return (double) handle.invokeExact(a, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32) -> f64
+    double applyDouble(int a, int b) {
+        if (handle == null) {
+            return Value.longToDouble(export.apply(a, b)[0]);
+        }
+        try {
+            return (double) handle.invokeExact(a, b, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32) -> ()
+    void applyVoid(int a) {
+        if (handle == null) {
+            export.apply(a);
+            return;
+        }
+        try {
+            handle.invokeExact(a, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32) -> ()
+    void applyVoid(int a, int b) {
+        if (handle == null) {
+            export.apply(a, b);
+            return;
+        }
+        try {
+            handle.invokeExact(a, b, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i64) -> ()
+    void applyVoid(int a, long b) {
+        if (handle == null) {
+            export.apply(a, b);
+            return;
+        }
+        try {
+            handle.invokeExact(a, b, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, f64) -> ()
+    void applyVoid(int a, double b) {
+        if (handle == null) {
+            export.apply(a, Value.doubleToLong(b));
+            return;
+        }
+        try {
+            handle.invokeExact(a, b, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // (i32, i32, i32, i32) -> ()
+    void applyVoid(int a, int b, int c, int d) {
+        if (handle == null) {
+            export.apply(a, b, c, d);
+            return;
+        }
+        try {
+            handle.invokeExact(a, b, c, d, memory(), instance);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package io.roastedroot.sqlite4j.javax;
+
+import io.roastedroot.sqlite4j.SQLiteConnection;
+import io.roastedroot.sqlite4j.SQLiteConnectionConfig;
+import io.roastedroot.sqlite4j.core.DB;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+
+/**
+ * A pool of physical connections, each one a warm Wasm instance, handed out by {@link
+ * #getConnection()} and taken back when the handle is closed.
+ *
+ * <p>A returned connection is reset to the state it had when it was opened: the transaction is
+ * rolled back, the JDBC settings (auto-commit, read-only, isolation, dates), the connection
+ * pragmas, the user defined functions and collations, the handlers and listeners and the attached
+ * databases. A connection that fails the reset, or was closed, is discarded.
+ *
+ * <p>Borrowing doesn't lock: a permit is taken with a CAS and the most recently returned
+ * connection, the warmest one, is polled from a lock-free deque. Only when all the connections are
+ * in use the caller waits, up to the login timeout of the data source.
+ */
+public class SQLiteConnectionPool implements AutoCloseable {
+
+    private final SQLiteConnectionPoolDataSource source;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Creates the pool and opens the warm connections.
+     *
+     * @param source the data source of the physical connections, its login timeout bounds the wait
+     *     for a connection, 0 waits indefinitely
+     * @param minIdle the number of connections opened upfront
+     * @param maxSize the maximum number of physical connections
+     * @throws SQLException if a warm connection can't be opened
+     */
+    public SQLiteConnectionPool(SQLiteConnectionPoolDataSource source, int minIdle, int maxSize)
+            throws SQLException {
+        if (maxSize < 1) {
+            throw new SQLException("The pool size must be at least 1: " + maxSize);
+        }
+        this.source = source;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize);
+        try {
+            for (int i = 0; i < Math.min(minIdle, maxSize); i++) {
+                idle.add(open());
+                idleCount.incrementAndGet();
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private Entry open() throws SQLException {
+        SQLitePooledConnection pooled = (SQLitePooledConnection) source.getPooledConnection();
+        Entry entry = new Entry(pooled);
+        try {
+            entry.snapshot();
+        } catch (SQLException e) {
+            pooled.close();
+            throw e;
+        }
+        pooled.addConnectionEventListener(entry);
+        total.incrementAndGet();
+        created.increment();
+        return entry;
+    }
+
+    /**
+     * @return a connection of the pool, the physical connection goes back to the pool when it is
+     *     closed
+     * @throws SQLException if the pool is closed, no connection was returned within the login
+     *     timeout or a new connection can't be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool is closed");
+        }
+        if (!permits.tryAcquire()) {
+            acquire();
+        }
+        try {
+            Entry entry = idle.pollFirst();
+            if (entry != null) {
+                idleCount.decrementAndGet();
+            } else {
+                entry = open();
+            }
+            borrowed.increment();
+            return entry.pooled.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquire() throws SQLException {
+        waits.increment();
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            int timeout = source.getLoginTimeout();
+            if (timeout > 0) {
+                acquired = permits.tryAcquire(timeout, TimeUnit.SECONDS);
+            } else {
+                permits.acquire();
+                acquired = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLException(
+                    "Timeout waiting for a connection, all the " + maxSize + " are in use");
+        }
+    }
+
+    private void release(Entry entry) {
+        if (!closed && !entry.broken && entry.reset()) {
+            idle.offerFirst(entry);
+            idleCount.incrementAndGet();
+        } else {
+            discard(entry);
+        }
+        permits.release();
+        if (closed) {
+            closeIdle();
+        }
+    }
+
+    private void discard(Entry entry) {
+        total.decrementAndGet();
+        discarded.increment();
+        try {
+            entry.pooled.close();
+        } catch (SQLException e) {
+            // the connection is dropped anyway
+        }
+    }
+
+    private void closeIdle() {
+        Entry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            discard(entry);
+        }
+    }
+
+    /** Closes the idle connections, the ones in use are closed when they are returned. */
+    @Override
+    public void close() {
+        closed = true;
+        closeIdle();
+    }
+
+    /**
+     * @return whether the pool was closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the maximum number of physical connections
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of connections in use
+     */
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of connections waiting in the pool
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * @return the number of open physical connections
+     */
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    /**
+     * @return the number of connections handed out
+     */
+    public long getBorrowCount() {
+        return borrowed.sum();
+    }
+
+    /**
+     * @return the number of physical connections opened
+     */
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    /**
+     * @return the number of physical connections closed: failed the reset, closed by the
+     *     application or by the pool
+     */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    /**
+     * @return the number of borrows that waited for a connection to be returned
+     */
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    /**
+     * @return the total time spent waiting for a connection, in nanoseconds
+     */
+    public long getWaitTimeNanos() {
+        return waitNanos.sum();
+    }
+
+    /**
+     * @return the number of borrows that gave up waiting
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SQLiteConnectionPool[active="
+                + getActiveCount()
+                + ", idle="
+                + getIdleCount()
+                + ", total="
+                + getTotalCount()
+                + ", max="
+                + maxSize
+                + ", borrowed="
+                + getBorrowCount()
+                + ", created="
+                + getCreatedCount()
+                + ", discarded="
+                + getDiscardedCount()
+                + ", waits="
+                + getWaitCount()
+                + ", timeouts="
+                + getTimeoutCount()
+                + "]";
+    }
+
+    // A physical connection and the session state it was opened with
+    private final class Entry implements ConnectionEventListener {
+        private final SQLitePooledConnection pooled;
+        private SQLiteConnectionConfig config;
+        private boolean readOnly;
+        private int busyTimeout;
+        private String[] pragmas;
+        private int databases;
+        // kept prepared, the pragma tables are costly to prepare
+        private PreparedStatement session;
+        private volatile boolean broken;
+
+        private Entry(SQLitePooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        private void snapshot() throws SQLException {
+            SQLiteConnection conn = pooled.getPhysicalConn();
+            config = conn.getConnectionConfig().copyConfig();
+            readOnly = conn.isReadOnly();
+            busyTimeout = conn.getBusyTimeout();
+            pragmas = new String[DB.SESSION_PRAGMAS.size()];
+            session = conn.prepareStatement(DB.SESSION_QUERY);
+            try (ResultSet rs = session.executeQuery()) {
+                for (int i = 0; i < DB.SESSION_PRAGMAS.size(); i++) {
+                    pragmas[i] = rs.getString(i + 1);
+                }
+                databases = rs.getInt(DB.SESSION_PRAGMAS.size() + 1);
+            }
+            // starts tracking the statements that change the session
+            conn.getDatabase().reset_session(busyTimeout);
+        }
+
+        // the transaction was rolled back by the handle
+        private boolean reset() {
+            SQLiteConnection conn = pooled.getPhysicalConn();
+            try {
+                if (conn == null || conn.isClosed() || !conn.getAutoCommit()) {
+                    return false;
+                }
+                SQLiteConnectionConfig current = conn.getConnectionConfig();
+                if (current.getTransactionIsolation() != config.getTransactionIsolation()) {
+                    conn.setTransactionIsolation(config.getTransactionIsolation());
+                }
+                current.setDateClass(config.getDateClass());
+                current.setDatePrecision(config.getDatePrecision());
+                if (!current.getDateStringFormat().equals(config.getDateStringFormat())) {
+                    current.setDateStringFormat(config.getDateStringFormat());
+                }
+                current.setTransactionMode(config.getTransactionMode());
+                current.setGetGeneratedKeys(config.isGetGeneratedKeys());
+                if (conn.isReadOnly() != readOnly) {
+                    conn.setReadOnly(readOnly);
+                }
+                if (conn.getDatabase().reset_session(busyTimeout)) {
+                    restorePragmas(conn);
+                }
+                return true;
+            } catch (SQLException | RuntimeException e) {
+                return false;
+            }
+        }
+
+        private void restorePragmas(SQLiteConnection conn) throws SQLException {
+            List<String> restore = new ArrayList<>();
+            boolean attached;
+            try (ResultSet rs = session.executeQuery()) {
+                for (int i = 0; i < DB.SESSION_PRAGMAS.size(); i++) {
+                    if (!pragmas[i].equals(rs.getString(i + 1))) {
+                        restore.add(
+                                "pragma " + DB.SESSION_PRAGMAS.get(i) + " = " + pragmas[i] + ";");
+                    }
+                }
+                attached = rs.getInt(DB.SESSION_PRAGMAS.size() + 1) != databases;
+            }
+            for (String sql : restore) {
+                conn.getDatabase()._exec(sql);
+            }
+            if (attached) {
+                detach(conn);
+            }
+        }
+
+        private void detach(SQLiteConnection conn) throws SQLException {
+            List<String> names = new ArrayList<>();
+            try (PreparedStatement stat =
+                            conn.prepareStatement(
+                                    "select name from pragma_database_list()"
+                                            + " where name not in ('main', 'temp')");
+                    ResultSet rs = stat.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+            for (String name : names) {
+                conn.getDatabase()._exec("detach \"" + name.replace("\"", "\"\"") + "\";");
+            }
+        }
+
+        @Override
+        public void connectionClosed(ConnectionEvent event) {
+            release(this);
+        }
+
+        @Override
+        public void connectionErrorOccurred(ConnectionEvent event) {
+            broken = true;
+        }
+    }
+}
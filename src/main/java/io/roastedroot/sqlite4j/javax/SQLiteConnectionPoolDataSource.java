@@ -15,12 +15,17 @@ package io.roastedroot.sqlite4j.javax;
 
 import io.roastedroot.sqlite4j.SQLiteConfig;
 import io.roastedroot.sqlite4j.SQLiteDataSource;
+import java.sql.Connection;
 import java.sql.SQLException;
 import javax.sql.PooledConnection;
 
 public class SQLiteConnectionPoolDataSource extends SQLiteDataSource
         implements javax.sql.ConnectionPoolDataSource {
 
+    private int maxPoolSize = 0;
+    private int minIdle = 0;
+    private volatile SQLiteConnectionPool pool;
+
     /** Default constructor. */
     public SQLiteConnectionPoolDataSource() {
         super();
@@ -49,4 +54,79 @@ public class SQLiteConnectionPoolDataSource extends SQLiteDataSource
     public PooledConnection getPooledConnection(String user, String password) throws SQLException {
         return new SQLitePooledConnection(getConnection(user, password));
     }
+
+    /**
+     * Serves {@link #getConnection()} from a {@link SQLiteConnectionPool} of at most the given
+     * number of physical connections. The login timeout bounds the wait for a connection when they
+     * are all in use.
+     *
+     * @param maxPoolSize the maximum number of physical connections, 0 (the default) disables the
+     *     pool
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * @return the maximum number of physical connections, 0 when the pool is disabled
+     */
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    /**
+     * @param minIdle the number of connections the pool opens upfront
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    /**
+     * @return the number of connections the pool opens upfront
+     */
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * @return the connection pool, created on first use
+     * @throws SQLException if the pool is disabled or its connections can't be opened
+     */
+    public SQLiteConnectionPool getPool() throws SQLException {
+        SQLiteConnectionPool pool = this.pool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = this.pool;
+                if (pool == null) {
+                    if (maxPoolSize <= 0) {
+                        throw new SQLException("The connection pool is disabled");
+                    }
+                    pool = new SQLiteConnectionPool(this, minIdle, maxPoolSize);
+                    this.pool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @see javax.sql.DataSource#getConnection()
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (maxPoolSize > 0) {
+            return getPool().getConnection();
+        }
+        return super.getConnection();
+    }
+
+    /** Closes the connection pool and the read replicas, if any. */
+    @Override
+    public synchronized void close() throws SQLException {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        super.close();
+    }
 }
@@ -103,31 +103,40 @@ public class SQLitePooledConnection extends JDBC4PooledConnection {
                                         try {
                                             String name = method.getName();
                                             if ("close".equals(name)) {
-                                                ConnectionEvent event =
-                                                        new ConnectionEvent(
-                                                                SQLitePooledConnection.this);
-
-                                                for (int i = listeners.size() - 1; i >= 0; i--) {
-                                                    listeners.get(i).connectionClosed(event);
+                                                if (isClosed) {
+                                                    return null;
                                                 }
-
-                                                if (!physicalConn.getAutoCommit()) {
-                                                    physicalConn.rollback();
-                                                }
-                                                physicalConn.setAutoCommit(true);
                                                 isClosed = true;
+                                                try {
+                                                    // the physical connection may have been closed
+                                                    // through a statement or the metadata
+                                                    if (physicalConn != null
+                                                            && !physicalConn.isClosed()) {
+                                                        if (!physicalConn.getAutoCommit()) {
+                                                            physicalConn.rollback();
+                                                        }
+                                                        physicalConn.setAutoCommit(true);
+                                                    }
+                                                } finally {
+                                                    // notified once the transaction is over, the
+                                                    // listener can hand the connection out again
+                                                    ConnectionEvent event =
+                                                            new ConnectionEvent(
+                                                                    SQLitePooledConnection.this);
+
+                                                    for (int i = listeners.size() - 1;
+                                                            i >= 0;
+                                                            i--) {
+                                                        listeners.get(i).connectionClosed(event);
+                                                    }
+                                                }
 
                                                 return null; // don't close physical connection
                                             } else if ("isClosed".equals(name)) {
-                                                if (!isClosed)
-                                                    isClosed =
-                                                            ((Boolean)
-                                                                            method.invoke(
-                                                                                    physicalConn,
-                                                                                    args))
-                                                                    .booleanValue();
-
-                                                return isClosed;
+                                                // close still has to notify the listeners
+                                                return isClosed
+                                                        || physicalConn == null
+                                                        || physicalConn.isClosed();
                                             }
 
                                             if (isClosed) {
@@ -4,6 +4,7 @@ import io.roastedroot.sqlite4j.SQLiteConnection;
 import io.roastedroot.sqlite4j.core.CorePreparedStatement;
 import io.roastedroot.sqlite4j.core.CoreStatement;
 import io.roastedroot.sqlite4j.core.DB;
+import io.roastedroot.sqlite4j.core.Parameters;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
@@ -39,7 +40,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
     public void clearParameters() throws SQLException {
         checkOpen();
         pointer.safeRunConsume(DB::clear_bindings);
-        if (batch != null) for (int i = batchPos; i < batchPos + paramCount; i++) batch[i] = null;
+        if (parameters != null) parameters.clear(batchPos, paramCount);
     }
 
     /**
@@ -61,7 +62,8 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
                     try {
                         synchronized (conn) {
                             resultsWaiting =
-                                    conn.getDatabase().execute(JDBC3PreparedStatement.this, batch);
+                                    conn.getDatabase()
+                                            .execute(JDBC3PreparedStatement.this, parameters);
                             updateGeneratedKeys();
                             success = true;
                             updateCount = getDatabase().changes();
@@ -96,7 +98,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
                     boolean success = false;
                     try {
                         resultsWaiting =
-                                conn.getDatabase().execute(JDBC3PreparedStatement.this, batch);
+                                conn.getDatabase().execute(JDBC3PreparedStatement.this, parameters);
                         success = true;
                     } finally {
                         if (!success && !pointer.isClosed()) {
@@ -137,7 +139,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
                     synchronized (conn) {
                         long rc =
                                 conn.getDatabase()
-                                        .executeUpdate(JDBC3PreparedStatement.this, batch);
+                                        .executeUpdate(JDBC3PreparedStatement.this, parameters);
                         updateGeneratedKeys();
                         return rc;
                     }
@@ -151,15 +153,11 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         checkOpen();
         batchPos += paramCount;
         batchQueryCount++;
-        if (batch == null) {
-            batch = new Object[paramCount];
+        if (parameters == null) {
+            parameters = new Parameters(paramCount);
         }
-        if (batchPos + paramCount > batch.length) {
-            Object[] nb = new Object[batch.length * 2];
-            System.arraycopy(batch, 0, nb, 0, batch.length);
-            batch = nb;
-        }
-        System.arraycopy(batch, batchPos - paramCount, batch, batchPos, paramCount);
+        parameters.ensureCapacity(batchPos + paramCount);
+        parameters.copy(batchPos - paramCount, batchPos, paramCount);
     }
 
     // ParameterMetaData FUNCTIONS //////////////////////////////////
@@ -200,7 +198,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
      */
     public int getParameterType(int pos) throws SQLException {
         checkIndex(pos);
-        Object paramValue = batch[pos - 1];
+        Object paramValue = parameters.get(pos - 1);
 
         if (paramValue == null) {
             return Types.NULL;
@@ -363,28 +361,28 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
      * @see java.sql.PreparedStatement#setDouble(int, double)
      */
     public void setDouble(int pos, double value) throws SQLException {
-        batch(pos, new Double(value));
+        batchDouble(pos, value);
     }
 
     /**
      * @see java.sql.PreparedStatement#setFloat(int, float)
      */
     public void setFloat(int pos, float value) throws SQLException {
-        batch(pos, new Float(value));
+        batchFloat(pos, value);
     }
 
     /**
      * @see java.sql.PreparedStatement#setInt(int, int)
      */
     public void setInt(int pos, int value) throws SQLException {
-        batch(pos, new Integer(value));
+        batchInt(pos, value);
     }
 
     /**
      * @see java.sql.PreparedStatement#setLong(int, long)
      */
     public void setLong(int pos, long value) throws SQLException {
-        batch(pos, new Long(value));
+        batchLong(pos, value);
     }
 
     /**
@@ -414,7 +412,7 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         } else if (value instanceof Integer) {
             batch(pos, value);
         } else if (value instanceof Short) {
-            batch(pos, new Integer(((Short) value).intValue()));
+            batchInt(pos, (Short) value);
         } else if (value instanceof Float) {
             batch(pos, value);
         } else if (value instanceof Double) {
@@ -71,6 +71,11 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
             return false;
         }
 
+        // fetch the rows ahead, in batches of the fetch size
+        if (fetched != null || limitRows > 1) {
+            return nextFetched();
+        }
+
         // do the real work
         int statusCode = stmt.pointer.safeRunInt(DB::step);
         switch (statusCode) {
@@ -255,6 +260,9 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSet#getBytes(int)
      */
     public byte[] getBytes(int col) throws SQLException {
+        if (fetched != null) {
+            return fetched.getBlob(markCol(col));
+        }
         return stmt.pointer.safeRun((db, ptr) -> db.column_blob(ptr, markCol(col)));
     }
 
@@ -394,6 +402,9 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
      * @see java.sql.ResultSet#getInt(int)
      */
     public int getInt(int col) throws SQLException {
+        if (fetched != null) {
+            return fetched.getInt(markCol(col));
+        }
         return stmt.pointer.safeRunInt((db, ptr) -> db.column_int(ptr, markCol(col)));
     }
 
@@ -1121,18 +1132,30 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
     }
 
     protected int safeGetColumnType(int col) throws SQLException {
+        if (fetched != null) {
+            return fetched.getColumnType(col);
+        }
         return stmt.pointer.safeRunInt((db, ptr) -> db.column_type(ptr, col));
     }
 
     private long safeGetLongCol(int col) throws SQLException {
+        if (fetched != null) {
+            return fetched.getLong(markCol(col));
+        }
         return stmt.pointer.safeRunLong((db, ptr) -> db.column_long(ptr, markCol(col)));
     }
 
     private double safeGetDoubleCol(int col) throws SQLException {
+        if (fetched != null) {
+            return fetched.getDouble(markCol(col));
+        }
         return stmt.pointer.safeRunDouble((db, ptr) -> db.column_double(ptr, markCol(col)));
     }
 
     private String safeGetColumnText(int col) throws SQLException {
+        if (fetched != null) {
+            return fetched.getText(markCol(col));
+        }
         return stmt.pointer.safeRun((db, ptr) -> db.column_text(ptr, markCol(col)));
     }
 
@@ -6,6 +6,8 @@ import io.roastedroot.sqlite4j.SQLiteConnection;
 import io.roastedroot.sqlite4j.core.CoreStatement;
 import io.roastedroot.sqlite4j.core.DB;
 import io.roastedroot.sqlite4j.core.DB.ProgressObserver;
+import io.roastedroot.sqlite4j.core.NormalizedSql;
+import io.roastedroot.sqlite4j.core.Parameters;
 import io.roastedroot.sqlite4j.util.Logger;
 import io.roastedroot.sqlite4j.util.LoggerFactory;
 import java.sql.BatchUpdateException;
@@ -44,20 +46,21 @@ public abstract class JDBC3Statement extends CoreStatement {
      */
     public boolean execute(final String sql) throws SQLException {
         internalClose();
+        NormalizedSql normalized = normalize(sql);
 
         return this.withConnectionTimeout(
                 () -> {
-                    SQLExtension ext = ExtendedCommand.parse(sql);
+                    // a backup or restore command isn't normalized
+                    SQLExtension ext = normalized == null ? ExtendedCommand.parse(sql) : null;
                     if (ext != null) {
                         ext.execute(conn.getDatabase());
 
                         return false;
                     }
 
-                    JDBC3Statement.this.sql = sql;
                     synchronized (conn) {
-                        conn.getDatabase().prepare(JDBC3Statement.this);
-                        boolean result = exec();
+                        Parameters values = prepare(sql, normalized);
+                        boolean result = exec(values);
                         updateGeneratedKeys();
                         updateCount = getDatabase().changes();
                         exhaustedResults = false;
@@ -88,13 +91,13 @@ public abstract class JDBC3Statement extends CoreStatement {
      */
     public ResultSet executeQuery(String sql) throws SQLException {
         internalClose();
-        this.sql = sql;
+        NormalizedSql normalized = normalize(sql);
 
         return this.withConnectionTimeout(
                 () -> {
-                    conn.getDatabase().prepare(JDBC3Statement.this);
+                    Parameters values = prepare(sql, normalized);
 
-                    if (!exec()) {
+                    if (!exec(values)) {
                         internalClose();
                         throw new SQLException(
                                 "query does not return ResultSet", "SQLITE_DONE", SQLITE_DONE);
@@ -105,6 +108,34 @@ public abstract class JDBC3Statement extends CoreStatement {
                 });
     }
 
+    // the SQL with its literals replaced by parameters, see SQLiteConfig#setNormalizeLiterals
+    private NormalizedSql normalize(String sql) {
+        return sql != null && conn.getDatabase().isNormalizeLiterals()
+                ? NormalizedSql.parse(sql)
+                : null;
+    }
+
+    // prepares the normalized SQL and returns the values to bind, or prepares the SQL as is when
+    // SQLite doesn't accept parameters in place of its literals, e.g. a table name as a string
+    private Parameters prepare(String sql, NormalizedSql normalized) throws SQLException {
+        DB db = conn.getDatabase();
+        if (normalized != null) {
+            this.sql = normalized.sql;
+            try {
+                db.prepare(this);
+                return normalized.values.length == 0 ? null : Parameters.of(normalized.values);
+            } catch (SQLException e) {
+                if ((e.getErrorCode() & 0xFF) != SQLITE_ERROR) {
+                    throw e;
+                }
+                // prepared as is below
+            }
+        }
+        this.sql = sql;
+        db.prepare(this);
+        return null;
+    }
+
     static class BackupObserver implements ProgressObserver {
         private static final Logger logger = LoggerFactory.getLogger(BackupObserver.class);
 
@@ -136,15 +167,27 @@ public abstract class JDBC3Statement extends CoreStatement {
     public long executeLargeUpdate(String sql) throws SQLException {
         internalClose();
         this.sql = sql;
+        NormalizedSql normalized = normalize(sql);
 
         return this.withConnectionTimeout(
                 () -> {
                     DB db = conn.getDatabase();
                     long changes = 0;
-                    SQLExtension ext = ExtendedCommand.parse(sql);
+                    SQLExtension ext = normalized == null ? ExtendedCommand.parse(sql) : null;
                     if (ext != null) {
                         // execute extended command
                         ext.execute(db);
+                    } else if (normalized != null && normalized.update) {
+                        try {
+                            synchronized (db) {
+                                changes = db.total_changes();
+                                exec(prepare(sql, normalized));
+                                updateGeneratedKeys();
+                                changes = db.total_changes() - changes;
+                            }
+                        } finally {
+                            internalClose();
+                        }
                     } else {
                         try {
                             synchronized (db) {
@@ -384,7 +427,7 @@ public abstract class JDBC3Statement extends CoreStatement {
      * @see java.sql.Statement#getFetchSize()
      */
     public int getFetchSize() throws SQLException {
-        return ((ResultSet) rs).getFetchSize();
+        return rs.getDefaultFetchSize();
     }
 
     /**
@@ -392,6 +435,8 @@ public abstract class JDBC3Statement extends CoreStatement {
      */
     public void setFetchSize(int r) throws SQLException {
         ((ResultSet) rs).setFetchSize(r);
+        // kept for the next results, closing a result set resets its fetch size
+        rs.setDefaultFetchSize(r);
     }
 
     /**
@@ -11,14 +11,13 @@ import java.sql.RowId;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLXML;
-import java.util.Arrays;
 
 public class JDBC4PreparedStatement extends JDBC3PreparedStatement
         implements PreparedStatement, ParameterMetaData {
 
     @Override
     public String toString() {
-        return sql + " \n parameters=" + Arrays.toString(batch);
+        return sql + " \n parameters=" + parameters;
     }
 
     public JDBC4PreparedStatement(SQLiteConnection conn, String sql) throws SQLException {
@@ -17,7 +17,6 @@ import java.util.concurrent.CountDownLatch;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -40,8 +39,9 @@ public class BusyHandlerTest {
      * @throws SQLException if the connection cannot be established
      */
     private Connection createConnection(int threadNum) throws SQLException {
+        // the busy handler runs when another connection holds the SQLite lock of the file
         return DriverManager.getConnection(
-                "jdbc:sqlite:" + tempDir.resolve("test" + threadNum + ".db"));
+                "jdbc:sqlite:" + tempDir.resolve("test" + threadNum + ".db") + "?wasm.vfs=java");
     }
 
     @AfterEach
@@ -113,7 +113,6 @@ public class BusyHandlerTest {
      * @throws Exception on test failure
      */
     @Test
-    @Disabled("This test is very flaky; disabling it for now")
     public void basicBusyHandler() throws Exception {
         basicBusyHandler(0);
     }
@@ -126,8 +125,7 @@ public class BusyHandlerTest {
                     new BusyHandler() {
                         @Override
                         public int callback(int nbPrevInvok) {
-                            // TODO: WASM different results
-                            // assertThat(calls[0]).isEqualTo(nbPrevInvok);
+                            assertThat(calls[0]).isEqualTo(nbPrevInvok);
                             calls[0]++;
 
                             if (nbPrevInvok <= 1) {
@@ -163,7 +161,6 @@ public class BusyHandlerTest {
      * @throws Exception on test failure
      */
     @Test
-    @Disabled("This test is very flaky; disabling it for now")
     public void testUnregister() throws Exception {
         final int[] calls = {0};
         BusyHandler.setHandler(
@@ -254,7 +251,6 @@ public class BusyHandlerTest {
      * application state globally rather than per connection.
      */
     @Test
-    @Disabled("WASM: not sure how this is supposed to work")
     public void testMultiThreaded() {
         List<CompletableFuture<?>> futures = new ArrayList<>();
         for (int threadNum = 0; threadNum < 4; threadNum++) {
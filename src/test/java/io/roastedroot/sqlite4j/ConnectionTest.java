@@ -5,6 +5,7 @@ import static org.assertj.core.api.Assertions.*;
 import io.roastedroot.sqlite4j.SQLiteConfig.JournalMode;
 import io.roastedroot.sqlite4j.SQLiteConfig.Pragma;
 import io.roastedroot.sqlite4j.SQLiteConfig.SynchronousMode;
+import io.roastedroot.sqlite4j.core.WasmDB;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -289,17 +290,10 @@ public class ConnectionTest {
         Connection conn =
                 DriverManager.getConnection(
                         String.format(
-                                // TODO: WAL
-                                //
-                                // "jdbc:sqlite:%s?journal_mode=WAL&synchronous=OFF&journal_size_limit=500",
                                 "jdbc:sqlite:%s?journal_mode=truncate&synchronous=OFF&journal_size_limit=500",
                                 testDB));
         Statement stat = conn.createStatement();
 
-        // TODO: WAL
-        //        ResultSet rs = stat.executeQuery("pragma journal_mode");
-        //        assertThat(rs.getString(1)).isEqualTo("wal");
-        //        rs.close();
         ResultSet rs = stat.executeQuery("pragma journal_mode");
         assertThat(rs.getString(1)).isEqualTo("truncate");
         rs.close();
@@ -316,6 +310,72 @@ public class ConnectionTest {
         conn.close();
     }
 
+    @Test
+    public void setWalPragmasFromURI() throws Exception {
+        File testDB = copyToTemp("sample.db");
+
+        assertThat(testDB.exists()).isTrue();
+        Connection conn =
+                DriverManager.getConnection(
+                        String.format(
+                                "jdbc:sqlite:%s?journal_mode=WAL&synchronous=OFF&journal_size_limit=500",
+                                testDB));
+        Utils.assertWal(conn);
+        Statement stat = conn.createStatement();
+
+        ResultSet rs = stat.executeQuery("pragma journal_mode");
+        assertThat(rs.getString(1)).isEqualTo("wal");
+        rs.close();
+
+        rs = stat.executeQuery("pragma synchronous");
+        assertThat(rs.getBoolean(1)).isEqualTo(false);
+        rs.close();
+
+        rs = stat.executeQuery("pragma journal_size_limit");
+        assertThat(rs.getInt(1)).isEqualTo(500);
+        rs.close();
+
+        stat.close();
+        conn.close();
+    }
+
+    @Test
+    public void walReadersSeeASnapshot() throws Exception {
+        File testDB = File.createTempFile("test-wal", ".db", tempDir);
+        String url = String.format("jdbc:sqlite:%s?journal_mode=WAL", testDB);
+
+        try (Connection writer = DriverManager.getConnection(url);
+                Connection reader = DriverManager.getConnection(url)) {
+            Utils.assertWal(writer);
+            try (Statement stat = writer.createStatement()) {
+                stat.executeUpdate("create table t (v integer)");
+                stat.executeUpdate("insert into t values (1)");
+            }
+
+            reader.setAutoCommit(false);
+            try (Statement read = reader.createStatement()) {
+                ResultSet rs = read.executeQuery("select count(*) from t");
+                assertThat(rs.getInt(1)).isEqualTo(1);
+                rs.close();
+
+                // the writer is not blocked by the open read transaction
+                try (Statement stat = writer.createStatement()) {
+                    stat.executeUpdate("insert into t values (2)");
+                }
+
+                rs = read.executeQuery("select count(*) from t");
+                assertThat(rs.getInt(1)).isEqualTo(1);
+                rs.close();
+                reader.commit();
+
+                rs = read.executeQuery("select count(*) from t");
+                assertThat(rs.getInt(1)).isEqualTo(2);
+                rs.close();
+                reader.commit();
+            }
+        }
+    }
+
     @Test
     public void limits() throws Exception {
         File testDB = copyToTemp("sample.db");
@@ -365,15 +425,9 @@ public class ConnectionTest {
         Connection conn =
                 DriverManager.getConnection(
                         String.format(
-                                // TODO: WAL
                                 "jdbc:sqlite:%s?synchronous=OFF&&&&journal_mode=OFF", testDB));
-        // "jdbc:sqlite:%s?synchronous=OFF&&&&journal_mode=WAL", testDB));
         Statement stat = conn.createStatement();
 
-        // TODO: WAL
-        //        ResultSet rs = stat.executeQuery("pragma journal_mode");
-        //        assertThat(rs.getString(1)).isEqualTo("wal");
-        //        rs.close();
         ResultSet rs = stat.executeQuery("pragma journal_mode");
         assertThat(rs.getString(1)).isEqualTo("off");
         rs.close();
@@ -386,6 +440,30 @@ public class ConnectionTest {
         conn.close();
     }
 
+    @Test
+    public void ignoreDoubleAmpersandsInURIWithWal() throws Exception {
+        File testDB = copyToTemp("sample.db");
+
+        assertThat(testDB.exists()).isTrue();
+        Connection conn =
+                DriverManager.getConnection(
+                        String.format(
+                                "jdbc:sqlite:%s?synchronous=OFF&&&&journal_mode=WAL", testDB));
+        Utils.assertWal(conn);
+        Statement stat = conn.createStatement();
+
+        ResultSet rs = stat.executeQuery("pragma journal_mode");
+        assertThat(rs.getString(1)).isEqualTo("wal");
+        rs.close();
+
+        rs = stat.executeQuery("pragma synchronous");
+        assertThat(rs.getBoolean(1)).isFalse();
+        rs.close();
+
+        stat.close();
+        conn.close();
+    }
+
     @Test
     public void useLastSpecifiedPragmaValueInURI() throws Exception {
         File testDB = copyToTemp("sample.db");
@@ -425,4 +503,73 @@ public class ConnectionTest {
         stat.close();
         conn.close();
     }
+
+    @Test
+    public void instanceTemplate() throws SQLException {
+        for (boolean enabled : new boolean[] {true, false}) {
+            SQLiteConfig config = new SQLiteConfig();
+            config.setInstanceTemplate(enabled);
+
+            try (Connection conn =
+                            DriverManager.getConnection("jdbc:sqlite:", config.toProperties());
+                    Statement stat = conn.createStatement()) {
+                stat.executeUpdate("create table A(id, name)");
+                stat.executeUpdate("insert into A values(1, 'leo')");
+
+                ResultSet rs = stat.executeQuery("select name, sqlite_version() from A");
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getString(1)).isEqualTo("leo");
+                assertThat(rs.getString(2)).isEqualTo(WasmDB.version());
+                rs.close();
+            }
+        }
+    }
+
+    @Test
+    public void smallMemoryChunks() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setMemoryChunkPages(1);
+
+        byte[] blob = new byte[60_000];
+        for (int i = 0; i < blob.length; i++) {
+            blob[i] = (byte) i;
+        }
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:", config.toProperties());
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table A(id, data)");
+            try (PreparedStatement prep = conn.prepareStatement("insert into A values(?, ?)")) {
+                for (int i = 0; i < 20; i++) {
+                    prep.setInt(1, i);
+                    prep.setBytes(2, blob);
+                    prep.executeUpdate();
+                }
+            }
+
+            ResultSet rs = stat.executeQuery("select data from A where id = 19");
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getBytes(1)).isEqualTo(blob);
+            rs.close();
+        }
+    }
+
+    @Test
+    public void offHeapMemory() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setMemoryMode(SQLiteConfig.MemoryMode.OFF_HEAP);
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:", config.toProperties());
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table A(id, name)");
+            for (int i = 0; i < 100; i++) {
+                stat.executeUpdate("insert into A values(" + i + ", 'leo" + i + "')");
+            }
+
+            ResultSet rs = stat.executeQuery("select count(*), max(name) from A");
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(100);
+            assertThat(rs.getString(2)).isEqualTo("leo99");
+            rs.close();
+        }
+    }
 }
@@ -1,12 +1,17 @@
 package io.roastedroot.sqlite4j;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -55,4 +60,149 @@ public class FetchSizeTest {
         assertThat(rs.next()).isTrue();
         assertThat(rs.next()).isFalse();
     }
+
+    private List<String> readAll(String sql, int fetchSize) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            rs.setFetchSize(fetchSize);
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    values.add(
+                            rs.getRow()
+                                    + ":"
+                                    + object(rs.getObject(i))
+                                    + "|"
+                                    + rs.getString(i)
+                                    + "|"
+                                    + rs.wasNull()
+                                    + "|"
+                                    + rs.getInt(i)
+                                    + "|"
+                                    + rs.getLong(i)
+                                    + "|"
+                                    + rs.getDouble(i)
+                                    + "|"
+                                    + Arrays.toString(rs.getBytes(i)));
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String object(Object o) {
+        return (o instanceof byte[]) ? Arrays.toString((byte[]) o) : String.valueOf(o);
+    }
+
+    @Test
+    public void fetchedRowsMatchSteppedRows() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table t (a, b, c)");
+            stat.execute(
+                    "insert into t values (1, 2.5, 'text'), (null, x'0102', ''), "
+                            + "(9223372036854775807, 1e20, ' 42abc'), (-7, 0.1, '3.75e2'), "
+                            + "(x'', -0.0, '\u00e8\u00e9'), ('12', 1.0, 4.9999999999999999)");
+        }
+        String sql = "select a, b, c from t";
+        List<String> expected = readAll(sql, 0);
+        assertThat(expected).hasSize(18);
+        for (int fetchSize : new int[] {2, 3, 5, 6, 100}) {
+            assertThat(readAll(sql, fetchSize)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void largeRowsAreReadFromTheStatement() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table t (id, v)");
+            stat.execute(
+                    "insert into t with recursive c(x) as (select 1 union all select x + 1"
+                            + " from c limit 20) select x, case when x % 3 = 0"
+                            + " then hex(zeroblob(10000 * (x % 2 + 2))) else x end from c");
+        }
+        List<String> expected = readAll("select id, v from t", 0);
+        assertThat(readAll("select id, v from t", 4)).isEqualTo(expected);
+        assertThat(readAll("select id, v from t", 50)).isEqualTo(expected);
+    }
+
+    @Test
+    public void fetchSizeHonorsMaxRows() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table t (id)");
+            stat.execute(
+                    "insert into t with recursive c(x) as (select 1 union all select x + 1"
+                            + " from c limit 100) select x from c");
+            stat.setMaxRows(7);
+            try (ResultSet rs = stat.executeQuery("select id from t")) {
+                rs.setFetchSize(5);
+                int count = 0;
+                while (rs.next()) {
+                    count++;
+                    assertThat(rs.getInt(1)).isEqualTo(count);
+                }
+                assertThat(count).isEqualTo(7);
+            }
+        }
+    }
+
+    @Test
+    public void fetchErrorIsReportedAfterTheFetchedRows() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table t (id, v)");
+            stat.execute(
+                    "insert into t values (1, 1), (2, 2), (3, -9223372036854775807 - 1), (4, 4)");
+            try (ResultSet rs = stat.executeQuery("select id, abs(v) from t")) {
+                rs.setFetchSize(10);
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(2)).isEqualTo(1);
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(2)).isEqualTo(2);
+                assertThatThrownBy(rs::next).hasMessageContaining("integer overflow");
+            }
+        }
+    }
+
+    @Test
+    public void columnTypesChangeAcrossFetches() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table t (v)");
+            stat.execute(
+                    "insert into t with recursive c(x) as (select 1 union all select x + 1"
+                            + " from c limit 40) select case when x <= 10 then x"
+                            + " when x <= 20 then x + 0.5 when x <= 30 then 'text ' || x"
+                            + " else null end from c");
+        }
+        List<String> expected = readAll("select v, v from t", 0);
+        assertThat(readAll("select v, v from t", 10)).isEqualTo(expected);
+        assertThat(readAll("select v, v from t", 7)).isEqualTo(expected);
+    }
+
+    @Test
+    public void fetchSizeOfTheStatement() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("create table t (id)");
+            stat.execute("insert into t values (1), (2), (3)");
+            stat.setFetchSize(2);
+            for (int i = 0; i < 3; i++) {
+                try (ResultSet rs = stat.executeQuery("select id from t")) {
+                    assertThat(rs.getFetchSize()).isEqualTo(2);
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getInt(1)).isEqualTo(1);
+                }
+            }
+            assertThat(stat.getFetchSize()).isEqualTo(2);
+        }
+        try (PreparedStatement prep = conn.prepareStatement("select id from t where id > ?")) {
+            prep.setFetchSize(16);
+            prep.setInt(1, 1);
+            try (ResultSet rs = prep.executeQuery()) {
+                assertThat(rs.getFetchSize()).isEqualTo(16);
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(1)).isEqualTo(2);
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.next()).isFalse();
+            }
+        }
+    }
 }
@@ -0,0 +1,213 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.roastedroot.sqlite4j.core.HibernationMetrics;
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HibernationTest {
+    @TempDir File tempDir;
+
+    private static SQLiteConnection open(String url, SQLiteConfig config) throws SQLException {
+        return (SQLiteConnection) config.createConnection(url);
+    }
+
+    private static SQLiteConnection withTable(String url, SQLiteConfig config) throws SQLException {
+        SQLiteConnection conn = open(url, config);
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v text)");
+            stat.executeUpdate("insert into t (v) values ('one'), ('two'), ('three')");
+        }
+        return conn;
+    }
+
+    private static List<String> values(SQLiteConnection conn) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select v from t order by id")) {
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void inMemoryDatabase() throws SQLException {
+        long hibernations = HibernationMetrics.getHibernateCount();
+        long revivals = HibernationMetrics.getReviveCount();
+        try (SQLiteConnection conn = withTable("jdbc:sqlite::memory:", new SQLiteConfig())) {
+            assertThat(conn.hibernate()).isTrue();
+            assertThat(conn.isHibernated()).isTrue();
+            assertThat(HibernationMetrics.getHibernateCount()).isEqualTo(hibernations + 1);
+            assertThat(HibernationMetrics.getHibernatedCount()).isPositive();
+            assertThat(HibernationMetrics.getBytesSaved()).isPositive();
+
+            assertThat(values(conn)).containsExactly("one", "two", "three");
+            assertThat(conn.isHibernated()).isFalse();
+            assertThat(HibernationMetrics.getReviveCount()).isEqualTo(revivals + 1);
+
+            // and again, with the revived database
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate("insert into t (v) values ('four')");
+            }
+            assertThat(conn.hibernate()).isTrue();
+            assertThat(values(conn)).containsExactly("one", "two", "three", "four");
+        }
+    }
+
+    @Test
+    public void compressed() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setHibernateCompress(true);
+        try (SQLiteConnection conn = withTable("jdbc:sqlite::memory:", config)) {
+            byte[] database = conn.serialize("main");
+            long snapshots = HibernationMetrics.getSnapshotBytes();
+            assertThat(conn.hibernate()).isTrue();
+            assertThat(HibernationMetrics.getSnapshotBytes() - snapshots)
+                    .isPositive()
+                    .isLessThan(database.length);
+            assertThat(values(conn)).containsExactly("one", "two", "three");
+        }
+    }
+
+    @Test
+    public void fileDatabase() throws SQLException {
+        String url = "jdbc:sqlite:" + new File(tempDir, "hibernate.db").getAbsolutePath();
+        try (SQLiteConnection conn = withTable(url, new SQLiteConfig())) {
+            assertThat(conn.hibernate()).isTrue();
+            assertThat(values(conn)).containsExactly("one", "two", "three");
+        }
+    }
+
+    @Test
+    public void restoresTheSession() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(1234);
+        try (SQLiteConnection conn = withTable("jdbc:sqlite::memory:", config)) {
+            try (Statement stat = conn.createStatement()) {
+                stat.execute("pragma foreign_keys = on");
+                stat.execute("pragma cache_size = 123");
+            }
+            conn.setLimit(SQLiteLimits.SQLITE_LIMIT_LENGTH, 4096);
+            assertThat(conn.hibernate()).isTrue();
+
+            try (Statement stat = conn.createStatement()) {
+                try (ResultSet rs = stat.executeQuery("pragma foreign_keys")) {
+                    assertThat(rs.getInt(1)).isEqualTo(1);
+                }
+                try (ResultSet rs = stat.executeQuery("pragma cache_size")) {
+                    assertThat(rs.getInt(1)).isEqualTo(123);
+                }
+            }
+            assertThat(conn.getDatabase().limit(SQLiteLimits.SQLITE_LIMIT_LENGTH.getId(), -1))
+                    .isEqualTo(4096);
+            assertThat(conn.getBusyTimeout()).isEqualTo(1234);
+        }
+    }
+
+    @Test
+    public void listenersAreRestored() throws SQLException {
+        try (SQLiteConnection conn = withTable("jdbc:sqlite::memory:", new SQLiteConfig())) {
+            List<String> events = new ArrayList<>();
+            conn.addUpdateListener((type, database, table, rowId) -> events.add(type.name()));
+            conn.addCommitListener(
+                    new SQLiteCommitListener() {
+                        @Override
+                        public void onCommit() {
+                            events.add("COMMIT");
+                        }
+
+                        @Override
+                        public void onRollback() {}
+                    });
+            assertThat(conn.hibernate()).isTrue();
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate("insert into t (v) values ('four')");
+            }
+            assertThat(events).containsExactly("INSERT", "COMMIT");
+        }
+    }
+
+    @Test
+    public void refusedWithState() throws SQLException {
+        try (SQLiteConnection conn = withTable("jdbc:sqlite::memory:", new SQLiteConfig());
+                Statement stat = conn.createStatement()) {
+            try (ResultSet rs = stat.executeQuery("select v from t")) {
+                assertThat(conn.hibernate()).isFalse();
+            }
+
+            conn.setAutoCommit(false);
+            stat.executeUpdate("insert into t (v) values ('four')");
+            assertThat(conn.hibernate()).isFalse();
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            stat.execute("create temp table scratch (v text)");
+            assertThat(conn.hibernate()).isFalse();
+            stat.execute("drop table scratch");
+
+            Function.create(
+                    conn,
+                    "one",
+                    new Function() {
+                        @Override
+                        public void xFunc() throws SQLException {
+                            result(1);
+                        }
+                    });
+            assertThat(conn.hibernate()).isFalse();
+            Function.destroy(conn, "one");
+
+            // the statement keeps its last query prepared
+            stat.close();
+            assertThat(conn.hibernate()).isTrue();
+        }
+    }
+
+    @Test
+    public void afterIdleTime() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setHibernateIdle(50);
+        try (SQLiteConnection conn = withTable("jdbc:sqlite::memory:", config)) {
+            for (int i = 0; i < 100 && !conn.isHibernated(); i++) {
+                Thread.sleep(50);
+            }
+            assertThat(conn.isHibernated()).isTrue();
+            assertThat(values(conn)).containsExactly("one", "two", "three");
+        }
+    }
+
+    @Test
+    public void closedWhileHibernated() throws SQLException {
+        long hibernated = HibernationMetrics.getHibernatedCount();
+        SQLiteConnection conn = withTable("jdbc:sqlite::memory:", new SQLiteConfig());
+        assertThat(conn.hibernate()).isTrue();
+        conn.close();
+        assertThat(conn.isClosed()).isTrue();
+        assertThat(conn.isHibernated()).isFalse();
+        assertThat(HibernationMetrics.getHibernatedCount()).isEqualTo(hibernated);
+    }
+
+    @Test
+    public void sharedInstance() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedInstanceSize(2);
+        try (SQLiteConnection first = withTable("jdbc:sqlite::memory:", config);
+                SQLiteConnection second = withTable("jdbc:sqlite::memory:", config)) {
+            try (Statement stat = second.createStatement()) {
+                stat.executeUpdate("delete from t where v = 'two'");
+            }
+            assertThat(first.hibernate()).isTrue();
+            assertThat(values(second)).containsExactly("one", "three");
+            assertThat(values(first)).containsExactly("one", "two", "three");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class HostStorageTest {
+
+    @TempDir File tempDir;
+
+    private static Connection open(File file, SQLiteConfig.StorageMode storage)
+            throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(storage);
+        return DriverManager.getConnection(
+                "jdbc:sqlite:" + file.getAbsolutePath(), config.toProperties());
+    }
+
+    private static long count(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select count(*) from t")) {
+            assertThat(rs.next()).isTrue();
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void storageModeIsAConfigProperty() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("wasm.storage", "host");
+        assertThat(new SQLiteConfig(props).getStorageMode())
+                .isEqualTo(SQLiteConfig.StorageMode.HOST);
+        assertThat(new SQLiteConfig().getStorageMode()).isEqualTo(SQLiteConfig.StorageMode.JIMFS);
+    }
+
+    @Test
+    public void committedChangesAreOnDisk() throws Exception {
+        File file = new File(tempDir, "durable.db");
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v text)");
+            conn.setAutoCommit(false);
+            try (PreparedStatement prep = conn.prepareStatement("insert into t (v) values (?)")) {
+                for (int i = 0; i < 1000; i++) {
+                    prep.setString(1, "value " + i);
+                    prep.addBatch();
+                }
+                prep.executeBatch();
+            }
+            conn.commit();
+
+            // the file on disk is updated while the connection is still open
+            byte[] header = Arrays.copyOf(Files.readAllBytes(file.toPath()), 16);
+            assertThat(new String(header, StandardCharsets.US_ASCII))
+                    .isEqualTo("SQLite format 3\u0000");
+
+            // a copy of the file taken now holds the committed rows
+            File copy = new File(tempDir, "copy.db");
+            Files.copy(file.toPath(), copy.toPath());
+            try (Connection other = open(copy, SQLiteConfig.StorageMode.HOST)) {
+                assertThat(count(other)).isEqualTo(1000);
+            }
+        }
+
+        // and so does a connection opened after closing
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST)) {
+            assertThat(count(conn)).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    public void rolledBackChangesAreNotOnDisk() throws Exception {
+        File file = new File(tempDir, "rollback.db");
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (v)");
+            stat.executeUpdate("insert into t values (1)");
+            conn.setAutoCommit(false);
+            for (int i = 0; i < 100; i++) {
+                stat.executeUpdate("insert into t values (randomblob(1000))");
+            }
+            // the rollback journal lives next to the database file
+            assertThat(new File(tempDir, "rollback.db-journal")).exists();
+            conn.rollback();
+        }
+        assertThat(new File(tempDir, "rollback.db-journal")).doesNotExist();
+
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST)) {
+            assertThat(count(conn)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void existingFileIsNotCopied() throws Exception {
+        File file = new File(tempDir, "shared.db");
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (v)");
+        }
+
+        try (Connection reader = open(file, SQLiteConfig.StorageMode.HOST)) {
+            assertThat(count(reader)).isEqualTo(0);
+            // changes made to the file after opening are visible
+            try (Connection writer = open(file, SQLiteConfig.StorageMode.HOST);
+                    Statement stat = writer.createStatement()) {
+                stat.executeUpdate("insert into t values (1)");
+                stat.executeUpdate("insert into t values (2)");
+            }
+            assertThat(count(reader)).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void synchronousPragmaIsAccepted() throws Exception {
+        for (SQLiteConfig.SynchronousMode mode : SQLiteConfig.SynchronousMode.values()) {
+            File file = new File(tempDir, "sync-" + mode + ".db");
+            SQLiteConfig config = new SQLiteConfig();
+            config.setStorageMode(SQLiteConfig.StorageMode.HOST);
+            config.setSynchronous(mode);
+            try (Connection conn =
+                            DriverManager.getConnection(
+                                    "jdbc:sqlite:" + file.getAbsolutePath(),
+                                    config.toProperties());
+                    Statement stat = conn.createStatement()) {
+                stat.executeUpdate("create table t (v)");
+                stat.executeUpdate("insert into t values (1)");
+            }
+            try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST)) {
+                assertThat(count(conn)).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    public void jimfsStorageKeepsChangesInMemory() throws Exception {
+        File file = new File(tempDir, "memory.db");
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (v)");
+        }
+        long size = file.length();
+
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.JIMFS);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < 100)"
+                            + " insert into t select randomblob(1000) from n");
+            assertThat(count(conn)).isEqualTo(100);
+        }
+        assertThat(file.length()).isEqualTo(size);
+    }
+}
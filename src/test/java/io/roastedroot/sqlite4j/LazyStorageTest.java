@@ -0,0 +1,201 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.roastedroot.sqlite4j.core.wasm.LazyFile;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LazyStorageTest {
+
+    @TempDir File tempDir;
+
+    private static Connection open(File file, SQLiteConfig config) throws SQLException {
+        return DriverManager.getConnection(
+                "jdbc:sqlite:" + file.getAbsolutePath(), config.toProperties());
+    }
+
+    private static Connection open(File file, SQLiteConfig.StorageMode storage)
+            throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(storage);
+        return open(file, config);
+    }
+
+    private static long query(Connection conn, String sql) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            assertThat(rs.next()).isTrue();
+            return rs.getLong(1);
+        }
+    }
+
+    // about 2MiB of rows, written directly on the host
+    private File createDatabase(String name) throws SQLException {
+        File file = new File(tempDir, name);
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.HOST);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v integer, b blob)");
+            stat.executeUpdate(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i <"
+                            + " 2000) insert into t select i, i * 2, randomblob(1000) from n");
+        }
+        return file;
+    }
+
+    @Test
+    public void storageCacheSizeIsAConfigProperty() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("wasm.storage", "lazy");
+        props.setProperty("wasm.storage_cache_size", "1048576");
+        SQLiteConfig config = new SQLiteConfig(props);
+        assertThat(config.getStorageMode()).isEqualTo(SQLiteConfig.StorageMode.LAZY);
+        assertThat(config.getStorageCacheSize()).isEqualTo(1048576L);
+        assertThat(new SQLiteConfig().getStorageCacheSize()).isEqualTo(64L * 1024 * 1024);
+    }
+
+    @Test
+    public void readsTheHostFile() throws Exception {
+        File file = createDatabase("read.db");
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.LAZY)) {
+            assertThat(query(conn, "select count(*) from t")).isEqualTo(2000);
+            assertThat(query(conn, "select v from t where id = 1234")).isEqualTo(2468);
+        }
+    }
+
+    @Test
+    public void changesStayInMemory() throws Exception {
+        File file = createDatabase("changes.db");
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.LAZY);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("delete from t where id > 1000");
+            stat.executeUpdate("insert into t (v) values (-1)");
+            assertThat(query(conn, "select count(*) from t")).isEqualTo(1001);
+        }
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(before);
+
+        // like the JIMFS storage mode, the changes are shared by the connections of the JVM
+        try (Connection conn = open(file, SQLiteConfig.StorageMode.LAZY)) {
+            assertThat(query(conn, "select count(*) from t")).isEqualTo(1001);
+            try (Statement stat = conn.createStatement();
+                    ResultSet rs = stat.executeQuery("pragma integrity_check")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getString(1)).isEqualTo("ok");
+            }
+        }
+    }
+
+    @Test
+    public void smallCacheScansTheWholeFile() throws Exception {
+        File file = createDatabase("scan.db");
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(SQLiteConfig.StorageMode.LAZY);
+        config.setStorageCacheSize(LazyFile.CHUNK_SIZE);
+        // no page cache, every page is read from the file
+        config.setCacheSize(0);
+        try (Connection conn = open(file, config)) {
+            for (int i = 0; i < 2; i++) {
+                assertThat(query(conn, "select sum(v) from t")).isEqualTo(2000L * 2001);
+                assertThat(query(conn, "select sum(length(b)) from t")).isEqualTo(2000L * 1000);
+            }
+        }
+    }
+
+    @Test
+    public void pointReadsLoadOnlyTheirChunks() throws Exception {
+        Path path = new File(tempDir, "chunks.bin").toPath();
+        byte[] content = new byte[64 * LazyFile.CHUNK_SIZE];
+        new Random(42).nextBytes(content);
+        Files.write(path, content);
+
+        LazyFile file = new LazyFile(path, 4L * LazyFile.CHUNK_SIZE);
+        assertThat(file.size()).isEqualTo(content.length);
+        assertThat(file.loadedBytes()).isEqualTo(0);
+
+        ByteBuffer buf = ByteBuffer.allocate(100);
+        file.read(buf, 10L * LazyFile.CHUNK_SIZE + 7);
+        assertThat(buf.array())
+                .isEqualTo(
+                        Arrays.copyOfRange(
+                                content,
+                                10 * LazyFile.CHUNK_SIZE + 7,
+                                10 * LazyFile.CHUNK_SIZE + 107));
+        assertThat(file.loadedBytes()).isEqualTo(LazyFile.CHUNK_SIZE);
+
+        // cached chunks are not read again
+        file.read(ByteBuffer.allocate(100), 10L * LazyFile.CHUNK_SIZE);
+        assertThat(file.loadedBytes()).isEqualTo(LazyFile.CHUNK_SIZE);
+        file.close();
+    }
+
+    @Test
+    public void lazyFileMatchesReference() throws Exception {
+        Path path = new File(tempDir, "reference.bin").toPath();
+        Random random = new Random(7);
+        byte[] reference = new byte[10 * LazyFile.CHUNK_SIZE + 123];
+        random.nextBytes(reference);
+        Files.write(path, reference);
+        byte[] original = reference.clone();
+
+        long bound = 2L * LazyFile.CHUNK_SIZE;
+        LazyFile file = new LazyFile(path, bound);
+        for (int op = 0; op < 2000; op++) {
+            int size = reference.length;
+            int pos = random.nextInt(size + LazyFile.CHUNK_SIZE);
+            int len = random.nextInt(3 * LazyFile.CHUNK_SIZE);
+            switch (random.nextInt(10)) {
+                case 0:
+                    {
+                        int newSize = random.nextInt(size + 1);
+                        file.truncate(newSize);
+                        reference = Arrays.copyOf(reference, newSize);
+                        break;
+                    }
+                case 1:
+                case 2:
+                    {
+                        byte[] data = new byte[len];
+                        random.nextBytes(data);
+                        file.write(ByteBuffer.wrap(data), pos);
+                        if (pos + len > size) {
+                            reference = Arrays.copyOf(reference, pos + len);
+                        }
+                        System.arraycopy(data, 0, reference, pos, len);
+                        break;
+                    }
+                default:
+                    {
+                        ByteBuffer buf = ByteBuffer.allocate(len);
+                        int n = file.read(buf, pos);
+                        if (pos >= size) {
+                            assertThat(n).isEqualTo(-1);
+                        } else {
+                            int expected = Math.min(len, size - pos);
+                            assertThat(n).isEqualTo(expected);
+                            assertThat(Arrays.copyOf(buf.array(), n))
+                                    .isEqualTo(Arrays.copyOfRange(reference, pos, pos + n));
+                        }
+                        break;
+                    }
+            }
+            assertThat(file.size()).isEqualTo(reference.length);
+            assertThat(file.cachedBytes()).isLessThanOrEqualTo(bound);
+        }
+        file.close();
+        assertThat(Files.readAllBytes(path)).isEqualTo(original);
+    }
+}
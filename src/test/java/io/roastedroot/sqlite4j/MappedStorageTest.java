@@ -0,0 +1,118 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.roastedroot.sqlite4j.core.wasm.MappedFile;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedStorageTest {
+
+    @TempDir File tempDir;
+
+    private static Connection open(String url, SQLiteConfig.StorageMode storage)
+            throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStorageMode(storage);
+        return DriverManager.getConnection(url, config.toProperties());
+    }
+
+    private static long query(Connection conn, String sql) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            assertThat(rs.next()).isTrue();
+            return rs.getLong(1);
+        }
+    }
+
+    private File createDatabase(String name) throws SQLException {
+        File file = new File(tempDir, name);
+        try (Connection conn =
+                        open(
+                                "jdbc:sqlite:" + file.getAbsolutePath(),
+                                SQLiteConfig.StorageMode.HOST);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v integer, b blob)");
+            stat.executeUpdate(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i <"
+                            + " 2000) insert into t select i, i * 2, randomblob(1000) from n");
+        }
+        return file;
+    }
+
+    @Test
+    public void readsTheMappedFile() throws Exception {
+        File file = createDatabase("read.db");
+        String url = "jdbc:sqlite:" + file.getAbsolutePath();
+        try (Connection first = open(url, SQLiteConfig.StorageMode.MMAP);
+                Connection second = open(url, SQLiteConfig.StorageMode.MMAP)) {
+            assertThat(query(first, "select count(*) from t")).isEqualTo(2000);
+            assertThat(query(second, "select v from t where id = 1234")).isEqualTo(2468);
+            assertThat(query(first, "select sum(length(b)) from t")).isEqualTo(2000L * 1000);
+        }
+    }
+
+    @Test
+    public void connectionsAreReadOnly() throws Exception {
+        File file = createDatabase("readonly.db");
+        byte[] before = Files.readAllBytes(file.toPath());
+        try (Connection conn =
+                        open(
+                                "jdbc:sqlite:" + file.getAbsolutePath(),
+                                SQLiteConfig.StorageMode.MMAP);
+                Statement stat = conn.createStatement()) {
+            assertThatThrownBy(() -> stat.executeUpdate("insert into t (v) values (1)"))
+                    .isInstanceOf(SQLException.class)
+                    .hasMessageContaining("readonly");
+            assertThat(query(conn, "select count(*) from t")).isEqualTo(2000);
+        }
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(before);
+    }
+
+    @Test
+    public void immutableUri() throws Exception {
+        File file = createDatabase("immutable.db");
+        try (Connection conn =
+                open(
+                        "jdbc:sqlite:file:" + file.getAbsolutePath() + "?immutable=1",
+                        SQLiteConfig.StorageMode.MMAP)) {
+            assertThat(query(conn, "select count(*) from t")).isEqualTo(2000);
+        }
+    }
+
+    @Test
+    public void mappedFileMatchesContent() throws Exception {
+        Path path = new File(tempDir, "content.bin").toPath();
+        byte[] content = new byte[1024 * 1024 + 17];
+        Random random = new Random(3);
+        random.nextBytes(content);
+        Files.write(path, content);
+
+        MappedFile file = new MappedFile(path);
+        assertThat(file.size()).isEqualTo(content.length);
+        for (int i = 0; i < 1000; i++) {
+            int pos = random.nextInt(content.length);
+            ByteBuffer buf = ByteBuffer.allocate(random.nextInt(8192));
+            int n = file.read(buf, pos);
+            assertThat(n).isEqualTo(Math.min(buf.capacity(), content.length - pos));
+            assertThat(Arrays.copyOf(buf.array(), n))
+                    .isEqualTo(Arrays.copyOfRange(content, pos, pos + n));
+        }
+        assertThat(file.read(ByteBuffer.allocate(1), content.length)).isEqualTo(-1);
+        assertThatThrownBy(() -> file.write(ByteBuffer.allocate(1), 0))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,276 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.roastedroot.sqlite4j.core.NormalizedSql;
+import io.roastedroot.sqlite4j.core.StatementCache;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class NormalizeLiteralsTest {
+    private SQLiteConnection conn;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setNormalizeLiterals(true);
+        conn = (SQLiteConnection) config.createConnection("jdbc:sqlite::memory:");
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v text, r real)");
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void parse() {
+        NormalizedSql insert =
+                NormalizedSql.parse("insert into t (id, v, r) values (1, 'it''s', 2.5e1)");
+        assertThat(insert.sql).isEqualTo("insert into t (id, v, r) values (?, ?, ?)");
+        assertThat(insert.values).containsExactly(1L, "it's", 25.0);
+        assertThat(insert.update).isTrue();
+
+        NormalizedSql select =
+                NormalizedSql.parse(
+                        "select 'label', count(*) from t2 where a = 'x' and b > 10 group by 1"
+                                + " order by 2 desc limit 5");
+        assertThat(select.sql)
+                .isEqualTo(
+                        "select 'label', count(*) from t2 where a = ? and b > ? group by 1"
+                                + " order by 2 desc limit ?");
+        assertThat(select.values).containsExactly("x", 10L, 5L);
+        assertThat(select.update).isFalse();
+
+        NormalizedSql identifiers =
+                NormalizedSql.parse("update \"t 1\" set [v2] = x'00' where c3 = -4 returning 7");
+        assertThat(identifiers.sql)
+                .isEqualTo("update \"t 1\" set [v2] = x'00' where c3 = -? returning 7");
+        assertThat(identifiers.update).isFalse();
+
+        assertThat(NormalizedSql.parse("select * from t where id = ?")).isNull();
+        assertThat(NormalizedSql.parse("select * from t where id = :id")).isNull();
+        assertThat(NormalizedSql.parse("create table x (a default 1)")).isNull();
+        assertThat(NormalizedSql.parse("pragma cache_size = 10")).isNull();
+        assertThat(NormalizedSql.parse("insert into t values (1); insert into t values (2)"))
+                .isNull();
+        assertThat(NormalizedSql.parse("select 99999999999999999999 from t").values).isEmpty();
+
+        NormalizedSql distinct =
+                NormalizedSql.parse("select a is not distinct from 1 from t where b = 2");
+        assertThat(distinct.sql).isEqualTo("select a is not distinct from 1 from t where b = ?");
+        assertThat(distinct.values).containsExactly(2L);
+    }
+
+    @Test
+    public void parseBlobsAndNegativeNumbers() {
+        NormalizedSql blob = NormalizedSql.parse("select v from t where b = x'0aFF' and v = 'a'");
+        assertThat(blob.sql).isEqualTo("select v from t where b = x'0aFF' and v = ?");
+        assertThat(blob.values).containsExactly("a");
+
+        NormalizedSql insert =
+                NormalizedSql.parse("insert into t (id, r, b) values (-5, -2.5, X'01')");
+        assertThat(insert.sql).isEqualTo("insert into t (id, r, b) values (-?, -?, X'01')");
+        assertThat(insert.values).containsExactly(5L, 2.5);
+
+        NormalizedSql exponent = NormalizedSql.parse("select v from t where r > -1.5e2");
+        assertThat(exponent.sql).isEqualTo("select v from t where r > -?");
+        assertThat(exponent.values).containsExactly(150.0);
+
+        // out of the range of a long once negated
+        assertThat(NormalizedSql.parse("select v from t where id > -9223372036854775808").values)
+                .isEmpty();
+    }
+
+    @Test
+    public void parseLimitAndOffset() {
+        NormalizedSql offset = NormalizedSql.parse("select v from t order by id limit 2 offset 1");
+        assertThat(offset.sql).isEqualTo("select v from t order by id limit ? offset ?");
+        assertThat(offset.values).containsExactly(2L, 1L);
+
+        NormalizedSql comma = NormalizedSql.parse("select v from t order by 1 limit 3, 4");
+        assertThat(comma.sql).isEqualTo("select v from t order by 1 limit ?, ?");
+        assertThat(comma.values).containsExactly(3L, 4L);
+    }
+
+    @Test
+    public void parseCommonTableExpressions() {
+        NormalizedSql columns =
+                NormalizedSql.parse(
+                        "with c(x) as (select 'k' || 1) select x, 'lbl' from c where x = 'k1'");
+        assertThat(columns.sql)
+                .isEqualTo("with c(x) as (select 'k' || 1) select x, 'lbl' from c where x = ?");
+        assertThat(columns.values).containsExactly("k1");
+
+        NormalizedSql filtered =
+                NormalizedSql.parse(
+                        "with c as (select 5 as n, 'a' from t where id = 7)"
+                                + " select n from c where n > 2");
+        assertThat(filtered.sql)
+                .isEqualTo(
+                        "with c as (select 5 as n, 'a' from t where id = ?)"
+                                + " select n from c where n > ?");
+        assertThat(filtered.values).containsExactly(7L, 2L);
+    }
+
+    @Test
+    public void executesTheNormalizedLiterals() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("alter table t add column b blob");
+            for (int i = 1; i <= 5; i++) {
+                stat.executeUpdate(
+                        "insert into t (id, v, r, b) values (-"
+                                + i
+                                + ", 'v"
+                                + i
+                                + "', -"
+                                + i
+                                + ".5, x'0"
+                                + i
+                                + "')");
+            }
+            try (ResultSet rs =
+                    stat.executeQuery(
+                            "select id, r, b from t where b <> x'01' and r < -1.5"
+                                    + " order by id desc limit 2 offset 1")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(1)).isEqualTo(-3);
+                assertThat(rs.getDouble(2)).isEqualTo(-3.5);
+                assertThat(rs.getBytes(3)).containsExactly(3);
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(1)).isEqualTo(-4);
+                assertThat(rs.next()).isFalse();
+            }
+            try (ResultSet rs =
+                    stat.executeQuery(
+                            "with c(n, label) as (select id, 'row' from t where id > -3)"
+                                    + " select count(*), label from c where n < 0")) {
+                assertThat(rs.getInt(1)).isEqualTo(2);
+                assertThat(rs.getString(2)).isEqualTo("row");
+                assertThat(rs.getMetaData().getColumnName(2)).isEqualTo("label");
+            }
+        }
+    }
+
+    @Test
+    public void reusesOnePreparedStatement() throws SQLException {
+        StatementCache cache = conn.getStatementCache();
+        assertThat(cache.getCapacity()).isPositive();
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+        for (int i = 0; i < 10; i++) {
+            try (Statement stat = conn.createStatement()) {
+                stat.execute("insert into t (v, r) values ('value " + i + "', " + i + ".5)");
+            }
+        }
+        // and the query of the generated keys after each insert
+        assertThat(cache.getMissCount()).isEqualTo(misses + 2);
+        assertThat(cache.getHitCount()).isEqualTo(hits + 18);
+
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select v, r from t where id = 4")) {
+            assertThat(rs.getString(1)).isEqualTo("value 3");
+            assertThat(rs.getDouble(2)).isEqualTo(3.5);
+        }
+    }
+
+    @Test
+    public void unclosedStatements() throws SQLException {
+        conn.getConnectionConfig().setGetGeneratedKeys(false);
+        StatementCache cache = conn.getStatementCache();
+        long misses = cache.getMissCount();
+        // executed again, a statement gives its prepared statement back first
+        Statement reused = conn.createStatement();
+        for (int i = 0; i < 10; i++) {
+            reused.execute("insert into t (v) values ('" + i + "')");
+        }
+        assertThat(cache.getMissCount()).isEqualTo(misses + 1);
+
+        // an open statement keeps its own, and its results
+        Statement other = conn.createStatement();
+        assertThat(other.execute("insert into t (v) values ('other')")).isFalse();
+        assertThat(cache.getMissCount()).isEqualTo(misses + 2);
+        assertThat(reused.getUpdateCount()).isEqualTo(1);
+        assertThat(other.getUpdateCount()).isEqualTo(1);
+        assertThat(other.getMoreResults()).isFalse();
+
+        reused.close();
+        other.close();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void updateCount() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            assertThat(stat.execute("insert into t (v) values ('a'), ('b')")).isFalse();
+            assertThat(stat.getResultSet()).isNull();
+            assertThat(stat.getUpdateCount()).isEqualTo(2);
+            assertThat(stat.getMoreResults()).isFalse();
+            assertThat(stat.getUpdateCount()).isEqualTo(-1);
+
+            assertThat(stat.execute("select v from t where v = 'none'")).isTrue();
+            try (ResultSet rs = stat.getResultSet()) {
+                assertThat(rs.next()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    public void executeUpdate() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            for (int i = 0; i < 5; i++) {
+                assertThat(stat.executeUpdate("insert into t (v) values ('" + i + "')"))
+                        .isEqualTo(1);
+            }
+            assertThat(stat.executeUpdate("update t set v = 'x' where id > 2")).isEqualTo(3);
+            try (ResultSet rs = stat.getGeneratedKeys()) {
+                assertThat(rs.next()).isFalse();
+            }
+            assertThat(stat.executeUpdate("insert into t (v) values ('last')")).isEqualTo(1);
+            try (ResultSet rs = stat.getGeneratedKeys()) {
+                assertThat(rs.getLong(1)).isEqualTo(6);
+            }
+            assertThat(stat.executeUpdate("delete from t where v = 'x'")).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void keepsTheResultColumnNames() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.execute("insert into t (v) values ('one')");
+            try (ResultSet rs = stat.executeQuery("select 42, 'x' || v from t where v = 'one'")) {
+                assertThat(rs.getMetaData().getColumnName(1)).isEqualTo("42");
+                assertThat(rs.getMetaData().getColumnName(2)).isEqualTo("'x' || v");
+                assertThat(rs.getString(2)).isEqualTo("xone");
+            }
+            try (ResultSet rs =
+                    stat.executeQuery(
+                            "select v is not distinct from 'one', 7 from t where id = 1")) {
+                assertThat(rs.getMetaData().getColumnName(1))
+                        .isEqualTo("v is not distinct from 'one'");
+                assertThat(rs.getMetaData().getColumnName(2)).isEqualTo("7");
+                assertThat(rs.getBoolean(1)).isTrue();
+            }
+            try (ResultSet rs = stat.executeQuery("select v, id from t order by 2")) {
+                assertThat(rs.getString(1)).isEqualTo("one");
+            }
+        }
+    }
+
+    @Test
+    public void fallsBackToTheLiterals() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            // a string literal used as a table name
+            stat.execute("insert into 't' (v) values ('quoted')");
+            try (ResultSet rs = stat.executeQuery("select count(*) from 't' where v = 'quoted'")) {
+                assertThat(rs.getInt(1)).isEqualTo(1);
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import static org.assertj.core.data.Offset.offset;
 import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.DriverManager;
@@ -908,4 +909,249 @@ public class PrepStmtTest {
         ResultSet rs = stat.executeQuery("select nr from gh1002");
         assertThat(rs.getBigDecimal(1)).isEqualTo(pi);
     }
+
+    @Test
+    public void bindAllTypes() throws SQLException {
+        stat.executeUpdate("create table t (c1, c2, c3, c4, c5, c6, c7, c8);");
+        PreparedStatement prep =
+                conn.prepareStatement("insert into t values (?, ?, ?, ?, ?, ?, ?, ?);");
+        prep.setInt(1, Integer.MIN_VALUE);
+        prep.setLong(2, Long.MAX_VALUE);
+        prep.setDouble(3, -2.5);
+        prep.setString(4, utf06);
+        prep.setString(5, "");
+        prep.setBytes(6, b1);
+        prep.setBytes(7, new byte[0]);
+        prep.setNull(8, Types.INTEGER);
+        assertThat(prep.executeUpdate()).isEqualTo(1);
+        prep.close();
+
+        ResultSet rs =
+                stat.executeQuery(
+                        "select c1, c2, c3, c4, c5, c6, c7, c8, typeof(c5), typeof(c7) from t;");
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(Integer.MIN_VALUE);
+        assertThat(rs.getLong(2)).isEqualTo(Long.MAX_VALUE);
+        assertThat(rs.getDouble(3)).isEqualTo(-2.5);
+        assertThat(rs.getString(4)).isEqualTo(utf06);
+        assertThat(rs.getString(5)).isEqualTo("");
+        assertThat(rs.getBytes(6)).isEqualTo(b1);
+        assertThat(rs.getBytes(7)).isEmpty();
+        assertThat(rs.getObject(8)).isNull();
+        assertThat(rs.getString(9)).isEqualTo("text");
+        assertThat(rs.getString(10)).isEqualTo("blob");
+        assertThat(rs.next()).isFalse();
+        rs.close();
+    }
+
+    @Test
+    public void bindAllLargerThanBuffer() throws SQLException {
+        stat.executeUpdate("create table t (c1, c2, c3);");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String text = sb.toString();
+        byte[] blob = new byte[40000];
+        for (int i = 0; i < blob.length; i++) {
+            blob[i] = (byte) i;
+        }
+        PreparedStatement prep = conn.prepareStatement("insert into t values (?, ?, ?);");
+        prep.setString(1, text);
+        prep.setBytes(2, blob);
+        prep.setInt(3, 1);
+        assertThat(prep.executeUpdate()).isEqualTo(1);
+        prep.setString(1, "small");
+        prep.setBytes(2, b2);
+        prep.setInt(3, 2);
+        assertThat(prep.executeUpdate()).isEqualTo(1);
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select c1, c2 from t order by c3;");
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString(1)).isEqualTo(text);
+        assertThat(rs.getBytes(2)).isEqualTo(blob);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString(1)).isEqualTo("small");
+        assertThat(rs.getBytes(2)).isEqualTo(b2);
+        rs.close();
+    }
+
+    @Test
+    public void bindAllBatch() throws SQLException {
+        stat.executeUpdate("create table t (c1, c2, c3);");
+        PreparedStatement prep = conn.prepareStatement("insert into t values (?, ?, ?);");
+        for (int i = 0; i < 10; i++) {
+            prep.setInt(1, i);
+            if (i % 2 == 0) {
+                prep.setString(2, utf05 + i);
+                prep.setNull(3, Types.BLOB);
+            } else {
+                prep.setNull(2, Types.VARCHAR);
+                prep.setBytes(3, new byte[] {(byte) i});
+            }
+            prep.addBatch();
+        }
+        assertThat(prep.executeBatch()).containsOnly(1).hasSize(10);
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select c1, c2, c3 from t order by c1;");
+        for (int i = 0; i < 10; i++) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(i);
+            if (i % 2 == 0) {
+                assertThat(rs.getString(2)).isEqualTo(utf05 + i);
+                assertThat(rs.getBytes(3)).isNull();
+            } else {
+                assertThat(rs.getString(2)).isNull();
+                assertThat(rs.getBytes(3)).containsExactly((byte) i);
+            }
+        }
+        assertThat(rs.next()).isFalse();
+        rs.close();
+    }
+
+    @Test
+    public void batchLarge() throws SQLException {
+        stat.executeUpdate("create table t (c1, c2, c3);");
+        conn.setAutoCommit(false);
+        PreparedStatement prep = conn.prepareStatement("insert into t values (?, ?, ?);");
+        for (int i = 0; i < 20000; i++) {
+            prep.setInt(1, i);
+            prep.setString(2, "row " + i);
+            prep.setDouble(3, i / 2.0);
+            prep.addBatch();
+        }
+        int[] counts = prep.executeBatch();
+        assertThat(counts).hasSize(20000).containsOnly(1);
+        conn.commit();
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select count(*), sum(c1), max(c2), sum(c3) from t;");
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(20000);
+        assertThat(rs.getLong(2)).isEqualTo(199990000L);
+        assertThat(rs.getString(3)).isEqualTo("row 9999");
+        assertThat(rs.getDouble(4)).isEqualTo(99995000.0);
+        rs.close();
+    }
+
+    @Test
+    public void batchFailingRow() throws SQLException {
+        stat.executeUpdate("create table t (c1 integer unique);");
+        PreparedStatement prep = conn.prepareStatement("insert into t values (?);");
+        for (int i : new int[] {1, 2, 1, 3}) {
+            prep.setInt(1, i);
+            prep.addBatch();
+        }
+        assertThatThrownBy(prep::executeBatch)
+                .isInstanceOfSatisfying(
+                        SQLiteException.class,
+                        (e) -> {
+                            assertThat(e.getErrorCode())
+                                    .isEqualTo(SQLiteErrorCode.SQLITE_CONSTRAINT.code);
+                            assertThat(e.getResultCode())
+                                    .isEqualTo(SQLiteErrorCode.SQLITE_CONSTRAINT_UNIQUE);
+                        })
+                .hasMessageContaining("UNIQUE constraint failed: t.c1");
+
+        // the batch is cleared and the statement can be reused
+        prep.setInt(1, 4);
+        prep.addBatch();
+        assertThat(prep.executeBatch()).containsExactly(1);
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select group_concat(c1) from t;");
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString(1)).isEqualTo("1,2,4");
+        rs.close();
+    }
+
+    @Test
+    public void batchReturningResults() throws SQLException {
+        stat.executeUpdate("create table t (c1);");
+        PreparedStatement prep = conn.prepareStatement("insert into t values (?) returning c1;");
+        prep.setInt(1, 1);
+        prep.addBatch();
+        prep.setInt(1, 2);
+        prep.addBatch();
+        assertThatThrownBy(prep::executeBatch)
+                .isInstanceOfSatisfying(
+                        BatchUpdateException.class,
+                        e -> {
+                            assertThat(e.getMessage()).contains("batch entry 0");
+                            assertThat(e.getLargeUpdateCounts()).containsExactly(0L, 0L);
+                        });
+        prep.close();
+    }
+
+    @Test
+    public void paramsOfInterleavedStatements() throws SQLException {
+        PreparedStatement prep1 = conn.prepareStatement("select ?, ? union all select ?, ?;");
+        PreparedStatement prep2 = conn.prepareStatement("select ?, ?;");
+        StringBuilder sb = new StringBuilder();
+        for (int round = 0; round < 14; round++) {
+            // the parameters grow past the size of the bind arenas
+            sb.append(utf07).append(round);
+            for (int i = 0; i < round * round * 50; i++) {
+                sb.append('x');
+            }
+            String text = sb.toString();
+            byte[] blob = getUtf8Bytes(text + round);
+
+            prep1.setString(1, text);
+            prep1.setBytes(2, blob);
+            prep1.setString(3, utf01);
+            prep1.setBytes(4, b3);
+            ResultSet rs1 = prep1.executeQuery();
+            assertThat(rs1.next()).isTrue();
+
+            // binding the other statement must not touch the values of the running one
+            prep2.setString(1, utf08 + round);
+            prep2.setBytes(2, b1);
+            ResultSet rs2 = prep2.executeQuery();
+            assertThat(rs2.next()).isTrue();
+            assertThat(rs2.getString(1)).isEqualTo(utf08 + round);
+            assertThat(rs2.getBytes(2)).isEqualTo(b1);
+            rs2.close();
+
+            assertThat(rs1.getString(1)).isEqualTo(text);
+            assertThat(rs1.getBytes(2)).isEqualTo(blob);
+            assertThat(rs1.next()).isTrue();
+            assertThat(rs1.getString(1)).isEqualTo(utf01);
+            assertThat(rs1.getBytes(2)).isEqualTo(b3);
+            rs1.close();
+        }
+        prep1.close();
+        prep2.close();
+    }
+
+    @Test
+    public void paramsAreKeptAfterReset() throws SQLException {
+        stat.executeUpdate("create table t (c1, c2);");
+        PreparedStatement prep = conn.prepareStatement("insert into t values (?, ?);");
+        prep.setString(1, utf06);
+        prep.setBytes(2, b2);
+        assertThat(prep.executeUpdate()).isEqualTo(1);
+        // executing again reuses the parameters that are already set
+        assertThat(prep.executeUpdate()).isEqualTo(1);
+        prep.clearParameters();
+        prep.setString(1, "a");
+        prep.setString(2, "b");
+        assertThat(prep.executeUpdate()).isEqualTo(1);
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select c1, c2 from t;");
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString(1)).isEqualTo(utf06);
+        assertThat(rs.getBytes(2)).isEqualTo(b2);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString(1)).isEqualTo(utf06);
+        assertThat(rs.getBytes(2)).isEqualTo(b2);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString(1)).isEqualTo("a");
+        assertThat(rs.getString(2)).isEqualTo("b");
+        assertThat(rs.next()).isFalse();
+        rs.close();
+    }
 }
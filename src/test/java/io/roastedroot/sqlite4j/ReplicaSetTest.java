@@ -0,0 +1,176 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReplicaSetTest {
+    @TempDir File tempDir;
+
+    private SQLiteDataSource ds;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        ds = new SQLiteDataSource();
+        ds.setUrl("jdbc:sqlite:" + new File(tempDir, "replicas.db").getAbsolutePath());
+        ds.setReadReplicas(2);
+        try (Connection conn = ds.getConnection();
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v integer)");
+            stat.executeUpdate(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i <"
+                            + " 1000) insert into t select i, i from n");
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        ds.close();
+    }
+
+    private static long count(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select count(*) from t")) {
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void isQuery() {
+        assertThat(SQLiteReplicaSet.isQuery("select 1")).isTrue();
+        assertThat(SQLiteReplicaSet.isQuery("  -- comment\n /* c */ SELECT * from t")).isTrue();
+        assertThat(SQLiteReplicaSet.isQuery("select")).isTrue();
+        assertThat(SQLiteReplicaSet.isQuery("selection")).isFalse();
+        assertThat(SQLiteReplicaSet.isQuery("insert into t select 1")).isFalse();
+        assertThat(SQLiteReplicaSet.isQuery("with x as (select 1) delete from t")).isFalse();
+    }
+
+    @Test
+    public void inMemoryDatabasesAreRejected() {
+        SQLiteDataSource memory = new SQLiteDataSource();
+        memory.setReadReplicas(2);
+        assertThatThrownBy(memory::getConnection).isInstanceOf(SQLException.class);
+    }
+
+    @Test
+    public void readOnlyConnectionsUseTheReaders() throws SQLException {
+        try (Connection conn = ds.getConnection()) {
+            conn.setReadOnly(true);
+            assertThat(conn.isReadOnly()).isTrue();
+            assertThat(count(conn)).isEqualTo(1000);
+            try (Statement stat = conn.createStatement()) {
+                assertThatThrownBy(() -> stat.executeUpdate("delete from t"))
+                        .isInstanceOf(SQLException.class);
+            }
+        }
+        try (Connection conn = ds.getConnection()) {
+            assertThat(count(conn)).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    public void queriesAndWritesOnTheSameConnection() throws SQLException {
+        try (Connection conn = ds.getConnection()) {
+            try (PreparedStatement select = conn.prepareStatement("select v from t where id = ?");
+                    PreparedStatement update =
+                            conn.prepareStatement("update t set v = ? where id = ?")) {
+                update.setInt(1, -1);
+                update.setInt(2, 7);
+                assertThat(update.executeUpdate()).isEqualTo(1);
+                // the query runs on a reader, it sees the committed change
+                select.setInt(1, 7);
+                try (ResultSet rs = select.executeQuery()) {
+                    assertThat(rs.getInt(1)).isEqualTo(-1);
+                }
+            }
+
+            // in a transaction everything runs on the writer
+            conn.setAutoCommit(false);
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate("delete from t where id > 500");
+            }
+            try (PreparedStatement select = conn.prepareStatement("select count(*) from t");
+                    ResultSet rs = select.executeQuery()) {
+                assertThat(rs.getLong(1)).isEqualTo(500);
+            }
+            conn.rollback();
+        }
+        try (Connection conn = ds.getConnection()) {
+            conn.setReadOnly(true);
+            assertThat(count(conn)).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    public void closingReleasesTheConnections() throws SQLException {
+        // more handles than readers, one after the other
+        for (int i = 0; i < 10; i++) {
+            Connection conn = ds.getConnection();
+            conn.setReadOnly(true);
+            conn.setAutoCommit(false);
+            assertThat(count(conn)).isEqualTo(1000);
+            conn.close();
+            assertThat(conn.isClosed()).isTrue();
+            assertThatThrownBy(conn::createStatement).isInstanceOf(SQLException.class);
+        }
+    }
+
+    @Test
+    public void parallelReaders() {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                long sum = 0;
+                                try (Connection conn = ds.getConnection()) {
+                                    conn.setReadOnly(true);
+                                    for (int j = 0; j < 20; j++) {
+                                        try (Statement stat = conn.createStatement();
+                                                ResultSet rs =
+                                                        stat.executeQuery("select sum(v) from t")) {
+                                            sum += rs.getLong(1);
+                                        }
+                                    }
+                                } catch (SQLException e) {
+                                    throw new RuntimeException(e);
+                                }
+                                return sum;
+                            }));
+        }
+        for (CompletableFuture<Long> future : futures) {
+            assertThat(future.join()).isEqualTo(20 * 500500L);
+        }
+    }
+
+    @Test
+    public void readersKeepTheirSnapshot() throws SQLException {
+        try (Connection reader = ds.getConnection();
+                Connection writer = ds.getConnection()) {
+            Utils.assertWal(writer);
+            reader.setReadOnly(true);
+            reader.setAutoCommit(false);
+            assertThat(count(reader)).isEqualTo(1000);
+
+            try (Statement stat = writer.createStatement()) {
+                stat.executeUpdate("delete from t where id > 10");
+            }
+            assertThat(count(reader)).isEqualTo(1000);
+            reader.commit();
+            assertThat(count(reader)).isEqualTo(10);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.roastedroot.sqlite4j.core.DB;
+import io.roastedroot.sqlite4j.javax.SQLiteConnectionPool;
+import io.roastedroot.sqlite4j.javax.SQLiteConnectionPoolDataSource;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SQLiteConnectionPoolTest {
+    @TempDir File tempDir;
+
+    private SQLiteConnectionPoolDataSource ds;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        ds = new SQLiteConnectionPoolDataSource();
+        ds.setUrl("jdbc:sqlite:" + new File(tempDir, "pool.db").getAbsolutePath());
+        ds.setMaxPoolSize(2);
+        try (Connection conn = ds.getConnection();
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v text)");
+            stat.executeUpdate("insert into t values (1, 'one')");
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        ds.close();
+    }
+
+    private static DB db(Connection conn) throws SQLException {
+        return conn.unwrap(SQLiteConnection.class).getDatabase();
+    }
+
+    private static String query(Connection conn, String sql) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void reusesThePhysicalConnections() throws SQLException {
+        SQLiteConnectionPool pool = ds.getPool();
+        DB first;
+        try (Connection conn = ds.getConnection()) {
+            first = db(conn);
+            assertThat(pool.getActiveCount()).isEqualTo(1);
+            assertThat(pool.getIdleCount()).isEqualTo(0);
+        }
+        try (Connection conn = ds.getConnection()) {
+            assertThat(db(conn)).isSameAs(first);
+        }
+        assertThat(pool.getActiveCount()).isEqualTo(0);
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+        assertThat(pool.getBorrowCount()).isEqualTo(3);
+        assertThat(pool.getDiscardedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void warmConnections() throws SQLException {
+        SQLiteConnectionPoolDataSource warm = new SQLiteConnectionPoolDataSource();
+        warm.setMaxPoolSize(4);
+        warm.setMinIdle(3);
+        try {
+            SQLiteConnectionPool pool = warm.getPool();
+            assertThat(pool.getIdleCount()).isEqualTo(3);
+            assertThat(pool.getTotalCount()).isEqualTo(3);
+            try (Connection conn = warm.getConnection()) {
+                assertThat(query(conn, "select 1")).isEqualTo("1");
+            }
+            assertThat(pool.getCreatedCount()).isEqualTo(3);
+        } finally {
+            warm.close();
+        }
+    }
+
+    @Test
+    public void resetsTheSessionState() throws SQLException {
+        DB first;
+        try (Connection conn = ds.getConnection()) {
+            first = db(conn);
+            SQLiteConnection physical = conn.unwrap(SQLiteConnection.class);
+            Function.create(
+                    physical,
+                    "answer",
+                    new Function() {
+                        @Override
+                        public void xFunc() throws SQLException {
+                            result(42);
+                        }
+                    });
+            Collation.create(
+                    physical,
+                    "REVERSE",
+                    new Collation() {
+                        @Override
+                        public int xCompare(String str1, String str2) {
+                            return str2.compareTo(str1);
+                        }
+                    });
+            physical.setBusyTimeout(10);
+            conn.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            try (Statement stat = conn.createStatement()) {
+                stat.execute("pragma foreign_keys = true");
+                stat.execute("pragma cache_size = 100");
+                stat.execute("attach ':memory:' as aux");
+            }
+            assertThat(query(conn, "select answer()")).isEqualTo("42");
+            conn.setAutoCommit(false);
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate("insert into t values (2, 'two')");
+            }
+        }
+
+        try (Connection conn = ds.getConnection()) {
+            assertThat(db(conn)).isSameAs(first);
+            assertThat(conn.getAutoCommit()).isTrue();
+            assertThat(conn.getTransactionIsolation())
+                    .isEqualTo(Connection.TRANSACTION_SERIALIZABLE);
+            assertThat(conn.unwrap(SQLiteConnection.class).getBusyTimeout()).isEqualTo(3000);
+            assertThat(query(conn, "select count(*) from t")).isEqualTo("1");
+            assertThat(query(conn, "pragma foreign_keys")).isEqualTo("0");
+            assertThat(query(conn, "pragma cache_size")).isEqualTo("-2000");
+            assertThat(query(conn, "pragma read_uncommitted")).isEqualTo("0");
+            assertThat(query(conn, "select count(*) from pragma_database_list()")).isEqualTo("1");
+            assertThatThrownBy(() -> query(conn, "select answer()"))
+                    .isInstanceOf(SQLException.class);
+            assertThatThrownBy(() -> query(conn, "select v from t order by v collate REVERSE"))
+                    .isInstanceOf(SQLException.class);
+        }
+    }
+
+    @Test
+    public void closedConnectionsAreDiscarded() throws SQLException {
+        SQLiteConnectionPool pool = ds.getPool();
+        DB first;
+        try (Connection conn = ds.getConnection()) {
+            first = db(conn);
+            conn.unwrap(SQLiteConnection.class).close();
+            assertThat(conn.isClosed()).isTrue();
+        }
+        assertThat(pool.getDiscardedCount()).isEqualTo(1);
+        assertThat(pool.getTotalCount()).isEqualTo(0);
+        try (Connection conn = ds.getConnection()) {
+            assertThat(db(conn)).isNotSameAs(first);
+            assertThat(query(conn, "select count(*) from t")).isEqualTo("1");
+        }
+    }
+
+    @Test
+    public void waitsForAConnection() throws Exception {
+        SQLiteConnectionPool pool = ds.getPool();
+        Connection first = ds.getConnection();
+        Connection second = ds.getConnection();
+        assertThatThrownBy(ds::getConnection)
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("Timeout");
+        assertThat(pool.getTimeoutCount()).isEqualTo(1);
+
+        CompletableFuture<String> waiting =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try (Connection conn = ds.getConnection()) {
+                                return query(conn, "select v from t");
+                            } catch (SQLException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        Thread.sleep(100);
+        first.close();
+        assertThat(waiting.get()).isEqualTo("one");
+        second.close();
+        assertThat(pool.getWaitCount()).isEqualTo(2);
+        assertThat(pool.getTotalCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentBorrowers() throws SQLException {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                long sum = 0;
+                                for (int j = 0; j < 25; j++) {
+                                    try (Connection conn = ds.getConnection()) {
+                                        sum += Long.parseLong(query(conn, "select id from t"));
+                                    } catch (SQLException e) {
+                                        throw new RuntimeException(e);
+                                    }
+                                }
+                                return sum;
+                            }));
+        }
+        for (CompletableFuture<Long> future : futures) {
+            assertThat(future.join()).isEqualTo(25);
+        }
+        SQLiteConnectionPool pool = ds.getPool();
+        assertThat(pool.getActiveCount()).isEqualTo(0);
+        assertThat(pool.getTotalCount()).isLessThanOrEqualTo(2);
+        assertThat(pool.getIdleCount()).isEqualTo(pool.getTotalCount());
+    }
+
+    @Test
+    public void closingThePool() throws SQLException {
+        SQLiteConnectionPool pool = ds.getPool();
+        Connection conn = ds.getConnection();
+        SQLiteConnection physical = conn.unwrap(SQLiteConnection.class);
+        pool.close();
+        assertThat(pool.isClosed()).isTrue();
+        assertThatThrownBy(pool::getConnection).isInstanceOf(SQLException.class);
+        assertThat(physical.isClosed()).isFalse();
+        conn.close();
+        assertThat(physical.isClosed()).isTrue();
+        assertThat(pool.getTotalCount()).isEqualTo(0);
+    }
+}
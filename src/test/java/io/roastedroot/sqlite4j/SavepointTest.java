@@ -31,12 +31,15 @@ public class SavepointTest {
 
         Properties prop = new Properties();
         prop.setProperty("shared_cache", "false");
+        // the connections share the SQLite locks of the file
+        prop.setProperty("wasm.vfs", "java");
 
         conn1 = DriverManager.getConnection("jdbc:sqlite:" + tmpFile.getAbsolutePath(), prop);
         conn2 = DriverManager.getConnection("jdbc:sqlite:" + tmpFile.getAbsolutePath(), prop);
 
         stat1 = conn1.createStatement();
         stat2 = conn2.createStatement();
+        assertThat(Utils.hasLockManager(conn2)).isTrue();
     }
 
     @AfterEach
@@ -62,11 +65,10 @@ public class SavepointTest {
         assertThat(rs.next()).isTrue();
         assertThat(rs.getInt(1)).isEqualTo(1);
         rs.close();
-        // Multiple connections are not allowed: SQLITE_THREADSAFE=0
-        //        rs = stat2.executeQuery(countSql);
-        //        assertThat(rs.next()).isTrue();
-        //        assertThat(rs.getInt(1)).isEqualTo(0);
-        //        rs.close();
+        rs = stat2.executeQuery(countSql);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(0);
+        rs.close();
 
         conn1.commit();
 
@@ -144,7 +146,6 @@ public class SavepointTest {
         assertThat(rs.getInt(1)).isEqualTo(1 + 2 + 3 + 4 + 5 + 6 + 7);
         rs.close();
 
-        // Multiple connections are not allowed: SQLITE_THREADSAFE=0
         stat1.execute("rollback;");
         rs = stat2.executeQuery("select sum(c1) from t;");
         assertThat(rs.next()).isTrue();
@@ -167,11 +168,10 @@ public class SavepointTest {
         assertThat(rs.next()).isTrue();
         assertThat(rs.getInt(1)).isEqualTo(1);
         rs.close();
-        // Multiple connections are not allowed: SQLITE_THREADSAFE=0
-        //        rs = stat2.executeQuery(countSql);
-        //        assertThat(rs.next()).isTrue();
-        //        assertThat(rs.getInt(1)).isEqualTo(0);
-        //        rs.close();
+        rs = stat2.executeQuery(countSql);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(0);
+        rs.close();
 
         Savepoint innerSP = conn1.setSavepoint("inner_sp");
         assertThat(stat1.executeUpdate("insert into trans values (5);")).isEqualTo(1);
@@ -181,20 +181,18 @@ public class SavepointTest {
         assertThat(rs.next()).isTrue();
         assertThat(rs.getInt(1)).isEqualTo(2);
         rs.close();
-        // Multiple connections are not allowed: SQLITE_THREADSAFE=0
-        //        rs = stat2.executeQuery(countSql);
-        //        assertThat(rs.next()).isTrue();
-        //        assertThat(rs.getInt(1)).isEqualTo(0);
-        //        rs.close();
+        rs = stat2.executeQuery(countSql);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(0);
+        rs.close();
 
         // releasing an inner savepoint, statements are still wrapped by the outer savepoint
         conn1.releaseSavepoint(innerSP);
 
-        // Multiple connections are not allowed: SQLITE_THREADSAFE=0
-        //        rs = stat2.executeQuery(countSql);
-        //        assertThat(rs.next()).isTrue();
-        //        assertThat(rs.getInt(1)).isEqualTo(0);
-        //        rs.close();
+        rs = stat2.executeQuery(countSql);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(0);
+        rs.close();
 
         // releasing the outer savepoint is like a commit
         conn1.releaseSavepoint(outerSP);
@@ -0,0 +1,188 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.roastedroot.sqlite4j.core.StatementCache;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StatementCacheTest {
+    private SQLiteConnection conn;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStatementCacheSize(2);
+        conn = (SQLiteConnection) config.createConnection("jdbc:sqlite::memory:");
+        // not through a statement, to start with an empty cache
+        conn.getDatabase().exec("create table t (id integer primary key, v text)", true);
+        conn.getDatabase().exec("insert into t (v) values ('one'), ('two'), ('three')", true);
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    private String value(String sql, int id) throws SQLException {
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            prep.setInt(1, id);
+            try (ResultSet rs = prep.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    @Test
+    public void disabledByDefault() throws SQLException {
+        try (SQLiteConnection other =
+                (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite::memory:")) {
+            StatementCache cache = other.getStatementCache();
+            try (Statement stat = other.createStatement()) {
+                stat.executeQuery("select 1").close();
+            }
+            assertThat(cache.getCapacity()).isEqualTo(0);
+            assertThat(cache.size()).isEqualTo(0);
+            assertThat(cache.getMissCount()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void reusedBySqlText() throws SQLException {
+        StatementCache cache = conn.getStatementCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        String sql = "select v from t where id = ?";
+        assertThat(value(sql, 1)).isEqualTo("one");
+        assertThat(cache.getMissCount()).isEqualTo(misses + 1);
+        assertThat(cache.size()).isEqualTo(1);
+
+        assertThat(value(sql, 2)).isEqualTo("two");
+        assertThat(value(sql, 3)).isEqualTo("three");
+        assertThat(cache.getHitCount()).isEqualTo(hits + 2);
+        assertThat(cache.getMissCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    public void parametersAreCleared() throws SQLException {
+        String sql = "select ? is null";
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            prep.setInt(1, 42);
+            try (ResultSet rs = prep.executeQuery()) {
+                assertThat(rs.getBoolean(1)).isFalse();
+            }
+        }
+        try (PreparedStatement prep = conn.prepareStatement(sql);
+                ResultSet rs = prep.executeQuery()) {
+            assertThat(rs.getBoolean(1)).isTrue();
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws SQLException {
+        StatementCache cache = conn.getStatementCache();
+        long evictions = cache.getEvictionCount();
+        value("select v from t where id = ?", 1);
+        value("select id from t where id = ?", 1);
+        // the first one is now the most recently used
+        value("select v from t where id = ?", 1);
+        value("select v || v from t where id = ?", 1);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictionCount()).isEqualTo(evictions + 1);
+
+        long misses = cache.getMissCount();
+        value("select v from t where id = ?", 1);
+        assertThat(cache.getMissCount()).isEqualTo(misses);
+        value("select id from t where id = ?", 1);
+        assertThat(cache.getMissCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    public void sameSqlOpenTwice() throws SQLException {
+        String sql = "select v from t where id = ?";
+        try (PreparedStatement first = conn.prepareStatement(sql);
+                PreparedStatement second = conn.prepareStatement(sql)) {
+            first.setInt(1, 1);
+            second.setInt(1, 2);
+            try (ResultSet rs1 = first.executeQuery();
+                    ResultSet rs2 = second.executeQuery()) {
+                assertThat(rs1.getString(1)).isEqualTo("one");
+                assertThat(rs2.getString(1)).isEqualTo("two");
+            }
+        }
+        assertThat(conn.getStatementCache().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void invalidatedBySchemaChange() throws SQLException {
+        StatementCache cache = conn.getStatementCache();
+        String sql = "select * from t where id = ?";
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            prep.setInt(1, 1);
+            try (ResultSet rs = prep.executeQuery()) {
+                assertThat(rs.getMetaData().getColumnCount()).isEqualTo(2);
+            }
+        }
+        assertThat(cache.size()).isEqualTo(1);
+
+        long invalidations = cache.getInvalidationCount();
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("alter table t add column w text default 'x'");
+        }
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getInvalidationCount()).isEqualTo(invalidations + 1);
+
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            prep.setInt(1, 1);
+            try (ResultSet rs = prep.executeQuery()) {
+                assertThat(rs.getMetaData().getColumnCount()).isEqualTo(3);
+                assertThat(rs.getString(3)).isEqualTo("x");
+            }
+        }
+    }
+
+    @Test
+    public void sessionStatementsAreNotCached() throws SQLException {
+        StatementCache cache = conn.getStatementCache();
+        long misses = cache.getMissCount();
+        try (Statement stat = conn.createStatement()) {
+            stat.executeQuery("pragma user_version").close();
+            stat.executeQuery("PRAGMA user_version").close();
+            stat.executeUpdate("attach ':memory:' as other");
+            stat.executeUpdate("detach other");
+        }
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getMissCount()).isEqualTo(misses);
+    }
+
+    @Test
+    public void failedStatementIsNotKept() throws SQLException {
+        String sql = "insert into t (id, v) values (?, ?)";
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            prep.setInt(1, 1);
+            prep.setString(2, "duplicate");
+            assertThatThrownBy(prep::executeUpdate).isInstanceOf(SQLException.class);
+        }
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            prep.setInt(1, 4);
+            prep.setString(2, "four");
+            assertThat(prep.executeUpdate()).isEqualTo(1);
+        }
+        assertThat(value("select v from t where id = ?", 4)).isEqualTo("four");
+    }
+
+    @Test
+    public void hibernateFinalizesTheCache() throws SQLException {
+        value("select v from t where id = ?", 1);
+        assertThat(conn.getStatementCache().size()).isEqualTo(1);
+        assertThat(conn.hibernate()).isTrue();
+        assertThat(conn.getStatementCache().size()).isEqualTo(0);
+        assertThat(value("select v from t where id = ?", 2)).isEqualTo("two");
+    }
+}
@@ -34,6 +34,8 @@ public class TransactionTest {
 
         Properties prop = new Properties();
         prop.setProperty("shared_cache", "false");
+        // the connections share the SQLite locks of the file
+        prop.setProperty("wasm.vfs", "java");
 
         conn1 = DriverManager.getConnection("jdbc:sqlite:" + tmpFile.getAbsolutePath(), prop);
         conn2 = DriverManager.getConnection("jdbc:sqlite:" + tmpFile.getAbsolutePath(), prop);
@@ -41,6 +43,7 @@ public class TransactionTest {
 
         stat1 = conn1.createStatement();
         stat2 = conn2.createStatement();
+        assertThat(Utils.hasLockManager(conn2)).isTrue();
         stat3 = conn3.createStatement();
     }
 
@@ -153,6 +156,11 @@ public class TransactionTest {
     public void locking() throws SQLException {
         stat1.executeUpdate("create table test (c1);");
         stat1.executeUpdate("begin immediate;");
+        // RESERVED: the other connections can still read, but not write
+        stat2.executeQuery("select * from test;").close();
+        assertThatThrownBy(() -> stat2.executeUpdate("insert into test values (1);"));
+        stat1.executeUpdate("commit;");
+        stat1.executeUpdate("begin exclusive;");
         // here the database is correctly locked in WASM
         assertThatThrownBy(() -> stat2.executeUpdate("select * from test;"));
         // after the commit everything is accessible again in WASM
@@ -175,11 +183,10 @@ public class TransactionTest {
         assertThat(rs.next()).isTrue();
         assertThat(rs.getInt(1)).isEqualTo(1);
         rs.close();
-        // Multiple connections are not allowed: SQLITE_THREADSAFE=0
-        //        rs = stat2.executeQuery(countSql);
-        //        assertThat(rs.next()).isTrue();
-        //        assertThat(rs.getInt(1)).isEqualTo(0);
-        //        rs.close();
+        rs = stat2.executeQuery(countSql);
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(0);
+        rs.close();
 
         conn1.commit();
 
@@ -0,0 +1,107 @@
+package io.roastedroot.sqlite4j;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import org.junit.jupiter.api.Test;
+
+/** Registers and calls functions and collations from several connections at once. */
+public class UDFConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 50;
+
+    private static Function constant(int constant) {
+        return new Function() {
+            @Override
+            public void xFunc() throws SQLException {
+                result(constant);
+            }
+        };
+    }
+
+    // each connection registers its own functions and collations under the same names,
+    // and must only ever see its own
+    private static void run(SQLiteConfig config) throws Exception {
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(
+                    CompletableFuture.runAsync(
+                            () -> {
+                                try (SQLiteConnection conn =
+                                        (SQLiteConnection)
+                                                config.createConnection("jdbc:sqlite::memory:")) {
+                                    start.await();
+                                    exercise(conn, thread);
+                                } catch (Exception e) {
+                                    throw new RuntimeException(e);
+                                }
+                            }));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    private static String query(SQLiteConnection conn, String sql) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            return rs.getString(1);
+        }
+    }
+
+    private static void exercise(SQLiteConnection conn, int thread) throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (v text)");
+            stat.executeUpdate("insert into t values ('a'), ('b'), ('c')");
+        }
+        // ascending for the even threads, descending for the odd ones
+        int sign = thread % 2 == 0 ? 1 : -1;
+        Collation.create(
+                conn,
+                "DIRECTION",
+                new Collation() {
+                    @Override
+                    public int xCompare(String str1, String str2) {
+                        return sign * str1.compareTo(str2);
+                    }
+                });
+        for (int round = 0; round < ROUNDS; round++) {
+            int value = thread * 1000 + round;
+            Function.create(conn, "f", constant(value));
+            Function.create(conn, "g" + round, constant(-value));
+            assertThat(query(conn, "select f() || ' ' || g" + round + "()"))
+                    .isEqualTo(value + " " + -value);
+            assertThat(query(conn, "select v from t order by v collate DIRECTION"))
+                    .isEqualTo(sign > 0 ? "a" : "c");
+            if (round % 2 == 0) {
+                Function.destroy(conn, "g" + round);
+            }
+        }
+        // the remaining functions, after their slots were reused
+        for (int round = 1; round < ROUNDS; round += 2) {
+            assertThat(query(conn, "select g" + round + "()"))
+                    .isEqualTo(String.valueOf(-(thread * 1000 + round)));
+        }
+        Collation.destroy(conn, "DIRECTION");
+    }
+
+    @Test
+    public void ownInstances() throws Exception {
+        run(new SQLiteConfig());
+    }
+
+    @Test
+    public void sharedInstances() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedInstanceSize(4);
+        run(config);
+    }
+}
@@ -1,7 +1,9 @@
 package io.roastedroot.sqlite4j;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assumptions.assumeThat;
 
+import io.roastedroot.sqlite4j.core.WasmDBHelper;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -58,4 +60,17 @@ public class Utils {
                                 + " SQLITE_ENABLE_MATH_FUNCTIONS")
                 .isTrue();
     }
+
+    public static void assertWal(Connection conn) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("pragma journal_mode")) {
+            assertThat(rs.getString(1)).isEqualTo("wal");
+        }
+        assertThat(hasLockManager(conn)).isTrue();
+    }
+
+    // without it a connection locks the whole database file, even to read
+    public static boolean hasLockManager(Connection conn) throws SQLException {
+        return WasmDBHelper.usesJavaVfs(conn.unwrap(SQLiteConnection.class).getDatabase());
+    }
 }
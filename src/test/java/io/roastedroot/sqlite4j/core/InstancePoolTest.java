@@ -0,0 +1,402 @@
+package io.roastedroot.sqlite4j.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.roastedroot.sqlite4j.Collation;
+import io.roastedroot.sqlite4j.Function;
+import io.roastedroot.sqlite4j.ProgressHandler;
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import io.roastedroot.sqlite4j.SQLiteConnection;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class InstancePoolTest {
+    @TempDir File tempDir;
+
+    @BeforeEach
+    @AfterEach
+    public void clear() {
+        InstancePool.clear();
+    }
+
+    private static SQLiteConnection open(String url, SQLiteConfig config) throws SQLException {
+        return (SQLiteConnection) config.createConnection(url);
+    }
+
+    private static InstancePool.Slot slot(Connection conn) throws SQLException {
+        return ((WasmDB) conn.unwrap(SQLiteConnection.class).getDatabase()).instanceSlot();
+    }
+
+    @Test
+    public void reusesTheInstance() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setInstancePoolSize(2);
+        InstancePool.Slot first;
+        try (Connection conn = open("jdbc:sqlite::memory:", config);
+                Statement stat = conn.createStatement()) {
+            first = slot(conn);
+            stat.executeUpdate("create table t (v text)");
+            stat.executeUpdate("insert into t values ('one')");
+        }
+        assertThat(InstancePool.size()).isEqualTo(1);
+
+        try (Connection conn = open("jdbc:sqlite::memory:", config);
+                Statement stat = conn.createStatement()) {
+            assertThat(slot(conn)).isSameAs(first);
+            assertThat(InstancePool.size()).isEqualTo(0);
+            // a new database, nothing is left by the previous connection
+            assertThatThrownBy(() -> stat.executeQuery("select * from t"))
+                    .isInstanceOf(SQLException.class);
+        }
+        assertThat(first.baseline).isEqualTo(first.lib.memoryUsed());
+    }
+
+    @Test
+    public void reusesTheInstanceForFiles() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        String url = "jdbc:sqlite:" + new File(tempDir, "pool.db").getAbsolutePath();
+        InstancePool.Slot first;
+        try (Connection conn = open(url, config);
+                Statement stat = conn.createStatement()) {
+            first = slot(conn);
+            stat.executeUpdate("create table t (v text)");
+            stat.executeUpdate("insert into t values ('one')");
+        }
+        try (Connection conn = open(url, config);
+                Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select v from t")) {
+            assertThat(slot(conn)).isSameAs(first);
+            assertThat(rs.getString(1)).isEqualTo("one");
+        }
+    }
+
+    @Test
+    public void disabled() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setInstancePoolSize(0);
+        InstancePool.Slot first;
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            first = slot(conn);
+        }
+        assertThat(InstancePool.size()).isEqualTo(0);
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            assertThat(slot(conn)).isNotSameAs(first);
+        }
+    }
+
+    @Test
+    public void bounded() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setInstancePoolSize(2);
+        Connection[] conns = new Connection[3];
+        for (int i = 0; i < conns.length; i++) {
+            conns[i] = open("jdbc:sqlite::memory:", config);
+        }
+        for (Connection conn : conns) {
+            conn.close();
+        }
+        assertThat(InstancePool.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void leakingInstancesAreDropped() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        InstancePool.Slot first;
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            first = slot(conn);
+        }
+        assertThat(InstancePool.size()).isEqualTo(1);
+
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            assertThat(slot(conn)).isSameAs(first);
+            // never freed
+            first.instance.exports().function("sqlite3_malloc").apply(128);
+        }
+        assertThat(InstancePool.size()).isEqualTo(0);
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            assertThat(slot(conn)).isNotSameAs(first);
+        }
+    }
+
+    @Test
+    public void leakingFirstConnectionIsDropped() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        InstancePool.Slot first;
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            first = slot(conn);
+            // never freed, by the first connection of the instance
+            first.instance.exports().function("sqlite3_malloc").apply(128);
+        }
+        assertThat(InstancePool.size()).isEqualTo(0);
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            assertThat(slot(conn)).isNotSameAs(first);
+        }
+    }
+
+    @Test
+    public void stackIsRewound() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        InstancePool.Slot first;
+        long stackPointer;
+        try (SQLiteConnection conn = open("jdbc:sqlite::memory:", config);
+                Statement stat = conn.createStatement()) {
+            first = slot(conn);
+            stackPointer = first.instance.global(0).getValue();
+            Function.create(
+                    conn,
+                    "fail",
+                    new Function() {
+                        @Override
+                        public void xFunc() throws SQLException {
+                            throw new SQLException("failed");
+                        }
+                    });
+            for (int i = 0; i < 10; i++) {
+                assertThatThrownBy(() -> stat.executeQuery("select fail()"))
+                        .isInstanceOf(SQLException.class);
+            }
+        }
+        try (Connection conn = open("jdbc:sqlite::memory:", config)) {
+            assertThat(slot(conn)).isSameAs(first);
+            assertThat(first.instance.global(0).getValue()).isEqualTo(stackPointer);
+        }
+    }
+
+    @Test
+    public void differentMemoryModes() throws SQLException {
+        SQLiteConfig heap = new SQLiteConfig();
+        SQLiteConfig offHeap = new SQLiteConfig();
+        offHeap.setMemoryMode(SQLiteConfig.MemoryMode.OFF_HEAP);
+        InstancePool.Slot first;
+        try (Connection conn = open("jdbc:sqlite::memory:", heap)) {
+            first = slot(conn);
+        }
+        try (Connection conn = open("jdbc:sqlite::memory:", offHeap)) {
+            assertThat(slot(conn)).isNotSameAs(first);
+        }
+        try (Connection conn = open("jdbc:sqlite::memory:", heap)) {
+            assertThat(slot(conn)).isSameAs(first);
+        }
+    }
+
+    @Test
+    public void failedOpenReleasesTheInstance() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        String url = "jdbc:sqlite:" + new File(tempDir, "missing.db").getAbsolutePath();
+        assertThatThrownBy(() -> open(url, config)).isInstanceOf(SQLException.class);
+        assertThat(InstancePool.size()).isEqualTo(1);
+
+        config.setSharedInstanceSize(2);
+        assertThatThrownBy(() -> open(url, config)).isInstanceOf(SQLException.class);
+        assertThat(InstancePool.sharedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void sharedInstances() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedInstanceSize(2);
+        Connection first = open("jdbc:sqlite::memory:", config);
+        Connection second = open("jdbc:sqlite::memory:", config);
+        Connection third = open("jdbc:sqlite::memory:", config);
+        assertThat(slot(second)).isSameAs(slot(first));
+        assertThat(slot(third)).isNotSameAs(slot(first));
+        assertThat(InstancePool.sharedCount()).isEqualTo(2);
+
+        try (Statement stat = first.createStatement()) {
+            stat.executeUpdate("create table t (v text)");
+            stat.executeUpdate("insert into t values ('first')");
+        }
+        try (Statement stat = second.createStatement()) {
+            assertThatThrownBy(() -> stat.executeQuery("select * from t"))
+                    .isInstanceOf(SQLException.class);
+        }
+
+        first.close();
+        try (Statement stat = second.createStatement();
+                ResultSet rs = stat.executeQuery("select 1")) {
+            assertThat(rs.getInt(1)).isEqualTo(1);
+        }
+        second.close();
+        third.close();
+        assertThat(InstancePool.sharedCount()).isEqualTo(0);
+        assertThat(InstancePool.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void sharedInstanceCallbacks() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedInstanceSize(2);
+        try (SQLiteConnection first = open("jdbc:sqlite::memory:", config);
+                SQLiteConnection second = open("jdbc:sqlite::memory:", config)) {
+            assertThat(slot(second)).isSameAs(slot(first));
+            List<String> updates = new ArrayList<>();
+            first.addUpdateListener((type, database, table, rowId) -> updates.add("first"));
+            second.addUpdateListener((type, database, table, rowId) -> updates.add("second"));
+            Function.create(
+                    second,
+                    "twice",
+                    new Function() {
+                        @Override
+                        public void xFunc() throws SQLException {
+                            result(2 * value_int(0));
+                        }
+                    });
+            try (Statement stat = second.createStatement()) {
+                stat.executeUpdate("create table t (v integer)");
+                stat.executeUpdate("insert into t values (twice(21))");
+                try (ResultSet rs = stat.executeQuery("select v from t")) {
+                    assertThat(rs.getInt(1)).isEqualTo(42);
+                }
+            }
+            assertThat(updates).containsExactly("second");
+        }
+    }
+
+    // the progress handlers and collations of a connection are looked up in its registry
+    @Test
+    public void sharedInstanceProgressAndCollations() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedInstanceSize(2);
+        try (SQLiteConnection first = open("jdbc:sqlite::memory:", config);
+                SQLiteConnection second = open("jdbc:sqlite::memory:", config)) {
+            assertThat(slot(second)).isSameAs(slot(first));
+            List<String> progress = new ArrayList<>();
+            ProgressHandler.setHandler(first, 1, handler(progress, "first"));
+            ProgressHandler.setHandler(second, 1, handler(progress, "second"));
+            Collation.create(first, "c", collation(1));
+            Collation.create(second, "c", collation(-1));
+
+            assertThat(sorted(second)).containsExactly("b", "a");
+            assertThat(progress).isNotEmpty().containsOnly("second");
+            progress.clear();
+            assertThat(sorted(first)).containsExactly("a", "b");
+            assertThat(progress).isNotEmpty().containsOnly("first");
+        }
+    }
+
+    private static ProgressHandler handler(List<String> progress, String name) {
+        return new ProgressHandler() {
+            @Override
+            public int progress() {
+                progress.add(name);
+                return 0;
+            }
+        };
+    }
+
+    private static Collation collation(int sign) {
+        return new Collation() {
+            @Override
+            public int xCompare(String str1, String str2) {
+                return sign * str1.compareTo(str2);
+            }
+        };
+    }
+
+    private static List<String> sorted(Connection conn) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Statement stat = conn.createStatement();
+                ResultSet rs =
+                        stat.executeQuery(
+                                "select v from (select 'a' as v union all select 'b')"
+                                        + " order by v collate c")) {
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void concurrentSharedInstance() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedInstanceSize(4);
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                try (Connection conn = open("jdbc:sqlite::memory:", config);
+                                        Statement stat = conn.createStatement()) {
+                                    stat.executeUpdate("create table t (v integer)");
+                                    for (int j = 1; j <= 100; j++) {
+                                        stat.executeUpdate("insert into t values (" + j + ")");
+                                    }
+                                    try (ResultSet rs = stat.executeQuery("select sum(v) from t")) {
+                                        return rs.getLong(1);
+                                    }
+                                } catch (SQLException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            }));
+        }
+        for (CompletableFuture<Long> future : futures) {
+            assertThat(future.get()).isEqualTo(5050);
+        }
+        assertThat(InstancePool.sharedCount()).isEqualTo(0);
+    }
+
+    // the values bound by a connection and the rows it reads are not moved by the others
+    @Test
+    public void concurrentSharedInstanceBinds() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setSharedInstanceSize(4);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String prefix = "tenant-" + i + "-";
+            futures.add(
+                    CompletableFuture.runAsync(
+                            () -> {
+                                try (Connection conn = open("jdbc:sqlite::memory:", config);
+                                        Statement stat = conn.createStatement()) {
+                                    stat.executeUpdate("create table t (s text, b blob)");
+                                    try (PreparedStatement prep =
+                                            conn.prepareStatement("insert into t values (?, ?)")) {
+                                        for (int j = 0; j < 200; j++) {
+                                            prep.setString(1, prefix + j);
+                                            prep.setBytes(
+                                                    2,
+                                                    (prefix + j).getBytes(StandardCharsets.UTF_8));
+                                            prep.executeUpdate();
+                                        }
+                                    }
+                                    try (ResultSet rs = stat.executeQuery("select s, b from t")) {
+                                        int j = 0;
+                                        while (rs.next()) {
+                                            assertThat(rs.getString(1)).isEqualTo(prefix + j);
+                                            assertThat(rs.getBytes(2))
+                                                    .isEqualTo(
+                                                            (prefix + j)
+                                                                    .getBytes(
+                                                                            StandardCharsets
+                                                                                    .UTF_8));
+                                            j++;
+                                        }
+                                        assertThat(j).isEqualTo(200);
+                                    }
+                                    assertThat(slot(conn).lock.isHeldByCurrentThread()).isFalse();
+                                } catch (SQLException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            }));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get();
+        }
+        assertThat(InstancePool.sharedCount()).isEqualTo(0);
+    }
+}
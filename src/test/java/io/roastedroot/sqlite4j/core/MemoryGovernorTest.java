@@ -0,0 +1,139 @@
+package io.roastedroot.sqlite4j.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.dylibso.chicory.runtime.Memory;
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import io.roastedroot.sqlite4j.SQLiteConnection;
+import io.roastedroot.sqlite4j.SQLiteErrorCode;
+import io.roastedroot.sqlite4j.SQLiteException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MemoryGovernorTest {
+
+    @BeforeEach
+    @AfterEach
+    public void clear() {
+        InstancePool.clear();
+        MemoryGovernor.reset();
+    }
+
+    private static SQLiteConnection open(SQLiteConfig config) throws SQLException {
+        return (SQLiteConnection) config.createConnection("jdbc:sqlite::memory:");
+    }
+
+    private static InstancePool.Slot slot(Connection conn) throws SQLException {
+        return ((WasmDB) conn.unwrap(SQLiteConnection.class).getDatabase()).instanceSlot();
+    }
+
+    // the linear memory of one more connection
+    private static long instanceBytes() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setInstancePoolSize(0);
+        long before = MemoryGovernor.getLinearMemoryBytes();
+        try (Connection conn = open(config)) {
+            return MemoryGovernor.getLinearMemoryBytes() - before;
+        }
+    }
+
+    @Test
+    public void tracksInstances() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setInstancePoolSize(0);
+        int instances = MemoryGovernor.getInstanceCount();
+        long bytes = MemoryGovernor.getLinearMemoryBytes();
+        try (Connection conn = open(config);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (v text)");
+            assertThat(MemoryGovernor.getInstanceCount()).isEqualTo(instances + 1);
+            assertThat(MemoryGovernor.getLinearMemoryBytes()).isGreaterThan(bytes);
+            // the declared pages that were never written are not counted
+            assertThat(MemoryGovernor.getLinearMemoryBytes() - bytes)
+                    .isLessThan((long) slot(conn).instance.memory().pages() * Memory.PAGE_SIZE);
+            assertThat(slot(conn).memoryUsed).isPositive();
+        }
+        assertThat(MemoryGovernor.getInstanceCount()).isEqualTo(instances);
+        assertThat(MemoryGovernor.getLinearMemoryBytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    public void refusesBeyondTheBudget() throws SQLException {
+        long instance = instanceBytes();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setMemoryBudget(MemoryGovernor.getLinearMemoryBytes() + instance + instance / 2);
+        long refused = MemoryGovernor.getRefusedCount();
+        try (Connection first = open(config)) {
+            assertThatThrownBy(() -> open(config))
+                    .isInstanceOfSatisfying(
+                            SQLiteException.class,
+                            e ->
+                                    assertThat(e.getResultCode())
+                                            .isEqualTo(SQLiteErrorCode.SQLITE_NOMEM));
+            assertThat(MemoryGovernor.getRefusedCount()).isEqualTo(refused + 1);
+            assertThat(MemoryGovernor.isUnderPressure()).isTrue();
+
+            // applied on the next use
+            try (Statement stat = first.createStatement();
+                    ResultSet rs = stat.executeQuery("select 1")) {
+                assertThat(rs.getInt(1)).isEqualTo(1);
+            }
+            assertThat(slot(first).capped).isTrue();
+        }
+    }
+
+    @Test
+    public void waitsForMemory() throws Exception {
+        long instance = instanceBytes();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setInstancePoolSize(0);
+        config.setMemoryBudget(MemoryGovernor.getLinearMemoryBytes() + instance + instance / 2);
+        config.setMemoryBudgetWait(10_000);
+        long waits = MemoryGovernor.getWaitCount();
+        Connection first = open(config);
+        CompletableFuture<Connection> second =
+                CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                return open(config);
+                            } catch (SQLException e) {
+                                throw new RuntimeException(e);
+                            }
+                        });
+        while (MemoryGovernor.getWaitCount() == waits) {
+            Thread.sleep(10);
+        }
+        assertThat(second).isNotDone();
+        first.close();
+        try (Connection conn = second.get();
+                Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select 1")) {
+            assertThat(rs.getInt(1)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void dropsThePooledInstances() throws SQLException {
+        long instance = instanceBytes();
+        SQLiteConfig config = new SQLiteConfig();
+        long budget = MemoryGovernor.getLinearMemoryBytes() + instance + instance / 2;
+        try (Connection conn = open(config)) {
+            // pooled when closed
+        }
+        assertThat(InstancePool.size()).isEqualTo(1);
+
+        SQLiteConfig otherMemory = new SQLiteConfig();
+        otherMemory.setMemoryMode(SQLiteConfig.MemoryMode.OFF_HEAP);
+        otherMemory.setMemoryBudget(budget);
+        try (Connection conn = open(otherMemory)) {
+            assertThat(InstancePool.size()).isEqualTo(0);
+        }
+    }
+}
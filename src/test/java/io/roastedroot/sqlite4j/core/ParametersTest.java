@@ -0,0 +1,72 @@
+package io.roastedroot.sqlite4j.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.SQLException;
+import org.junit.jupiter.api.Test;
+
+public class ParametersTest {
+
+    @Test
+    public void typedValues() throws SQLException {
+        Parameters params = new Parameters(7);
+        params.setInt(0, 42);
+        params.setLong(1, Long.MAX_VALUE);
+        params.setFloat(2, 0.1f);
+        params.setDouble(3, 0.1);
+        params.setText(4, "text");
+        params.setBlob(5, new byte[] {1, 2});
+
+        assertThat(params.get(0)).isEqualTo(42);
+        assertThat(params.get(1)).isEqualTo(Long.MAX_VALUE);
+        assertThat(params.get(2)).isEqualTo(0.1f);
+        assertThat(params.get(3)).isEqualTo(0.1);
+        assertThat(params.get(4)).isEqualTo("text");
+        assertThat(params.get(5)).isEqualTo(new byte[] {1, 2});
+        assertThat(params.get(6)).isNull();
+
+        assertThat(params.sqliteType(0)).isEqualTo(Codes.SQLITE_INTEGER);
+        assertThat(params.sqliteType(1)).isEqualTo(Codes.SQLITE_INTEGER);
+        assertThat(params.sqliteType(2)).isEqualTo(Codes.SQLITE_FLOAT);
+        assertThat(params.doubleValue(2)).isEqualTo((double) 0.1f);
+        assertThat(params.sqliteType(4)).isEqualTo(Codes.SQLITE_TEXT);
+        assertThat(params.sqliteType(5)).isEqualTo(Codes.SQLITE_BLOB);
+        assertThat(params.sqliteType(6)).isEqualTo(Codes.SQLITE_NULL);
+
+        // replacing a text drops the reference to it
+        params.setLong(4, 7);
+        assertThat(params.get(4)).isEqualTo(7L);
+        params.setText(5, null);
+        assertThat(params.sqliteType(5)).isEqualTo(Codes.SQLITE_NULL);
+    }
+
+    @Test
+    public void boxedValues() throws SQLException {
+        Parameters params = Parameters.of(new Object[] {(short) 3, 4, 5L, 1.5f, 2.5, "s", null});
+        assertThat(params.toString()).isEqualTo("[3, 4, 5, 1.5, 2.5, s, null]");
+        assertThat(params.get(0)).isEqualTo(3);
+        assertThatThrownBy(() -> params.set(0, new Object()))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("unexpected param type");
+    }
+
+    @Test
+    public void rowsOfABatch() {
+        Parameters params = new Parameters(2);
+        params.setInt(0, 1);
+        params.setText(1, "one");
+        for (int row = 1; row < 100; row++) {
+            params.ensureCapacity((row + 1) * 2);
+            params.copy((row - 1) * 2, row * 2, 2);
+            params.setInt(row * 2, row + 1);
+        }
+        assertThat(params.capacity()).isGreaterThanOrEqualTo(200);
+        assertThat(params.get(198)).isEqualTo(100);
+        assertThat(params.get(199)).isEqualTo("one");
+
+        params.clear(0, params.capacity());
+        assertThat(params.get(0)).isNull();
+        assertThat(params.get(199)).isNull();
+    }
+}
@@ -44,4 +44,15 @@ public class WasmDBHelper {
     public static long getUpdateListener(DB nativeDB) {
         return ((WasmDB) nativeDB).getUpdateListener();
     }
+
+    /**
+     * Whether the connection goes through the sqlite4j VFS, sharing the locks of the database files
+     * with the other connections
+     *
+     * @param nativeDB the native db object
+     * @return true when the files are opened through the sqlite4j VFS
+     */
+    public static boolean usesJavaVfs(DB nativeDB) {
+        return ((WasmDB) nativeDB).usesJavaVfs();
+    }
 }
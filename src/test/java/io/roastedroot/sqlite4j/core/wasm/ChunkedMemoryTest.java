@@ -0,0 +1,100 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.runtime.WasmRuntimeException;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class ChunkedMemoryTest {
+    // one page per chunk, the accesses at the end of a page straddle two chunks
+    private static final int CHUNK = Memory.PAGE_SIZE;
+
+    static Stream<Memory> memories() {
+        MemoryLimits limits = new MemoryLimits(2, 16);
+        return Stream.of(new ChunkedMemory(limits, 1), new OffHeapMemory(limits, 1));
+    }
+
+    @ParameterizedTest
+    @MethodSource("memories")
+    public void untouchedMemoryReadsAsZeroes(Memory memory) {
+        assertThat(memory.readLong(0)).isEqualTo(0L);
+        assertThat(memory.readInt(CHUNK - 2)).isEqualTo(0);
+        assertThat(memory.readBytes(CHUNK - 4, 8)).containsOnly(0);
+    }
+
+    @ParameterizedTest
+    @MethodSource("memories")
+    public void accessesAcrossChunks(Memory memory) {
+        memory.writeLong(CHUNK - 3, 0x0102030405060708L);
+        assertThat(memory.readLong(CHUNK - 3)).isEqualTo(0x0102030405060708L);
+        assertThat(memory.read(CHUNK - 3)).isEqualTo((byte) 0x08);
+        assertThat(memory.read(CHUNK + 4)).isEqualTo((byte) 0x01);
+
+        memory.writeI32(CHUNK - 1, -2);
+        assertThat(memory.readInt(CHUNK - 1)).isEqualTo(-2);
+        memory.writeShort(CHUNK - 1, (short) 0x1234);
+        assertThat(memory.readShort(CHUNK - 1)).isEqualTo((short) 0x1234);
+
+        byte[] data = new byte[CHUNK + 100];
+        Arrays.fill(data, (byte) 7);
+        memory.write(CHUNK / 2, data);
+        assertThat(memory.readBytes(CHUNK / 2, data.length)).isEqualTo(data);
+    }
+
+    @ParameterizedTest
+    @MethodSource("memories")
+    public void growKeepsTheData(Memory memory) {
+        memory.writeI32(CHUNK + 8, 42);
+        assertThat(memory.grow(10)).isEqualTo(2);
+        assertThat(memory.pages()).isEqualTo(12);
+        assertThat(memory.readInt(CHUNK + 8)).isEqualTo(42);
+        assertThat(memory.grow(5)).isEqualTo(-1);
+        assertThatThrownBy(() -> memory.readInt(12 * CHUNK - 2))
+                .isInstanceOf(WasmRuntimeException.class);
+    }
+
+    @ParameterizedTest
+    @MethodSource("memories")
+    public void fillAndCopy(Memory memory) {
+        memory.fill((byte) 3, CHUNK - 10, CHUNK + 10);
+        assertThat(memory.readBytes(CHUNK - 10, 20)).containsOnly(3);
+        assertThat(memory.read(CHUNK + 10)).isEqualTo((byte) 0);
+
+        memory.copy(10, CHUNK - 10, 20);
+        assertThat(memory.readBytes(10, 20)).containsOnly(3);
+
+        memory.fill((byte) 0, 0, 2 * CHUNK);
+        assertThat(memory.readBytes(0, 2 * CHUNK)).containsOnly(0);
+    }
+
+    // the host reads and writes through the same chunks from different threads
+    @ParameterizedTest
+    @MethodSource("memories")
+    public void concurrentBulkAccesses(Memory memory) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            byte value = (byte) (t + 1);
+            int addr = t * 256;
+            futures.add(
+                    CompletableFuture.runAsync(
+                            () -> {
+                                byte[] data = new byte[256];
+                                Arrays.fill(data, value);
+                                for (int i = 0; i < 10_000; i++) {
+                                    memory.write(addr, data);
+                                    assertThat(memory.readBytes(addr, data.length)).isEqualTo(data);
+                                }
+                            }));
+        }
+        futures.forEach(CompletableFuture::join);
+    }
+}
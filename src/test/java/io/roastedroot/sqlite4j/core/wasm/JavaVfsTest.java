@@ -0,0 +1,268 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.dylibso.chicory.runtime.Memory;
+import com.dylibso.chicory.wasm.types.MemoryLimits;
+import com.google.common.jimfs.Configuration;
+import com.google.common.jimfs.Jimfs;
+import io.roastedroot.sqlite4j.SQLiteConfig;
+import io.roastedroot.sqlite4j.SQLiteConnection;
+import io.roastedroot.sqlite4j.core.WasmDBHelper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JavaVfsTest {
+    private static final int SQLITE_OPEN_READONLY = 0x1;
+    private static final int SQLITE_OPEN_READWRITE = 0x2;
+    private static final int SQLITE_OPEN_CREATE = 0x4;
+    private static final int SQLITE_OPEN_DELETEONCLOSE = 0x8;
+    private static final int SQLITE_IOERR_SHORT_READ = 522;
+    private static final int SQLITE_IOERR_DELETE_NOENT = 5898;
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCK_NONE = 0;
+    private static final int SQLITE_LOCK_SHARED = 1;
+    private static final int SQLITE_LOCK_RESERVED = 2;
+    private static final int SQLITE_LOCK_EXCLUSIVE = 4;
+    private static final int SQLITE_SHM_UNLOCK = 1;
+    private static final int SQLITE_SHM_LOCK = 2;
+    private static final int SQLITE_SHM_SHARED = 4;
+    private static final int SQLITE_SHM_EXCLUSIVE = 8;
+    private static final int REGION_SIZE = 32 * 1024;
+
+    private static final int NAME_PTR = 16;
+    private static final int BUF_PTR = 4096;
+
+    private FileSystem fs;
+    private Memory memory;
+    private JavaVfs vfs;
+
+    @BeforeEach
+    public void setup() {
+        fs = Jimfs.newFileSystem(Configuration.unix());
+        memory = new ChunkedMemory(new MemoryLimits(4, 4));
+        vfs = newVfs();
+    }
+
+    private JavaVfs newVfs() {
+        return new JavaVfs(
+                new JavaVfs.Backend() {
+                    @Override
+                    public Path resolve(String name) {
+                        return fs.getPath(name);
+                    }
+
+                    @Override
+                    public Path temporary(String name) {
+                        return fs.getPath("/", name);
+                    }
+                });
+    }
+
+    private int name(String name) {
+        memory.writeCString(NAME_PTR, name);
+        return NAME_PTR;
+    }
+
+    @Test
+    public void readWrite() throws Exception {
+        int file = vfs.open(memory, name("/test.db"), SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE);
+        assertThat(file).isGreaterThanOrEqualTo(0);
+        assertThat(vfs.fileSize(file)).isEqualTo(0);
+
+        // larger than the transfer buffer
+        byte[] page = new byte[100_000];
+        new Random(1).nextBytes(page);
+        memory.write(BUF_PTR, page);
+        assertThat(vfs.write(memory, file, BUF_PTR, page.length, 4096)).isEqualTo(0);
+        assertThat(vfs.fileSize(file)).isEqualTo(4096 + page.length);
+        assertThat(vfs.sync(file, 0)).isEqualTo(0);
+
+        memory.fill((byte) 0, BUF_PTR, BUF_PTR + page.length);
+        assertThat(vfs.read(memory, file, BUF_PTR, page.length, 4096)).isEqualTo(0);
+        assertThat(memory.readBytes(BUF_PTR, page.length)).isEqualTo(page);
+
+        // reading past the end zeroes the missing bytes
+        memory.fill((byte) 1, BUF_PTR, BUF_PTR + 200);
+        assertThat(vfs.read(memory, file, BUF_PTR, 200, 4096 + page.length - 100))
+                .isEqualTo(SQLITE_IOERR_SHORT_READ);
+        byte[] tail = memory.readBytes(BUF_PTR, 200);
+        assertThat(Arrays.copyOf(tail, 100))
+                .isEqualTo(Arrays.copyOfRange(page, page.length - 100, page.length));
+        assertThat(Arrays.copyOfRange(tail, 100, 200)).isEqualTo(new byte[100]);
+
+        assertThat(vfs.truncate(file, 4096)).isEqualTo(0);
+        assertThat(vfs.fileSize(file)).isEqualTo(4096);
+        assertThat(vfs.close(file)).isEqualTo(0);
+        assertThat(Files.size(fs.getPath("/test.db"))).isEqualTo(4096);
+    }
+
+    @Test
+    public void openMissingFile() {
+        assertThat(vfs.open(memory, name("/missing.db"), SQLITE_OPEN_READONLY)).isNegative();
+        assertThat(vfs.access(memory, name("/missing.db"), 0)).isEqualTo(0);
+        assertThat(vfs.delete(memory, name("/missing.db"))).isEqualTo(SQLITE_IOERR_DELETE_NOENT);
+    }
+
+    @Test
+    public void handlesAreReused() {
+        int[] files = new int[20];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = vfs.open(memory, name("/f" + i), SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE);
+            assertThat(files[i]).isEqualTo(i);
+        }
+        vfs.close(files[3]);
+        assertThat(vfs.open(memory, name("/again"), SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE))
+                .isEqualTo(3);
+        assertThat(vfs.access(memory, name("/f7"), 0)).isEqualTo(1);
+        assertThat(vfs.delete(memory, name("/f19"))).isEqualTo(0);
+        assertThat(vfs.access(memory, name("/f19"), 0)).isEqualTo(0);
+    }
+
+    private long temporaryFiles() throws IOException {
+        try (var files = Files.list(fs.getPath("/"))) {
+            return files.filter(p -> p.getFileName().toString().startsWith("sqlite4j-")).count();
+        }
+    }
+
+    @Test
+    public void temporaryFilesAreDeletedOnClose() throws Exception {
+        int file =
+                vfs.open(
+                        memory,
+                        0,
+                        SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE | SQLITE_OPEN_DELETEONCLOSE);
+        assertThat(file).isGreaterThanOrEqualTo(0);
+        memory.write(BUF_PTR, new byte[] {1, 2, 3});
+        assertThat(vfs.write(memory, file, BUF_PTR, 3, 0)).isEqualTo(0);
+        assertThat(temporaryFiles()).isEqualTo(1);
+        vfs.close(file);
+        assertThat(temporaryFiles()).isEqualTo(0);
+    }
+
+    @Test
+    public void javaVfsConnection(@TempDir File dir) throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setVfsMode(SQLiteConfig.VfsMode.JAVA);
+        assertThat(config.getVfsMode()).isEqualTo(SQLiteConfig.VfsMode.JAVA);
+        try (Connection conn =
+                        DriverManager.getConnection(
+                                "jdbc:sqlite:" + new File(dir, "vfs.db").getAbsolutePath(),
+                                config.toProperties());
+                Statement stat = conn.createStatement()) {
+            assertThat(WasmDBHelper.usesJavaVfs(((SQLiteConnection) conn).getDatabase())).isTrue();
+            stat.executeUpdate("create table t (v)");
+            stat.executeUpdate("insert into t values (1), (2)");
+            try (ResultSet rs = stat.executeQuery("select sum(v) from t")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getInt(1)).isEqualTo(3);
+            }
+        }
+    }
+
+    @Test
+    public void walIndexIsSharedThroughTheLocks() {
+        // two connections, each with its own instance memory
+        JavaVfs otherVfs = newVfs();
+        Memory otherMemory = new ChunkedMemory(new MemoryLimits(4, 4));
+        int flags = SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE;
+        int file = vfs.open(memory, name("/wal.db"), flags);
+        otherMemory.writeCString(NAME_PTR, "/wal.db");
+        int other = otherVfs.open(otherMemory, NAME_PTR, flags);
+
+        assertThat(vfs.shmMap(memory, file, 0, REGION_SIZE, false, BUF_PTR)).isNegative();
+        assertThat(vfs.shmMap(memory, file, 0, REGION_SIZE, true, BUF_PTR)).isEqualTo(0);
+        assertThat(otherVfs.shmMap(otherMemory, other, 0, REGION_SIZE, false, BUF_PTR))
+                .isEqualTo(0);
+
+        // a change made under an exclusive lock is published when it's released
+        assertThat(vfs.shmLock(memory, file, 0, 1, SQLITE_SHM_LOCK | SQLITE_SHM_EXCLUSIVE))
+                .isEqualTo(0);
+        assertThat(otherVfs.shmLock(otherMemory, other, 0, 1, SQLITE_SHM_LOCK | SQLITE_SHM_SHARED))
+                .isEqualTo(SQLITE_BUSY);
+        memory.write(BUF_PTR + 100, new byte[] {1, 2, 3});
+        assertThat(vfs.shmLock(memory, file, 0, 1, SQLITE_SHM_UNLOCK | SQLITE_SHM_EXCLUSIVE))
+                .isEqualTo(0);
+        assertThat(otherMemory.readBytes(BUF_PTR + 100, 3)).isEqualTo(new byte[3]);
+        assertThat(otherVfs.shmLock(otherMemory, other, 0, 1, SQLITE_SHM_LOCK | SQLITE_SHM_SHARED))
+                .isEqualTo(0);
+        assertThat(otherMemory.readBytes(BUF_PTR + 100, 3)).isEqualTo(new byte[] {1, 2, 3});
+
+        // readers block the exclusive lock of the slot only
+        assertThat(vfs.shmLock(memory, file, 0, 1, SQLITE_SHM_LOCK | SQLITE_SHM_EXCLUSIVE))
+                .isEqualTo(SQLITE_BUSY);
+        assertThat(vfs.shmLock(memory, file, 1, 2, SQLITE_SHM_LOCK | SQLITE_SHM_EXCLUSIVE))
+                .isEqualTo(0);
+
+        // changes to different bytes are merged, a barrier publishes and picks up changes
+        otherMemory.write(BUF_PTR + 200, new byte[] {4});
+        memory.write(BUF_PTR + 300, new byte[] {5});
+        otherVfs.shmBarrier(otherMemory, other);
+        vfs.shmBarrier(memory, file);
+        otherVfs.shmBarrier(otherMemory, other);
+        assertThat(memory.readBytes(BUF_PTR + 200, 1)).isEqualTo(new byte[] {4});
+        assertThat(otherMemory.readBytes(BUF_PTR + 300, 1)).isEqualTo(new byte[] {5});
+
+        // the WAL is not checkpointed and deleted while another connection has it open
+        assertThat(otherVfs.lock(other, SQLITE_LOCK_SHARED)).isEqualTo(0);
+        assertThat(vfs.lock(file, SQLITE_LOCK_SHARED)).isEqualTo(0);
+        assertThat(vfs.lock(file, SQLITE_LOCK_EXCLUSIVE)).isEqualTo(SQLITE_BUSY);
+        assertThat(otherVfs.close(other)).isEqualTo(0);
+        assertThat(vfs.lock(file, SQLITE_LOCK_EXCLUSIVE)).isEqualTo(0);
+        assertThat(vfs.shmUnmap(file)).isEqualTo(0);
+        assertThat(vfs.close(file)).isEqualTo(0);
+    }
+
+    @Test
+    public void locksAreSharedByTheConnections() throws Exception {
+        Files.createDirectory(fs.getPath("/dir"));
+        int flags = SQLITE_OPEN_READWRITE | SQLITE_OPEN_CREATE;
+        JavaVfs[] vfss = {vfs, newVfs(), newVfs()};
+        int[] files = new int[3];
+        for (int i = 0; i < files.length; i++) {
+            // the same file, through different paths
+            files[i] = vfss[i].open(memory, name(i == 1 ? "/dir/../locks.db" : "/locks.db"), flags);
+        }
+
+        assertThat(vfss[0].lock(files[0], SQLITE_LOCK_SHARED)).isEqualTo(0);
+        assertThat(vfss[1].lock(files[1], SQLITE_LOCK_SHARED)).isEqualTo(0);
+        assertThat(vfss[0].checkReservedLock(files[0])).isEqualTo(0);
+
+        // a single writer, the readers go on
+        assertThat(vfss[0].lock(files[0], SQLITE_LOCK_RESERVED)).isEqualTo(0);
+        assertThat(vfss[1].lock(files[1], SQLITE_LOCK_RESERVED)).isEqualTo(SQLITE_BUSY);
+        assertThat(vfss[1].checkReservedLock(files[1])).isEqualTo(1);
+        assertThat(vfss[2].lock(files[2], SQLITE_LOCK_SHARED)).isEqualTo(0);
+        assertThat(vfss[2].unlock(files[2], SQLITE_LOCK_NONE)).isEqualTo(0);
+
+        // the writer waits for the readers in PENDING, new readers are kept out
+        assertThat(vfss[0].lock(files[0], SQLITE_LOCK_EXCLUSIVE)).isEqualTo(SQLITE_BUSY);
+        assertThat(vfss[2].lock(files[2], SQLITE_LOCK_SHARED)).isEqualTo(SQLITE_BUSY);
+        assertThat(vfss[1].unlock(files[1], SQLITE_LOCK_NONE)).isEqualTo(0);
+        assertThat(vfss[0].lock(files[0], SQLITE_LOCK_EXCLUSIVE)).isEqualTo(0);
+        assertThat(vfss[1].lock(files[1], SQLITE_LOCK_SHARED)).isEqualTo(SQLITE_BUSY);
+
+        assertThat(vfss[0].unlock(files[0], SQLITE_LOCK_SHARED)).isEqualTo(0);
+        assertThat(vfss[1].checkReservedLock(files[1])).isEqualTo(0);
+        assertThat(vfss[1].lock(files[1], SQLITE_LOCK_SHARED)).isEqualTo(0);
+
+        // closing a file releases its locks
+        assertThat(vfss[1].lock(files[1], SQLITE_LOCK_RESERVED)).isEqualTo(0);
+        assertThat(vfss[1].close(files[1])).isEqualTo(0);
+        assertThat(vfss[0].lock(files[0], SQLITE_LOCK_EXCLUSIVE)).isEqualTo(0);
+        vfss[0].close(files[0]);
+        vfss[2].close(files[2]);
+    }
+}
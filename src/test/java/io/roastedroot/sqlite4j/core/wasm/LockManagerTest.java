@@ -0,0 +1,95 @@
+package io.roastedroot.sqlite4j.core.wasm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LockManagerTest {
+    private static final int SQLITE_OK = 0;
+    private static final int SQLITE_BUSY = 5;
+
+    private LockManager.Lock first;
+    private LockManager.Lock second;
+
+    @BeforeEach
+    public void open() {
+        Path path = Path.of("/lock-manager-test.db");
+        first = LockManager.open(path);
+        second = LockManager.open(path);
+    }
+
+    @AfterEach
+    public void close() {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void readersShareTheFile() {
+        assertThat(first.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(second.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(first.level()).isEqualTo(LockManager.SHARED);
+        assertThat(second.level()).isEqualTo(LockManager.SHARED);
+        assertThat(first.reserved()).isFalse();
+    }
+
+    @Test
+    public void reservedLetsReadersIn() {
+        assertThat(first.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(first.lock(LockManager.RESERVED)).isEqualTo(SQLITE_OK);
+        assertThat(second.reserved()).isTrue();
+
+        assertThat(second.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        // a single writer
+        assertThat(second.lock(LockManager.RESERVED)).isEqualTo(SQLITE_BUSY);
+        assertThat(second.level()).isEqualTo(LockManager.SHARED);
+    }
+
+    @Test
+    public void exclusiveWaitsForTheReaders() {
+        assertThat(first.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(second.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+
+        assertThat(first.lock(LockManager.EXCLUSIVE)).isEqualTo(SQLITE_BUSY);
+        assertThat(first.level()).isEqualTo(LockManager.PENDING);
+
+        assertThat(second.unlock(LockManager.NONE)).isEqualTo(SQLITE_OK);
+        // no new reader while a writer is pending
+        assertThat(second.lock(LockManager.SHARED)).isEqualTo(SQLITE_BUSY);
+
+        assertThat(first.lock(LockManager.EXCLUSIVE)).isEqualTo(SQLITE_OK);
+        assertThat(first.level()).isEqualTo(LockManager.EXCLUSIVE);
+    }
+
+    @Test
+    public void unlockReleasesTheWriter() {
+        assertThat(first.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(first.lock(LockManager.EXCLUSIVE)).isEqualTo(SQLITE_OK);
+        assertThat(second.lock(LockManager.SHARED)).isEqualTo(SQLITE_BUSY);
+
+        assertThat(first.unlock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(first.level()).isEqualTo(LockManager.SHARED);
+        assertThat(second.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+
+        // the remaining reader keeps the other one from EXCLUSIVE
+        assertThat(second.lock(LockManager.EXCLUSIVE)).isEqualTo(SQLITE_BUSY);
+        assertThat(first.unlock(LockManager.NONE)).isEqualTo(SQLITE_OK);
+        assertThat(second.lock(LockManager.EXCLUSIVE)).isEqualTo(SQLITE_OK);
+    }
+
+    @Test
+    public void closeReleasesTheLocks() {
+        assertThat(first.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(first.lock(LockManager.RESERVED)).isEqualTo(SQLITE_OK);
+        first.close();
+        // closing twice is harmless
+        first.close();
+
+        assertThat(second.reserved()).isFalse();
+        assertThat(second.lock(LockManager.SHARED)).isEqualTo(SQLITE_OK);
+        assertThat(second.lock(LockManager.EXCLUSIVE)).isEqualTo(SQLITE_OK);
+    }
+}
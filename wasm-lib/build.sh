@@ -85,7 +85,8 @@ cp ${SCRIPT_DIR}/sqlite3_helpers.c ${SCRIPT_DIR}/sqlite-amalgamation/
 		-DSQLITE_OMIT_SHARED_CACHE=1
 
 
-		# -DSQLITE_OMIT_WAL=0 \
+		# WAL: never define SQLITE_OMIT_WAL (any value omits it), the default unix VFS of the
+		# WASI build has no shared memory, the wal-index is provided by the sqlite4j VFS
 		# this shows more errors on varous tests -> is it useful to include?
 		# -DSQLITE_MEMDEBUG=1
 
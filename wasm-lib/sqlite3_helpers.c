@@ -1,5 +1,6 @@
 // Additional functions to be referenced/used by WASM
 
+#include <string.h>
 #include "sqlite3.h"
 
 #define __IMPORT(name) \
@@ -134,3 +135,432 @@ __attribute__((
 extern void* xRollbackPtr() {
     return &xRollback;
 }
+
+// Multi-row fetch: steps the statement up to maxRows times and packs the rows in buf,
+// the matching decoder is io.roastedroot.sqlite4j.core.FetchBuffer
+//   header:     int32 rows, int32 used bytes (after the header), int32 pending
+//   per column: uint8 type, followed by
+//     SQLITE_INTEGER, SQLITE_FLOAT: 8 bytes
+//     SQLITE_TEXT, SQLITE_BLOB:     int32 length, bytes
+//     SQLITE_NULL:                  nothing
+// A row that doesn't fit in the remaining space is not packed, the statement stays
+// positioned on it and pending is set.
+// Returns the result of the last sqlite3_step.
+#define SQLITE4J_FETCH_HEADER 12
+
+static int fetch_column(sqlite3_stmt *stmt, int col, unsigned char **pp, unsigned char *end) {
+    unsigned char *p = *pp;
+    int type = sqlite3_column_type(stmt, col);
+    if (p + 1 > end) {
+        return 0;
+    }
+    *p++ = (unsigned char) type;
+    switch (type) {
+        case SQLITE_INTEGER: {
+            sqlite3_int64 v = sqlite3_column_int64(stmt, col);
+            if (p + 8 > end) {
+                return 0;
+            }
+            memcpy(p, &v, 8);
+            p += 8;
+            break;
+        }
+        case SQLITE_FLOAT: {
+            double v = sqlite3_column_double(stmt, col);
+            if (p + 8 > end) {
+                return 0;
+            }
+            memcpy(p, &v, 8);
+            p += 8;
+            break;
+        }
+        case SQLITE_TEXT:
+        case SQLITE_BLOB: {
+            const void *v = (type == SQLITE_TEXT)
+                    ? (const void *) sqlite3_column_text(stmt, col)
+                    : sqlite3_column_blob(stmt, col);
+            int n = sqlite3_column_bytes(stmt, col);
+            if (p + 4 + n > end) {
+                return 0;
+            }
+            memcpy(p, &n, 4);
+            p += 4;
+            if (n > 0) {
+                memcpy(p, v, n);
+                p += n;
+            }
+            break;
+        }
+        default:
+            break;
+    }
+    *pp = p;
+    return 1;
+}
+
+extern int sqlite4j_fetch(sqlite3_stmt *stmt, int maxRows, unsigned char *buf, int size) {
+    int columns = sqlite3_column_count(stmt);
+    unsigned char *end = buf + size;
+    unsigned char *p = buf + SQLITE4J_FETCH_HEADER;
+    int rows = 0;
+    int pending = 0;
+    int rc = SQLITE_ROW;
+
+    while (rows < maxRows) {
+        rc = sqlite3_step(stmt);
+        if (rc != SQLITE_ROW) {
+            break;
+        }
+        unsigned char *row = p;
+        for (int i = 0; i < columns; i++) {
+            if (!fetch_column(stmt, i, &p, end)) {
+                pending = 1;
+                break;
+            }
+        }
+        if (pending) {
+            p = row;
+            break;
+        }
+        rows++;
+    }
+
+    int used = (int) (p - buf - SQLITE4J_FETCH_HEADER);
+    memcpy(buf, &rows, 4);
+    memcpy(buf + 4, &used, 4);
+    memcpy(buf + 8, &pending, 4);
+    return rc;
+}
+
+// Binds count parameters in a single call, the matching encoder is WasmDB.bind_all
+//   per parameter, 16 bytes: int32 type, int32 length, int64 value
+//     SQLITE_INTEGER:            value
+//     SQLITE_FLOAT:              the bits of the double in value
+//     SQLITE_TEXT, SQLITE_BLOB:  length bytes at offset value from buf
+//     SQLITE_NULL:               nothing
+// The text and blob bytes are copied by SQLite when copy is set, otherwise buf must stay
+// untouched until the parameters are bound again or the statement is finalized (SQLITE_STATIC).
+// Returns SQLITE_OK or the result of the first failing bind.
+#define SQLITE4J_BIND_SLOT 16
+
+static int bind_slots(sqlite3_stmt *stmt, const unsigned char *buf, const unsigned char *slots, int count, int copy) {
+    sqlite3_destructor_type destructor = copy ? SQLITE_TRANSIENT : SQLITE_STATIC;
+    for (int i = 0; i < count; i++) {
+        const unsigned char *slot = slots + i * SQLITE4J_BIND_SLOT;
+        int type;
+        int length;
+        sqlite3_int64 value;
+        memcpy(&type, slot, 4);
+        memcpy(&length, slot + 4, 4);
+        memcpy(&value, slot + 8, 8);
+
+        int rc;
+        switch (type) {
+            case SQLITE_INTEGER:
+                rc = sqlite3_bind_int64(stmt, i + 1, value);
+                break;
+            case SQLITE_FLOAT: {
+                double d;
+                memcpy(&d, &value, 8);
+                rc = sqlite3_bind_double(stmt, i + 1, d);
+                break;
+            }
+            case SQLITE_TEXT:
+                rc = sqlite3_bind_text(stmt, i + 1, (const char *) buf + value, length, destructor);
+                break;
+            case SQLITE_BLOB:
+                rc = sqlite3_bind_blob(stmt, i + 1, buf + value, length, destructor);
+                break;
+            default:
+                rc = sqlite3_bind_null(stmt, i + 1);
+                break;
+        }
+        if (rc != SQLITE_OK) {
+            return rc;
+        }
+    }
+    return SQLITE_OK;
+}
+
+extern int sqlite4j_bind_all(sqlite3_stmt *stmt, const unsigned char *buf, int count, int copy) {
+    return bind_slots(stmt, buf, buf, count, copy);
+}
+
+// Runs a batch of rows: reset, bind, step for each of them, the matching encoder is WasmDB.execute_batch
+//   buf holds rows * params slots, in the sqlite4j_bind_all format, offsets are from buf
+//   copy has the same meaning as in sqlite4j_bind_all
+//   out receives an int32 with the number of rows executed followed by the int64 changes of every row
+// Stops at the first failing row, its index is the number of rows executed, and returns:
+//   SQLITE_OK when all the rows have been executed
+//   the result of the failing bind (the statement is not reset)
+//   the result of the failing step, SQLITE_ROW if the statement returns results (the statement is reset)
+extern int sqlite4j_execute_batch(sqlite3_stmt *stmt, const unsigned char *buf, int rows, int params, unsigned char *out, int copy) {
+    sqlite3 *db = sqlite3_db_handle(stmt);
+    int done = 0;
+    int rc = SQLITE_OK;
+    for (; done < rows; done++) {
+        sqlite3_reset(stmt);
+        rc = bind_slots(stmt, buf, buf + done * params * SQLITE4J_BIND_SLOT, params, copy);
+        if (rc != SQLITE_OK) {
+            break;
+        }
+        rc = sqlite3_step(stmt);
+        if (rc != SQLITE_DONE) {
+            sqlite3_reset(stmt);
+            break;
+        }
+        rc = SQLITE_OK;
+        sqlite3_int64 changes = sqlite3_changes64(db);
+        memcpy(out + 4 + done * 8, &changes, 8);
+    }
+    memcpy(out, &done, 4);
+    return rc;
+}
+
+// Java VFS: the file I/O is implemented by host functions, see io.roastedroot.sqlite4j.core.wasm.JavaVfs
+// Files are identified by a handle returned by xVfsOpen.
+// Results are SQLite result codes, except:
+//   xVfsOpen returns the handle or a negative result code
+//   xVfsFileSize returns the size or -1
+//   xVfsAccess returns 1 when the access is granted, 0 otherwise
+// Randomness, sleep and time are delegated to the default VFS.
+extern int xVfsOpen(const char *zName, int flags) __IMPORT(xVfsOpen);
+extern int xVfsClose(int file) __IMPORT(xVfsClose);
+extern int xVfsRead(int file, void *buf, int amt, sqlite3_int64 offset) __IMPORT(xVfsRead);
+extern int xVfsWrite(int file, const void *buf, int amt, sqlite3_int64 offset) __IMPORT(xVfsWrite);
+extern int xVfsTruncate(int file, sqlite3_int64 size) __IMPORT(xVfsTruncate);
+extern int xVfsSync(int file, int flags) __IMPORT(xVfsSync);
+extern sqlite3_int64 xVfsFileSize(int file) __IMPORT(xVfsFileSize);
+extern int xVfsLock(int file, int level) __IMPORT(xVfsLock);
+extern int xVfsUnlock(int file, int level) __IMPORT(xVfsUnlock);
+extern int xVfsCheckReservedLock(int file) __IMPORT(xVfsCheckReservedLock);
+extern int xVfsDelete(const char *zName, int syncDir) __IMPORT(xVfsDelete);
+extern int xVfsAccess(const char *zName, int flags) __IMPORT(xVfsAccess);
+
+// WAL index (-shm): every instance maps the regions in its own memory, the host keeps the
+// content shared between the connections of a database in sync on locks and barriers.
+//   xVfsShmMap is passed the zeroed memory of the region, it returns SQLITE_OK once
+//   the region is mapped or -1 when the region doesn't exist and extend is not set
+extern int xVfsShmMap(int file, int region, int size, int extend, volatile void *local) __IMPORT(xVfsShmMap);
+extern int xVfsShmLock(int file, int offset, int n, int flags) __IMPORT(xVfsShmLock);
+extern void xVfsShmBarrier(int file) __IMPORT(xVfsShmBarrier);
+extern int xVfsShmUnmap(int file, int deleteFlag) __IMPORT(xVfsShmUnmap);
+
+typedef struct JavaFile {
+    sqlite3_file base;
+    int handle;
+    int nRegion;
+    volatile void **apRegion;
+} JavaFile;
+
+static int java_close(sqlite3_file *f) {
+    return xVfsClose(((JavaFile *) f)->handle);
+}
+
+static int java_read(sqlite3_file *f, void *buf, int amt, sqlite3_int64 offset) {
+    return xVfsRead(((JavaFile *) f)->handle, buf, amt, offset);
+}
+
+static int java_write(sqlite3_file *f, const void *buf, int amt, sqlite3_int64 offset) {
+    return xVfsWrite(((JavaFile *) f)->handle, buf, amt, offset);
+}
+
+static int java_truncate(sqlite3_file *f, sqlite3_int64 size) {
+    return xVfsTruncate(((JavaFile *) f)->handle, size);
+}
+
+static int java_sync(sqlite3_file *f, int flags) {
+    return xVfsSync(((JavaFile *) f)->handle, flags);
+}
+
+static int java_file_size(sqlite3_file *f, sqlite3_int64 *pSize) {
+    sqlite3_int64 size = xVfsFileSize(((JavaFile *) f)->handle);
+    if (size < 0) {
+        return SQLITE_IOERR_FSTAT;
+    }
+    *pSize = size;
+    return SQLITE_OK;
+}
+
+static int java_lock(sqlite3_file *f, int level) {
+    return xVfsLock(((JavaFile *) f)->handle, level);
+}
+
+static int java_unlock(sqlite3_file *f, int level) {
+    return xVfsUnlock(((JavaFile *) f)->handle, level);
+}
+
+static int java_check_reserved_lock(sqlite3_file *f, int *pResOut) {
+    *pResOut = xVfsCheckReservedLock(((JavaFile *) f)->handle);
+    return SQLITE_OK;
+}
+
+static int java_file_control(sqlite3_file *f, int op, void *pArg) {
+    return SQLITE_NOTFOUND;
+}
+
+static int java_sector_size(sqlite3_file *f) {
+    return 4096;
+}
+
+static int java_device_characteristics(sqlite3_file *f) {
+    return 0;
+}
+
+static int java_shm_map(sqlite3_file *f, int iRegion, int szRegion, int bExtend, volatile void **pp) {
+    JavaFile *file = (JavaFile *) f;
+    if (iRegion < file->nRegion && file->apRegion[iRegion]) {
+        *pp = file->apRegion[iRegion];
+        return SQLITE_OK;
+    }
+    if (iRegion >= file->nRegion) {
+        volatile void **apNew = sqlite3_realloc(file->apRegion, (iRegion + 1) * sizeof(void *));
+        if (!apNew) {
+            return SQLITE_NOMEM;
+        }
+        memset(apNew + file->nRegion, 0, (iRegion + 1 - file->nRegion) * sizeof(void *));
+        file->apRegion = apNew;
+        file->nRegion = iRegion + 1;
+    }
+    void *local = sqlite3_malloc(szRegion);
+    if (!local) {
+        return SQLITE_NOMEM;
+    }
+    memset(local, 0, szRegion);
+    int rc = xVfsShmMap(file->handle, iRegion, szRegion, bExtend, local);
+    if (rc != SQLITE_OK) {
+        sqlite3_free(local);
+        *pp = 0;
+        return rc < 0 ? SQLITE_OK : rc;
+    }
+    file->apRegion[iRegion] = local;
+    *pp = local;
+    return SQLITE_OK;
+}
+
+static int java_shm_lock(sqlite3_file *f, int offset, int n, int flags) {
+    return xVfsShmLock(((JavaFile *) f)->handle, offset, n, flags);
+}
+
+static void java_shm_barrier(sqlite3_file *f) {
+    xVfsShmBarrier(((JavaFile *) f)->handle);
+}
+
+static int java_shm_unmap(sqlite3_file *f, int deleteFlag) {
+    JavaFile *file = (JavaFile *) f;
+    int rc = xVfsShmUnmap(file->handle, deleteFlag);
+    for (int i = 0; i < file->nRegion; i++) {
+        sqlite3_free((void *) file->apRegion[i]);
+    }
+    sqlite3_free(file->apRegion);
+    file->apRegion = 0;
+    file->nRegion = 0;
+    return rc;
+}
+
+static const sqlite3_io_methods java_io_methods = {
+    2,
+    java_close,
+    java_read,
+    java_write,
+    java_truncate,
+    java_sync,
+    java_file_size,
+    java_lock,
+    java_unlock,
+    java_check_reserved_lock,
+    java_file_control,
+    java_sector_size,
+    java_device_characteristics,
+    java_shm_map,
+    java_shm_lock,
+    java_shm_barrier,
+    java_shm_unmap,
+};
+
+static int java_open(sqlite3_vfs *vfs, sqlite3_filename zName, sqlite3_file *f, int flags, int *pOutFlags) {
+    JavaFile *file = (JavaFile *) f;
+    // a NULL name is a temporary file, the host picks its name
+    int handle = xVfsOpen(zName, flags);
+    if (handle < 0) {
+        file->base.pMethods = 0;
+        return -handle;
+    }
+    file->handle = handle;
+    file->nRegion = 0;
+    file->apRegion = 0;
+    file->base.pMethods = &java_io_methods;
+    if (pOutFlags) {
+        *pOutFlags = flags;
+    }
+    return SQLITE_OK;
+}
+
+static int java_delete(sqlite3_vfs *vfs, const char *zName, int syncDir) {
+    return xVfsDelete(zName, syncDir);
+}
+
+static int java_access(sqlite3_vfs *vfs, const char *zName, int flags, int *pResOut) {
+    *pResOut = xVfsAccess(zName, flags);
+    return SQLITE_OK;
+}
+
+static int java_full_pathname(sqlite3_vfs *vfs, const char *zName, int nOut, char *zOut) {
+    // names are resolved by the host
+    int n = strlen(zName);
+    if (n >= nOut) {
+        return SQLITE_CANTOPEN;
+    }
+    memcpy(zOut, zName, n + 1);
+    return SQLITE_OK;
+}
+
+static int java_randomness(sqlite3_vfs *vfs, int nByte, char *zOut) {
+    sqlite3_vfs *parent = (sqlite3_vfs *) vfs->pAppData;
+    return parent->xRandomness(parent, nByte, zOut);
+}
+
+static int java_sleep(sqlite3_vfs *vfs, int microseconds) {
+    sqlite3_vfs *parent = (sqlite3_vfs *) vfs->pAppData;
+    return parent->xSleep(parent, microseconds);
+}
+
+static int java_current_time(sqlite3_vfs *vfs, double *pTime) {
+    sqlite3_vfs *parent = (sqlite3_vfs *) vfs->pAppData;
+    return parent->xCurrentTime(parent, pTime);
+}
+
+static int java_get_last_error(sqlite3_vfs *vfs, int nBuf, char *zBuf) {
+    return 0;
+}
+
+static sqlite3_vfs java_vfs = {
+    1,
+    sizeof(JavaFile),
+    1024,
+    0,
+    "sqlite4j",
+    0,
+    java_open,
+    java_delete,
+    java_access,
+    java_full_pathname,
+    0,
+    0,
+    0,
+    0,
+    java_randomness,
+    java_sleep,
+    java_current_time,
+    java_get_last_error,
+};
+
+// Registers the "sqlite4j" VFS, it is not made the default, connections select it by name.
+// Registering it again is harmless.
+extern int sqlite4j_register_vfs() {
+    if (sqlite3_vfs_find(java_vfs.zName)) {
+        return SQLITE_OK;
+    }
+    java_vfs.pAppData = sqlite3_vfs_find(0);
+    return sqlite3_vfs_register(&java_vfs, 0);
+}